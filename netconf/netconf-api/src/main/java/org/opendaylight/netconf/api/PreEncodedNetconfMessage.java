@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netconf.api;
+
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * NetconfMessage that is already serialized to XML. The payload is made of
+ * immutable segments, so segments shared by many messages (e.g. the content of
+ * a notification sent to many sessions) are serialized only once. The XML
+ * encoder writes the segments as they are, the document is parsed from the
+ * payload only if it is really needed (e.g. for EXI encoding).
+ */
+public class PreEncodedNetconfMessage extends NetconfMessage {
+    private final List<byte[]> segments;
+    private volatile Document document;
+
+    /**
+     * @param segments UTF-8 encoded XML segments, concatenated they form the
+     *                 message without XML declaration. Segments must not be
+     *                 modified afterwards.
+     */
+    public PreEncodedNetconfMessage(final byte[]... segments) {
+        super(null);
+        Preconditions.checkArgument(segments.length > 0, "Message without payload");
+        final List<byte[]> list = new ArrayList<>(segments.length);
+        for (final byte[] segment : segments) {
+            list.add(Preconditions.checkNotNull(segment));
+        }
+        this.segments = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Writes the payload to the given stream.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        for (final byte[] segment : segments) {
+            out.write(segment);
+        }
+    }
+
+    /**
+     * @return Size of the payload in bytes
+     */
+    public int getLength() {
+        int length = 0;
+        for (final byte[] segment : segments) {
+            length += segment.length;
+        }
+        return length;
+    }
+
+    /**
+     * @return Document parsed from the payload on first access
+     */
+    @Override
+    public Document getDocument() {
+        Document result = document;
+        if (result == null) {
+            synchronized (this) {
+                result = document;
+                if (result == null) {
+                    result = parse();
+                    document = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Document parse() {
+        InputStream in = new ByteArrayInputStream(segments.get(0));
+        for (int i = 1; i < segments.size(); i++) {
+            in = new SequenceInputStream(in, new ByteArrayInputStream(segments.get(i)));
+        }
+        try {
+            return XmlUtil.readXmlToDocument(in);
+        } catch (IOException | SAXException e) {
+            throw new IllegalStateException("Failed to parse pre-encoded message", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(getLength());
+        for (final byte[] segment : segments) {
+            out.write(segment, 0, segment.length);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
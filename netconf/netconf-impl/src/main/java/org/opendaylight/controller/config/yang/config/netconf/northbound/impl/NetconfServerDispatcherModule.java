@@ -8,6 +8,8 @@
 
 package org.opendaylight.controller.config.yang.config.netconf.northbound.impl;
 
+import java.util.concurrent.TimeUnit;
+
 import org.opendaylight.controller.config.api.JmxAttributeValidationException;
 import org.opendaylight.netconf.impl.NetconfServerSessionNegotiatorFactoryBuilder;
 import org.opendaylight.netconf.mapping.api.NetconfOperationServiceFactory;
@@ -16,6 +18,7 @@ import org.opendaylight.netconf.impl.NetconfServerDispatcherImpl;
 import org.opendaylight.netconf.impl.NetconfServerSessionNegotiatorFactory;
 import org.opendaylight.netconf.impl.SessionIdProvider;
 import org.opendaylight.netconf.impl.osgi.AggregatedNetconfOperationServiceFactory;
+import org.opendaylight.yangpushserver.impl.SubscriptionOutboundQueue.OverflowPolicy;
 import org.opendaylight.yangpushserver.impl.YangpushProvider;
 
 public class NetconfServerDispatcherModule extends AbstractNetconfServerDispatcherModule {
@@ -30,6 +33,12 @@ public class NetconfServerDispatcherModule extends AbstractNetconfServerDispatch
     @Override
     public void customValidation() {
         JmxAttributeValidationException.checkCondition(getConnectionTimeoutMillis() > 0, "Invalid connection timeout", connectionTimeoutMillisJmxAttribute);
+        JmxAttributeValidationException.checkCondition(getNotificationQueueMaxMessages() > 0, "Invalid notification queue size", notificationQueueMaxMessagesJmxAttribute);
+        JmxAttributeValidationException.checkCondition(getNotificationQueueMaxBytes() > 0, "Invalid notification queue size", notificationQueueMaxBytesJmxAttribute);
+        JmxAttributeValidationException.checkCondition(isOverflowPolicy(getNotificationOverflowPolicy()), "Invalid notification overflow policy", notificationOverflowPolicyJmxAttribute);
+        JmxAttributeValidationException.checkCondition(getNotificationReplayMaxBytes() >= 1024 * 1024, "Invalid notification replay log size, at least 1MiB required", notificationReplayMaxBytesJmxAttribute);
+        JmxAttributeValidationException.checkCondition(getNotificationReplayMaxAge() > 0, "Invalid notification replay age", notificationReplayMaxAgeJmxAttribute);
+        JmxAttributeValidationException.checkCondition(getNotificationBudget() > 0, "Invalid notification budget", notificationBudgetJmxAttribute);
     }
 
     @Override
@@ -49,6 +58,11 @@ public class NetconfServerDispatcherModule extends AbstractNetconfServerDispatch
                 serverNegotiatorFactory);
 
         final YangpushProvider provider = new YangpushProvider();
+        provider.setOutboundQueueBudget(getNotificationQueueMaxMessages(), getNotificationQueueMaxBytes(),
+                OverflowPolicy.valueOf(getNotificationOverflowPolicy()));
+        provider.setReplayLog(getNotificationReplayDirectory(), getNotificationReplayMaxBytes(),
+                TimeUnit.SECONDS.toMillis(getNotificationReplayMaxAge()));
+        provider.setNotificationBudget(getNotificationBudget());
         getDomBrokerDependency().registerProvider(provider);
         serverNegotiatorFactory.setYpProvider(provider);
         
@@ -61,6 +75,15 @@ public class NetconfServerDispatcherModule extends AbstractNetconfServerDispatch
         };
     }
 
+    private static boolean isOverflowPolicy(final String policy) {
+        for (final OverflowPolicy value : OverflowPolicy.values()) {
+            if (value.name().equals(policy)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private AggregatedNetconfOperationServiceFactory getAggregatedOpProvider() {
         final AggregatedNetconfOperationServiceFactory netconfOperationProvider = new AggregatedNetconfOperationServiceFactory();
         for (final NetconfOperationServiceFactory netconfOperationServiceFactory : getMappersDependency()) {
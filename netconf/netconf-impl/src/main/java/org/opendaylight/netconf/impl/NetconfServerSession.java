@@ -60,6 +60,7 @@ public final class NetconfServerSession extends AbstractNetconfSession<NetconfSe
     private long inRpcSuccess, inRpcFail, outRpcError, outNotification;
     private volatile boolean delayedClose;
     private YangpushProvider ypProvider;
+    private volatile boolean ypDown = false;
 
     public NetconfServerSession(final NetconfServerSessionListener sessionListener, final Channel channel, final long sessionId,
             final NetconfHelloMessageAdditionalHeader header) {
@@ -103,8 +104,15 @@ public final class NetconfServerSession extends AbstractNetconfSession<NetconfSe
         return channelFuture;
     }
 
+    public void onIncommingRpc() {
+        ypProvider.onIncomingRpc(this);
+    }
+
+    public void onRpcProcessed() {
+        ypProvider.onRpcProcessed();
+    }
+
     public void onIncommingRpcSuccess() {
-    	ypProvider.onIncomingRpcSuccess(this);
         inRpcSuccess++;
     }
 
@@ -191,6 +199,17 @@ public final class NetconfServerSession extends AbstractNetconfSession<NetconfSe
 	}
 
 	public void ypProviderOnDown() {
+		// Marked before the provider cleans up, so no subscription is bound
+		// to this session afterwards
+		this.ypDown = true;
 		this.ypProvider.onSessionDown(this);	
 	}
+
+	/**
+	 * @return true if the yang-push provider was notified that this session
+	 *         is down
+	 */
+	public boolean isYpDown() {
+		return ypDown;
+	}
 }
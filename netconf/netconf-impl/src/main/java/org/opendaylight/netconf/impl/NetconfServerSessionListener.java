@@ -120,7 +120,13 @@ public class NetconfServerSessionListener implements NetconfSessionListener<Netc
             final Document responseDocument = XmlUtil.newDocument();
             checkMessageId(rootNode);
 
-            Document rpcReply = operationRouter.onNetconfMessage(incomingDocument, session);
+            Document rpcReply;
+            session.onIncommingRpc();
+            try {
+                rpcReply = operationRouter.onNetconfMessage(incomingDocument, session);
+            } finally {
+                session.onRpcProcessed();
+            }
 
             rpcReply = SubtreeFilter.applyRpcSubtreeFilter(incomingDocument, rpcReply);
 
@@ -0,0 +1,400 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.netconf.api.NetconfMessage;
+import org.opendaylight.netconf.api.PreEncodedNetconfMessage;
+import org.opendaylight.netconf.impl.NetconfServerSession;
+import org.opendaylight.yangpushserver.notification.NotificationEngine;
+import org.opendaylight.yangpushserver.notification.OAMNotification;
+import org.opendaylight.yangpushserver.notification.OAMNotification.OAMStatus;
+import org.opendaylight.yangpushserver.notification.OnChangeNotification;
+import org.opendaylight.yangpushserver.notification.PeriodicNotification;
+import org.opendaylight.yangpushserver.notification.SubscriptionMetrics;
+import org.opendaylight.yangpushserver.notification.SubscriptionMetrics.Stage;
+import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.SubscriptionStreamStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import io.netty.channel.ChannelFuture;
+
+/**
+ * Bounded outbound queue of a single subscription. Notifications are written
+ * to the netconf session as long as its channel is writable, otherwise they
+ * are queued. Messages queued or still being written count against a budget
+ * of messages and bytes (bytes are known for pre-encoded messages only). If
+ * the budget is exceeded, the {@link OverflowPolicy} decides what happens:
+ * <ul>
+ * <li>drop_oldest: The oldest queued notifications are dropped</li>
+ * <li>coalesce: Periodic subscriptions keep only the latest queued update,
+ * every push-update replaces the previous ones. On change subscriptions are
+ * suspended, since their updates cannot be merged</li>
+ * <li>suspend: Queued notifications are dropped and the subscription is
+ * suspended</li>
+ * </ul>
+ * A suspended subscription is resumed automatically once everything was
+ * written and the channel is writable again. On change subscriptions are
+ * synchronized with a full update on resume, periodic subscriptions receive
+ * the next update even if its content did not change.
+ * <p>
+ * Updates that are not written, because they were dropped, coalesced or the
+ * subscription was suspended, leave gaps in the sequence numbers the receiver
+ * sees. The gaps are detected when the next update is written and recorded in
+ * the {@link SubscriptionMetrics}.
+ *
+ */
+public class SubscriptionOutboundQueue {
+	private static final Logger LOG = LoggerFactory.getLogger(SubscriptionOutboundQueue.class);
+
+	public static final long DEFAULT_MAX_MESSAGES = 1000l;
+	public static final long DEFAULT_MAX_BYTES = 16l * 1024 * 1024;
+	public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.suspend;
+	/**
+	 * Time in milliseconds after which sending is retried if the channel is
+	 * not writable and no own write is pending
+	 */
+	private static final long RETRY_DELAY = 100l;
+	private static final String SUSPEND_REASON = "Outbound queue budget exceeded, receiver too slow";
+
+	public enum OverflowPolicy {
+		drop_oldest, coalesce, suspend
+	}
+
+	/**
+	 * Channel the notifications are written to.
+	 */
+	interface Transport {
+		boolean isWritable();
+
+		ChannelFuture send(NetconfMessage message);
+	}
+
+	private final String subscriptionID;
+	private final NetconfServerSession session;
+	private final Transport transport;
+	private final long maxMessages;
+	private final long maxBytes;
+	private final OverflowPolicy policy;
+	private final SubscriptionMetrics metrics;
+
+	// All fields below guarded by this
+	private final Deque<Pending> queue = new ArrayDeque<>();
+	private long queuedBytes = 0;
+	private long inFlightMessages = 0;
+	private long inFlightBytes = 0;
+	private boolean suspended = false;
+	private boolean retryScheduled = false;
+	private boolean closed = false;
+	private long dropped = 0;
+	// Highest sequence number written to the session
+	private long lastWrittenSequenceNumber = 0;
+
+	/**
+	 * @param subscriptionID
+	 *            Subscription whose notifications are queued
+	 * @param session
+	 *            Session that established the subscription
+	 * @param maxMessages
+	 *            Maximum number of messages queued or being written
+	 * @param maxBytes
+	 *            Maximum number of bytes queued or being written
+	 * @param policy
+	 *            What happens if the budget is exceeded
+	 */
+	public SubscriptionOutboundQueue(String subscriptionID, NetconfServerSession session, long maxMessages,
+			long maxBytes, OverflowPolicy policy) {
+		this(subscriptionID, session, new Transport() {
+			@Override
+			public boolean isWritable() {
+				return session.isWritable();
+			}
+
+			@Override
+			public ChannelFuture send(NetconfMessage message) {
+				return session.sendMessage(message);
+			}
+		}, maxMessages, maxBytes, policy, NotificationEngine.getInstance().getMetrics().get(subscriptionID));
+	}
+
+	SubscriptionOutboundQueue(String subscriptionID, NetconfServerSession session, Transport transport,
+			long maxMessages, long maxBytes, OverflowPolicy policy) {
+		this(subscriptionID, session, transport, maxMessages, maxBytes, policy, new SubscriptionMetrics());
+	}
+
+	SubscriptionOutboundQueue(String subscriptionID, NetconfServerSession session, Transport transport,
+			long maxMessages, long maxBytes, OverflowPolicy policy, SubscriptionMetrics metrics) {
+		Preconditions.checkArgument(maxMessages > 0, "Message budget has to be positive");
+		Preconditions.checkArgument(maxBytes > 0, "Byte budget has to be positive");
+		this.subscriptionID = subscriptionID;
+		this.session = session;
+		this.transport = transport;
+		this.maxMessages = maxMessages;
+		this.maxBytes = maxBytes;
+		this.policy = Preconditions.checkNotNull(policy);
+		this.metrics = Preconditions.checkNotNull(metrics);
+	}
+
+	/**
+	 * Sends the notification or queues it if the channel is not writable.
+	 * Notifications are dropped while the subscription is suspended, except
+	 * OAM notifications.
+	 *
+	 * @param notification
+	 *            Notification of this subscription
+	 */
+	public void offer(NetconfMessage notification) {
+		boolean control = notification instanceof OAMNotification;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			if (suspended && !control) {
+				dropped++;
+				metrics.recordDropped(1);
+				return;
+			}
+			if (!control && policy == OverflowPolicy.coalesce && isPeriodic()) {
+				// A push-update contains the complete state, older ones queued
+				// are obsolete
+				metrics.recordCoalesced(removeQueuedUpdates(queue.size(), false));
+			}
+			queue.add(new Pending(notification, control));
+			queuedBytes += sizeOf(notification);
+			if (!control && isOverBudget()) {
+				onOverflow();
+			}
+		}
+		drain();
+	}
+
+	private void onOverflow() {
+		if (policy == OverflowPolicy.drop_oldest) {
+			// Keep the latest notification at least
+			while (isOverBudget() && dropQueuedUpdates(1, true) > 0) {
+				// Drop until the budget is met again
+			}
+			LOG.warn("Outbound queue of subscription {} exceeded, {} notifications dropped so far",
+					subscriptionID, dropped);
+		} else {
+			suspend();
+		}
+	}
+
+	/**
+	 * Removes up to the given number of queued notifications, oldest first,
+	 * OAM notifications are kept.
+	 *
+	 * @param keepLatest
+	 *            Whether the notification queued last must be kept
+	 * @return Number of removed notifications
+	 */
+	private int removeQueuedUpdates(int limit, boolean keepLatest) {
+		int removed = 0;
+		Pending latest = queue.peekLast();
+		Iterator<Pending> pending = queue.iterator();
+		while (removed < limit && pending.hasNext()) {
+			Pending next = pending.next();
+			if (!next.control && !(keepLatest && next == latest)) {
+				pending.remove();
+				queuedBytes -= sizeOf(next.message);
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Like {@link #removeQueuedUpdates(int, boolean)}, the removed
+	 * notifications are counted as dropped.
+	 */
+	private int dropQueuedUpdates(int limit, boolean keepLatest) {
+		int removed = removeQueuedUpdates(limit, keepLatest);
+		dropped += removed;
+		metrics.recordDropped(removed);
+		return removed;
+	}
+
+	private void suspend() {
+		dropQueuedUpdates(queue.size(), false);
+		suspended = true;
+		SubscriptionInfo subscription = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+		if (subscription != null) {
+			subscription.setSubscriptionStreamStatus(SubscriptionStreamStatus.suspend);
+		}
+		queue.add(new Pending(new OAMNotification(XmlUtil.newDocument(), subscriptionID,
+				OAMStatus.subscription_suspended, SUSPEND_REASON), true));
+		LOG.warn("Subscription {} suspended, outbound queue budget of {} messages/{} bytes exceeded",
+				subscriptionID, maxMessages, maxBytes);
+	}
+
+	/**
+	 * Writes queued notifications while the channel is writable.
+	 */
+	void drain() {
+		boolean resume = false;
+		synchronized (this) {
+			while (!closed && !queue.isEmpty() && transport.isWritable()) {
+				Pending next = queue.poll();
+				long size = sizeOf(next.message);
+				queuedBytes -= size;
+				inFlightMessages++;
+				inFlightBytes += size;
+				long queuedTime = next.queuedTime;
+				long sequenceNumber = sequenceNumberOf(next.message);
+				transport.send(next.message)
+						.addListener(future -> onWritten(size, queuedTime, sequenceNumber, future.isSuccess()));
+			}
+			if (!closed && !queue.isEmpty() && inFlightMessages == 0 && !retryScheduled) {
+				// Channel blocked by other messages, no own write completes to
+				// trigger sending
+				retryScheduled = true;
+				NotificationEngine.getInstance().getScheduler().schedule(this::retry, RETRY_DELAY,
+						TimeUnit.MILLISECONDS);
+			}
+			if (suspended && queue.isEmpty() && inFlightMessages == 0 && transport.isWritable()) {
+				suspended = false;
+				resume = true;
+			}
+		}
+		if (resume) {
+			resume();
+		}
+	}
+
+	private void retry() {
+		synchronized (this) {
+			retryScheduled = false;
+		}
+		drain();
+	}
+
+	private void onWritten(long size, long queuedTime, long sequenceNumber, boolean success) {
+		long missed = 0;
+		synchronized (this) {
+			inFlightMessages--;
+			inFlightBytes -= size;
+			if (success && sequenceNumber > lastWrittenSequenceNumber) {
+				missed = sequenceNumber - lastWrittenSequenceNumber - 1;
+				lastWrittenSequenceNumber = sequenceNumber;
+			}
+		}
+		if (success) {
+			metrics.recordSent(size);
+			metrics.record(Stage.send, System.nanoTime() - queuedTime);
+		}
+		if (missed > 0) {
+			metrics.recordGap(missed);
+			LOG.debug("Subscription {} skipped {} sequence numbers before {}", subscriptionID, missed,
+					sequenceNumber);
+		}
+		drain();
+	}
+
+	private void resume() {
+		LOG.info("Outbound queue of subscription {} drained, resuming after {} dropped notifications",
+				subscriptionID, dropped);
+		SubscriptionInfo subscription = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+		if (subscription == null) {
+			return;
+		}
+		subscription.setSubscriptionStreamStatus(SubscriptionStreamStatus.active);
+		offer(new OAMNotification(XmlUtil.newDocument(), subscriptionID, OAMStatus.subscription_resumed, null));
+		if (subscription.getDampeningPeriod() != null) {
+			// Changes were missed, synchronize the receiver with a snapshot
+			// that is consistent with the change stream
+			if (!NotificationEngine.getInstance().resync(subscriptionID)) {
+				NotificationEngine.getInstance().periodicNotification(subscriptionID);
+			}
+		} else {
+			// Updates were missed, push the next one even if unchanged
+			NotificationEngine.getInstance().resetUnchangedState(subscriptionID);
+		}
+	}
+
+	/**
+	 * Drops all queued notifications, e.g. when the session went down.
+	 */
+	public synchronized void close() {
+		closed = true;
+		queue.clear();
+		queuedBytes = 0;
+	}
+
+	private boolean isOverBudget() {
+		return queue.size() + inFlightMessages > maxMessages || queuedBytes + inFlightBytes > maxBytes;
+	}
+
+	private boolean isPeriodic() {
+		SubscriptionInfo subscription = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+		return subscription != null && subscription.getPeriod() != null;
+	}
+
+	private static long sizeOf(NetconfMessage message) {
+		return message instanceof PreEncodedNetconfMessage ? ((PreEncodedNetconfMessage) message).getLength() : 0;
+	}
+
+	/**
+	 * @return Sequence number of a push-update or push-change-update,
+	 *         {@link PeriodicNotification#NO_SEQUENCE_NUMBER} for other
+	 *         notifications
+	 */
+	private static long sequenceNumberOf(NetconfMessage message) {
+		if (message instanceof PeriodicNotification) {
+			return ((PeriodicNotification) message).getSequenceNumber();
+		}
+		if (message instanceof OnChangeNotification) {
+			return ((OnChangeNotification) message).getSequenceNumber();
+		}
+		return PeriodicNotification.NO_SEQUENCE_NUMBER;
+	}
+
+	/**
+	 * @return Session that established the subscription
+	 */
+	public NetconfServerSession getSession() {
+		return session;
+	}
+
+	public synchronized boolean isSuspended() {
+		return suspended;
+	}
+
+	public synchronized int getQueuedMessages() {
+		return queue.size();
+	}
+
+	public synchronized long getDroppedMessages() {
+		return dropped;
+	}
+
+	SubscriptionMetrics getMetrics() {
+		return metrics;
+	}
+
+	private static final class Pending {
+		private final NetconfMessage message;
+		// OAM notifications are never dropped
+		private final boolean control;
+		private final long queuedTime = System.nanoTime();
+
+		private Pending(NetconfMessage message, boolean control) {
+			this.message = message;
+			this.control = control;
+		}
+	}
+}
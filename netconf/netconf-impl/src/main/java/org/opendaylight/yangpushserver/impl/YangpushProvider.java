@@ -7,21 +7,27 @@
  */
 package org.opendaylight.yangpushserver.impl;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opendaylight.controller.md.sal.dom.api.DOMDataBroker;
 import org.opendaylight.controller.md.sal.dom.api.DOMRpcProviderService;
 import org.opendaylight.controller.sal.core.api.Broker.ProviderSession;
 import org.opendaylight.controller.sal.core.api.Provider;
+import org.opendaylight.controller.sal.core.api.model.SchemaService;
 import org.opendaylight.netconf.api.NetconfMessage;
 import org.opendaylight.netconf.impl.NetconfServerSession;
+import org.opendaylight.yangpushserver.impl.SubscriptionOutboundQueue.OverflowPolicy;
 import org.opendaylight.yangpushserver.notification.NotificationEngine;
+import org.opendaylight.yangpushserver.notification.NotificationMetrics;
+import org.opendaylight.yangpushserver.notification.NotificationReplayLog;
 import org.opendaylight.yangpushserver.rpc.RpcImpl;
+import org.opendaylight.yangpushserver.subscription.AdmissionController;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine.operations;
 import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
@@ -46,31 +52,51 @@ public class YangpushProvider implements Provider, AutoCloseable {
 	 */
 	public static final Long DELAY_TO_ENSURE_RPC_REPLY = 100l;
 
+	// Session processing a RPC on the current thread
+	private static final ThreadLocal<NetconfServerSession> RPC_SESSION = new ThreadLocal<>();
+
 	private DOMDataBroker globalDomDataBroker;
 	private RpcImpl ypServerRpcImpl;
 	private SubscriptionEngine subEngine;
 	private NotificationEngine notificationEngine;
-	private String latestEstablishedSubscriptionID = "0";
-	private String priorEstablishedSubscriptionID = "0";
-	private Map<NetconfServerSession, Set<String>> serverSessionToSubIds;
+	// Routing index: subscription ID to the outbound queue towards the session
+	// that established it
+	private final Map<String, SubscriptionOutboundQueue> subIdToQueue = new ConcurrentHashMap<>();
+	// Reverse index to delete the subscriptions of a session going down
+	private final Map<NetconfServerSession, Set<String>> serverSessionToSubIds = new ConcurrentHashMap<>();
+	private volatile long queueMaxMessages = SubscriptionOutboundQueue.DEFAULT_MAX_MESSAGES;
+	private volatile long queueMaxBytes = SubscriptionOutboundQueue.DEFAULT_MAX_BYTES;
+	private volatile OverflowPolicy overflowPolicy = SubscriptionOutboundQueue.DEFAULT_OVERFLOW_POLICY;
+	private String replayDirectory = NotificationReplayLog.DEFAULT_DIRECTORY;
+	private long replayMaxBytes = NotificationReplayLog.DEFAULT_MAX_BYTES;
+	private long replayMaxAge = NotificationReplayLog.DEFAULT_MAX_AGE;
+	private long notificationBudget = AdmissionController.DEFAULT_BUDGET;
 
 	/**
 	 * Method called when the blueprint container is destroyed.
 	 */
 	public void close() {
+		if (this.subEngine != null) {
+			this.subEngine.close();
+		}
+		if (this.notificationEngine != null) {
+			this.notificationEngine.getMetrics().stopPublishing();
+			this.notificationEngine.getMetrics().unregisterMBean();
+			this.notificationEngine.closeReplayLog();
+			this.notificationEngine.closeTransactionChains();
+		}
 		this.globalDomDataBroker = null;
 		LOG.info("YangpushserverProvider Closed");
 	}
 
 	/**
-	 * This method initializes {@link DOMDataBroker}, {@link NotificationEngine}
-	 * and {@link SubscriptionEngine}. These services are needed throughout the
+	 * This method initializes {@link DOMDataBroker}, {@link SchemaService},
+	 * {@link NotificationEngine} and {@link SubscriptionEngine}. These services are needed throughout the
 	 * lifetime of the yangpush application and registers its RPC implementation
 	 * with the MD-SAL.
 	 */
 	@Override
 	public void onSessionInitiated(ProviderSession session) {
-		serverSessionToSubIds = new HashMap<>();
 		// get the DOM version of MD-SAL services
 		this.globalDomDataBroker = session.getService(DOMDataBroker.class);
 
@@ -78,9 +104,24 @@ public class YangpushProvider implements Provider, AutoCloseable {
 		this.subEngine.setDataBroker(globalDomDataBroker);
 		this.subEngine.createSubscriptionDataStore();
 
+		AdmissionController.getInstance().setBudget(notificationBudget);
+
 		this.notificationEngine = NotificationEngine.getInstance();
 		this.notificationEngine.setDataBroker(globalDomDataBroker);
 		this.notificationEngine.setProvider(this);
+		this.notificationEngine.setSchemaService(session.getService(SchemaService.class));
+		if (replayDirectory != null && !replayDirectory.isEmpty()) {
+			try {
+				this.notificationEngine.openReplayLog(Paths.get(replayDirectory), replayMaxBytes, replayMaxAge);
+			} catch (IOException e) {
+				LOG.warn("Unable to open notification replay log in {}, replay disabled", replayDirectory, e);
+			}
+		}
+
+		NotificationMetrics metrics = this.notificationEngine.getMetrics();
+		metrics.setQueueDepths(this::getQueuedMessages);
+		metrics.startPublishing(NotificationMetrics.DEFAULT_PUBLISH_INTERVAL);
+		metrics.registerMBean();
 
 		final DOMRpcProviderService service = session.getService(DOMRpcProviderService.class);
 		ypServerRpcImpl = new RpcImpl(service, this.globalDomDataBroker, this);
@@ -97,8 +138,9 @@ public class YangpushProvider implements Provider, AutoCloseable {
 	}
 
 	/**
-	 * Checks which subscriptions fit to what {@link NetconfServerSession} and
-	 * send the notifications related to this subscription over the session.
+	 * Sends the notification over the {@link NetconfServerSession} that
+	 * established the subscription. The notification is queued if the session
+	 * cannot take it right now, see {@link SubscriptionOutboundQueue}.
 	 * 
 	 * @param notification
 	 *            Notification to be send out
@@ -106,57 +148,131 @@ public class YangpushProvider implements Provider, AutoCloseable {
 	 *            The ID of the subscription the notification is send for
 	 */
 	public void pushNotification(NetconfMessage notification, String subscriptionID) {
-		LOG.info("Push notification...");
-		for (NetconfServerSession sessionKey : serverSessionToSubIds.keySet()) {
-			for (String subIDValue : serverSessionToSubIds.get(sessionKey)) {
-				if (subIDValue.equals(subscriptionID)) {
-					sessionKey.sendMessage(notification);
-					LOG.info("Pushed notification {} on session {}", notification, sessionKey);
-				}
-			}
+		SubscriptionOutboundQueue queue = subIdToQueue.get(subscriptionID);
+		if (queue == null) {
+			LOG.warn("No session related to subscription with ID {}, notification dropped", subscriptionID);
+			return;
 		}
+		queue.offer(notification);
+		LOG.debug("Pushed notification for subscription with ID {}", subscriptionID);
+	}
+
+	/**
+	 * Sets the budget of the outbound queues of subscriptions established
+	 * afterwards.
+	 * 
+	 * @param maxMessages
+	 *            Maximum number of notifications queued or being written per
+	 *            subscription
+	 * @param maxBytes
+	 *            Maximum number of bytes queued or being written per
+	 *            subscription
+	 * @param policy
+	 *            What happens if the budget is exceeded
+	 */
+	public void setOutboundQueueBudget(long maxMessages, long maxBytes, OverflowPolicy policy) {
+		this.queueMaxMessages = maxMessages;
+		this.queueMaxBytes = maxBytes;
+		this.overflowPolicy = policy;
+	}
+
+	/**
+	 * Sets the parameters of the log of sent notifications used for replay,
+	 * has to be called before the provider is registered.
+	 * 
+	 * @param directory
+	 *            Directory of the log, replay is disabled if null or empty
+	 * @param maxBytes
+	 *            Maximum size of the log in bytes
+	 * @param maxAge
+	 *            Time in milliseconds notifications are kept for replay
+	 */
+	public void setReplayLog(String directory, long maxBytes, long maxAge) {
+		this.replayDirectory = directory;
+		this.replayMaxBytes = maxBytes;
+		this.replayMaxAge = maxAge;
+	}
+
+	/**
+	 * Sets the number of bytes per second all subscriptions together may
+	 * push, has to be called before the provider is registered.
+	 * 
+	 * @param budget
+	 *            Notification budget in bytes per second
+	 * @see AdmissionController
+	 */
+	public void setNotificationBudget(long budget) {
+		this.notificationBudget = budget;
 	}
 
 	/**
-	 * Notifies the provider if a {@link NetconfServerSession} successfully
-	 * received a RPC and provides the related session.
+	 * Binds the {@link NetconfServerSession} to the current thread while it
+	 * processes a RPC, so RPC implementations invoked on this thread can
+	 * relate their results to the session.
 	 * 
 	 * @param serverSession
 	 *            Netconf server session that received the RPC
 	 */
-	public void onIncomingRpcSuccess(NetconfServerSession serverSession) {
-		LOG.info("New successful RPC on netconf server session");
-		if (!latestEstablishedSubscriptionID.equals(priorEstablishedSubscriptionID)) {
-			if (serverSessionToSubIds.containsKey(serverSession)) {
-				if (serverSessionToSubIds.get(serverSession) != null) {
-					Set<String> relatedSetofSubIds = serverSessionToSubIds.get(serverSession);
-					relatedSetofSubIds.add(latestEstablishedSubscriptionID);
-					serverSessionToSubIds.put(serverSession, relatedSetofSubIds);
-				}
-			} else {
-				Set<String> subIdValues = new HashSet<>();
-				subIdValues.add(latestEstablishedSubscriptionID);
-				serverSessionToSubIds.put(serverSession, subIdValues);
-			}
-			priorEstablishedSubscriptionID = latestEstablishedSubscriptionID;
-		}
+	public void onIncomingRpc(NetconfServerSession serverSession) {
+		RPC_SESSION.set(serverSession);
 	}
 
 	/**
-	 * Notifies the provider if a new subscription was established.
+	 * Releases the {@link NetconfServerSession} bound by
+	 * {@link #onIncomingRpc(NetconfServerSession)} once the RPC is processed.
+	 */
+	public void onRpcProcessed() {
+		RPC_SESSION.remove();
+	}
+
+	/**
+	 * Notifies the provider if a new subscription was established. Has to be
+	 * called on the thread processing the establish-subscription RPC, the
+	 * session of this RPC will receive the notifications of the subscription.
 	 * 
 	 * @param subscriptionId
 	 *            ID of the new subscription
 	 */
 	public void onEstablishedSubscription(String subscriptionId) {
-		LOG.info("Subscription with ID {} established.", subscriptionId);
-
-		if (latestEstablishedSubscriptionID.equals(priorEstablishedSubscriptionID)) {
-			latestEstablishedSubscriptionID = subscriptionId;
-		} else {
-			priorEstablishedSubscriptionID = latestEstablishedSubscriptionID;
-			latestEstablishedSubscriptionID = subscriptionId;
+		NetconfServerSession serverSession = RPC_SESSION.get();
+		if (serverSession == null) {
+			LOG.warn("Subscription with ID {} established outside of a netconf session", subscriptionId);
+			return;
 		}
+		final SubscriptionOutboundQueue queue = new SubscriptionOutboundQueue(subscriptionId, serverSession,
+				queueMaxMessages, queueMaxBytes, overflowPolicy);
+		final boolean[] bound = { false };
+		// Atomic with the removal of the session entry in onSessionDown, which
+		// happens after the session was marked down
+		serverSessionToSubIds.compute(serverSession, (session, subIds) -> {
+			if (session.isYpDown()) {
+				return subIds;
+			}
+			Set<String> result = subIds == null ? ConcurrentHashMap.newKeySet() : subIds;
+			subIdToQueue.put(subscriptionId, queue);
+			result.add(subscriptionId);
+			bound[0] = true;
+			return result;
+		});
+		if (!bound[0]) {
+			LOG.info("Session {} is down, deleting subscription with ID {}", serverSession, subscriptionId);
+			queue.close();
+			this.notificationEngine.unregisterNotification(subscriptionId);
+			this.subEngine.updateMdSal(this.subEngine.getSubscription(subscriptionId), operations.delete);
+			return;
+		}
+		LOG.info("Subscription with ID {} established on session {}", subscriptionId, serverSession);
+	}
+
+	/**
+	 * @param subscriptionId
+	 *            ID of a subscription
+	 * @return Number of notifications queued for the subscription, -1 if it
+	 *         has no outbound queue
+	 */
+	public int getQueuedMessages(String subscriptionId) {
+		SubscriptionOutboundQueue queue = subIdToQueue.get(subscriptionId);
+		return queue == null ? -1 : queue.getQueuedMessages();
 	}
 
 	/**
@@ -167,14 +283,13 @@ public class YangpushProvider implements Provider, AutoCloseable {
 	 */
 	public void onDeletedSubscription(String subscriptionId) {
 		LOG.info("Subscription with ID {} deleted. Deleting from related session", subscriptionId);
-		for (NetconfServerSession sessionKey : serverSessionToSubIds.keySet()) {
-			Set<String> toRemove = new HashSet<>();
-			for (String subIDValue : serverSessionToSubIds.get(sessionKey)) {
-				if (subIDValue.equals(subscriptionId)) {
-					toRemove.add(subscriptionId);
-				}
+		// Notifications still queued are sent, e.g. notification-complete
+		SubscriptionOutboundQueue queue = subIdToQueue.remove(subscriptionId);
+		if (queue != null) {
+			Set<String> subIds = serverSessionToSubIds.get(queue.getSession());
+			if (subIds != null) {
+				subIds.remove(subscriptionId);
 			}
-			serverSessionToSubIds.get(sessionKey).removeAll(toRemove);
 		}
 	}
 
@@ -187,12 +302,17 @@ public class YangpushProvider implements Provider, AutoCloseable {
 	 */
 	public void onSessionDown(NetconfServerSession netconfServerSession) {
 		LOG.info("Session {} down. Deleting all related subscriptions", netconfServerSession);
-		for (String subID : serverSessionToSubIds.get(netconfServerSession)) {
-			this.notificationEngine.unregisterNotification(subID);
+		Set<String> subIds = serverSessionToSubIds.remove(netconfServerSession);
+		if (subIds == null) {
+			return;
 		}
-		for (String subID : serverSessionToSubIds.get(netconfServerSession)) {
+		for (String subID : subIds) {
+			SubscriptionOutboundQueue queue = subIdToQueue.remove(subID);
+			if (queue != null) {
+				queue.close();
+			}
+			this.notificationEngine.unregisterNotification(subID);
 			this.subEngine.updateMdSal(this.subEngine.getSubscription(subID), operations.delete);
 		}
-		serverSessionToSubIds.remove(netconfServerSession);
 	}
-}
\ No newline at end of file
+}
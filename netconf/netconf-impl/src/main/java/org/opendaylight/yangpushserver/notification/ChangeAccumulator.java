@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.Edit;
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.EditOperation;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetEntryNode;
+
+/**
+ * Accumulates the edits of an on change subscription noticed during its
+ * dampening period, so they can be sent as one consolidated push-change-update
+ * when the period is over. Edits are merged per path, the last edit of a path
+ * wins:
+ * <ul>
+ * <li>A node created and deleted within the period is not reported at all</li>
+ * <li>A node deleted and created again is reported as replaced</li>
+ * <li>Pending edits of descendants are dropped if an ancestor is written or
+ * deleted afterwards</li>
+ * </ul>
+ * Edits are kept in the order their paths were changed last, so applying them
+ * in order results in the state at the end of the period.
+ *
+ */
+public class ChangeAccumulator {
+	private final Map<YangInstanceIdentifier, PendingEdit> pending = new LinkedHashMap<>();
+
+	/**
+	 * @param edits
+	 *            Edits of one change in the order they were encoded
+	 */
+	public synchronized void add(List<Edit> edits) {
+		for (Edit edit : edits) {
+			add(edit);
+		}
+	}
+
+	private void add(Edit edit) {
+		if (!isLeaf(edit)) {
+			removeDescendants(edit.getPath());
+		}
+		PendingEdit previous = pending.remove(edit.getPath());
+		boolean existedBefore = previous == null ? edit.getOperation() != EditOperation.create
+				: previous.existedBefore;
+
+		EditOperation operation = edit.getOperation();
+		if (operation == EditOperation.delete) {
+			if (!existedBefore) {
+				// Created and deleted within the period
+				return;
+			}
+		} else if (!existedBefore) {
+			operation = EditOperation.create;
+		} else if (operation == EditOperation.create) {
+			// Deleted and created again within the period
+			operation = EditOperation.replace;
+		}
+		pending.put(edit.getPath(), new PendingEdit(edit.withOperationAndValue(operation, edit.getValue()),
+				existedBefore));
+	}
+
+	private void removeDescendants(YangInstanceIdentifier path) {
+		Iterator<YangInstanceIdentifier> paths = pending.keySet().iterator();
+		while (paths.hasNext()) {
+			YangInstanceIdentifier pendingPath = paths.next();
+			if (!pendingPath.equals(path) && path.contains(pendingPath)) {
+				paths.remove();
+			}
+		}
+	}
+
+	/**
+	 * Leaves cannot have pending descendants, so searching them is skipped.
+	 */
+	private static boolean isLeaf(Edit edit) {
+		return edit.getValue() instanceof LeafNode || edit.getValue() instanceof LeafSetEntryNode;
+	}
+
+	/**
+	 * Removes and returns all pending edits.
+	 *
+	 * @return Consolidated edits, empty if nothing changed or all changes
+	 *         cancelled each other out
+	 */
+	public synchronized List<Edit> drain() {
+		List<Edit> edits = new ArrayList<>(pending.size());
+		for (PendingEdit pendingEdit : pending.values()) {
+			edits.add(pendingEdit.edit);
+		}
+		pending.clear();
+		return edits;
+	}
+
+	public synchronized boolean isEmpty() {
+		return pending.isEmpty();
+	}
+
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	private static final class PendingEdit {
+		private final Edit edit;
+		// Whether the node existed before the first edit of its path
+		private final boolean existedBefore;
+
+		private PendingEdit(Edit edit, boolean existedBefore) {
+			this.edit = edit;
+			this.existedBefore = existedBefore;
+		}
+	}
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.dom.DOMSource;
+
+import org.opendaylight.controller.config.util.xml.DocumentedException;
+import org.opendaylight.controller.config.util.xml.XmlElement;
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.yangpushserver.impl.YangpushProvider;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.InstanceIdentifierBuilder;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.PathArgument;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerChild;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.impl.codec.TypeDefinitionAwareCodec;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.DataContainerNodeAttrBuilder;
+import org.opendaylight.yangtools.yang.model.api.DataNodeContainer;
+import org.opendaylight.yangtools.yang.model.api.DataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.LeafSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.Module;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+import org.opendaylight.yangtools.yang.model.api.TypeDefinition;
+import org.opendaylight.yangtools.yang.model.api.type.BooleanTypeDefinition;
+import org.opendaylight.yangtools.yang.model.api.type.DecimalTypeDefinition;
+import org.opendaylight.yangtools.yang.model.api.type.EnumTypeDefinition;
+import org.opendaylight.yangtools.yang.model.api.type.IntegerTypeDefinition;
+import org.opendaylight.yangtools.yang.model.api.type.StringTypeDefinition;
+import org.opendaylight.yangtools.yang.model.api.type.UnsignedIntegerTypeDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * Subtree filter of a subscription compiled against the schema context when
+ * the subscription is established. The filter is translated into the set of
+ * {@link YangInstanceIdentifier} read roots that cover all data the filter can
+ * select, so reads and data tree change listeners only need to target these
+ * roots instead of the whole data store. The original filter is kept as
+ * residual filter, it is applied to the data found below the read roots to
+ * evaluate content match nodes, attribute match nodes and siblings.
+ *
+ * Descending into the filter stops at nodes with more than one selection or
+ * containment child, at content match nodes other than list keys, at attribute
+ * match nodes and at augmented or choice nodes. Filters that cannot be
+ * compiled (unknown namespaces, no schema context available) fall back to
+ * reading the whole data store.
+ *
+ * If possible, the filter is additionally compiled into a
+ * {@link NormalizedNodeSubtreeFilter}, so it can be applied to the data
+ * without serializing the data to DOM first.
+ *
+ */
+public final class CompiledSubtreeFilter {
+	private static final Logger LOG = LoggerFactory.getLogger(CompiledSubtreeFilter.class);
+	private static final NodeIdentifier DATA_ROOT = new NodeIdentifier(SchemaContext.NAME);
+
+	private final DOMSource filter;
+	private final List<YangInstanceIdentifier> readRoots;
+	private final SchemaContext schemaContext;
+	private final Optional<NormalizedNodeSubtreeFilter> nodeFilter;
+
+	private CompiledSubtreeFilter(DOMSource filter, List<YangInstanceIdentifier> readRoots,
+			SchemaContext schemaContext, Optional<NormalizedNodeSubtreeFilter> nodeFilter) {
+		this.filter = filter;
+		this.readRoots = Collections.unmodifiableList(readRoots);
+		this.schemaContext = schemaContext;
+		this.nodeFilter = nodeFilter;
+	}
+
+	/**
+	 * Compiles the given subtree filter against the schema context.
+	 *
+	 * @param filter
+	 *            Subtree filter of a subscription, might be null
+	 * @param schemaContext
+	 *            Current global schema context, might be null
+	 * @return Compiled filter, reading the whole data store if the filter is
+	 *         not set or cannot be compiled
+	 */
+	public static CompiledSubtreeFilter compile(DOMSource filter, SchemaContext schemaContext) {
+		if (filter == null || schemaContext == null) {
+			return wholeDataStore(filter, Optional.<NormalizedNodeSubtreeFilter> absent());
+		}
+		XmlElement filterElement = XmlElement.fromDomElement((Element) filter.getNode());
+		List<XmlElement> topLevelElements = filterElement.getChildElements();
+		if (!SubtreeFilter.isSupported(filterElement) || topLevelElements.isEmpty()) {
+			return wholeDataStore(filter, Optional.<NormalizedNodeSubtreeFilter> absent());
+		}
+		Optional<NormalizedNodeSubtreeFilter> nodeFilter = NormalizedNodeSubtreeFilter.compile(filterElement,
+				schemaContext);
+		try {
+			List<YangInstanceIdentifier> roots = new ArrayList<>();
+			for (XmlElement topLevelElement : topLevelElements) {
+				roots.add(compileReadRoot(topLevelElement, schemaContext));
+			}
+			roots = collapseReadRoots(roots);
+			LOG.info("Subtree filter {} compiled to read roots {}", XmlUtil.toString((Element) filter.getNode()),
+					roots);
+			return new CompiledSubtreeFilter(filter, roots, schemaContext, nodeFilter);
+		} catch (DocumentedException | URISyntaxException | IllegalArgumentException e) {
+			LOG.warn("Compiling subtree filter failed, whole data store will be read for this subscription", e);
+			return wholeDataStore(filter, nodeFilter);
+		}
+	}
+
+	private static CompiledSubtreeFilter wholeDataStore(DOMSource filter,
+			Optional<NormalizedNodeSubtreeFilter> nodeFilter) {
+		return new CompiledSubtreeFilter(filter, Collections.singletonList(YangpushProvider.ROOT), null, nodeFilter);
+	}
+
+	/**
+	 * @return Residual filter applied to the data read from the read roots,
+	 *         null if no filter is set
+	 */
+	public DOMSource getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return Filter evaluated directly on the data read from the read roots,
+	 *         absent if the residual DOM filter has to be used
+	 */
+	public Optional<NormalizedNodeSubtreeFilter> getNodeFilter() {
+		return nodeFilter;
+	}
+
+	/**
+	 * @return Identifiers of the data store nodes that have to be read or
+	 *         listened on
+	 */
+	public List<YangInstanceIdentifier> getReadRoots() {
+		return readRoots;
+	}
+
+	/**
+	 * @return true if the whole data store has to be read
+	 */
+	public boolean isWholeDataStore() {
+		return readRoots.size() == 1 && readRoots.get(0).getPathArguments().isEmpty();
+	}
+
+	/**
+	 * Composes the data read below the read roots into one data tree starting
+	 * at the root of the data store, as it would have been read from
+	 * {@link YangpushProvider#ROOT}.
+	 *
+	 * @param dataByRoot
+	 *            Data read for each read root, roots without data are left out
+	 * @return Composed data tree or null if there is no data at all
+	 */
+	public NormalizedNode<?, ?> composeDataTree(Map<YangInstanceIdentifier, NormalizedNode<?, ?>> dataByRoot) {
+		if (dataByRoot.isEmpty()) {
+			return null;
+		}
+		if (dataByRoot.containsKey(YangpushProvider.ROOT)) {
+			return dataByRoot.get(YangpushProvider.ROOT);
+		}
+		DataContainerNodeAttrBuilder<NodeIdentifier, ContainerNode> builder = Builders.containerBuilder()
+				.withNodeIdentifier(DATA_ROOT);
+		for (Map.Entry<YangInstanceIdentifier, NormalizedNode<?, ?>> entry : dataByRoot.entrySet()) {
+			builder.withChild((DataContainerChild<?, ?>) toTopLevelNode(entry.getKey(), entry.getValue()));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Composes the data below one of the read roots into a data tree starting
+	 * at the root of the data store, e.g. the data before or after a change.
+	 *
+	 * @param rootPath
+	 *            Read root the data belongs to
+	 * @param data
+	 *            Data of the read root
+	 * @return Composed data tree
+	 */
+	public NormalizedNode<?, ?> composeDataTree(YangInstanceIdentifier rootPath, NormalizedNode<?, ?> data) {
+		return composeDataTree(Collections.<YangInstanceIdentifier, NormalizedNode<?, ?>> singletonMap(rootPath, data));
+	}
+
+	private NormalizedNode<?, ?> toTopLevelNode(YangInstanceIdentifier path, NormalizedNode<?, ?> data) {
+		if (path.getPathArguments().size() == 1) {
+			return data;
+		}
+		return ImmutableNodes.fromInstanceId(schemaContext, path, data);
+	}
+
+	/**
+	 * Descends from a top level filter element as long as the filter selects
+	 * exactly one child and returns the identifier of the deepest node
+	 * reached.
+	 */
+	private static YangInstanceIdentifier compileReadRoot(XmlElement topLevelElement, SchemaContext schemaContext)
+			throws DocumentedException, URISyntaxException {
+		InstanceIdentifierBuilder builder = YangInstanceIdentifier.builder();
+		XmlElement element = topLevelElement;
+		DataSchemaNode schema = findChild(schemaContext, schemaContext, element);
+		Preconditions.checkArgument(schema != null, "Unknown top level node %s", element);
+
+		while (true) {
+			builder.node(schema.getQName());
+			if (schema instanceof ListSchemaNode) {
+				Optional<NodeIdentifierWithPredicates> entry = toListEntry(element, (ListSchemaNode) schema);
+				if (!entry.isPresent()) {
+					break;
+				}
+				builder.node(entry.get());
+			}
+			if (!(schema instanceof DataNodeContainer) || hasMatchAttributes(element)) {
+				break;
+			}
+			List<XmlElement> selectionChildren = new ArrayList<>();
+			for (XmlElement child : element.getChildElements()) {
+				if (!isContentMatch(child)) {
+					selectionChildren.add(child);
+				}
+			}
+			// Content match nodes of containers select their siblings, the
+			// ones of list entries have been consumed as keys above
+			if (selectionChildren.size() != 1 || (!(schema instanceof ListSchemaNode)
+					&& selectionChildren.size() != element.getChildElements().size())) {
+				break;
+			}
+			XmlElement next = selectionChildren.get(0);
+			DataSchemaNode nextSchema = findChild(schemaContext, (DataNodeContainer) schema, next);
+			// Augmented nodes would require augmentation identifiers, choice
+			// members are not direct children
+			if (nextSchema == null || nextSchema.isAugmenting()) {
+				break;
+			}
+			element = next;
+			schema = nextSchema;
+		}
+		return builder.build();
+	}
+
+	private static DataSchemaNode findChild(SchemaContext schemaContext, DataNodeContainer parent, XmlElement child)
+			throws DocumentedException, URISyntaxException {
+		Module module = schemaContext.findModuleByNamespaceAndRevision(new URI(child.getNamespace()), null);
+		if (module == null) {
+			return null;
+		}
+		return parent.getDataChildByName(QName.create(module.getQNameModule(), child.getName()));
+	}
+
+	/**
+	 * @return The identifier of the list entry if all keys and nothing else is
+	 *         matched by content, otherwise absent
+	 */
+	private static Optional<NodeIdentifierWithPredicates> toListEntry(XmlElement element, ListSchemaNode list)
+			throws DocumentedException {
+		List<QName> keyDefinition = list.getKeyDefinition();
+		if (keyDefinition.isEmpty()) {
+			return Optional.absent();
+		}
+		Map<QName, Object> keys = new LinkedHashMap<>();
+		for (XmlElement child : element.getChildElements()) {
+			if (!isContentMatch(child)) {
+				continue;
+			}
+			if (!list.getQName().getNamespace().toString().equals(child.getNamespace())) {
+				return Optional.absent();
+			}
+			QName childName = QName.create(list.getQName(), child.getName());
+			if (!keyDefinition.contains(childName)) {
+				return Optional.absent();
+			}
+			DataSchemaNode keySchema = list.getDataChildByName(childName);
+			Optional<Object> value = keySchema instanceof LeafSchemaNode
+					? deserializeKey(((LeafSchemaNode) keySchema).getType(), child.getTextContent())
+					: Optional.absent();
+			if (!value.isPresent()) {
+				return Optional.absent();
+			}
+			keys.put(childName, value.get());
+		}
+		if (keys.size() != keyDefinition.size()) {
+			return Optional.absent();
+		}
+		return Optional.of(new NodeIdentifierWithPredicates(list.getQName(), keys));
+	}
+
+	/**
+	 * Only types whose values are stored in the data store exactly as the codec
+	 * deserializes them are supported, other key types stop the descent.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Optional<Object> deserializeKey(TypeDefinition<?> type, String value) {
+		if (!(type instanceof StringTypeDefinition || type instanceof IntegerTypeDefinition
+				|| type instanceof UnsignedIntegerTypeDefinition || type instanceof BooleanTypeDefinition
+				|| type instanceof DecimalTypeDefinition || type instanceof EnumTypeDefinition)) {
+			return Optional.absent();
+		}
+		TypeDefinitionAwareCodec<Object, ?> codec = (TypeDefinitionAwareCodec<Object, ?>) TypeDefinitionAwareCodec
+				.from(type);
+		if (codec == null) {
+			return Optional.absent();
+		}
+		try {
+			return Optional.fromNullable(codec.deserialize(value));
+		} catch (IllegalArgumentException e) {
+			LOG.debug("Key value {} does not match its type {}", value, type, e);
+			return Optional.absent();
+		}
+	}
+
+	private static boolean isContentMatch(XmlElement element) {
+		return element.getChildElements().isEmpty() && element.getOnlyTextContentOptionally().isPresent();
+	}
+
+	private static boolean hasMatchAttributes(XmlElement element) {
+		for (Attr attr : element.getAttributes().values()) {
+			if (!XmlUtil.XMLNS_URI.equals(attr.getNamespaceURI())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Read roots below the same top level node are replaced by their common
+	 * prefix, so every top level node is read at most once and the composed
+	 * data tree has no duplicate children.
+	 */
+	private static List<YangInstanceIdentifier> collapseReadRoots(List<YangInstanceIdentifier> roots) {
+		List<YangInstanceIdentifier> result = new ArrayList<>();
+		for (YangInstanceIdentifier root : roots) {
+			boolean collapsed = false;
+			for (int i = 0; i < result.size(); i++) {
+				YangInstanceIdentifier other = result.get(i);
+				if (other.getPathArguments().get(0).equals(root.getPathArguments().get(0))) {
+					result.set(i, commonPrefix(other, root));
+					collapsed = true;
+					break;
+				}
+			}
+			if (!collapsed) {
+				result.add(root);
+			}
+		}
+		return result;
+	}
+
+	private static YangInstanceIdentifier commonPrefix(YangInstanceIdentifier first, YangInstanceIdentifier second) {
+		List<PathArgument> firstArguments = first.getPathArguments();
+		List<PathArgument> secondArguments = second.getPathArguments();
+		int length = 0;
+		while (length < firstArguments.size() && length < secondArguments.size()
+				&& firstArguments.get(length).equals(secondArguments.get(length))) {
+			length++;
+		}
+		return YangInstanceIdentifier.create(firstArguments.subList(0, length));
+	}
+}
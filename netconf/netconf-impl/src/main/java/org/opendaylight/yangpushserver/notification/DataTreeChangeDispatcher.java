@@ -0,0 +1,321 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EventListener;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataBroker;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataReadOnlyTransaction;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeChangeListener;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeChangeService;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeIdentifier;
+import org.opendaylight.yangtools.concepts.AbstractListenerRegistration;
+import org.opendaylight.yangtools.concepts.ListenerRegistration;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.PathArgument;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNodes;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidate;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidateNode;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidates;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.ModificationType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Shares the data tree change listeners registered at the data broker among
+ * the on change subscriptions. A path is listened on by a single broker
+ * registration, listeners of the same path or of a path below it are added to
+ * that registration instead of registering again. The changes are routed to
+ * the listeners whose paths they modified, narrowed to these paths, so the
+ * number of broker registrations depends on the distinct subscribed paths
+ * only, not on the number of subscriptions.
+ * <p>
+ * Like a listener registered at the broker, each listener is told the data
+ * of its path once, before any change is routed to it: when the broker
+ * reports the initial data of a new registration, or on registering if the
+ * shared registration received it already. The broker reports initial data
+ * only if the path exists, so whether to expect it is decided by reading the
+ * path before registering at the broker. Otherwise the first creation of the
+ * path would be taken for its initial data and not reported as change.
+ *
+ */
+public class DataTreeChangeDispatcher {
+	private static final Logger LOG = LoggerFactory.getLogger(DataTreeChangeDispatcher.class);
+
+	/**
+	 * Listener of the changes below one path of a data store.
+	 */
+	public interface Listener extends EventListener {
+		/**
+		 * Called once with the data of the path, changes are reported
+		 * afterwards only.
+		 *
+		 * @param data
+		 *            Data of the path, null if there is none
+		 */
+		void onInitialData(NormalizedNode<?, ?> data);
+
+		/**
+		 * Called with the changes that modified the path.
+		 *
+		 * @param data
+		 *            Data of the path after the changes, null if there is none
+		 * @param changes
+		 *            Changes rooted at the path
+		 */
+		void onDataTreeChanged(NormalizedNode<?, ?> data, Collection<DataTreeCandidate> changes);
+	}
+
+	private final DOMDataTreeChangeService changeService;
+	private final DOMDataBroker dataBroker;
+	// Shared registrations by data store and path, guarded by this
+	private final Map<DOMDataTreeIdentifier, SharedRegistration> registrations = new HashMap<>();
+
+	/**
+	 * @param changeService
+	 *            Service of the data broker the shared listeners are
+	 *            registered at
+	 * @param dataBroker
+	 *            Data broker used to check whether a path exists when
+	 *            registering at it
+	 */
+	public DataTreeChangeDispatcher(DOMDataTreeChangeService changeService, DOMDataBroker dataBroker) {
+		this.changeService = Preconditions.checkNotNull(changeService);
+		this.dataBroker = Preconditions.checkNotNull(dataBroker);
+	}
+
+	/**
+	 * Registers a listener for the changes below the given path. It is added
+	 * to the shared registration of the path or of the closest path above it,
+	 * a new registration at the broker is made only if there is none.
+	 *
+	 * @param datastore
+	 *            Data store to listen on
+	 * @param path
+	 *            Path to listen on
+	 * @param listener
+	 *            Listener of the changes
+	 * @return Registration to close when the changes are no longer needed
+	 */
+	public synchronized <L extends Listener> ListenerRegistration<L> registerListener(
+			LogicalDatastoreType datastore, YangInstanceIdentifier path, L listener) {
+		List<PathArgument> pathArguments = path.getPathArguments();
+		SharedRegistration shared = null;
+		for (int i = 0; i <= pathArguments.size() && shared == null; i++) {
+			shared = registrations.get(new DOMDataTreeIdentifier(datastore,
+					YangInstanceIdentifier.create(pathArguments.subList(0, i))));
+		}
+		boolean created = shared == null;
+		if (created) {
+			DOMDataTreeIdentifier treeId = new DOMDataTreeIdentifier(datastore, path);
+			shared = new SharedRegistration(treeId, exists(treeId));
+			registrations.put(shared.treeId, shared);
+		}
+		SubscribedPath<L> registration = new SubscribedPath<>(listener, shared, path);
+		shared.add(registration);
+		if (created) {
+			shared.registration = changeService.registerDataTreeChangeListener(shared.treeId, shared);
+			LOG.debug("Data tree change listener registered on {} {}, {} shared registrations", datastore, path,
+					registrations.size());
+		}
+		return registration;
+	}
+
+	/**
+	 * @return Whether there is data at the given path, true if unknown since
+	 *         then the broker may report initial data
+	 */
+	private boolean exists(DOMDataTreeIdentifier treeId) {
+		try (DOMDataReadOnlyTransaction tx = dataBroker.newReadOnlyTransaction()) {
+			return tx.exists(treeId.getDatastoreType(), treeId.getRootIdentifier()).checkedGet();
+		} catch (ReadFailedException e) {
+			LOG.warn("Checking whether {} exists failed, expecting initial data", treeId, e);
+			return true;
+		}
+	}
+
+	/**
+	 * Closes the shared registration if its last listener is gone.
+	 */
+	private synchronized void unregister(SubscribedPath<?> registration) {
+		SharedRegistration shared = registration.shared;
+		if (shared.remove(registration) && registrations.remove(shared.treeId, shared)) {
+			shared.registration.close();
+			LOG.debug("Data tree change listener on {} closed, {} shared registrations", shared.treeId,
+					registrations.size());
+		}
+	}
+
+	/**
+	 * @return Number of registrations at the broker
+	 */
+	public synchronized int getRegistrationCount() {
+		return registrations.size();
+	}
+
+	/**
+	 * Listener registered at the broker on behalf of all listeners of its
+	 * path and of the paths below it.
+	 */
+	private static final class SharedRegistration implements DOMDataTreeChangeListener {
+		private final DOMDataTreeIdentifier treeId;
+		// Set once by the dispatcher after the listener was added
+		private ListenerRegistration<SharedRegistration> registration;
+		// Guarded by this
+		private final List<SubscribedPath<?>> listeners = new ArrayList<>();
+		private boolean initialDataReceived;
+		private NormalizedNode<?, ?> data = null;
+
+		/**
+		 * @param dataPresent
+		 *            Whether the path exists, the broker reports no initial
+		 *            data otherwise
+		 */
+		private SharedRegistration(DOMDataTreeIdentifier treeId, boolean dataPresent) {
+			this.treeId = treeId;
+			this.initialDataReceived = !dataPresent;
+		}
+
+		/**
+		 * Adds the listener, it is told the data of its path now if the
+		 * initial data was received already, with the initial data
+		 * otherwise.
+		 */
+		private synchronized void add(SubscribedPath<?> listener) {
+			if (initialDataReceived) {
+				listener.getInstance().onInitialData(listener.find(data));
+			}
+			listeners.add(listener);
+		}
+
+		/**
+		 * @return Whether the last listener was removed
+		 */
+		private synchronized boolean remove(SubscribedPath<?> listener) {
+			return listeners.remove(listener) && listeners.isEmpty();
+		}
+
+		@Override
+		public void onDataTreeChanged(Collection<DataTreeCandidate> changes) {
+			boolean initialData;
+			List<SubscribedPath<?>> receivers;
+			synchronized (this) {
+				for (DataTreeCandidate change : changes) {
+					data = change.getRootNode().getDataAfter().orNull();
+				}
+				initialData = !initialDataReceived && isInitialData(changes);
+				initialDataReceived = true;
+				// Listeners added from now on see the data including these
+				// changes, they do not receive them
+				receivers = new ArrayList<>(listeners);
+			}
+			if (initialData) {
+				LOG.info("Noticed initial {} for data after registering listeners on {}. No update will be send.",
+						ModificationType.WRITE, treeId);
+			}
+			for (SubscribedPath<?> receiver : receivers) {
+				if (initialData) {
+					receiver.getInstance().onInitialData(receiver.find(data));
+				} else {
+					receiver.onDataTreeChanged(changes);
+				}
+			}
+		}
+
+		private static boolean isInitialData(Collection<DataTreeCandidate> changes) {
+			for (DataTreeCandidate change : changes) {
+				DataTreeCandidateNode rootNode = change.getRootNode();
+				if (rootNode.getModificationType() != ModificationType.WRITE || rootNode.getDataBefore().isPresent()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Registration of a listener, for a path at or below the path of its
+	 * shared registration.
+	 */
+	private final class SubscribedPath<L extends Listener> extends AbstractListenerRegistration<L> {
+		private final SharedRegistration shared;
+		private final YangInstanceIdentifier path;
+		// Path below the one of the shared registration
+		private final List<PathArgument> relativePath;
+		private volatile boolean closed = false;
+
+		private SubscribedPath(L listener, SharedRegistration shared, YangInstanceIdentifier path) {
+			super(listener);
+			this.shared = shared;
+			this.path = path;
+			List<PathArgument> pathArguments = path.getPathArguments();
+			this.relativePath = pathArguments.subList(shared.treeId.getRootIdentifier().getPathArguments().size(),
+					pathArguments.size());
+		}
+
+		/**
+		 * @return Data of the path within the data of the shared path
+		 */
+		private NormalizedNode<?, ?> find(NormalizedNode<?, ?> sharedData) {
+			if (sharedData == null) {
+				return null;
+			}
+			return NormalizedNodes.findNode(sharedData, relativePath).orNull();
+		}
+
+		/**
+		 * Reports the changes that modified the path, narrowed to it.
+		 */
+		private void onDataTreeChanged(Collection<DataTreeCandidate> changes) {
+			if (closed) {
+				return;
+			}
+			if (relativePath.isEmpty()) {
+				NormalizedNode<?, ?> dataAfter = null;
+				for (DataTreeCandidate change : changes) {
+					dataAfter = change.getRootNode().getDataAfter().orNull();
+				}
+				getInstance().onDataTreeChanged(dataAfter, changes);
+				return;
+			}
+			List<DataTreeCandidate> narrowed = new ArrayList<>(changes.size());
+			for (DataTreeCandidate change : changes) {
+				DataTreeCandidateNode node = change.getRootNode();
+				for (PathArgument pathArgument : relativePath) {
+					node = node.getModifiedChild(pathArgument);
+					if (node == null || node.getModificationType() == ModificationType.UNMODIFIED) {
+						break;
+					}
+				}
+				if (node != null && node.getModificationType() != ModificationType.UNMODIFIED) {
+					narrowed.add(DataTreeCandidates.newDataTreeCandidate(path, node));
+				}
+			}
+			if (!narrowed.isEmpty()) {
+				getInstance().onDataTreeChanged(
+						narrowed.get(narrowed.size() - 1).getRootNode().getDataAfter().orNull(), narrowed);
+			}
+		}
+
+		@Override
+		protected void removeRegistration() {
+			closed = true;
+			unregister(this);
+		}
+	}
+}
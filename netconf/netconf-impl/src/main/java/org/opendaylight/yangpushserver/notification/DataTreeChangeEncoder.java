@@ -0,0 +1,423 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.dom.DOMResult;
+
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.ChangeType;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.AugmentationIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeWithValue;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.PathArgument;
+import org.opendaylight.yangtools.yang.data.api.schema.ChoiceNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNodes;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidateNode;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.ModificationType;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.google.common.base.Optional;
+
+/**
+ * Encodes the changes of a data tree change notification as a list of edits
+ * like defined for the yang-patch operation (draft-ietf-netconf-yang-patch).
+ * The {@link DataTreeCandidateNode} tree is walked down to the nodes that were
+ * actually written, deleted or appeared, so the size of a push-change-update
+ * depends on the change only and not on the size of the data store.
+ *
+ */
+public final class DataTreeChangeEncoder {
+	private static final Logger LOG = LoggerFactory.getLogger(DataTreeChangeEncoder.class);
+
+	public static final String YANG_PATCH_NAMESPACE = "urn:ietf:params:xml:ns:yang:ietf-yang-patch";
+	public static final String YANG_PATCH = "yang-patch";
+	public static final String PATCH_ID = "patch-id";
+	public static final String EDIT = "edit";
+	public static final String EDIT_ID = "edit-id";
+	public static final String OPERATION = "operation";
+	public static final String TARGET = "target";
+	public static final String VALUE = "value";
+
+	/**
+	 * Yang-patch operations used to describe changes (no insert or move since
+	 * changes of the position of ordered entries are reported as replace).
+	 */
+	public enum EditOperation {
+		create(ChangeType.create), merge(ChangeType.create), replace(ChangeType.modify), delete(ChangeType.delete);
+
+		private final ChangeType changeType;
+
+		EditOperation(ChangeType changeType) {
+			this.changeType = changeType;
+		}
+
+		/**
+		 * @return Kind of change as used by excluded-change
+		 */
+		public ChangeType getChangeType() {
+			return changeType;
+		}
+	}
+
+	/**
+	 * Single change of a data store node.
+	 */
+	public static final class Edit {
+		private final EditOperation operation;
+		private final YangInstanceIdentifier path;
+		private final List<PathArgument> target;
+		private final NormalizedNode<?, ?> value;
+
+		Edit(EditOperation operation, YangInstanceIdentifier path, List<PathArgument> target,
+				NormalizedNode<?, ?> value) {
+			this.operation = operation;
+			this.path = path;
+			this.target = target;
+			this.value = value;
+		}
+
+		Edit withOperationAndValue(EditOperation operation, NormalizedNode<?, ?> value) {
+			return new Edit(operation, path, target, value);
+		}
+
+		/**
+		 * @return Operation describing the change
+		 */
+		public EditOperation getOperation() {
+			return operation;
+		}
+
+		/**
+		 * @return Path of the changed node in the data store
+		 */
+		public YangInstanceIdentifier getPath() {
+			return path;
+		}
+
+		/**
+		 * @return Path arguments of the target as seen in XML, i.e. without
+		 *         choice and augmentation nodes
+		 */
+		public List<PathArgument> getTarget() {
+			return target;
+		}
+
+		/**
+		 * @return Data of the node after the change, null for delete
+		 */
+		public NormalizedNode<?, ?> getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return operation + " " + path;
+		}
+	}
+
+	private DataTreeChangeEncoder() {
+	}
+
+	/**
+	 * Encodes a change below a listener root and reduces the edits to the
+	 * data selected by the subtree filter of the subscription. Edits whose
+	 * node is no longer selected after the change are reported as delete,
+	 * edits whose node gets selected by the change as create. If the filter
+	 * cannot be evaluated on normalized nodes, the edits are not filtered.
+	 *
+	 * @param rootPath
+	 *            Path of the listener root
+	 * @param rootNode
+	 *            Candidate node of the listener root
+	 * @param filter
+	 *            Compiled filter of the subscription
+	 * @return Edits in the order the candidate tree was walked
+	 */
+	public static List<Edit> encode(YangInstanceIdentifier rootPath, DataTreeCandidateNode rootNode,
+			CompiledSubtreeFilter filter) {
+		return encode(rootPath, rootNode, filter, Collections.<ChangeType> emptySet());
+	}
+
+	/**
+	 * Like {@link #encode(YangInstanceIdentifier, DataTreeCandidateNode,
+	 * CompiledSubtreeFilter)}, but leaves out the kinds of changes excluded by
+	 * the subscription. Without subtree filter excluded edits are dropped
+	 * while walking the candidate tree, otherwise after the filter decided
+	 * about their final operation.
+	 *
+	 * @param rootPath
+	 *            Path of the listener root
+	 * @param rootNode
+	 *            Candidate node of the listener root
+	 * @param filter
+	 *            Compiled filter of the subscription
+	 * @param excluded
+	 *            Kinds of changes not to report
+	 * @return Edits in the order the candidate tree was walked
+	 */
+	public static List<Edit> encode(YangInstanceIdentifier rootPath, DataTreeCandidateNode rootNode,
+			CompiledSubtreeFilter filter, Set<ChangeType> excluded) {
+		if (excluded.size() == ChangeType.values().length) {
+			return Collections.emptyList();
+		}
+		boolean filtered = filter != null && filter.getNodeFilter().isPresent();
+		// The filter may turn edits into create or delete, so exclude later
+		Set<ChangeType> walkExcluded = filtered ? Collections.<ChangeType> emptySet() : excluded;
+		List<Edit> edits = new ArrayList<>();
+		// The root node itself is added while walking the candidate tree
+		YangInstanceIdentifier parentPath = rootPath.getParent();
+		List<PathArgument> target = parentPath == null ? new ArrayList<>() : toTarget(parentPath);
+		if (rootPath.getPathArguments().isEmpty() && rootNode.getModificationType() == ModificationType.WRITE) {
+			// Do not replace the data root, but its children
+			for (DataTreeCandidateNode child : rootNode.getChildNodes()) {
+				encode(rootPath.node(child.getIdentifier()), target, child, walkExcluded, edits);
+			}
+		} else {
+			encode(rootPath, target, rootNode, walkExcluded, edits);
+		}
+		if (edits.isEmpty() || !filtered) {
+			return edits;
+		}
+		return filter(edits, rootPath, rootNode, filter, excluded);
+	}
+
+	private static void encode(YangInstanceIdentifier path, List<PathArgument> parentTarget,
+			DataTreeCandidateNode node, Set<ChangeType> excluded, List<Edit> edits) {
+		Optional<NormalizedNode<?, ?>> before = node.getDataBefore();
+		Optional<NormalizedNode<?, ?>> after = node.getDataAfter();
+		List<PathArgument> target = parentTarget;
+		if (!isInvisible(node.getIdentifier(), after.isPresent() ? after.get() : before.orNull())) {
+			target = new ArrayList<>(parentTarget);
+			target.add(node.getIdentifier());
+		}
+
+		switch (node.getModificationType()) {
+		case WRITE:
+			if (!before.isPresent()) {
+				addEdit(EditOperation.create, path, target, after.get(), excluded, edits);
+			} else if (!isUnchangedValue(before.get(), after.get())) {
+				addEdit(EditOperation.replace, path, target, after.get(), excluded, edits);
+			}
+			break;
+		case APPEARED:
+			addEdit(EditOperation.merge, path, target, after.get(), excluded, edits);
+			break;
+		case DELETE:
+		case DISAPPEARED:
+			if (before.isPresent()) {
+				addEdit(EditOperation.delete, path, target, null, excluded, edits);
+			}
+			break;
+		case SUBTREE_MODIFIED:
+			for (DataTreeCandidateNode child : node.getChildNodes()) {
+				encode(path.node(child.getIdentifier()), target, child, excluded, edits);
+			}
+			break;
+		case UNMODIFIED:
+		default:
+			break;
+		}
+	}
+
+	private static void addEdit(EditOperation operation, YangInstanceIdentifier path, List<PathArgument> target,
+			NormalizedNode<?, ?> value, Set<ChangeType> excluded, List<Edit> edits) {
+		if (!excluded.contains(operation.getChangeType())) {
+			edits.add(new Edit(operation, path, target, value));
+		}
+	}
+
+	/**
+	 * The data root, choice, augmentation, list and leaf-list nodes have no
+	 * representation in XML, only the entries of lists and leaf-lists do.
+	 */
+	private static boolean isInvisible(PathArgument identifier, NormalizedNode<?, ?> data) {
+		return identifier instanceof AugmentationIdentifier || SchemaContext.NAME.equals(identifier.getNodeType())
+				|| data instanceof ChoiceNode || data instanceof MapNode || data instanceof LeafSetNode;
+	}
+
+	/**
+	 * Converts a data store path to a target without the data to look at, so
+	 * list and leaf-list nodes are recognized by the entry following them.
+	 */
+	static List<PathArgument> toTarget(YangInstanceIdentifier path) {
+		List<PathArgument> arguments = path.getPathArguments();
+		List<PathArgument> target = new ArrayList<>(arguments.size());
+		for (int i = 0; i < arguments.size(); i++) {
+			PathArgument argument = arguments.get(i);
+			if (argument instanceof AugmentationIdentifier || SchemaContext.NAME.equals(argument.getNodeType())) {
+				continue;
+			}
+			if (i + 1 < arguments.size() && isEntryOf(arguments.get(i + 1), argument)) {
+				continue;
+			}
+			target.add(argument);
+		}
+		return target;
+	}
+
+	private static boolean isEntryOf(PathArgument entry, PathArgument parent) {
+		return (entry instanceof NodeIdentifierWithPredicates || entry instanceof NodeWithValue)
+				&& entry.getNodeType().equals(parent.getNodeType());
+	}
+
+	/**
+	 * Writes of leaves with the value they already had are not reported.
+	 * Containers are not compared to avoid walking large subtrees.
+	 */
+	private static boolean isUnchangedValue(NormalizedNode<?, ?> before, NormalizedNode<?, ?> after) {
+		return (after instanceof LeafNode || after instanceof LeafSetEntryNode) && before.equals(after);
+	}
+
+	private static List<Edit> filter(List<Edit> edits, YangInstanceIdentifier rootPath,
+			DataTreeCandidateNode rootNode, CompiledSubtreeFilter filter, Set<ChangeType> excluded) {
+		NormalizedNodeSubtreeFilter nodeFilter = filter.getNodeFilter().get();
+		Optional<NormalizedNode<?, ?>> selectedBefore = applyFilter(nodeFilter, filter, rootPath,
+				rootNode.getDataBefore());
+		Optional<NormalizedNode<?, ?>> selectedAfter = applyFilter(nodeFilter, filter, rootPath,
+				rootNode.getDataAfter());
+
+		List<Edit> filtered = new ArrayList<>(edits.size());
+		for (Edit edit : edits) {
+			Optional<NormalizedNode<?, ?>> after = find(selectedAfter, edit.getPath());
+			boolean wasSelected = find(selectedBefore, edit.getPath()).isPresent();
+			if (after.isPresent()) {
+				EditOperation operation = wasSelected ? edit.getOperation() : EditOperation.create;
+				if (!excluded.contains(operation.getChangeType())) {
+					filtered.add(edit.withOperationAndValue(operation, after.get()));
+				}
+			} else if (wasSelected && !excluded.contains(ChangeType.delete)) {
+				filtered.add(edit.withOperationAndValue(EditOperation.delete, null));
+			}
+		}
+		LOG.debug("{} of {} edits selected by subtree filter", filtered.size(), edits.size());
+		return filtered;
+	}
+
+	private static Optional<NormalizedNode<?, ?>> applyFilter(NormalizedNodeSubtreeFilter nodeFilter,
+			CompiledSubtreeFilter filter, YangInstanceIdentifier rootPath, Optional<NormalizedNode<?, ?>> data) {
+		if (!data.isPresent()) {
+			return Optional.absent();
+		}
+		return nodeFilter.apply(filter.composeDataTree(rootPath, data.get()));
+	}
+
+	private static Optional<NormalizedNode<?, ?>> find(Optional<NormalizedNode<?, ?>> tree,
+			YangInstanceIdentifier path) {
+		return tree.isPresent() ? NormalizedNodes.findNode(tree.get(), path) : Optional.<NormalizedNode<?, ?>> absent();
+	}
+
+	/**
+	 * Creates the yang-patch document for the given edits. Targets are
+	 * absolute instance identifiers, the prefixes used are declared on the
+	 * target element.
+	 *
+	 * @param patchID
+	 *            Identifier of the patch
+	 * @param edits
+	 *            Edits to encode
+	 * @return Document with yang-patch as document element
+	 */
+	public static Document toYangPatch(String patchID, List<Edit> edits) {
+		Document document = XmlUtil.newDocument();
+		Element yangPatch = document.createElementNS(YANG_PATCH_NAMESPACE, YANG_PATCH);
+		document.appendChild(yangPatch);
+		appendTextElement(yangPatch, PATCH_ID, patchID);
+
+		int editNumber = 0;
+		for (Edit edit : edits) {
+			Element editElement = document.createElementNS(YANG_PATCH_NAMESPACE, EDIT);
+			yangPatch.appendChild(editElement);
+			appendTextElement(editElement, EDIT_ID, "edit-" + ++editNumber);
+			appendTextElement(editElement, OPERATION, edit.getOperation().name());
+			Element target = appendTextElement(editElement, TARGET, null);
+			target.setTextContent(toInstanceIdentifier(edit.getTarget(), target));
+			if (edit.getValue() != null) {
+				Element value = appendTextElement(editElement, VALUE, null);
+				try {
+					NotificationEngine.writeNormalizedNode(edit.getValue(), new DOMResult(value));
+				} catch (IOException | XMLStreamException e) {
+					LOG.warn("Transforming value of edit {} to XML failed", edit, e);
+				}
+			}
+		}
+		return document;
+	}
+
+	private static Element appendTextElement(Element parent, String name, String text) {
+		Element element = parent.getOwnerDocument().createElementNS(YANG_PATCH_NAMESPACE, name);
+		if (text != null) {
+			element.setTextContent(text);
+		}
+		parent.appendChild(element);
+		return element;
+	}
+
+	/**
+	 * Renders the target as instance identifier, e.g.
+	 * /p0:inventory/p0:node[p0:id='n1']/p0:statistics
+	 */
+	private static String toInstanceIdentifier(List<PathArgument> target, Element element) {
+		if (target.isEmpty()) {
+			return "/";
+		}
+		Map<String, String> prefixes = new LinkedHashMap<>();
+		StringBuilder builder = new StringBuilder();
+		for (PathArgument argument : target) {
+			builder.append('/').append(toPrefixedName(argument.getNodeType(), prefixes));
+			if (argument instanceof NodeIdentifierWithPredicates) {
+				for (Map.Entry<QName, Object> key : ((NodeIdentifierWithPredicates) argument).getKeyValues()
+						.entrySet()) {
+					builder.append('[').append(toPrefixedName(key.getKey(), prefixes)).append('=')
+							.append(toLiteral(key.getValue(), prefixes)).append(']');
+				}
+			} else if (argument instanceof NodeWithValue) {
+				builder.append("[.=").append(toLiteral(((NodeWithValue<?>) argument).getValue(), prefixes))
+						.append(']');
+			}
+		}
+		for (Map.Entry<String, String> prefix : prefixes.entrySet()) {
+			element.setAttributeNS(XmlUtil.XMLNS_URI, "xmlns:" + prefix.getValue(), prefix.getKey());
+		}
+		return builder.toString();
+	}
+
+	private static String toPrefixedName(QName name, Map<String, String> prefixes) {
+		String namespace = name.getNamespace().toString();
+		String prefix = prefixes.get(namespace);
+		if (prefix == null) {
+			prefix = "p" + prefixes.size();
+			prefixes.put(namespace, prefix);
+		}
+		return prefix + ":" + name.getLocalName();
+	}
+
+	private static String toLiteral(Object value, Map<String, String> prefixes) {
+		String text = value instanceof QName ? toPrefixedName((QName) value, prefixes) : String.valueOf(value);
+		return text.indexOf('\'') < 0 ? "'" + text + "'" : "\"" + text + "\"";
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.w3c.dom.Document;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Notification content serialized once and shared by the notifications of
+ * many subscriptions, e.g. the members of a {@link PeriodicNotificationGroup}.
+ * Only the small envelope containing subscription ID and timestamps is
+ * written per subscription by {@link NotificationEnvelope}, the netconf sessions write the payload without
+ * serializing it again. The serialized content is also what the
+ * {@link NotificationReplayLog} records and what the fingerprint used to
+ * detect unchanged periodic updates is computed from.
+ *
+ */
+public final class EncodedNotificationContent {
+	private static final byte[] EMPTY = new byte[0];
+	private static final EncodedNotificationContent EMPTY_XML = new EncodedNotificationContent(EMPTY, false);
+	private static final EncodedNotificationContent EMPTY_JSON = new EncodedNotificationContent(EMPTY, true);
+
+	private final byte[] content;
+	private final boolean json;
+	// Computed on first use, at most once per tick for a whole group
+	private volatile HashCode fingerprint;
+
+	EncodedNotificationContent(byte[] content, boolean json) {
+		this.content = content;
+		this.json = json;
+	}
+
+	/**
+	 * @param json
+	 *            Whether the content is JSON encoded
+	 * @return Content without data, e.g. for heartbeat push-updates
+	 */
+	public static EncodedNotificationContent empty(boolean json) {
+		return json ? EMPTY_JSON : EMPTY_XML;
+	}
+
+	/**
+	 * @param content
+	 *            XML content, the document is not modified
+	 * @return Serialized content
+	 */
+	public static EncodedNotificationContent ofXml(Document content) {
+		Preconditions.checkNotNull(content);
+		if (content.getDocumentElement() == null) {
+			return EMPTY_XML;
+		}
+		return new EncodedNotificationContent(
+				XmlUtil.toString(content.getDocumentElement(), false).getBytes(StandardCharsets.UTF_8), false);
+	}
+
+	/**
+	 * @param content
+	 *            JSON content, may be null if there is no content
+	 * @return Serialized content, escaped to be used as text of the content
+	 *         element
+	 */
+	public static EncodedNotificationContent ofJson(String content) {
+		if (content == null) {
+			return EMPTY_JSON;
+		}
+		return new EncodedNotificationContent(escape(content).getBytes(StandardCharsets.UTF_8), true);
+	}
+
+	/**
+	 * Creates a push-update notification like {@link PeriodicNotification}
+	 * containing this content, without sequence number.
+	 *
+	 * @param subscriptionID
+	 *            Underlying subscription ID
+	 * @param eventTime
+	 *            Time when this notification is send
+	 * @return Notification ready to be sent
+	 */
+	public PeriodicNotification toPushUpdate(String subscriptionID, Date eventTime) {
+		return new PeriodicNotification(NotificationEnvelope.pushUpdate(json).segments(subscriptionID, eventTime,
+				content), subscriptionID, eventTime, PeriodicNotification.NO_SEQUENCE_NUMBER);
+	}
+
+	/**
+	 * Creates a push-update notification containing this content, stamped
+	 * with the given sequence number.
+	 *
+	 * @param sequenceNumber
+	 *            Sequence number of the update within its subscription
+	 * @see #toPushUpdate(String, Date)
+	 */
+	public PeriodicNotification toPushUpdate(String subscriptionID, Date eventTime, long sequenceNumber) {
+		return new PeriodicNotification(NotificationEnvelope.pushUpdate(json).segments(subscriptionID, eventTime,
+				NotificationEnvelope.extensions(sequenceNumber), content), subscriptionID, eventTime,
+				sequenceNumber);
+	}
+
+	/**
+	 * Creates a push-update notification sent on resync of an on-change
+	 * subscription, marked with the change sequence it corresponds to.
+	 *
+	 * @param subscriptionID
+	 *            Underlying subscription ID
+	 * @param eventTime
+	 *            Time when this notification is send
+	 * @param sequenceNumber
+	 *            Sequence number of the update within its subscription
+	 * @param changeSequence
+	 *            Number of changes the subscription observed that are
+	 *            included in this content
+	 * @return Notification ready to be sent
+	 */
+	public PeriodicNotification toResyncPushUpdate(String subscriptionID, Date eventTime, long sequenceNumber,
+			long changeSequence) {
+		return new PeriodicNotification(NotificationEnvelope.pushUpdate(json).segments(subscriptionID, eventTime,
+				NotificationEnvelope.extensions(sequenceNumber, changeSequence), content), subscriptionID,
+				eventTime, sequenceNumber);
+	}
+
+	/**
+	 * Creates a push-change-update notification like
+	 * {@link OnChangeNotification} containing this content, without sequence
+	 * number.
+	 *
+	 * @param subscriptionID
+	 *            Underlying subscription ID
+	 * @param eventTime
+	 *            Time when this notification is send
+	 * @return Notification ready to be sent
+	 */
+	public OnChangeNotification toPushChangeUpdate(String subscriptionID, Date eventTime) {
+		return new OnChangeNotification(NotificationEnvelope.pushChangeUpdate(json).segments(subscriptionID,
+				eventTime, content), subscriptionID, eventTime, PeriodicNotification.NO_SEQUENCE_NUMBER);
+	}
+
+	/**
+	 * Creates a push-change-update notification containing this content,
+	 * stamped with the given sequence number.
+	 *
+	 * @param sequenceNumber
+	 *            Sequence number of the update within its subscription
+	 * @see #toPushChangeUpdate(String, Date)
+	 */
+	public OnChangeNotification toPushChangeUpdate(String subscriptionID, Date eventTime, long sequenceNumber) {
+		return new OnChangeNotification(NotificationEnvelope.pushChangeUpdate(json).segments(subscriptionID,
+				eventTime, NotificationEnvelope.extensions(sequenceNumber), content), subscriptionID, eventTime,
+				sequenceNumber);
+	}
+
+	/**
+	 * @return Size of the serialized content in bytes
+	 */
+	public int getLength() {
+		return content.length;
+	}
+
+	/**
+	 * @return 128 bit hash of the serialized content, equal for equal content
+	 */
+	public HashCode fingerprint() {
+		HashCode result = fingerprint;
+		if (result == null) {
+			result = Hashing.murmur3_128().hashBytes(content);
+			fingerprint = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @return Serialized content, must not be modified
+	 */
+	byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * @return Whether the content is JSON encoded
+	 */
+	boolean isJson() {
+		return json;
+	}
+
+	/**
+	 * @return Text escaped to be used as XML text content
+	 */
+	static String escape(String text) {
+		StringBuilder builder = new StringBuilder(text.length() + 16);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				builder.append("&amp;");
+				break;
+			case '<':
+				builder.append("&lt;");
+				break;
+			case '>':
+				builder.append("&gt;");
+				break;
+			default:
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.Edit;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeWithValue;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.PathArgument;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerChild;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.UnkeyedListEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.stream.NormalizedNodeWriter;
+import org.opendaylight.yangtools.yang.data.codec.gson.JSONCodecFactory;
+import org.opendaylight.yangtools.yang.data.codec.gson.JSONNormalizedNodeStreamWriter;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.data.util.DataSchemaContextNode;
+import org.opendaylight.yangtools.yang.data.util.DataSchemaContextTree;
+import org.opendaylight.yangtools.yang.model.api.ContainerSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.DataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.Module;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+import org.opendaylight.yangtools.yang.model.api.SchemaPath;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Encodes notification contents as JSON like defined in RFC 7951. Data is
+ * streamed from the {@link NormalizedNode} straight into the JSON text
+ * without an intermediate XML representation. Output is compact, i.e. without
+ * any indentation.
+ *
+ */
+public final class JsonContentEncoder {
+	private final SchemaContext schemaContext;
+	private final JSONCodecFactory codecFactory;
+	private final DataSchemaContextTree contextTree;
+
+	private JsonContentEncoder(SchemaContext schemaContext) {
+		this.schemaContext = schemaContext;
+		this.codecFactory = JSONCodecFactory.create(schemaContext);
+		this.contextTree = DataSchemaContextTree.from(schemaContext);
+	}
+
+	// Codecs are expensive to create, they are reused as long as the schema
+	// context does not change
+	private static volatile JsonContentEncoder cached;
+
+	/**
+	 * @param schemaContext
+	 *            Schema context the encoded data belongs to
+	 * @return Encoder for the given schema context
+	 */
+	public static JsonContentEncoder forSchemaContext(SchemaContext schemaContext) {
+		JsonContentEncoder encoder = cached;
+		if (encoder == null || encoder.schemaContext != schemaContext) {
+			encoder = new JsonContentEncoder(schemaContext);
+			cached = encoder;
+		}
+		return encoder;
+	}
+
+	/**
+	 * Encodes data read from the data store, e.g. for the
+	 * datastore-contents-json of a push-update.
+	 *
+	 * @param data
+	 *            Data starting at the root of the data store or at a top level
+	 *            node
+	 * @return JSON object containing the top level nodes
+	 * @throws IOException
+	 */
+	public String toJson(NormalizedNode<?, ?> data) throws IOException {
+		StringWriter out = new StringWriter();
+		JsonWriter jsonWriter = new JsonWriter(out);
+		jsonWriter.beginObject();
+		if (data instanceof ContainerNode && SchemaContext.NAME.equals(data.getNodeType())) {
+			NormalizedNodeWriter writer = newWriter(SchemaPath.ROOT, jsonWriter);
+			for (DataContainerChild<?, ?> child : ((ContainerNode) data).getValue()) {
+				writer.write(child);
+			}
+			writer.flush();
+		} else {
+			writeNode(data, SchemaPath.ROOT, jsonWriter);
+		}
+		jsonWriter.endObject();
+		jsonWriter.flush();
+		return out.toString();
+	}
+
+	/**
+	 * Encodes the edits of an on change notification as yang-patch like
+	 * defined in RFC 8072, e.g. for the datastore-changes-json of a
+	 * push-change-update.
+	 *
+	 * @param patchID
+	 *            Unique ID of the patch
+	 * @param edits
+	 *            Edits as returned by {@link DataTreeChangeEncoder}
+	 * @return JSON object containing the yang-patch
+	 * @throws IOException
+	 */
+	public String toYangPatch(String patchID, List<Edit> edits) throws IOException {
+		StringWriter out = new StringWriter();
+		JsonWriter jsonWriter = new JsonWriter(out);
+		jsonWriter.beginObject();
+		jsonWriter.name("ietf-yang-patch:" + DataTreeChangeEncoder.YANG_PATCH).beginObject();
+		jsonWriter.name(DataTreeChangeEncoder.PATCH_ID).value(patchID);
+		jsonWriter.name(DataTreeChangeEncoder.EDIT).beginArray();
+		int editNumber = 0;
+		for (Edit edit : edits) {
+			jsonWriter.beginObject();
+			jsonWriter.name(DataTreeChangeEncoder.EDIT_ID).value("edit-" + ++editNumber);
+			jsonWriter.name(DataTreeChangeEncoder.OPERATION).value(edit.getOperation().name());
+			jsonWriter.name(DataTreeChangeEncoder.TARGET).value(toInstanceIdentifier(edit.getTarget()));
+			if (edit.getValue() != null) {
+				jsonWriter.name(DataTreeChangeEncoder.VALUE).beginObject();
+				writeNode(wrapEntry(edit.getValue()), getParentSchemaPath(edit), jsonWriter);
+				jsonWriter.endObject();
+			}
+			jsonWriter.endObject();
+		}
+		jsonWriter.endArray();
+		jsonWriter.endObject();
+		jsonWriter.endObject();
+		jsonWriter.flush();
+		return out.toString();
+	}
+
+	private void writeNode(NormalizedNode<?, ?> node, SchemaPath parentPath, JsonWriter jsonWriter)
+			throws IOException {
+		NormalizedNodeWriter writer = newWriter(parentPath, jsonWriter);
+		writer.write(node);
+		writer.flush();
+	}
+
+	/**
+	 * The caller writes the enclosing object, so a nested writer is used that
+	 * leaves the JSON writer open.
+	 */
+	private NormalizedNodeWriter newWriter(SchemaPath parentPath, JsonWriter jsonWriter) {
+		return NormalizedNodeWriter.forStreamWriter(
+				JSONNormalizedNodeStreamWriter.createNestedWriter(codecFactory, parentPath, null, jsonWriter));
+	}
+
+	/**
+	 * Entries cannot be written on their own in JSON, they are wrapped into
+	 * their list.
+	 */
+	@SuppressWarnings("unchecked")
+	private static NormalizedNode<?, ?> wrapEntry(NormalizedNode<?, ?> value) {
+		if (value instanceof MapEntryNode) {
+			return ImmutableNodes.mapNodeBuilder(value.getNodeType()).withChild((MapEntryNode) value).build();
+		} else if (value instanceof UnkeyedListEntryNode) {
+			return Builders.unkeyedListBuilder().withNodeIdentifier(new NodeIdentifier(value.getNodeType()))
+					.withChild((UnkeyedListEntryNode) value).build();
+		} else if (value instanceof LeafSetEntryNode) {
+			return Builders.leafSetBuilder().withNodeIdentifier(new NodeIdentifier(value.getNodeType()))
+					.withChild((LeafSetEntryNode<Object>) value).build();
+		}
+		return value;
+	}
+
+	/**
+	 * @return Schema path of the nearest container or list entry enclosing
+	 *         the value of the edit, choices and augmentations in between are
+	 *         resolved by the JSON writer
+	 */
+	private SchemaPath getParentSchemaPath(Edit edit) {
+		YangInstanceIdentifier parent = edit.getPath().getParent();
+		while (parent != null && !parent.isEmpty()) {
+			DataSchemaContextNode<?> context = contextTree.getChild(parent);
+			if (context != null && !context.isMixin()) {
+				DataSchemaNode schema = context.getDataSchemaNode();
+				if (schema instanceof ContainerSchemaNode || schema instanceof ListSchemaNode) {
+					return schema.getPath();
+				}
+			}
+			parent = parent.getParent();
+		}
+		return SchemaPath.ROOT;
+	}
+
+	/**
+	 * Renders the target as JSON encoded instance identifier (RFC 7951), e.g.
+	 * /module:inventory/node[id='n1']/statistics
+	 */
+	private String toInstanceIdentifier(List<PathArgument> target) {
+		if (target.isEmpty()) {
+			return "/";
+		}
+		StringBuilder builder = new StringBuilder();
+		QName previous = null;
+		for (PathArgument argument : target) {
+			builder.append('/').append(toQualifiedName(argument.getNodeType(), previous));
+			if (argument instanceof NodeIdentifierWithPredicates) {
+				for (Map.Entry<QName, Object> key : ((NodeIdentifierWithPredicates) argument).getKeyValues()
+						.entrySet()) {
+					builder.append('[').append(toQualifiedName(key.getKey(), argument.getNodeType())).append('=')
+							.append(toLiteral(key.getValue())).append(']');
+				}
+			} else if (argument instanceof NodeWithValue) {
+				builder.append("[.=").append(toLiteral(((NodeWithValue<?>) argument).getValue())).append(']');
+			}
+			previous = argument.getNodeType();
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Names are qualified by their module name only if the module differs
+	 * from the one of the parent.
+	 */
+	private String toQualifiedName(QName name, QName parent) {
+		if (parent != null && parent.getModule().equals(name.getModule())) {
+			return name.getLocalName();
+		}
+		return getModuleName(name) + ":" + name.getLocalName();
+	}
+
+	private String getModuleName(QName name) {
+		Module module = schemaContext.findModuleByNamespaceAndRevision(name.getNamespace(), name.getRevision());
+		return module == null ? name.getNamespace().toString() : module.getName();
+	}
+
+	private String toLiteral(Object value) {
+		String text = value instanceof QName ? getModuleName((QName) value) + ":" + ((QName) value).getLocalName()
+				: String.valueOf(value);
+		return text.indexOf('\'') < 0 ? "'" + text + "'" : "\"" + text + "\"";
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in microseconds. Bucket i counts the
+ * latencies of [2^(i-1), 2^i) microseconds, so percentiles are reported as the
+ * upper bound of their bucket, at most twice the actual value, like a HDR
+ * histogram with one significant bit. Recording is a few atomic increments,
+ * so it can be done on every notification.
+ *
+ */
+public final class LatencyHistogram {
+	// Last bucket also counts everything above 2^38us (about 3 days)
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos
+	 *            Latency in nanoseconds, negative values count as 0
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0l, TimeUnit.NANOSECONDS.toMicros(nanos));
+		buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+		count.increment();
+		total.add(micros);
+		long current;
+		while ((current = max.get()) < micros && !max.compareAndSet(current, micros)) {
+			// Retry
+		}
+	}
+
+	/**
+	 * @return Number of recorded latencies
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return Mean latency in microseconds, 0 if nothing was recorded
+	 */
+	public long getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : total.sum() / n;
+	}
+
+	/**
+	 * @return Maximum latency in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile
+	 *            Percentile between 0 and 100
+	 * @return Latency in microseconds the given percentage of the recorded
+	 *         latencies does not exceed, 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.sum();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1l, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(i == 0 ? 0 : (1l << i) - 1, getMax());
+			}
+		}
+		// Concurrent records not yet counted in the buckets
+		return getMax();
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " mean=" + getMean() + "us p99=" + getPercentile(99) + "us max=" + getMax()
+				+ "us";
+	}
+}
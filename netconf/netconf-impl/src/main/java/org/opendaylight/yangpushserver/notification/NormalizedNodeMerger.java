@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeWithValue;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.PathArgument;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerChild;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.OrderedLeafSetNode;
+import org.opendaylight.yangtools.yang.data.api.schema.OrderedMapNode;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.CollectionNodeBuilder;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.ListNodeBuilder;
+
+/**
+ * Merges the data trees read from several data stores into one tree, e.g.
+ * configuration and operational data of the YANG-PUSH stream, so they can be
+ * sent in a single push-update. Containers, list entries and leaf-list
+ * entries present in both trees are merged recursively. For leaves, unkeyed
+ * lists and anyxml nodes present in both trees the overlay wins.
+ *
+ */
+public final class NormalizedNodeMerger {
+
+	private NormalizedNodeMerger() {
+		// Utility class
+	}
+
+	/**
+	 * @param base
+	 *            Data tree, may be null
+	 * @param overlay
+	 *            Data tree with the same identifier as the base, may be null
+	 * @return Merged tree, null if both are null
+	 */
+	public static NormalizedNode<?, ?> merge(NormalizedNode<?, ?> base, NormalizedNode<?, ?> overlay) {
+		if (base == null) {
+			return overlay;
+		}
+		if (overlay == null || base == overlay) {
+			return base;
+		}
+		if (base instanceof DataContainerNode && overlay instanceof DataContainerNode) {
+			return mergeDataContainer((DataContainerNode<?>) base, (DataContainerNode<?>) overlay);
+		}
+		if (base instanceof MapNode && overlay instanceof MapNode) {
+			return mergeMap((MapNode) base, (MapNode) overlay);
+		}
+		if (base instanceof LeafSetNode && overlay instanceof LeafSetNode) {
+			return mergeLeafSet((LeafSetNode<?>) base, (LeafSetNode<?>) overlay);
+		}
+		return overlay;
+	}
+
+	/**
+	 * Merges the given trees in order, later trees win for conflicting
+	 * leaves.
+	 *
+	 * @param trees
+	 *            Data trees with the same identifier, null entries are
+	 *            skipped
+	 * @return Merged tree, null if there is none
+	 */
+	public static NormalizedNode<?, ?> mergeAll(List<NormalizedNode<?, ?>> trees) {
+		NormalizedNode<?, ?> merged = null;
+		for (NormalizedNode<?, ?> tree : trees) {
+			merged = merge(merged, tree);
+		}
+		return merged;
+	}
+
+	private static DataContainerNode<?> mergeDataContainer(DataContainerNode<?> base,
+			DataContainerNode<?> overlay) {
+		Map<PathArgument, DataContainerChild<? extends PathArgument, ?>> children = new LinkedHashMap<>();
+		for (DataContainerChild<? extends PathArgument, ?> child : base.getValue()) {
+			children.put(child.getIdentifier(), child);
+		}
+		for (DataContainerChild<? extends PathArgument, ?> child : overlay.getValue()) {
+			children.put(child.getIdentifier(),
+					(DataContainerChild<? extends PathArgument, ?>) merge(children.get(child.getIdentifier()), child));
+		}
+		return NormalizedNodeSubtreeFilter.rebuild(base, new ArrayList<>(children.values()));
+	}
+
+	private static MapNode mergeMap(MapNode base, MapNode overlay) {
+		Map<NodeIdentifierWithPredicates, MapEntryNode> entries = new LinkedHashMap<>();
+		for (MapEntryNode entry : base.getValue()) {
+			entries.put(entry.getIdentifier(), entry);
+		}
+		for (MapEntryNode entry : overlay.getValue()) {
+			entries.put(entry.getIdentifier(), (MapEntryNode) merge(entries.get(entry.getIdentifier()), entry));
+		}
+		CollectionNodeBuilder<MapEntryNode, ? extends MapNode> builder = base instanceof OrderedMapNode
+				? Builders.orderedMapBuilder() : Builders.mapBuilder();
+		builder.withNodeIdentifier(base.getIdentifier());
+		for (MapEntryNode entry : entries.values()) {
+			builder.withChild(entry);
+		}
+		return builder.build();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static NormalizedNode<?, ?> mergeLeafSet(LeafSetNode<?> base, LeafSetNode<?> overlay) {
+		Map<NodeWithValue, LeafSetEntryNode<?>> entries = new LinkedHashMap<>();
+		for (LeafSetEntryNode<?> entry : base.getValue()) {
+			entries.put(entry.getIdentifier(), entry);
+		}
+		for (LeafSetEntryNode<?> entry : overlay.getValue()) {
+			entries.put(entry.getIdentifier(), entry);
+		}
+		ListNodeBuilder builder = base instanceof OrderedLeafSetNode ? Builders.orderedLeafSetBuilder()
+				: Builders.leafSetBuilder();
+		builder.withNodeIdentifier(base.getIdentifier());
+		for (LeafSetEntryNode<?> entry : entries.values()) {
+			builder.withChild(entry);
+		}
+		return (NormalizedNode<?, ?>) builder.build();
+	}
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opendaylight.controller.config.util.xml.DocumentedException;
+import org.opendaylight.controller.config.util.xml.XmlElement;
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.AugmentationIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.PathArgument;
+import org.opendaylight.yangtools.yang.data.api.schema.AugmentationNode;
+import org.opendaylight.yangtools.yang.data.api.schema.ChoiceNode;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerChild;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.OrderedLeafSetNode;
+import org.opendaylight.yangtools.yang.data.api.schema.OrderedMapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.UnkeyedListEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.UnkeyedListNode;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.CollectionNodeBuilder;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.DataContainerNodeBuilder;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.ListNodeBuilder;
+import org.opendaylight.yangtools.yang.model.api.Module;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * Subtree filter evaluated directly on {@link NormalizedNode} trees following
+ * the semantics of <a href="http://tools.ietf.org/html/rfc6241#section-6">
+ * rfc6241</a> (containment, selection and content match nodes). The XML filter
+ * is compiled once into a tree keyed by {@link NodeIdentifier}, so every
+ * filter node is resolved by a direct child lookup instead of scanning the
+ * data. List entries whose keys are all given as content match nodes are
+ * looked up by their {@link NodeIdentifierWithPredicates}. Choice and
+ * augmentation nodes, which have no representation in the filter, are
+ * traversed transparently.
+ *
+ * The result contains only the selected nodes, so only the matched subtree
+ * has to be serialized afterwards.
+ *
+ */
+public final class NormalizedNodeSubtreeFilter {
+	private static final Logger LOG = LoggerFactory.getLogger(NormalizedNodeSubtreeFilter.class);
+	private static final NodeIdentifier DATA_ROOT = new NodeIdentifier(SchemaContext.NAME);
+
+	private final FilterNode root;
+
+	private NormalizedNodeSubtreeFilter(FilterNode root) {
+		this.root = root;
+	}
+
+	/**
+	 * Compiles the children of the given subtree filter element.
+	 *
+	 * @param filter
+	 *            Subtree filter element whose children are the top level
+	 *            filter nodes
+	 * @param schemaContext
+	 *            Schema context used to resolve the QNames of the filter nodes
+	 * @return Compiled filter or absent if the filter uses features not
+	 *         supported by this engine (e.g. attribute match nodes) or unknown
+	 *         namespaces
+	 */
+	public static Optional<NormalizedNodeSubtreeFilter> compile(XmlElement filter, SchemaContext schemaContext) {
+		FilterNode root = new FilterNode(SchemaContext.NAME);
+		try {
+			for (XmlElement child : filter.getChildElements()) {
+				root.addChild(compileNode(child, schemaContext));
+			}
+		} catch (DocumentedException | URISyntaxException | IllegalArgumentException e) {
+			LOG.info("Subtree filter cannot be evaluated on normalized nodes, DOM based filter is used instead", e);
+			return Optional.absent();
+		}
+		return Optional.of(new NormalizedNodeSubtreeFilter(root));
+	}
+
+	private static FilterNode compileNode(XmlElement element, SchemaContext schemaContext)
+			throws DocumentedException, URISyntaxException {
+		for (Attr attr : element.getAttributes().values()) {
+			Preconditions.checkArgument(XmlUtil.XMLNS_URI.equals(attr.getNamespaceURI()),
+					"Attribute match nodes are not supported: %s", attr);
+		}
+		Module module = schemaContext.findModuleByNamespaceAndRevision(new URI(element.getNamespace()), null);
+		Preconditions.checkArgument(module != null, "Unknown namespace of filter node %s", element);
+
+		FilterNode node = new FilterNode(QName.create(module.getQNameModule(), element.getName()));
+		List<XmlElement> children = element.getChildElements();
+		if (children.isEmpty()) {
+			Optional<String> content = element.getOnlyTextContentOptionally();
+			if (content.isPresent()) {
+				node.setContent(content.get(), findNamespaceOfContent(element));
+			}
+		}
+		for (XmlElement child : children) {
+			node.addChild(compileNode(child, schemaContext));
+		}
+		return node;
+	}
+
+	private static String findNamespaceOfContent(XmlElement element) throws DocumentedException {
+		try {
+			Map.Entry<String, String> prefixToNamespace = element.findNamespaceOfTextContent();
+			if (!XmlElement.DEFAULT_NAMESPACE_PREFIX.equals(prefixToNamespace.getKey())) {
+				return prefixToNamespace.getValue();
+			}
+		} catch (IllegalArgumentException e) {
+			// Not a prefix, content is compared as it is
+		}
+		return null;
+	}
+
+	/**
+	 * Applies this filter to data read from the root of the data store.
+	 *
+	 * @param data
+	 *            Data tree starting at the root of the data store
+	 * @return Data root holding only the selected top level nodes or absent
+	 *         if nothing matches
+	 */
+	public Optional<NormalizedNode<?, ?>> apply(NormalizedNode<?, ?> data) {
+		if (!(data instanceof DataContainerNode)) {
+			return Optional.absent();
+		}
+		List<DataContainerChild<? extends PathArgument, ?>> selected = select((DataContainerNode<?>) data,
+				root.getChildren());
+		if (selected.isEmpty()) {
+			return Optional.absent();
+		}
+		return Optional.<NormalizedNode<?, ?>> of(build(Builders.containerBuilder(), DATA_ROOT, selected));
+	}
+
+	/**
+	 * Used to serialize a filtered data root the same way the DOM based
+	 * {@link SubtreeFilter} returns its result.
+	 *
+	 * @param filtered
+	 *            Result of {@link #apply(NormalizedNode)}
+	 * @return The only selected top level container, or the data root if
+	 *         several top level nodes are selected
+	 */
+	public static NormalizedNode<?, ?> getContentRoot(NormalizedNode<?, ?> filtered) {
+		if (filtered instanceof ContainerNode) {
+			Collection<DataContainerChild<? extends PathArgument, ?>> topLevel = ((ContainerNode) filtered)
+					.getValue();
+			if (topLevel.size() == 1) {
+				DataContainerChild<? extends PathArgument, ?> onlyChild = topLevel.iterator().next();
+				if (onlyChild instanceof ContainerNode) {
+					return onlyChild;
+				}
+			}
+		}
+		return filtered;
+	}
+
+	/**
+	 * Selects the children of a data container node matching the given
+	 * filter nodes. Filter nodes not found as direct children are searched in
+	 * choice and augmentation children, which are rebuilt around the selected
+	 * nodes.
+	 */
+	private static List<DataContainerChild<? extends PathArgument, ?>> select(DataContainerNode<?> data,
+			Map<NodeIdentifier, List<FilterNode>> filters) {
+		List<DataContainerChild<? extends PathArgument, ?>> result = new ArrayList<>();
+		Map<NodeIdentifier, List<FilterNode>> missing = null;
+		for (Map.Entry<NodeIdentifier, List<FilterNode>> filter : filters.entrySet()) {
+			Optional<DataContainerChild<? extends PathArgument, ?>> child = data.getChild(filter.getKey());
+			if (child.isPresent()) {
+				Optional<NormalizedNode<?, ?>> filtered = filterNode(child.get(), filter.getValue());
+				if (filtered.isPresent()) {
+					result.add((DataContainerChild<? extends PathArgument, ?>) filtered.get());
+				}
+			} else {
+				if (missing == null) {
+					missing = new LinkedHashMap<>();
+				}
+				missing.put(filter.getKey(), filter.getValue());
+			}
+		}
+		if (missing != null) {
+			for (DataContainerChild<? extends PathArgument, ?> child : data.getValue()) {
+				if (child instanceof ChoiceNode || child instanceof AugmentationNode) {
+					List<DataContainerChild<? extends PathArgument, ?>> nested = select((DataContainerNode<?>) child,
+							missing);
+					if (!nested.isEmpty()) {
+						result.add((DataContainerChild<? extends PathArgument, ?>) rebuild((DataContainerNode<?>) child,
+								nested));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Optional<NormalizedNode<?, ?>> filterNode(NormalizedNode<?, ?> data, List<FilterNode> filters) {
+		if (data instanceof MapNode) {
+			return filterMap((MapNode) data, filters);
+		}
+		if (data instanceof UnkeyedListNode) {
+			return filterUnkeyedList((UnkeyedListNode) data, filters);
+		}
+		if (data instanceof LeafSetNode) {
+			return filterLeafSet((LeafSetNode<?>) data, filters);
+		}
+		for (FilterNode filter : filters) {
+			Optional<NormalizedNode<?, ?>> result = filterSingleNode(data, filter);
+			if (result.isPresent()) {
+				return result;
+			}
+		}
+		return Optional.absent();
+	}
+
+	private static Optional<NormalizedNode<?, ?>> filterSingleNode(NormalizedNode<?, ?> data, FilterNode filter) {
+		if (filter.isSelection()) {
+			return Optional.<NormalizedNode<?, ?>> of(data);
+		}
+		if (filter.isContentMatch()) {
+			return matchesContent(data, filter) ? Optional.<NormalizedNode<?, ?>> of(data)
+					: Optional.<NormalizedNode<?, ?>> absent();
+		}
+		if (data instanceof DataContainerNode) {
+			return filterDataContainer((DataContainerNode<?>) data, filter);
+		}
+		return Optional.absent();
+	}
+
+	private static Optional<NormalizedNode<?, ?>> filterDataContainer(DataContainerNode<?> data, FilterNode filter) {
+		// All content match nodes have to match, otherwise the node is not
+		// selected at all
+		for (FilterNode contentMatch : filter.getContentMatchChildren().values()) {
+			Optional<NormalizedNode<?, ?>> child = findChild(data, contentMatch.getIdentifier());
+			if (!child.isPresent() || !matchesContent(child.get(), contentMatch)) {
+				return Optional.absent();
+			}
+		}
+		// Only content match nodes select the whole node
+		if (filter.hasOnlyContentMatchChildren()) {
+			return Optional.<NormalizedNode<?, ?>> of(data);
+		}
+		List<DataContainerChild<? extends PathArgument, ?>> selected = select(data, filter.getChildren());
+		if (selected.isEmpty() && filter.getContentMatchChildren().isEmpty()) {
+			return Optional.absent();
+		}
+		return Optional.<NormalizedNode<?, ?>> of(rebuild(data, selected));
+	}
+
+	private static Optional<NormalizedNode<?, ?>> filterMap(MapNode data, List<FilterNode> filters) {
+		Map<NodeIdentifierWithPredicates, MapEntryNode> selected = new LinkedHashMap<>();
+		for (FilterNode filter : filters) {
+			if (filter.isSelection()) {
+				return Optional.<NormalizedNode<?, ?>> of(data);
+			}
+			for (MapEntryNode entry : findEntries(data, filter)) {
+				if (!selected.containsKey(entry.getIdentifier())) {
+					Optional<NormalizedNode<?, ?>> filtered = filterDataContainer(entry, filter);
+					if (filtered.isPresent()) {
+						selected.put(entry.getIdentifier(), (MapEntryNode) filtered.get());
+					}
+				}
+			}
+		}
+		if (selected.isEmpty()) {
+			return Optional.absent();
+		}
+		CollectionNodeBuilder<MapEntryNode, ? extends MapNode> builder = data instanceof OrderedMapNode
+				? Builders.orderedMapBuilder() : Builders.mapBuilder();
+		builder.withNodeIdentifier(data.getIdentifier());
+		for (MapEntryNode entry : selected.values()) {
+			builder.withChild(entry);
+		}
+		return Optional.<NormalizedNode<?, ?>> of(builder.build());
+	}
+
+	/**
+	 * If all keys of the list are given as content match nodes, the entry is
+	 * looked up directly. The key values are converted to the types used by
+	 * the existing entries. Otherwise all entries are candidates.
+	 */
+	private static Collection<MapEntryNode> findEntries(MapNode data, FilterNode filter) {
+		Collection<MapEntryNode> entries = data.getValue();
+		if (entries.isEmpty() || filter.getContentMatchChildren().isEmpty()) {
+			return entries;
+		}
+		Map<QName, Object> sampleKeys = entries.iterator().next().getIdentifier().getKeyValues();
+		if (sampleKeys.isEmpty()) {
+			return entries;
+		}
+		Map<QName, Object> keys = new LinkedHashMap<>();
+		for (Map.Entry<QName, Object> sampleKey : sampleKeys.entrySet()) {
+			FilterNode keyFilter = filter.getContentMatchChildren().get(new NodeIdentifier(sampleKey.getKey()));
+			Object value = keyFilter == null ? null : toTypeOf(sampleKey.getValue(), keyFilter.getContent());
+			if (value == null) {
+				return entries;
+			}
+			keys.put(sampleKey.getKey(), value);
+		}
+		Optional<MapEntryNode> entry = data
+				.getChild(new NodeIdentifierWithPredicates(data.getIdentifier().getNodeType(), keys));
+		return entry.isPresent() ? Collections.singletonList(entry.get()) : Collections.<MapEntryNode> emptyList();
+	}
+
+	private static Object toTypeOf(Object sample, String content) {
+		try {
+			if (sample instanceof String) {
+				return content;
+			} else if (sample instanceof Long) {
+				return Long.valueOf(content);
+			} else if (sample instanceof Integer) {
+				return Integer.valueOf(content);
+			} else if (sample instanceof Short) {
+				return Short.valueOf(content);
+			} else if (sample instanceof Byte) {
+				return Byte.valueOf(content);
+			} else if (sample instanceof BigInteger) {
+				return new BigInteger(content);
+			} else if (sample instanceof Boolean && ("true".equals(content) || "false".equals(content))) {
+				return Boolean.valueOf(content);
+			}
+		} catch (NumberFormatException e) {
+			LOG.debug("Key value {} does not match type of {}", content, sample, e);
+		}
+		return null;
+	}
+
+	private static Optional<NormalizedNode<?, ?>> filterUnkeyedList(UnkeyedListNode data, List<FilterNode> filters) {
+		CollectionNodeBuilder<UnkeyedListEntryNode, UnkeyedListNode> builder = Builders.unkeyedListBuilder()
+				.withNodeIdentifier(data.getIdentifier());
+		boolean selected = false;
+		for (UnkeyedListEntryNode entry : data.getValue()) {
+			for (FilterNode filter : filters) {
+				if (filter.isSelection()) {
+					return Optional.<NormalizedNode<?, ?>> of(data);
+				}
+				Optional<NormalizedNode<?, ?>> filtered = filterDataContainer(entry, filter);
+				if (filtered.isPresent()) {
+					builder.withChild((UnkeyedListEntryNode) filtered.get());
+					selected = true;
+					break;
+				}
+			}
+		}
+		return selected ? Optional.<NormalizedNode<?, ?>> of(builder.build())
+				: Optional.<NormalizedNode<?, ?>> absent();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Optional<NormalizedNode<?, ?>> filterLeafSet(LeafSetNode<?> data, List<FilterNode> filters) {
+		for (FilterNode filter : filters) {
+			if (filter.isSelection()) {
+				return Optional.<NormalizedNode<?, ?>> of(data);
+			}
+		}
+		ListNodeBuilder builder = data instanceof OrderedLeafSetNode ? Builders.orderedLeafSetBuilder()
+				: Builders.leafSetBuilder();
+		builder.withNodeIdentifier(data.getIdentifier());
+		boolean selected = false;
+		for (LeafSetEntryNode<?> entry : data.getValue()) {
+			for (FilterNode filter : filters) {
+				if (filter.isContentMatch() && matchesValue(entry.getValue(), filter)) {
+					builder.withChild(entry);
+					selected = true;
+					break;
+				}
+			}
+		}
+		return selected ? Optional.<NormalizedNode<?, ?>> of((NormalizedNode<?, ?>) builder.build())
+				: Optional.<NormalizedNode<?, ?>> absent();
+	}
+
+	private static boolean matchesContent(NormalizedNode<?, ?> data, FilterNode filter) {
+		if (data instanceof LeafSetNode) {
+			for (LeafSetEntryNode<?> entry : ((LeafSetNode<?>) data).getValue()) {
+				if (matchesValue(entry.getValue(), filter)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return matchesValue(data.getValue(), filter);
+	}
+
+	private static boolean matchesValue(Object value, FilterNode filter) {
+		if (value instanceof QName) {
+			// Identities are compared by namespace (if prefixed) and name
+			QName identity = (QName) value;
+			return identity.getLocalName().equals(filter.getContentLocalName())
+					&& (filter.getContentNamespace() == null
+							|| identity.getNamespace().toString().equals(filter.getContentNamespace()));
+		}
+		if (filter.getContent().equals(String.valueOf(value))) {
+			return true;
+		}
+		if (value instanceof BigDecimal) {
+			try {
+				return ((BigDecimal) value).compareTo(new BigDecimal(filter.getContent())) == 0;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds a child by its identifier, looking into choice and augmentation
+	 * children if it is not a direct child.
+	 */
+	private static Optional<NormalizedNode<?, ?>> findChild(DataContainerNode<?> data, NodeIdentifier identifier) {
+		Optional<DataContainerChild<? extends PathArgument, ?>> child = data.getChild(identifier);
+		if (child.isPresent()) {
+			return Optional.<NormalizedNode<?, ?>> of(child.get());
+		}
+		for (DataContainerChild<? extends PathArgument, ?> candidate : data.getValue()) {
+			if (candidate instanceof ChoiceNode || candidate instanceof AugmentationNode) {
+				Optional<NormalizedNode<?, ?>> nested = findChild((DataContainerNode<?>) candidate, identifier);
+				if (nested.isPresent()) {
+					return nested;
+				}
+			}
+		}
+		return Optional.absent();
+	}
+
+	/**
+	 * Creates a node of the same type and identifier as the given node
+	 * holding only the given children. Keys of list entries are always kept.
+	 */
+	static DataContainerNode<?> rebuild(DataContainerNode<?> original,
+			List<DataContainerChild<? extends PathArgument, ?>> children) {
+		if (original instanceof ContainerNode) {
+			return build(Builders.containerBuilder(), ((ContainerNode) original).getIdentifier(), children);
+		} else if (original instanceof MapEntryNode) {
+			MapEntryNode entry = (MapEntryNode) original;
+			for (QName key : entry.getIdentifier().getKeyValues().keySet()) {
+				NodeIdentifier keyIdentifier = new NodeIdentifier(key);
+				Optional<DataContainerChild<? extends PathArgument, ?>> keyLeaf = entry.getChild(keyIdentifier);
+				if (keyLeaf.isPresent() && !containsChild(children, keyIdentifier)) {
+					children.add(keyLeaf.get());
+				}
+			}
+			return build(Builders.mapEntryBuilder(), entry.getIdentifier(), children);
+		} else if (original instanceof UnkeyedListEntryNode) {
+			return build(Builders.unkeyedListEntryBuilder(), ((UnkeyedListEntryNode) original).getIdentifier(),
+					children);
+		} else if (original instanceof ChoiceNode) {
+			return build(Builders.choiceBuilder(), ((ChoiceNode) original).getIdentifier(), children);
+		} else if (original instanceof AugmentationNode) {
+			return build(Builders.augmentationBuilder(), ((AugmentationNode) original).getIdentifier(), children);
+		}
+		throw new IllegalArgumentException("Unsupported data container node " + original);
+	}
+
+	private static boolean containsChild(List<DataContainerChild<? extends PathArgument, ?>> children,
+			PathArgument identifier) {
+		for (DataContainerChild<? extends PathArgument, ?> child : children) {
+			if (child.getIdentifier().equals(identifier)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static <I extends PathArgument, R extends DataContainerNode<I>> R build(
+			DataContainerNodeBuilder<I, R> builder, I identifier,
+			List<DataContainerChild<? extends PathArgument, ?>> children) {
+		builder.withNodeIdentifier(identifier);
+		for (DataContainerChild<? extends PathArgument, ?> child : children) {
+			builder.withChild(child);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Compiled filter node. Children are keyed by their identifier, sibling
+	 * filter nodes with the same name (e.g. several list entries) share one
+	 * key.
+	 */
+	private static final class FilterNode {
+		private final NodeIdentifier identifier;
+		private final Map<NodeIdentifier, List<FilterNode>> children = new LinkedHashMap<>();
+		private final Map<NodeIdentifier, FilterNode> contentMatchChildren = new LinkedHashMap<>();
+		private int childCount = 0;
+		private String content;
+		private String contentNamespace;
+		private String contentLocalName;
+
+		private FilterNode(QName name) {
+			this.identifier = new NodeIdentifier(name);
+		}
+
+		private void addChild(FilterNode child) {
+			List<FilterNode> siblings = children.get(child.getIdentifier());
+			if (siblings == null) {
+				siblings = new ArrayList<>(1);
+				children.put(child.getIdentifier(), siblings);
+			}
+			siblings.add(child);
+			childCount++;
+			if (child.isContentMatch() && !contentMatchChildren.containsKey(child.getIdentifier())) {
+				contentMatchChildren.put(child.getIdentifier(), child);
+			}
+		}
+
+		private void setContent(String content, String contentNamespace) {
+			this.content = content;
+			this.contentNamespace = contentNamespace;
+			this.contentLocalName = contentNamespace == null ? content : content.substring(content.indexOf(':') + 1);
+		}
+
+		private NodeIdentifier getIdentifier() {
+			return identifier;
+		}
+
+		private Map<NodeIdentifier, List<FilterNode>> getChildren() {
+			return children;
+		}
+
+		private Map<NodeIdentifier, FilterNode> getContentMatchChildren() {
+			return contentMatchChildren;
+		}
+
+		private boolean hasOnlyContentMatchChildren() {
+			return childCount > 0 && contentMatchChildren.size() == childCount;
+		}
+
+		private boolean isSelection() {
+			return content == null && children.isEmpty();
+		}
+
+		private boolean isContentMatch() {
+			return content != null;
+		}
+
+		private String getContent() {
+			return content;
+		}
+
+		private String getContentNamespace() {
+			return contentNamespace;
+		}
+
+		private String getContentLocalName() {
+			return contentLocalName;
+		}
+	}
+}
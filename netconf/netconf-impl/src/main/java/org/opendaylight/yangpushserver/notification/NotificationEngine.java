@@ -8,44 +8,76 @@
 package org.opendaylight.yangpushserver.notification;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 
+import org.json.XML;
 import org.opendaylight.controller.config.util.xml.DocumentedException;
 import org.opendaylight.controller.config.util.xml.XmlElement;
 import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.controller.md.sal.common.api.data.AsyncTransaction;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
-import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionChain;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionChainListener;
 import org.opendaylight.controller.md.sal.dom.api.DOMDataBroker;
-import org.opendaylight.controller.md.sal.dom.api.DOMDataReadTransaction;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataReadOnlyTransaction;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeChangeService;
+import org.opendaylight.controller.md.sal.dom.api.DOMTransactionChain;
+import org.opendaylight.controller.sal.core.api.model.SchemaService;
+import org.opendaylight.netconf.api.NetconfMessage;
 import org.opendaylight.netconf.util.NetconfUtil;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.event.notifications.rev160615.SubscriptionSuspended;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.event.notifications.rev160615.SubscriptionTerminated;
-import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.push.rev160615.PushChangeUpdate;
-import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.push.rev160615.PushUpdate;
 import org.opendaylight.yangpushserver.impl.YangpushProvider;
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.Edit;
+import org.opendaylight.yangpushserver.notification.NotificationReplayLog.RecordType;
 import org.opendaylight.yangpushserver.notification.OAMNotification.OAMStatus;
+import org.opendaylight.yangpushserver.notification.SubscriptionMetrics.Stage;
+import org.opendaylight.yangpushserver.subscription.AdmissionController;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
 import org.opendaylight.yangpushserver.subscription.SubscriptionInfo;
 import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.SubscriptionStreamStatus;
-import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.UnchangedUpdates;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
 import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
 import org.opendaylight.yangtools.yang.data.api.schema.stream.NormalizedNodeStreamWriter;
 import org.opendaylight.yangtools.yang.data.api.schema.stream.NormalizedNodeWriter;
 import org.opendaylight.yangtools.yang.data.impl.codec.xml.XMLStreamNormalizedNodeStreamWriter;
-import org.opendaylight.yangtools.yang.model.api.SchemaPath;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
-import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * This is a singleton class handling all notification related processing for
@@ -56,38 +88,83 @@ import com.google.common.util.concurrent.CheckedFuture;
  */
 public class NotificationEngine {
 	private static final Logger LOG = LoggerFactory.getLogger(NotificationEngine.class);
-	// TODO Schema paths and node identifiers for push updates and on change
-	// push updates intended to use for storing already sent notifications in
-	// MD-SAL data store. Necessary to support replay feature capability of sub
-	private static final SchemaPath PERIODIC_NOTIFICATION_PATH = SchemaPath.create(true, PushUpdate.QNAME);
-	private static final SchemaPath ON_CHANGE_NOTIFICATION_PATH = SchemaPath.create(true, PushChangeUpdate.QNAME);
-	private static final NodeIdentifier PERIODIC_NOTIFICATION_NI = NodeIdentifier.create(PushUpdate.QNAME);
-	private static final NodeIdentifier ON_CHANGE_NOTIFICATION_NI = NodeIdentifier.create(PushChangeUpdate.QNAME);
+	private static final String JSON_ENCODING = "encode-json";
+	// Time in milliseconds to wait for the data measured for admission
+	private static final long MEASURE_TIMEOUT = 5000;
 	private static NotificationEngine instance = null;
 
 	// Global data broker
 	private DOMDataBroker globalDomDataBroker = null;
 
+	// Data tree change listeners shared by the on change subscriptions
+	private DataTreeChangeDispatcher changeDispatcher = null;
+
 	// Pointer to the provider to push notifications
 	private YangpushProvider provider = null;
 
-	// TODO Support for one anchor time for multiple periodic subscriptions; to
-	// avoid sending redundant notifications
-	private Long anchorTime;
+	// Schema service used to compile subscription filters
+	private SchemaService schemaService = null;
+
+	// Anchor time all periodic notifications are aligned to (anchor time +
+	// k * period), so subscriptions with the same period are triggered at the
+	// same points in time
+	private final long anchorTime;
 
 	// Map of the schedulers and data tree change listeners for each
 	// subscription (key is subscription ID)
-	// TODO Need optimization for scale
 	private Map<String, PeriodicNotificationScheduler> notificationSchedulerMap = null;
 	private Map<String, OnChangeHandler> notificationListenerMap = null;
 
+	// Groups of periodic subscriptions receiving the same content (key is
+	// group key) and the group each periodic subscription is member of (key
+	// is subscription ID)
+	private final Map<String, PeriodicNotificationGroup> periodicGroupMap;
+	private final Map<String, PeriodicNotificationGroup> periodicMembershipMap;
+
+	// Timing wheel and worker pool shared by all subscriptions
+	private final NotificationScheduler scheduler;
+
+	// Dispatches notification processing to the worker pool by priority
+	private final PriorityDispatcher dispatcher;
+
+	// Counters and stage latencies of the subscriptions
+	private final NotificationMetrics metrics;
+
+	// Used to create unique patch IDs for on change notifications
+	private final AtomicLong patchCounter = new AtomicLong();
+
+	// Transaction chain used for the reads of each stream (key is stream)
+	private final Map<String, DOMTransactionChain> transactionChains = new ConcurrentHashMap<>();
+
+	// Subscriptions with a single subscription update in progress
+	private final Set<String> inFlightSubscriptions = ConcurrentHashMap.newKeySet();
+
+	// Log of sent notifications to support replay, null if disabled
+	private volatile NotificationReplayLog replayLog = null;
+
+	// Replay key of every on change subscription (key is subscription ID) and
+	// the subscription recording the notifications of a replay key, so
+	// subscriptions with the same key do not record the same changes twice
+	private final Map<String, Long> onChangeReplayKeys = new ConcurrentHashMap<>();
+	private final Map<Long, String> onChangeRecorders = new ConcurrentHashMap<>();
+
 	/**
 	 * Constructor to create singleton instance
 	 */
 	protected NotificationEngine() {
 		super();
-		notificationSchedulerMap = new HashMap<String, PeriodicNotificationScheduler>();
-		notificationListenerMap = new HashMap<String, OnChangeHandler>();
+		notificationSchedulerMap = new ConcurrentHashMap<String, PeriodicNotificationScheduler>();
+		notificationListenerMap = new ConcurrentHashMap<String, OnChangeHandler>();
+		periodicGroupMap = new HashMap<String, PeriodicNotificationGroup>();
+		periodicMembershipMap = new ConcurrentHashMap<String, PeriodicNotificationGroup>();
+		scheduler = new NotificationScheduler();
+		// One worker is left for timers and on change notifications
+		dispatcher = new PriorityDispatcher(scheduler.getExecutor(),
+				retry -> scheduler.schedule(retry, NotificationScheduler.DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS),
+				Math.max(1, scheduler.getWorkerThreadCount() - 1), PriorityDispatcher.DEFAULT_CAPACITY);
+		metrics = new NotificationMetrics(scheduler, dispatcher);
+		// Full second to get human readable times of update
+		anchorTime = TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
 	}
 
 	/**
@@ -108,7 +185,10 @@ public class NotificationEngine {
 	 * 
 	 */
 	public void setDataBroker(DOMDataBroker globalDomDataBroker) {
+		closeTransactionChains();
 		this.globalDomDataBroker = globalDomDataBroker;
+		this.changeDispatcher = new DataTreeChangeDispatcher((DOMDataTreeChangeService) globalDomDataBroker
+				.getSupportedExtensions().get(DOMDataTreeChangeService.class), globalDomDataBroker);
 	}
 
 	/**
@@ -120,242 +200,850 @@ public class NotificationEngine {
 	}
 
 	/**
-	 * This method is called by a {@link PeriodicNotificationScheduler} and
-	 * leads to reading data from MD-SAL data store, transforming this data,
-	 * composing a periodic notification and finally sending out the
-	 * notification to the subscriber.
+	 * @return Current global schema context, null if not available
+	 */
+	public SchemaContext getSchemaContext() {
+		return schemaService == null ? null : schemaService.getGlobalContext();
+	}
+
+	/**
+	 * Set global schema service to notification engine
 	 * 
-	 * @param subscriptionID
-	 *            ID of the subscription used to retrieve related data from
-	 *            {@link SubscriptionEngine}.
 	 */
-	public void periodicNotification(String subscriptionID) {
-		SubscriptionInfo underlyingSub = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+	public void setSchemaService(SchemaService schemaService) {
+		this.schemaService = schemaService;
+	}
 
-		// Dont do anything if suspended, stopped etc.
-		if (underlyingSub.getSubscriptionStreamStatus() == SubscriptionStreamStatus.active) {
-			LOG.info("Processing periodic notification for active subscription {}...", subscriptionID);
-			String stream = underlyingSub.getStream();
-
-			// Preparations for read from data store TODO transactionChain?
-			DOMDataReadTransaction readTransaction = this.globalDomDataBroker.newReadOnlyTransaction();
-			CheckedFuture<Optional<NormalizedNode<?, ?>>, ReadFailedException> future = null;
-			Optional<NormalizedNode<?, ?>> optional = Optional.absent();
-			NormalizedNode<?, ?> data = null;
-
-			switch (stream) {
-
-			case "YANG-PUSH":
-				future = readTransaction.read(LogicalDatastoreType.OPERATIONAL, YangpushProvider.ROOT);
-				// Another notification for CONFIGURATION tree of data store
-				secondPeriodicNotification(subscriptionID);
-				break;
-			case "CONFIGURATION":
-				future = readTransaction.read(LogicalDatastoreType.CONFIGURATION, YangpushProvider.ROOT);
-				break;
-			case "OPERATIONAL":
-				future = readTransaction.read(LogicalDatastoreType.OPERATIONAL, YangpushProvider.ROOT);
-				break;
-			default:
-				LOG.error("Stream {} not supported.", stream);
-				return;
+	/**
+	 * Opens the {@link NotificationReplayLog} all sent push-update and
+	 * push-change-update notifications are recorded in, replaces a log
+	 * opened before.
+	 * 
+	 * @param directory
+	 *            Directory of the log segments
+	 * @param maxBytes
+	 *            Maximum size of the log in bytes
+	 * @param maxAge
+	 *            Time in milliseconds notifications are kept for replay
+	 * @throws IOException
+	 *             If the log cannot be opened
+	 */
+	public void openReplayLog(Path directory, long maxBytes, long maxAge) throws IOException {
+		int segmentSize = (int) Math.min(NotificationReplayLog.DEFAULT_SEGMENT_SIZE, maxBytes / 4);
+		NotificationReplayLog previous = this.replayLog;
+		this.replayLog = new NotificationReplayLog(directory, segmentSize, maxBytes, maxAge);
+		if (previous != null) {
+			previous.close();
+		}
+	}
+
+	/**
+	 * Closes the {@link NotificationReplayLog}, notifications are not
+	 * recorded anymore.
+	 */
+	public void closeReplayLog() {
+		NotificationReplayLog log = this.replayLog;
+		this.replayLog = null;
+		if (log != null) {
+			log.close();
+		}
+	}
+
+	/**
+	 * @return Scheduler shared by all subscriptions for timers and
+	 *         notification processing
+	 */
+	public NotificationScheduler getScheduler() {
+		return this.scheduler;
+	}
+
+	/**
+	 * @return Dispatcher processing periodic notifications by
+	 *         subscription-priority, also holding the latency statistics per
+	 *         priority
+	 */
+	public PriorityDispatcher getDispatcher() {
+		return this.dispatcher;
+	}
+
+	/**
+	 * @return Metrics of the subscriptions
+	 */
+	public NotificationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return Anchor time in milliseconds since epoch all periodic
+	 *         notifications are aligned to
+	 */
+	public long getAnchorTime() {
+		return this.anchorTime;
+	}
+
+	/**
+	 * Called by a {@link PeriodicNotificationScheduler} when its subscription
+	 * starts. Adds the subscription to the {@link PeriodicNotificationGroup} of
+	 * subscriptions with same stream, encoding, period and filter. The group is
+	 * created and started if not existing yet. Nothing is joined if the
+	 * subscription was deleted or its scheduler closed meanwhile.
+	 * 
+	 * @param subscriptionID
+	 *            ID of the periodic subscription
+	 * @param periodicScheduler
+	 *            Scheduler of the subscription, leaving the group when closed
+	 * @return Whether the subscription joined its group
+	 */
+	public boolean joinPeriodicGroup(String subscriptionID, PeriodicNotificationScheduler periodicScheduler) {
+		synchronized (periodicGroupMap) {
+			// Checked under the lock of leavePeriodicGroup(), so a closed
+			// scheduler never leaves its subscription behind in a group
+			SubscriptionInfo underlyingSub = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+			if (periodicScheduler.isClosed() || underlyingSub == null) {
+				LOG.info("Subscription {} was unregistered, periodic notification group not joined", subscriptionID);
+				return false;
 			}
-			try {
-				optional = future.checkedGet();
+			String key = PeriodicNotificationGroup.createKey(underlyingSub);
+			PeriodicNotificationGroup group = periodicGroupMap.get(key);
+			if (group == null) {
+				group = new PeriodicNotificationGroup(key, underlyingSub);
+				group.start(scheduler, anchorTime);
+				periodicGroupMap.put(key, group);
+			}
+			group.addMember(subscriptionID);
+			periodicMembershipMap.put(subscriptionID, group);
+			LOG.info("Subscription {} joined periodic notification group with {} members", subscriptionID,
+					group.getMembers().size());
+			return true;
+		}
+	}
 
-				if (optional != null && optional.isPresent()) {
-					data = optional.get();
+	/**
+	 * Removes the subscription from its {@link PeriodicNotificationGroup}.
+	 * The group is stopped when its last member left.
+	 * 
+	 * @param subscriptionID
+	 *            ID of the periodic subscription
+	 */
+	public void leavePeriodicGroup(String subscriptionID) {
+		synchronized (periodicGroupMap) {
+			PeriodicNotificationGroup group = periodicMembershipMap.remove(subscriptionID);
+			if (group != null && group.removeMember(subscriptionID) && group.isEmpty()) {
+				group.close();
+				periodicGroupMap.remove(group.getKey());
+				LOG.info("Periodic notification group of subscription {} closed", subscriptionID);
+			}
+		}
+	}
 
-					LOG.info("Data for periodic notification of subscription {} read successfully from data store",
-							subscriptionID);
+	/**
+	 * This method is called by a {@link PeriodicNotificationGroup} on every
+	 * tick and leads to reading data from the MD-SAL data stores of the
+	 * stream, transforming and filtering this data once for the whole group.
+	 * Afterwards a single periodic notification is composed and sent out for
+	 * every active member of the group. Reading, encoding and sending run
+	 * asynchronously, the calling thread never waits for the data store. If
+	 * the previous tick of the group is still being processed, this tick is
+	 * skipped. Encoding is dispatched with the highest subscription-priority
+	 * of the members, see {@link PriorityDispatcher}.
+	 * 
+	 * @param group
+	 *            Group of subscriptions sharing the notification content
+	 */
+	public void periodicNotification(PeriodicNotificationGroup group) {
+		if (group.isEmpty()) {
+			return;
+		}
+		long tickTime = group.tickTime(System.currentTimeMillis());
+		if (!group.tryStartTick(tickTime)) {
+			LOG.warn("Previous periodic notification of group {} still in progress, tick skipped ({} so far)",
+					group.getKey(), group.getSkippedTicks());
+			return;
+		}
+		LOG.debug("Processing periodic notification for group of {} subscriptions...", group.getMembers().size());
+		short priority = 0;
+		for (String subscriptionID : group.getMembers()) {
+			SubscriptionInfo member = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+			if (member != null) {
+				priority = (short) Math.max(priority, member.getPriorityValue());
+			}
+		}
+		ListenableFuture<EncodedNotificationContent> content = encodeAsync(group.getStream(), group.getFilter(),
+				group.getEncoding(), priority, group.getMembers());
+		Futures.addCallback(content, new FutureCallback<EncodedNotificationContent>() {
+			@Override
+			public void onSuccess(EncodedNotificationContent result) {
+				try {
+					sendToGroup(group, result, tickTime);
+				} finally {
+					group.finishTick();
 				}
-			} catch (ReadFailedException e) {
-				LOG.warn("Reading data for notification failed:", e);
 			}
 
-			DOMResult result = new DOMResult();
-			result.setNode(XmlUtil.newDocument());
-
-			try {
-				writeNormalizedNode(data, result);
-			} catch (IOException | XMLStreamException e) {
-				LOG.warn("Transforming normalized node to dom result failed:", e);
+			@Override
+			public void onFailure(Throwable t) {
+				group.finishTick();
+				LOG.warn("Periodic notification of group {} failed", group.getKey(), t);
+				// Dependent subscriptions must not wait for this tick
+				for (String subscriptionID : group.getMembers()) {
+					group.memberSent(subscriptionID, tickTime);
+				}
 			}
+		});
+	}
 
-			PeriodicNotification notification = null;
-			// Apply subtree filter if set
-			if (SubscriptionEngine.getInstance().getSubscription(subscriptionID).getFilter() != null) {
-				DOMSource filterSource = SubscriptionEngine.getInstance().getSubscription(subscriptionID).getFilter();
-				XmlElement filter = XmlElement.fromDomElement((Element) filterSource.getNode());
+	/**
+	 * Sends the content of a tick to the members of the group. The update of a
+	 * member depending on another periodic subscription is sent after the
+	 * update of its parent for the same tick.
+	 */
+	private void sendToGroup(PeriodicNotificationGroup group, EncodedNotificationContent content, long tickTime) {
+		Date eventTime = new Date();
+		NotificationReplayLog log = replayLog;
+		if (log != null) {
+			log.append(group.getReplayKey(), eventTime.getTime(), RecordType.push_update, content);
+		}
+		for (String subscriptionID : group.getMembers()) {
+			SubscriptionInfo underlyingSub = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+			String parentID = underlyingSub == null ? null : underlyingSub.getSubscriptionDependency();
+			PeriodicNotificationGroup parentGroup = parentID == null ? null : periodicMembershipMap.get(parentID);
+			Runnable send = () -> {
 				try {
-					Optional<Document> optionalFilteredData = SubtreeFilter.applySubtreeNotificationFilter(filter,
-							(Document) result.getNode());
-					if (optionalFilteredData != null && optionalFilteredData.isPresent()) {
-						notification = new PeriodicNotification(optionalFilteredData.get(), subscriptionID);
-					} else {
-						LOG.warn(
-								"Filtering notification content failed due to missing match for given filter. Proceeding with unfiltered content...");
-						notification = new PeriodicNotification((Document) result.getNode(), subscriptionID);
-					}
-				} catch (DocumentedException e) {
-					LOG.warn(
-							"Applying subtree filter to noitifcation content failed. Proceeding with unfiltered content...",
-							e);
-					notification = new PeriodicNotification((Document) result.getNode(), subscriptionID);
+					sendToMember(group, subscriptionID, underlyingSub, content, eventTime, tickTime);
+				} finally {
+					group.memberSent(subscriptionID, tickTime);
 				}
+			};
+			if (parentGroup != null) {
+				parentGroup.runAfterMember(parentID, tickTime, send);
 			} else {
-				notification = new PeriodicNotification((Document) result.getNode(), subscriptionID);
+				send.run();
 			}
-			// TODO Maybe move this part to the provider itself to later manage
-			// other transport options
-			provider.pushNotification(notification, subscriptionID);
-			LOG.info("Periodic notification for subscription with ID {} sent.", subscriptionID);
+		}
+	}
+
+	private void sendToMember(PeriodicNotificationGroup group, String subscriptionID, SubscriptionInfo underlyingSub,
+			EncodedNotificationContent content, Date eventTime, long tickTime) {
+		// Dont do anything if suspended, stopped etc.
+		if (underlyingSub == null || underlyingSub.getSubscriptionStreamStatus() != SubscriptionStreamStatus.active) {
+			LOG.debug("Not processing periodic notification for subscription {}. Status: {}", subscriptionID,
+					underlyingSub == null ? null : underlyingSub.getSubscriptionStreamStatus());
+			return;
+		}
+		String parentID = underlyingSub.getSubscriptionDependency();
+		if (parentID != null && SubscriptionEngine.getInstance().getSubscription(parentID) == null) {
+			LOG.debug("Not processing periodic notification for subscription {}, subscription-dependency {} is gone",
+					subscriptionID, parentID);
+			return;
+		}
+		UnchangedUpdates mode = underlyingSub.getUnchangedUpdates();
+		if (mode == null || mode == UnchangedUpdates.send
+				|| group.updateFingerprint(subscriptionID, content.fingerprint())) {
+			push(subscriptionID, sequenceNumber -> content.toPushUpdate(subscriptionID, eventTime, sequenceNumber));
+			LOG.debug("Periodic notification for subscription with ID {} sent.", subscriptionID);
+		} else if (mode == UnchangedUpdates.heartbeat) {
+			push(subscriptionID, sequenceNumber -> EncodedNotificationContent.empty(content.isJson())
+					.toPushUpdate(subscriptionID, eventTime, sequenceNumber));
+			LOG.debug("Content unchanged, heartbeat for subscription with ID {} sent.", subscriptionID);
 		} else {
-			LOG.info("Not processing periodic notification for subscription {}. Status: {}", subscriptionID,
-					underlyingSub.getSubscriptionStreamStatus());
+			LOG.debug("Content unchanged, periodic notification for subscription {} suppressed.", subscriptionID);
+			metrics.get(subscriptionID).recordSuppressed(1);
+			return;
+		}
+		dispatcher.recordLatency(underlyingSub.getPriorityValue(), System.currentTimeMillis() - tickTime);
+	}
+
+	/**
+	 * Pushes an update of the subscription stamped with its next sequence
+	 * number. Numbers are assigned and the update is queued atomically, so the
+	 * updates are queued in the order of their sequence numbers.
+	 * 
+	 * @param subscriptionID
+	 *            ID of the subscription
+	 * @param update
+	 *            Creates the update with the given sequence number
+	 */
+	private void push(String subscriptionID, LongFunction<NetconfMessage> update) {
+		SubscriptionMetrics subscriptionMetrics = metrics.get(subscriptionID);
+		synchronized (subscriptionMetrics) {
+			provider.pushNotification(update.apply(subscriptionMetrics.nextSequenceNumber()), subscriptionID);
+		}
+	}
+
+	/**
+	 * Makes sure the next periodic update of the subscription contains the
+	 * full content even if it did not change, e.g. because the receiver missed
+	 * updates while the subscription was suspended.
+	 *
+	 * @param subscriptionID
+	 *            ID of a periodic subscription
+	 */
+	public void resetUnchangedState(String subscriptionID) {
+		PeriodicNotificationGroup group = periodicMembershipMap.get(subscriptionID);
+		if (group != null) {
+			group.resetFingerprint(subscriptionID);
 		}
 	}
 
 	/**
-	 * The only purpose of this method is to send another periodic notification
-	 * for the second part of the data store when the subscribed stream is
-	 * YANG-PUSH.
+	 * This method leads to reading data from MD-SAL data store, transforming
+	 * this data, composing a periodic notification and finally sending out the
+	 * notification to a single subscriber. Used e.g. to synch on change
+	 * subscriptions on start. Processed asynchronously like
+	 * {@link #periodicNotification(PeriodicNotificationGroup)}, a request
+	 * while the previous one of the subscription is still in progress is
+	 * skipped.
 	 * 
 	 * @param subscriptionID
 	 *            ID of the subscription used to retrieve related data from
 	 *            {@link SubscriptionEngine}.
 	 */
-	private void secondPeriodicNotification(String subscriptionID) {
+	public void periodicNotification(String subscriptionID) {
 		SubscriptionInfo underlyingSub = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
 
 		// Dont do anything if suspended, stopped etc.
-		if (underlyingSub.getSubscriptionStreamStatus() == SubscriptionStreamStatus.active) {
-			LOG.info("Processing second periodic notification (CONFIGURATION) for active subscription {}...",
-					subscriptionID);
-
-			// Preparations for read from data store TODO transactionChain?
-			DOMDataReadTransaction readTransaction = this.globalDomDataBroker.newReadOnlyTransaction();
-			CheckedFuture<Optional<NormalizedNode<?, ?>>, ReadFailedException> future = null;
-			Optional<NormalizedNode<?, ?>> optional = Optional.absent();
-			NormalizedNode<?, ?> data = null;
-
-			future = readTransaction.read(LogicalDatastoreType.CONFIGURATION, YangpushProvider.ROOT);
-
-			try {
-				optional = future.checkedGet();
-
-				if (optional != null && optional.isPresent()) {
-					data = optional.get();
+		if (underlyingSub.getSubscriptionStreamStatus() != SubscriptionStreamStatus.active) {
+			LOG.debug("Not processing periodic notification for subscription {}. Status: {}", subscriptionID,
+					underlyingSub.getSubscriptionStreamStatus());
+			return;
+		}
+		if (!inFlightSubscriptions.add(subscriptionID)) {
+			LOG.debug("Periodic notification for subscription {} already in progress", subscriptionID);
+			return;
+		}
+		LOG.debug("Processing periodic notification for active subscription {}...", subscriptionID);
+		// TODO Maybe move this part to the provider itself to later
+		// manage other transport options
+		ListenableFuture<EncodedNotificationContent> content = encodeAsync(underlyingSub.getStream(),
+				getCompiledFilter(underlyingSub), underlyingSub.getEncoding(), underlyingSub.getPriorityValue(),
+				Collections.singleton(subscriptionID));
+		Futures.addCallback(content, new FutureCallback<EncodedNotificationContent>() {
+			@Override
+			public void onSuccess(EncodedNotificationContent result) {
+				inFlightSubscriptions.remove(subscriptionID);
+				Date eventTime = new Date();
+				push(subscriptionID, sequenceNumber -> result.toPushUpdate(subscriptionID, eventTime, sequenceNumber));
+				LOG.debug("Periodic notification for subscription with ID {} sent.", subscriptionID);
+			}
 
-					LOG.info(
-							"Data for second periodic notification of subscription {} read successfully from data store",
-							subscriptionID);
-				}
-			} catch (ReadFailedException e) {
-				LOG.warn("Reading data for notification failed:", e);
+			@Override
+			public void onFailure(Throwable t) {
+				inFlightSubscriptions.remove(subscriptionID);
+				LOG.warn("Periodic notification for subscription {} failed", subscriptionID, t);
 			}
+		});
+	}
 
-			DOMResult result = new DOMResult();
-			result.setNode(XmlUtil.newDocument());
+	/**
+	 * Reads the data of the stream, then transforms, filters and encodes it
+	 * on the worker pool of the {@link NotificationScheduler}, dispatched by
+	 * the given priority. The time of the stages is recorded for the given
+	 * subscriptions.
+	 * 
+	 * @return Future of the encoded notification content
+	 */
+	private ListenableFuture<EncodedNotificationContent> encodeAsync(String stream, CompiledSubtreeFilter filter,
+			String encoding, short priority, Collection<String> subscriptionIDs) {
+		long readStart = System.nanoTime();
+		ListenableFuture<NormalizedNode<?, ?>> data = readData(stream, filter);
+		data.addListener(() -> metrics.record(subscriptionIDs, Stage.read, System.nanoTime() - readStart),
+				MoreExecutors.directExecutor());
+		Function<NormalizedNode<?, ?>, EncodedNotificationContent> encode = result -> encode(result, filter,
+				encoding, subscriptionIDs);
+		return Futures.transform(data, encode, dispatcher.executor(priority));
+	}
 
-			try {
-				writeNormalizedNode(data, result);
-			} catch (IOException | XMLStreamException e) {
-				LOG.warn("Transforming normalized node to dom result failed:", e);
-			}
+	/**
+	 * Transforms, filters and encodes the data of a push-update, the time of
+	 * the stages is recorded for the given subscriptions.
+	 * 
+	 * @param data
+	 *            Data starting at the root of the data store, may be null
+	 * @return Encoded notification content
+	 */
+	private EncodedNotificationContent encode(NormalizedNode<?, ?> data, CompiledSubtreeFilter filter,
+			String encoding, Collection<String> subscriptionIDs) {
+		long encodeStart = System.nanoTime();
+		FilterTime filterTime = new FilterTime();
+		EncodedNotificationContent content = JSON_ENCODING.equals(encoding)
+				? EncodedNotificationContent.ofJson(transformAndFilterToJson(data, filter, filterTime))
+				: EncodedNotificationContent.ofXml(transformAndFilter(data, filter, filterTime));
+		metrics.record(subscriptionIDs, Stage.filter, filterTime.nanos);
+		metrics.record(subscriptionIDs, Stage.encode, System.nanoTime() - encodeStart - filterTime.nanos);
+		return content;
+	}
 
-			PeriodicNotification notification = null;
-			// Apply subtree filter if set
-			if (SubscriptionEngine.getInstance().getSubscription(subscriptionID).getFilter() != null) {
-				DOMSource filterSource = SubscriptionEngine.getInstance().getSubscription(subscriptionID).getFilter();
-				XmlElement filter = XmlElement.fromDomElement((Element) filterSource.getNode());
-				try {
-					Optional<Document> optionalFilteredData = SubtreeFilter.applySubtreeNotificationFilter(filter,
-							(Document) result.getNode());
-					if (optionalFilteredData != null && optionalFilteredData.isPresent()) {
-						notification = new PeriodicNotification(optionalFilteredData.get(), subscriptionID);
-					} else {
-						LOG.warn(
-								"Filtering notification content failed due to missing match for given filter. Proceeding with unfiltered content...");
-						notification = new PeriodicNotification((Document) result.getNode(), subscriptionID);
-					}
-				} catch (DocumentedException e) {
-					LOG.warn(
-							"Applying subtree filter to noitifcation content failed. Proceeding with unfiltered content...",
-							e);
-					notification = new PeriodicNotification((Document) result.getNode(), subscriptionID);
-				}
-			} else {
-				notification = new PeriodicNotification((Document) result.getNode(), subscriptionID);
+	/**
+	 * Sends a push-update with the given snapshot of the data an on-change
+	 * subscription observed, e.g. on resync. Unlike
+	 * {@link #periodicNotification(String)} nothing is read, the snapshot is
+	 * the data the listeners of the {@link OnChangeHandler} saw, so the
+	 * push-update is consistent with the push-change-updates before and after
+	 * it. Called synchronously, so it is sent before later changes.
+	 * 
+	 * @param subscriptionID
+	 *            ID of the on-change subscription
+	 * @param filter
+	 *            Compiled filter of the subscription
+	 * @param snapshot
+	 *            Data by read root of every data store of the stream
+	 * @param changeSequence
+	 *            Number of changes included in the snapshot
+	 * @return True if the push-update was sent, false if the subscription is
+	 *         not active
+	 */
+	public boolean resyncNotification(String subscriptionID, CompiledSubtreeFilter filter,
+			Map<LogicalDatastoreType, Map<YangInstanceIdentifier, NormalizedNode<?, ?>>> snapshot,
+			long changeSequence) {
+		SubscriptionInfo underlyingSub = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+		if (underlyingSub == null || underlyingSub.getSubscriptionStreamStatus() != SubscriptionStreamStatus.active) {
+			LOG.debug("Not resyncing subscription {}, it is not active", subscriptionID);
+			return false;
+		}
+		List<NormalizedNode<?, ?>> dataByStore = new ArrayList<>();
+		for (LogicalDatastoreType datastore : getDatastores(underlyingSub.getStream())) {
+			Map<YangInstanceIdentifier, NormalizedNode<?, ?>> dataByRoot = snapshot.get(datastore);
+			if (dataByRoot != null) {
+				dataByStore.add(filter.composeDataTree(dataByRoot));
 			}
-			// TODO Maybe move this part to the provider itself to later manage
-			// other transport options
-			provider.pushNotification(notification, subscriptionID);
-			LOG.info("Second periodic notification for subscription with ID {} sent (CONFIGURATION).", subscriptionID);
-		} else {
-			LOG.info("Not processing second periodic notification (CONFIGURATION) for subscription {}. Status: {}",
-					subscriptionID, underlyingSub.getSubscriptionStreamStatus());
 		}
+		EncodedNotificationContent content = encode(NormalizedNodeMerger.mergeAll(dataByStore), filter,
+				underlyingSub.getEncoding(), Collections.singleton(subscriptionID));
+		Date eventTime = new Date();
+		push(subscriptionID, sequenceNumber -> content.toResyncPushUpdate(subscriptionID, eventTime, sequenceNumber,
+				changeSequence));
+		LOG.info("Resync push-update for subscription {} sent at change sequence {}", subscriptionID,
+				changeSequence);
+		return true;
 	}
 
 	/**
 	 * This method is called by a {@link OnChangeHandler} when any changes to
-	 * the MD-SAL data store occur. The given data is then transformed, put
-	 * inside a composed notification and finally send out to the subscriber.
+	 * the MD-SAL data store occur. The given edits are encoded as yang-patch,
+	 * put inside a composed notification and finally send out to the
+	 * subscriber.
 	 * 
 	 * @param subscriptionID
 	 *            ID of the subscription used to retrieve related data from
 	 *            {@link SubscriptionEngine}.
-	 * @param changedData
-	 *            Subscribed data that have changed in data store given by
+	 * @param edits
+	 *            Changes of the subscribed data given by
 	 *            {@link OnChangeHandler}.
 	 */
-	public void onChangeNotification(String subscriptionID, NormalizedNode<?, ?> changedData) {
+	public void onChangeNotification(String subscriptionID, List<Edit> edits) {
 		SubscriptionInfo underlyingSub = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
 
 		// Dont do anything if suspended, stopped etc.
 		if (underlyingSub.getSubscriptionStreamStatus() == SubscriptionStreamStatus.active) {
-			LOG.info("Processing on change notification for active subscription {}...", subscriptionID);
-			// Empty DOM result serving as container for the transformation of
-			// the data
-			DOMResult result = new DOMResult();
-			result.setNode(XmlUtil.newDocument());
-			try {
-				writeNormalizedNode(changedData, result);
-			} catch (IOException | XMLStreamException e) {
-				LOG.warn("Transforming normalized node to dom result failed:", e);
+			LOG.debug("Processing on change notification with {} edits for active subscription {}...", edits.size(),
+					subscriptionID);
+			String patchID = subscriptionID + "-" + patchCounter.incrementAndGet();
+			long encodeStart = System.nanoTime();
+			EncodedNotificationContent content = JSON_ENCODING.equals(underlyingSub.getEncoding())
+					? EncodedNotificationContent.ofJson(toYangPatchJson(patchID, edits))
+					: EncodedNotificationContent.ofXml(DataTreeChangeEncoder.toYangPatch(patchID, edits));
+			metrics.record(subscriptionID, Stage.encode, System.nanoTime() - encodeStart);
+			Date eventTime = new Date();
+			NotificationReplayLog log = replayLog;
+			Long replayKey = onChangeReplayKeys.get(subscriptionID);
+			if (log != null && replayKey != null && subscriptionID.equals(onChangeRecorders.get(replayKey))) {
+				log.append(replayKey, eventTime.getTime(), RecordType.push_change_update, content);
 			}
-			OnChangeNotification notification = null;
-			// Apply subtree filter if set
-			if (SubscriptionEngine.getInstance().getSubscription(subscriptionID).getFilter() != null) {
-				DOMSource filterSource = SubscriptionEngine.getInstance().getSubscription(subscriptionID).getFilter();
-				XmlElement filter = XmlElement.fromDomElement((Element) filterSource.getNode());
-				try {
-					Optional<Document> optionalFilteredData = SubtreeFilter.applySubtreeNotificationFilter(filter,
-							(Document) result.getNode());
-					if (optionalFilteredData != null && optionalFilteredData.isPresent()) {
-						notification = new OnChangeNotification(optionalFilteredData.get(), subscriptionID);
-					} else {
-						LOG.warn(
-								"Filtering notification content failed due to missing match for given filter. Proceeding with unfiltered content...");
-						notification = new OnChangeNotification((Document) result.getNode(), subscriptionID);
+			push(subscriptionID,
+					sequenceNumber -> content.toPushChangeUpdate(subscriptionID, eventTime, sequenceNumber));
+			LOG.debug("On change notification for subscription with ID {} sent.", subscriptionID);
+
+		} else {
+			LOG.debug("Not processing on change notification for subscription {}. Status: {}", subscriptionID,
+					underlyingSub.getSubscriptionStreamStatus());
+		}
+	}
+
+	/**
+	 * Replays the recorded notifications of the subscription from its start
+	 * time up to its stop time or now, followed by a replay-complete
+	 * notification. Called when the subscription starts, before live
+	 * notifications are sent. Notifications are replayed that were sent to
+	 * subscriptions with the same stream, encoding and filter (and period for
+	 * periodic subscriptions).
+	 * 
+	 * @param subscriptionID
+	 *            ID of the starting subscription
+	 * @return True if notifications were replayed, false if the subscription
+	 *         did not request a replay or replay is disabled
+	 */
+	public boolean replay(String subscriptionID) {
+		SubscriptionInfo underlyingSub = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+		if (underlyingSub == null || underlyingSub.getStartTime() == null) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		long fromTime = parseYangDateAndTime(underlyingSub.getStartTime(), now);
+		if (fromTime >= now) {
+			return false;
+		}
+		NotificationReplayLog log = replayLog;
+		if (log == null) {
+			LOG.warn("Replay requested by subscription {} but the notification replay log is disabled",
+					subscriptionID);
+			return false;
+		}
+		long toTime = underlyingSub.getStopTime() == null ? now
+				: Math.min(now, parseYangDateAndTime(underlyingSub.getStopTime(), now));
+		long replayKey = underlyingSub.getPeriod() != null
+				? NotificationReplayLog.replayKey(PeriodicNotificationGroup.createKey(underlyingSub))
+				: NotificationReplayLog.replayKey(createOnChangeKey(underlyingSub));
+		LOG.info("Replaying notifications for subscription {} from {}...", subscriptionID,
+				underlyingSub.getStartTime());
+		log.replay(replayKey, fromTime, toTime, (eventTime, type, content) -> {
+			Date time = new Date(eventTime);
+			push(subscriptionID,
+					sequenceNumber -> type == RecordType.push_update
+							? content.toPushUpdate(subscriptionID, time, sequenceNumber)
+							: content.toPushChangeUpdate(subscriptionID, time, sequenceNumber));
+		});
+		oamNotification(subscriptionID, OAMStatus.replayComplete, null);
+		return true;
+	}
+
+	/**
+	 * @return Milliseconds since epoch of the given YANG DateAndTime or the
+	 *         default if not parsable
+	 */
+	private static long parseYangDateAndTime(String yangDateAndTime, long defaultTime) {
+		DateFormat format = new SimpleDateFormat(PeriodicNotification.YANG_DATEANDTIME_FORMAT_BLUEPRINT);
+		try {
+			return format.parse(PeriodicNotificationScheduler.ensureYangDateAndTimeFormat(yangDateAndTime))
+					.getTime();
+		} catch (ParseException | RuntimeException e) {
+			LOG.warn("Time not in correct format for {} instead time is {}",
+					PeriodicNotification.YANG_DATEANDTIME_FORMAT_BLUEPRINT, yangDateAndTime);
+			return defaultTime;
+		}
+	}
+
+	/**
+	 * Creates the key on change subscriptions are recorded with in the
+	 * {@link NotificationReplayLog}. Subscriptions with equal keys receive the
+	 * same changes.
+	 */
+	private static String createOnChangeKey(SubscriptionInfo subscription) {
+		StringBuilder builder = new StringBuilder("on-change|");
+		builder.append(subscription.getStream()).append('|');
+		builder.append(subscription.getEncoding()).append('|');
+		builder.append(subscription.getExcludedChange()).append('|');
+		if (subscription.getFilter() != null) {
+			builder.append(XmlUtil.toString((Element) subscription.getFilter().getNode()));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @param stream
+	 *            Subscribed stream
+	 * @return Data stores that are part of the given stream, YANG-PUSH covers
+	 *         both of them. Operational data comes last, so it wins when the
+	 *         data of the stores is merged.
+	 */
+	private static List<LogicalDatastoreType> getDatastores(String stream) {
+		switch (stream) {
+		case "YANG-PUSH":
+			return Arrays.asList(LogicalDatastoreType.CONFIGURATION, LogicalDatastoreType.OPERATIONAL);
+		case "CONFIGURATION":
+			return Collections.singletonList(LogicalDatastoreType.CONFIGURATION);
+		case "OPERATIONAL":
+			return Collections.singletonList(LogicalDatastoreType.OPERATIONAL);
+		default:
+			LOG.error("Stream {} not supported.", stream);
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Reads the read roots of the compiled filter from the data stores of the
+	 * stream. The reads of all data stores are issued at once on one
+	 * transaction of the transaction chain of the stream, so they run in
+	 * parallel on a snapshot taken at the same time. When all reads are done,
+	 * the data of the stores is merged into one tree, data of later stores
+	 * wins for conflicting leaves.
+	 * 
+	 * @param stream
+	 *            Stream whose data stores are read
+	 * @param filter
+	 *            Compiled filter of the subscription
+	 * @return Future of the data read composed to one tree starting at the
+	 *         root of the data store, null if nothing was read
+	 */
+	private ListenableFuture<NormalizedNode<?, ?>> readData(String stream, CompiledSubtreeFilter filter) {
+		List<LogicalDatastoreType> datastores = getDatastores(stream);
+		List<YangInstanceIdentifier> roots = new ArrayList<>(filter.getReadRoots());
+		DOMDataReadOnlyTransaction readTransaction = newReadOnlyTransaction(stream);
+		List<ListenableFuture<Optional<NormalizedNode<?, ?>>>> reads = new ArrayList<>(
+				datastores.size() * roots.size());
+		for (LogicalDatastoreType datastore : datastores) {
+			for (YangInstanceIdentifier root : roots) {
+				reads.add(readTransaction.read(datastore, root));
+			}
+		}
+		ListenableFuture<List<Optional<NormalizedNode<?, ?>>>> allReads = Futures.allAsList(reads);
+		allReads.addListener(readTransaction::close, MoreExecutors.directExecutor());
+
+		Function<List<Optional<NormalizedNode<?, ?>>>, NormalizedNode<?, ?>> compose = results -> {
+			List<NormalizedNode<?, ?>> dataByStore = new ArrayList<>(datastores.size());
+			for (int store = 0; store < datastores.size(); store++) {
+				Map<YangInstanceIdentifier, NormalizedNode<?, ?>> dataByRoot = new LinkedHashMap<>();
+				for (int root = 0; root < roots.size(); root++) {
+					Optional<NormalizedNode<?, ?>> optional = results.get(store * roots.size() + root);
+					if (optional != null && optional.isPresent()) {
+						dataByRoot.put(roots.get(root), optional.get());
 					}
-				} catch (DocumentedException e) {
-					LOG.warn(
-							"Applying subtree filter to noitifcation content failed. Proceeding with unfiltered content...",
-							e);
-					notification = new OnChangeNotification((Document) result.getNode(), subscriptionID);
 				}
-			} else {
-				notification = new OnChangeNotification((Document) result.getNode(), subscriptionID);
+				dataByStore.add(filter.composeDataTree(dataByRoot));
 			}
-			provider.pushNotification(notification, subscriptionID);
-			LOG.info("On change notification for subscription with ID {} sent.", subscriptionID);
+			LOG.debug("Data for periodic notification read successfully from {} roots of data stores {}",
+					roots.size(), datastores);
+			return NormalizedNodeMerger.mergeAll(dataByStore);
+		};
+		return Futures.transform(allReads, compose, scheduler.getExecutor());
+	}
 
-		} else {
-			LOG.info("Not processing on change notification for subscription {}. Status: {}", subscriptionID,
-					underlyingSub.getSubscriptionStreamStatus());
+	/**
+	 * Measures the size of the data a subscription selects, i.e. the number
+	 * of nodes left after its filter is applied, e.g. to estimate the cost of
+	 * the subscription before it is admitted. Blocks until the data is read.
+	 *
+	 * @param subscription
+	 *            Subscription whose selected data is measured
+	 * @return Number of selected nodes, -1 if the data could not be read
+	 */
+	public long measureSelectedNodes(SubscriptionInfo subscription) {
+		if (globalDomDataBroker == null) {
+			return -1;
+		}
+		CompiledSubtreeFilter filter = getCompiledFilter(subscription);
+		NormalizedNode<?, ?> data;
+		try {
+			data = readData(subscription.getStream(), filter).get(MEASURE_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		} catch (ExecutionException | TimeoutException | RuntimeException e) {
+			LOG.warn("Unable to measure the data selected by subscription {}", subscription.getSubscriptionId(), e);
+			return -1;
+		}
+		if (data == null) {
+			return 0;
+		}
+		Optional<NormalizedNodeSubtreeFilter> nodeFilter = filter.getNodeFilter();
+		if (nodeFilter.isPresent()) {
+			Optional<NormalizedNode<?, ?>> filteredData = nodeFilter.get().apply(data);
+			return filteredData.isPresent()
+					? AdmissionController.countNodes(NormalizedNodeSubtreeFilter.getContentRoot(filteredData.get()))
+					: 0;
+		}
+		return AdmissionController.countNodes(data);
+	}
+
+	/**
+	 * Creates a read-only transaction on the transaction chain of the
+	 * stream. The chain is created on first use and replaced after it
+	 * failed.
+	 */
+	private DOMDataReadOnlyTransaction newReadOnlyTransaction(String stream) {
+		DOMTransactionChain chain = transactionChains.computeIfAbsent(stream,
+				key -> globalDomDataBroker.createTransactionChain(new TransactionChainListener() {
+					@Override
+					public void onTransactionChainFailed(TransactionChain<?, ?> failed,
+							AsyncTransaction<?, ?> transaction, Throwable cause) {
+						LOG.warn("Transaction chain of stream {} failed, it is recreated on the next read", key,
+								cause);
+						transactionChains.remove(key, failed);
+						failed.close();
+					}
+
+					@Override
+					public void onTransactionChainSuccessful(TransactionChain<?, ?> successful) {
+						LOG.debug("Transaction chain of stream {} closed", key);
+					}
+				}));
+		try {
+			return chain.newReadOnlyTransaction();
+		} catch (IllegalStateException e) {
+			// Chain failed or closed meanwhile
+			transactionChains.remove(stream, chain);
+			return globalDomDataBroker.newReadOnlyTransaction();
+		}
+	}
+
+	/**
+	 * Closes the transaction chains used for reading, e.g. when the data
+	 * broker goes away.
+	 */
+	public void closeTransactionChains() {
+		for (String stream : transactionChains.keySet()) {
+			DOMTransactionChain chain = transactionChains.remove(stream);
+			if (chain != null) {
+				chain.close();
+			}
+		}
+	}
+
+	/**
+	 * Compiles the subtree filter of the given subscription against the
+	 * current schema context, so reads and listeners can target only the
+	 * filtered parts of the data store.
+	 * 
+	 * @param subscription
+	 *            Subscription whose filter is compiled
+	 * @return Compiled filter, also stored at the subscription
+	 */
+	private CompiledSubtreeFilter getCompiledFilter(SubscriptionInfo subscription) {
+		if (subscription.getCompiledFilter() == null) {
+			SchemaContext schemaContext = getSchemaContext();
+			subscription.setCompiledFilter(CompiledSubtreeFilter.compile(subscription.getFilter(), schemaContext));
+		}
+		return subscription.getCompiledFilter();
+	}
+
+	/**
+	 * Transforms the given data to XML and applies the subtree filter if set.
+	 * Filters that can be evaluated on the normalized nodes are applied before
+	 * the transformation, so only the selected data is serialized. Otherwise
+	 * the data is transformed first and the DOM based filter is applied. If
+	 * DOM based filtering fails, the unfiltered content is returned.
+	 * 
+	 * @param data
+	 *            Data retrieved from data store
+	 * @param compiledFilter
+	 *            Compiled subtree filter of the subscription
+	 * @param filterTime
+	 *            Time spent filtering is added to it
+	 * @return Content of the notification
+	 */
+	private static Document transformAndFilter(NormalizedNode<?, ?> data, CompiledSubtreeFilter compiledFilter,
+			FilterTime filterTime) {
+		DOMResult result = new DOMResult();
+		result.setNode(XmlUtil.newDocument());
+		if (data == null) {
+			return (Document) result.getNode();
+		}
+
+		Optional<NormalizedNodeSubtreeFilter> nodeFilter = compiledFilter.getNodeFilter();
+		if (nodeFilter.isPresent()) {
+			long filterStart = System.nanoTime();
+			Optional<NormalizedNode<?, ?>> filteredData = nodeFilter.get().apply(data);
+			filterTime.nanos += System.nanoTime() - filterStart;
+			if (!filteredData.isPresent()) {
+				LOG.debug("No data matches the subtree filter, notification content is empty");
+				return (Document) result.getNode();
+			}
+			data = NormalizedNodeSubtreeFilter.getContentRoot(filteredData.get());
+		}
+
+		try {
+			writeNormalizedNode(data, result);
+		} catch (IOException | XMLStreamException e) {
+			LOG.warn("Transforming normalized node to dom result failed:", e);
 		}
+		if (nodeFilter.isPresent()) {
+			return (Document) result.getNode();
+		}
+
+		DOMSource filterSource = compiledFilter.getFilter();
+		// Apply subtree filter if set
+		if (filterSource != null) {
+			XmlElement filter = XmlElement.fromDomElement((Element) filterSource.getNode());
+			long filterStart = System.nanoTime();
+			try {
+				Optional<Document> optionalFilteredData = SubtreeFilter.applySubtreeNotificationFilter(filter,
+						(Document) result.getNode());
+				filterTime.nanos += System.nanoTime() - filterStart;
+				if (optionalFilteredData != null && optionalFilteredData.isPresent()) {
+					return optionalFilteredData.get();
+				}
+				LOG.warn(
+						"Filtering notification content failed due to missing match for given filter. Proceeding with unfiltered content...");
+			} catch (DocumentedException e) {
+				LOG.warn("Applying subtree filter to noitifcation content failed. Proceeding with unfiltered content...",
+						e);
+			}
+		}
+		return (Document) result.getNode();
+	}
+
+	/**
+	 * Transforms the given data to JSON and applies the subtree filter if set.
+	 * The data is written straight from the normalized nodes. Only subtree
+	 * filters that cannot be evaluated on normalized nodes require the XML
+	 * representation, which is converted to JSON afterwards.
+	 * 
+	 * @param data
+	 *            Data retrieved from data store
+	 * @param compiledFilter
+	 *            Compiled subtree filter of the subscription
+	 * @param filterTime
+	 *            Time spent filtering is added to it
+	 * @return Content of the notification, null if there is none
+	 */
+	private String transformAndFilterToJson(NormalizedNode<?, ?> data, CompiledSubtreeFilter compiledFilter,
+			FilterTime filterTime) {
+		if (data == null) {
+			return null;
+		}
+		SchemaContext schemaContext = getSchemaContext();
+		Optional<NormalizedNodeSubtreeFilter> nodeFilter = compiledFilter.getNodeFilter();
+		if (schemaContext == null || (!nodeFilter.isPresent() && compiledFilter.getFilter() != null)) {
+			return xmlToJson(transformAndFilter(data, compiledFilter, filterTime));
+		}
+
+		if (nodeFilter.isPresent()) {
+			long filterStart = System.nanoTime();
+			Optional<NormalizedNode<?, ?>> filteredData = nodeFilter.get().apply(data);
+			filterTime.nanos += System.nanoTime() - filterStart;
+			if (!filteredData.isPresent()) {
+				LOG.debug("No data matches the subtree filter, notification content is empty");
+				return null;
+			}
+			data = NormalizedNodeSubtreeFilter.getContentRoot(filteredData.get());
+		}
+		try {
+			return JsonContentEncoder.forSchemaContext(schemaContext).toJson(data);
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Transforming normalized node to JSON failed:", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Encodes the edits as JSON yang-patch.
+	 * 
+	 * @param patchID
+	 *            Unique ID of the patch
+	 * @param edits
+	 *            Changes of the subscribed data
+	 * @return Content of the notification, null if encoding failed
+	 */
+	private String toYangPatchJson(String patchID, List<Edit> edits) {
+		SchemaContext schemaContext = getSchemaContext();
+		if (schemaContext == null) {
+			return xmlToJson(DataTreeChangeEncoder.toYangPatch(patchID, edits));
+		}
+		try {
+			return JsonContentEncoder.forSchemaContext(schemaContext).toYangPatch(patchID, edits);
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Transforming yang-patch to JSON failed:", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Fallback used without schema context or for DOM based filters only.
+	 */
+	private static String xmlToJson(Document content) {
+		if (content.getDocumentElement() == null) {
+			return null;
+		}
+		return XML.toJSONObject(XmlUtil.toString(content.getDocumentElement())).toString();
 	}
 
 	/**
@@ -412,9 +1100,12 @@ public class NotificationEngine {
 		String subStartTime = underlyingSubscription.getSubscriptionStartTime();
 		String subStopTime = underlyingSubscription.getSubscriptionStopTime();
 		Long period = underlyingSubscription.getPeriod();
-		PeriodicNotificationScheduler scheduler = new PeriodicNotificationScheduler();
-		scheduler.schedulePeriodicNotification(subscriptionID, subStartTime, subStopTime, period);
-		this.notificationSchedulerMap.put(subscriptionID, scheduler);
+		// Filter might have changed by a modify subscription
+		underlyingSubscription.setCompiledFilter(null);
+		getCompiledFilter(underlyingSubscription);
+		PeriodicNotificationScheduler periodicScheduler = new PeriodicNotificationScheduler(this.scheduler);
+		periodicScheduler.schedulePeriodicNotification(subscriptionID, subStartTime, subStopTime, period);
+		this.notificationSchedulerMap.put(subscriptionID, periodicScheduler);
 		LOG.info("Periodic notification for subscription ID {} successfully registered", subscriptionID);
 	}
 
@@ -436,8 +1127,15 @@ public class NotificationEngine {
 		Long dampeningPeriod = underlyingSubscription.getDampeningPeriod();
 		boolean noSynchOnStart = underlyingSubscription.getNoSynchOnStart();
 
-		OnChangeHandler handler = new OnChangeHandler(globalDomDataBroker, stream, YangpushProvider.ROOT);
-		handler.scheduleNotification(subscriptionID, subStartTime, subStopTime, dampeningPeriod, noSynchOnStart);
+		// Filter might have changed by a modify subscription
+		underlyingSubscription.setCompiledFilter(null);
+		OnChangeHandler handler = new OnChangeHandler(changeDispatcher, stream,
+				getCompiledFilter(underlyingSubscription), underlyingSubscription.getExcludedChange(), this.scheduler);
+		long replayKey = NotificationReplayLog.replayKey(createOnChangeKey(underlyingSubscription));
+		onChangeReplayKeys.put(subscriptionID, replayKey);
+		onChangeRecorders.putIfAbsent(replayKey, subscriptionID);
+		handler.scheduleNotification(subscriptionID, subStartTime, subStopTime, dampeningPeriod, noSynchOnStart,
+				underlyingSubscription.getBundleMaxEdits(), underlyingSubscription.getBundleMaxDelay());
 		this.notificationListenerMap.put(subscriptionID, handler);
 		LOG.info("On change notification for subscription ID {} successfully registered", subscriptionID);
 	}
@@ -447,19 +1145,62 @@ public class NotificationEngine {
 	 * ID.
 	 */
 	public void unregisterNotification(String subscriptionID) {
-		if (this.notificationSchedulerMap.containsKey(subscriptionID)) {
-			this.notificationSchedulerMap.get(subscriptionID).quietClose();
-			this.notificationSchedulerMap.remove(subscriptionID);
+		PeriodicNotificationScheduler periodicScheduler = this.notificationSchedulerMap.remove(subscriptionID);
+		OnChangeHandler handler = periodicScheduler == null ? this.notificationListenerMap.remove(subscriptionID)
+				: null;
+		if (periodicScheduler != null) {
+			periodicScheduler.quietClose();
 			LOG.info("Periodic subscription with ID '{}' successfully unregistered", subscriptionID);
-		} else if (this.notificationListenerMap.containsKey(subscriptionID)) {
-			this.notificationListenerMap.get(subscriptionID).quietClose();
-			this.notificationListenerMap.remove(subscriptionID);
+		} else if (handler != null) {
+			handler.quietClose();
+			releaseOnChangeRecorder(subscriptionID);
 			LOG.info("On change subscription with ID '{}' successfully unregistered", subscriptionID);
 		} else {
 			LOG.warn("Subscription ID '{}' not registered for periodic or on change notifications.", subscriptionID);
 		}
 	}
 
+	/**
+	 * Requests a resync of an on-change subscription, see
+	 * {@link OnChangeHandler#resync()}. The push-update is sent shortly after,
+	 * so the RPC reply goes first.
+	 * 
+	 * @param subscriptionID
+	 *            ID of the on-change subscription
+	 * @return True if the resync is scheduled, false if the subscription is
+	 *         no on-change subscription, not started yet or not active
+	 */
+	public boolean resync(String subscriptionID) {
+		OnChangeHandler handler = this.notificationListenerMap.get(subscriptionID);
+		SubscriptionInfo underlyingSub = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+		if (handler == null || !handler.isListening() || underlyingSub == null
+				|| underlyingSub.getSubscriptionStreamStatus() != SubscriptionStreamStatus.active) {
+			return false;
+		}
+		scheduler.schedule(() -> {
+			if (!handler.resync()) {
+				LOG.warn("Resync of subscription {} skipped, it is no longer active", subscriptionID);
+			}
+		}, YangpushProvider.DELAY_TO_ENSURE_RPC_REPLY, TimeUnit.MILLISECONDS);
+		return true;
+	}
+
+	/**
+	 * Hands recording of the changes over to another on change subscription
+	 * with the same replay key, if the given subscription was recording.
+	 */
+	private void releaseOnChangeRecorder(String subscriptionID) {
+		Long replayKey = onChangeReplayKeys.remove(subscriptionID);
+		if (replayKey != null && onChangeRecorders.remove(replayKey, subscriptionID)) {
+			for (Map.Entry<String, Long> entry : onChangeReplayKeys.entrySet()) {
+				if (replayKey.equals(entry.getValue())
+						&& onChangeRecorders.putIfAbsent(replayKey, entry.getKey()) == null) {
+					break;
+				}
+			}
+		}
+	}
+
 	/**
 	 * Transforms a data from the data store present as {@link NormalizedNode}
 	 * into its XML representation inside a {@link Document}.
@@ -472,7 +1213,7 @@ public class NotificationEngine {
 	 * @throws IOException
 	 * @throws XMLStreamException
 	 */
-	private static void writeNormalizedNode(final NormalizedNode<?, ?> normalized, final DOMResult result)
+	static void writeNormalizedNode(final NormalizedNode<?, ?> normalized, final DOMResult result)
 			throws IOException, XMLStreamException {
 		final XMLStreamWriter writer = NetconfUtil.XML_FACTORY.createXMLStreamWriter(result);
 		try (final NormalizedNodeStreamWriter normalizedNodeStreamWriter = XMLStreamNormalizedNodeStreamWriter
@@ -492,4 +1233,11 @@ public class NotificationEngine {
 			}
 		}
 	}
+
+	/**
+	 * Time spent filtering while a notification is encoded, not thread-safe.
+	 */
+	private static final class FilterTime {
+		private long nanos = 0;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Writer of the notification envelope around serialized content, i.e.
+ * notification element with event time and update element with subscription
+ * ID and time of update. The markup is kept as precomputed byte templates, so
+ * a notification is composed of shared segments plus the few bytes of
+ * subscription ID and timestamps, without building or serializing a DOM
+ * document. The output is the same as serializing the envelope built with DOM.
+ *
+ */
+final class NotificationEnvelope {
+	static final NotificationEnvelope PUSH_UPDATE_XML = new NotificationEnvelope(
+			PeriodicNotification.PUSH_UPDATE_NAMESPACE, PeriodicNotification.PUSH_UPDATE,
+			PeriodicNotification.CONTENT_XML);
+	static final NotificationEnvelope PUSH_UPDATE_JSON = new NotificationEnvelope(
+			PeriodicNotification.PUSH_UPDATE_NAMESPACE, PeriodicNotification.PUSH_UPDATE,
+			PeriodicNotification.CONTENT_JSON);
+	static final NotificationEnvelope PUSH_CHANGE_UPDATE_XML = new NotificationEnvelope(
+			OnChangeNotification.PUSH_CHANGE_UPDATE_NAMESPACE, OnChangeNotification.PUSH_CHANGE_UPDATE,
+			OnChangeNotification.CHANGES_XML);
+	static final NotificationEnvelope PUSH_CHANGE_UPDATE_JSON = new NotificationEnvelope(
+			OnChangeNotification.PUSH_CHANGE_UPDATE_NAMESPACE, OnChangeNotification.PUSH_CHANGE_UPDATE,
+			OnChangeNotification.CHANGES_JSON);
+
+	private static final byte[] EVENT_TIME_START = bytes("<" + PeriodicNotification.NOTIFICATION + " xmlns=\""
+			+ PeriodicNotification.NOTIFICATION_NAMESPACE + "\"><" + PeriodicNotification.EVENT_TIME + ">");
+	private static final byte[] TIME_OF_UPDATE_START = bytes(
+			"</" + PeriodicNotification.SUB_ID + "><" + PeriodicNotification.TIME_OF_UPDATE + ">");
+	private static final byte[] TIME_OF_UPDATE_END = bytes("</" + PeriodicNotification.TIME_OF_UPDATE + ">");
+	private static final byte[] NO_EXTENSIONS = new byte[0];
+	private static final String SEQUENCE_NUMBER = "sequence-number";
+	private static final String CHANGE_SEQUENCE = "change-sequence";
+
+	// Timestamps of the last notification, shared by all notifications of
+	// the same event time like the members of a periodic notification group
+	private static volatile Timestamps lastTimestamps = new Timestamps(new Date(0));
+
+	// </eventTime><push-update xmlns="..."><subscription-id>
+	private final byte[] updateStart;
+	// <datastore-contents-xml>
+	private final byte[] contentStart;
+	// </datastore-contents-xml></push-update></notification>
+	private final byte[] end;
+
+	private NotificationEnvelope(String updateNamespace, String updateName, String contentName) {
+		updateStart = bytes("</" + PeriodicNotification.EVENT_TIME + "><" + updateName + " xmlns=\""
+				+ EncodedNotificationContent.escape(updateNamespace) + "\"><" + PeriodicNotification.SUB_ID + ">");
+		contentStart = bytes("<" + contentName + ">");
+		end = bytes("</" + contentName + "></" + updateName + "></" + PeriodicNotification.NOTIFICATION + ">");
+	}
+
+	/**
+	 * @param json
+	 *            Whether the content is JSON encoded
+	 * @return Envelope of push-update notifications
+	 */
+	static NotificationEnvelope pushUpdate(boolean json) {
+		return json ? PUSH_UPDATE_JSON : PUSH_UPDATE_XML;
+	}
+
+	/**
+	 * @param json
+	 *            Whether the content is JSON encoded
+	 * @return Envelope of push-change-update notifications
+	 */
+	static NotificationEnvelope pushChangeUpdate(boolean json) {
+		return json ? PUSH_CHANGE_UPDATE_JSON : PUSH_CHANGE_UPDATE_XML;
+	}
+
+	/**
+	 * @param subscriptionID
+	 *            Underlying subscription ID
+	 * @param eventTime
+	 *            Time when this notification is send
+	 * @param content
+	 *            Serialized content, see {@link EncodedNotificationContent}
+	 * @return Segments of a notification with the given content, the content
+	 *         array is not copied
+	 */
+	byte[][] segments(String subscriptionID, Date eventTime, byte[] content) {
+		return segments(subscriptionID, eventTime, NO_EXTENSIONS, content);
+	}
+
+	/**
+	 * Like {@link #segments(String, Date, byte[])}, with the given elements
+	 * of yangpush-extensions added to the update element.
+	 *
+	 * @param extensions
+	 *            Serialized extension elements, e.g. from
+	 *            {@link #extensions(long)}
+	 */
+	byte[][] segments(String subscriptionID, Date eventTime, byte[] extensions, byte[] content) {
+		Preconditions.checkNotNull(eventTime);
+		Timestamps timestamps = timestamps(eventTime);
+		return new byte[][] { EVENT_TIME_START, timestamps.eventTime, updateStart,
+				bytes(EncodedNotificationContent.escape(subscriptionID)), TIME_OF_UPDATE_START, timestamps.timeOfUpdate,
+				TIME_OF_UPDATE_END, extensions, contentStart, content, end };
+	}
+
+	/**
+	 * @param sequenceNumber
+	 *            Sequence number of the update within its subscription
+	 * @return Serialized sequence-number element of yangpush-extensions
+	 */
+	static byte[] extensions(long sequenceNumber) {
+		return bytes(element(SEQUENCE_NUMBER, sequenceNumber));
+	}
+
+	/**
+	 * @param sequenceNumber
+	 *            Sequence number of the update within its subscription
+	 * @param changeSequence
+	 *            Number of changes included in a resync push-update
+	 * @return Serialized sequence-number and change-sequence elements of
+	 *         yangpush-extensions
+	 */
+	static byte[] extensions(long sequenceNumber, long changeSequence) {
+		return bytes(element(SEQUENCE_NUMBER, sequenceNumber) + element(CHANGE_SEQUENCE, changeSequence));
+	}
+
+	private static String element(String name, long value) {
+		return "<" + name + " xmlns=\"" + NotificationMetrics.YPX_NS + "\">" + Long.toUnsignedString(value) + "</"
+				+ name + ">";
+	}
+
+	private static Timestamps timestamps(Date eventTime) {
+		Timestamps timestamps = lastTimestamps;
+		if (timestamps.millis != eventTime.getTime()) {
+			timestamps = new Timestamps(eventTime);
+			lastTimestamps = timestamps;
+		}
+		return timestamps;
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static final class Timestamps {
+		private final long millis;
+		private final byte[] eventTime;
+		private final byte[] timeOfUpdate;
+
+		private Timestamps(Date time) {
+			this.millis = time.getTime();
+			this.eventTime = bytes(PeriodicNotification.formatEventTime(time));
+			this.timeOfUpdate = bytes(PeriodicNotification.formatTimeOfUpdate(time));
+		}
+	}
+}
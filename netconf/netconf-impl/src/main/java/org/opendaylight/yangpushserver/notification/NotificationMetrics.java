@@ -0,0 +1,479 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.opendaylight.yangpushserver.notification.NotificationScheduler.ScheduledTask;
+import org.opendaylight.yangpushserver.notification.SubscriptionMetrics.Stage;
+import org.opendaylight.yangpushserver.subscription.AdmissionController;
+import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.CollectionNodeBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the {@link SubscriptionMetrics} of all subscriptions, plus the
+ * stage latencies of all subscriptions together, recorded through the
+ * metrics of the subscriptions. The metrics are published
+ * periodically as statistics container of the subscriptions in the
+ * operational data store (see yangpush-extensions) and are available via JMX
+ * as {@link NotificationMetricsMXBean}.
+ *
+ */
+public class NotificationMetrics implements NotificationMetricsMXBean {
+	private static final Logger LOG = LoggerFactory.getLogger(NotificationMetrics.class);
+
+	public static final String OBJECT_NAME = "org.opendaylight.yangpush:type=NotificationMetrics";
+	// Default time in milliseconds between publications to the data store
+	public static final long DEFAULT_PUBLISH_INTERVAL = 10000l;
+
+	public static final String YPX_NS = "urn:opendaylight:params:xml:ns:yang:yangpush-extensions";
+	public static final String YPX_NS_DATE = "2016-12-01";
+	public static final QName X_STATISTICS_NAME = QName.create(YPX_NS, YPX_NS_DATE, "statistics");
+	private static final QName X_NOTIFICATIONS_SENT_NAME = QName.create(X_STATISTICS_NAME, "notifications-sent");
+	private static final QName X_BYTES_SENT_NAME = QName.create(X_STATISTICS_NAME, "bytes-sent");
+	private static final QName X_UPDATES_SUPPRESSED_NAME = QName.create(X_STATISTICS_NAME, "updates-suppressed");
+	private static final QName X_NOTIFICATIONS_DROPPED_NAME = QName.create(X_STATISTICS_NAME,
+			"notifications-dropped");
+	private static final QName X_NOTIFICATIONS_COALESCED_NAME = QName.create(X_STATISTICS_NAME,
+			"notifications-coalesced");
+	private static final QName X_LAST_SEQUENCE_NUMBER_NAME = QName.create(X_STATISTICS_NAME,
+			"last-sequence-number");
+	private static final QName X_SEQUENCE_GAPS_NAME = QName.create(X_STATISTICS_NAME, "sequence-gaps");
+	private static final QName X_SEQUENCE_NUMBERS_MISSED_NAME = QName.create(X_STATISTICS_NAME,
+			"sequence-numbers-missed");
+	private static final QName X_QUEUE_DEPTH_NAME = QName.create(X_STATISTICS_NAME, "queue-depth");
+	private static final QName X_COST_NAME = QName.create(X_STATISTICS_NAME, "cost");
+	private static final QName X_STAGE_LATENCY_NAME = QName.create(X_STATISTICS_NAME, "stage-latency");
+	private static final QName X_STAGE_NAME = QName.create(X_STATISTICS_NAME, "stage");
+	private static final QName X_COUNT_NAME = QName.create(X_STATISTICS_NAME, "count");
+	private static final QName X_MEAN_NAME = QName.create(X_STATISTICS_NAME, "mean");
+	private static final QName X_P50_NAME = QName.create(X_STATISTICS_NAME, "p50");
+	private static final QName X_P99_NAME = QName.create(X_STATISTICS_NAME, "p99");
+	private static final QName X_MAX_NAME = QName.create(X_STATISTICS_NAME, "max");
+
+	private final NotificationScheduler scheduler;
+	private final PriorityDispatcher dispatcher;
+	private final Map<String, SubscriptionMetrics> subscriptions = new ConcurrentHashMap<>();
+	// Not modified after construction
+	private final Map<Stage, LatencyHistogram> stageLatencies = new EnumMap<>(Stage.class);
+	// Queue depth by subscription ID, -1 if not known
+	private volatile ToIntFunction<String> queueDepths = subscriptionID -> -1;
+
+	// Guarded by this
+	private ScheduledTask publishTrigger = null;
+
+	/**
+	 * @param scheduler
+	 *            Scheduler triggering the publications
+	 * @param dispatcher
+	 *            Dispatcher whose queued tasks are reported
+	 */
+	public NotificationMetrics(NotificationScheduler scheduler, PriorityDispatcher dispatcher) {
+		this.scheduler = scheduler;
+		this.dispatcher = dispatcher;
+		for (Stage stage : Stage.values()) {
+			stageLatencies.put(stage, new LatencyHistogram());
+		}
+	}
+
+	/**
+	 * Starts keeping the metrics of an established subscription, until they
+	 * are discarded by {@link #remove(String)}.
+	 *
+	 * @param subscriptionID
+	 *            ID of the subscription
+	 */
+	public void register(String subscriptionID) {
+		subscriptions.putIfAbsent(subscriptionID, new SubscriptionMetrics(stageLatencies));
+	}
+
+	/**
+	 * Returns the metrics of a subscription. They are kept only for registered
+	 * subscriptions, the metrics returned for an unknown or deleted
+	 * subscription are discarded.
+	 *
+	 * @param subscriptionID
+	 *            ID of the subscription
+	 * @return Metrics of the subscription
+	 */
+	public SubscriptionMetrics get(String subscriptionID) {
+		SubscriptionMetrics metrics = subscriptions.get(subscriptionID);
+		return metrics == null ? new SubscriptionMetrics() : metrics;
+	}
+
+	/**
+	 * Discards the metrics of a deleted subscription.
+	 *
+	 * @param subscriptionID
+	 *            ID of the subscription
+	 */
+	public void remove(String subscriptionID) {
+		subscriptions.remove(subscriptionID);
+	}
+
+	/**
+	 * Records the time a notification spent in the given stage for the given
+	 * subscription.
+	 *
+	 * @param subscriptionID
+	 *            ID of the subscription
+	 * @param stage
+	 *            Stage of the notification path
+	 * @param nanos
+	 *            Time in nanoseconds
+	 */
+	public void record(String subscriptionID, Stage stage, long nanos) {
+		get(subscriptionID).record(stage, nanos);
+	}
+
+	/**
+	 * Records the time a notification shared by the given subscriptions, e.g.
+	 * a periodic notification group, spent in the given stage.
+	 *
+	 * @param subscriptionIDs
+	 *            IDs of the subscriptions
+	 * @param stage
+	 *            Stage of the notification path
+	 * @param nanos
+	 *            Time in nanoseconds
+	 */
+	public void record(Collection<String> subscriptionIDs, Stage stage, long nanos) {
+		for (String subscriptionID : subscriptionIDs) {
+			get(subscriptionID).record(stage, nanos);
+		}
+	}
+
+	/**
+	 * @param queueDepths
+	 *            Function returning the number of notifications queued for a
+	 *            subscription, -1 if unknown
+	 */
+	public void setQueueDepths(ToIntFunction<String> queueDepths) {
+		this.queueDepths = queueDepths;
+	}
+
+	/**
+	 * Starts publishing the metrics to the operational data store.
+	 *
+	 * @param interval
+	 *            Time in milliseconds between two publications
+	 */
+	public synchronized void startPublishing(long interval) {
+		stopPublishing();
+		publishTrigger = scheduler.scheduleAtFixedRate(this::publish, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops publishing the metrics.
+	 */
+	public synchronized void stopPublishing() {
+		if (publishTrigger != null) {
+			publishTrigger.cancel();
+			publishTrigger = null;
+		}
+	}
+
+	private void publish() {
+		for (Map.Entry<String, SubscriptionMetrics> entry : subscriptions.entrySet()) {
+			try {
+				SubscriptionEngine.getInstance().publishStatistics(entry.getKey(),
+						toStatisticsNode(entry.getKey(), entry.getValue()));
+			} catch (RuntimeException e) {
+				LOG.warn("Publishing statistics of subscription {} failed", entry.getKey(), e);
+			}
+		}
+	}
+
+	/**
+	 * Publishes the metrics of one subscription to the operational data store
+	 * right away, e.g. after its entry was replaced.
+	 *
+	 * @param subscriptionID
+	 *            ID of the subscription
+	 */
+	public void publish(String subscriptionID) {
+		SubscriptionMetrics metrics = subscriptions.get(subscriptionID);
+		if (metrics != null) {
+			SubscriptionEngine.getInstance().publishStatistics(subscriptionID,
+					toStatisticsNode(subscriptionID, metrics));
+		}
+	}
+
+	private ContainerNode toStatisticsNode(String subscriptionID, SubscriptionMetrics metrics) {
+		CollectionNodeBuilder<MapEntryNode, MapNode> stages = ImmutableNodes.mapNodeBuilder(X_STAGE_LATENCY_NAME);
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram latency = metrics.getLatency(stage);
+			stages.withChild(ImmutableNodes.mapEntryBuilder(X_STAGE_LATENCY_NAME, X_STAGE_NAME, stage.name())
+					.withChild(ImmutableNodes.leafNode(X_COUNT_NAME, BigInteger.valueOf(latency.getCount())))
+					.withChild(ImmutableNodes.leafNode(X_MEAN_NAME, BigInteger.valueOf(latency.getMean())))
+					.withChild(ImmutableNodes.leafNode(X_P50_NAME, BigInteger.valueOf(latency.getPercentile(50))))
+					.withChild(ImmutableNodes.leafNode(X_P99_NAME, BigInteger.valueOf(latency.getPercentile(99))))
+					.withChild(ImmutableNodes.leafNode(X_MAX_NAME, BigInteger.valueOf(latency.getMax()))).build());
+		}
+		return Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(X_STATISTICS_NAME))
+				.withChild(ImmutableNodes.leafNode(X_NOTIFICATIONS_SENT_NAME,
+						BigInteger.valueOf(metrics.getNotificationsSent())))
+				.withChild(ImmutableNodes.leafNode(X_BYTES_SENT_NAME, BigInteger.valueOf(metrics.getBytesSent())))
+				.withChild(ImmutableNodes.leafNode(X_UPDATES_SUPPRESSED_NAME,
+						BigInteger.valueOf(metrics.getUpdatesSuppressed())))
+				.withChild(ImmutableNodes.leafNode(X_NOTIFICATIONS_DROPPED_NAME,
+						BigInteger.valueOf(metrics.getNotificationsDropped())))
+				.withChild(ImmutableNodes.leafNode(X_NOTIFICATIONS_COALESCED_NAME,
+						BigInteger.valueOf(metrics.getNotificationsCoalesced())))
+				.withChild(ImmutableNodes.leafNode(X_LAST_SEQUENCE_NUMBER_NAME,
+						BigInteger.valueOf(metrics.getLastSequenceNumber())))
+				.withChild(ImmutableNodes.leafNode(X_SEQUENCE_GAPS_NAME,
+						BigInteger.valueOf(metrics.getSequenceGaps())))
+				.withChild(ImmutableNodes.leafNode(X_SEQUENCE_NUMBERS_MISSED_NAME,
+						BigInteger.valueOf(metrics.getSequenceNumbersMissed())))
+				.withChild(ImmutableNodes.leafNode(X_QUEUE_DEPTH_NAME,
+						(long) Math.max(0, queueDepths.applyAsInt(subscriptionID))))
+				.withChild(ImmutableNodes.leafNode(X_COST_NAME,
+						BigInteger.valueOf(AdmissionController.getInstance().getCost(subscriptionID))))
+				.withChild(stages.build()).build();
+	}
+
+	/**
+	 * Registers the metrics at the platform MBean server as
+	 * {@value #OBJECT_NAME}, replacing a previous registration.
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			LOG.warn("Registering notification metrics MBean failed", e);
+		}
+	}
+
+	/**
+	 * Removes the registration at the platform MBean server.
+	 */
+	public void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			LOG.warn("Unregistering notification metrics MBean failed", e);
+		}
+	}
+
+	@Override
+	public long getBudget() {
+		return AdmissionController.getInstance().getBudget();
+	}
+
+	@Override
+	public long getUsedBudget() {
+		return AdmissionController.getInstance().getUsedBudget();
+	}
+
+	@Override
+	public int getQueuedTasks() {
+		return dispatcher.getQueuedTaskCount() + scheduler.getQueuedTaskCount();
+	}
+
+	@Override
+	public Map<String, StageStatistics> getStageLatencies() {
+		Map<String, StageStatistics> latencies = new LinkedHashMap<>();
+		for (Stage stage : Stage.values()) {
+			latencies.put(stage.name(), StageStatistics.of(stageLatencies.get(stage)));
+		}
+		return latencies;
+	}
+
+	@Override
+	public Map<String, SubscriptionStatistics> getSubscriptionStatistics() {
+		Map<String, SubscriptionStatistics> statistics = new TreeMap<>();
+		for (Map.Entry<String, SubscriptionMetrics> entry : subscriptions.entrySet()) {
+			SubscriptionMetrics metrics = entry.getValue();
+			Map<String, StageStatistics> latencies = new LinkedHashMap<>();
+			for (Stage stage : Stage.values()) {
+				latencies.put(stage.name(), StageStatistics.of(metrics.getLatency(stage)));
+			}
+			statistics.put(entry.getKey(),
+					new SubscriptionStatistics(metrics.getNotificationsSent(), metrics.getBytesSent(),
+							metrics.getUpdatesSuppressed(), metrics.getNotificationsDropped(),
+							metrics.getNotificationsCoalesced(), metrics.getLastSequenceNumber(),
+							metrics.getSequenceGaps(), metrics.getSequenceNumbersMissed(),
+							queueDepths.applyAsInt(entry.getKey()),
+							AdmissionController.getInstance().getCost(entry.getKey()), latencies));
+		}
+		return statistics;
+	}
+
+	/**
+	 * Snapshot of a {@link LatencyHistogram}, latencies in microseconds.
+	 */
+	public static final class StageStatistics {
+		private final long count;
+		private final long mean;
+		private final long p50;
+		private final long p99;
+		private final long max;
+
+		@ConstructorProperties({ "count", "mean", "p50", "p99", "max" })
+		public StageStatistics(long count, long mean, long p50, long p99, long max) {
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.max = max;
+		}
+
+		static StageStatistics of(LatencyHistogram histogram) {
+			return new StageStatistics(histogram.getCount(), histogram.getMean(), histogram.getPercentile(50),
+					histogram.getPercentile(99), histogram.getMax());
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getMax() {
+			return max;
+		}
+	}
+
+	/**
+	 * Snapshot of the {@link SubscriptionMetrics} of one subscription.
+	 */
+	public static final class SubscriptionStatistics {
+		private final long notificationsSent;
+		private final long bytesSent;
+		private final long updatesSuppressed;
+		private final long notificationsDropped;
+		private final long notificationsCoalesced;
+		private final long lastSequenceNumber;
+		private final long sequenceGaps;
+		private final long sequenceNumbersMissed;
+		private final int queueDepth;
+		private final long cost;
+		private final Map<String, StageStatistics> latencies;
+
+		@ConstructorProperties({ "notificationsSent", "bytesSent", "updatesSuppressed", "notificationsDropped",
+				"notificationsCoalesced", "lastSequenceNumber", "sequenceGaps", "sequenceNumbersMissed", "queueDepth",
+				"cost", "latencies" })
+		public SubscriptionStatistics(long notificationsSent, long bytesSent, long updatesSuppressed,
+				long notificationsDropped, long notificationsCoalesced, long lastSequenceNumber, long sequenceGaps,
+				long sequenceNumbersMissed, int queueDepth, long cost, Map<String, StageStatistics> latencies) {
+			this.notificationsSent = notificationsSent;
+			this.bytesSent = bytesSent;
+			this.updatesSuppressed = updatesSuppressed;
+			this.notificationsDropped = notificationsDropped;
+			this.notificationsCoalesced = notificationsCoalesced;
+			this.lastSequenceNumber = lastSequenceNumber;
+			this.sequenceGaps = sequenceGaps;
+			this.sequenceNumbersMissed = sequenceNumbersMissed;
+			this.queueDepth = queueDepth;
+			this.cost = cost;
+			this.latencies = Collections.unmodifiableMap(latencies);
+		}
+
+		public long getNotificationsSent() {
+			return notificationsSent;
+		}
+
+		public long getBytesSent() {
+			return bytesSent;
+		}
+
+		public long getUpdatesSuppressed() {
+			return updatesSuppressed;
+		}
+
+		public long getNotificationsDropped() {
+			return notificationsDropped;
+		}
+
+		public long getNotificationsCoalesced() {
+			return notificationsCoalesced;
+		}
+
+		public long getLastSequenceNumber() {
+			return lastSequenceNumber;
+		}
+
+		/**
+		 * @return Number of gaps in the sequence numbers written to the
+		 *         session
+		 */
+		public long getSequenceGaps() {
+			return sequenceGaps;
+		}
+
+		public long getSequenceNumbersMissed() {
+			return sequenceNumbersMissed;
+		}
+
+		/**
+		 * @return Number of queued notifications, -1 if unknown
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * @return Estimated cost in bytes per second, see
+		 *         {@link AdmissionController}
+		 */
+		public long getCost() {
+			return cost;
+		}
+
+		/**
+		 * @return Latencies by stage
+		 */
+		public Map<String, StageStatistics> getLatencies() {
+			return latencies;
+		}
+	}
+}
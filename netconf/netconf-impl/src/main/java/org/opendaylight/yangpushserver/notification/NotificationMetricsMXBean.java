@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.Map;
+
+import org.opendaylight.yangpushserver.notification.NotificationMetrics.StageStatistics;
+import org.opendaylight.yangpushserver.notification.NotificationMetrics.SubscriptionStatistics;
+
+/**
+ * JMX view of the yang-push notification metrics, see
+ * {@link NotificationMetrics}.
+ *
+ */
+public interface NotificationMetricsMXBean {
+
+	/**
+	 * @return Notification budget in bytes per second
+	 */
+	long getBudget();
+
+	/**
+	 * @return Part of the notification budget in bytes per second reserved by
+	 *         the admitted subscriptions
+	 */
+	long getUsedBudget();
+
+	/**
+	 * @return Number of notification tasks waiting for a worker
+	 */
+	int getQueuedTasks();
+
+	/**
+	 * @return Latencies of all subscriptions by stage
+	 */
+	Map<String, StageStatistics> getStageLatencies();
+
+	/**
+	 * @return Statistics by subscription ID
+	 */
+	Map<String, SubscriptionStatistics> getSubscriptionStatistics();
+}
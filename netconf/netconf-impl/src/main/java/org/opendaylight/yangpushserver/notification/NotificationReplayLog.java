@@ -0,0 +1,496 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+
+/**
+ * Append-only log of the sent push-update and push-change-update
+ * notifications, used to replay notifications to subscriptions with a start
+ * time in the past. The log consists of memory-mapped segment files of fixed
+ * size in a directory, a new segment is started when the current one is
+ * full. Oldest segments are deleted when the log exceeds its size or when all
+ * of their records exceeded the maximum age.
+ * <p>
+ * Only the serialized content of the notifications is recorded together with
+ * its event time and the replay key of the subscriptions that received it.
+ * Appends are handed over to a single writer thread and copy the content
+ * straight into the mapped segment, so the notification path neither waits
+ * for the log nor allocates buffers for it. If the writer cannot keep up,
+ * records are dropped instead of blocking.
+ * <p>
+ * Record layout: length of content (int, 0 marks the end of the segment),
+ * event time (long), replay key (long), type (byte), JSON flag (byte),
+ * content.
+ *
+ */
+public class NotificationReplayLog implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(NotificationReplayLog.class);
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	public static final long DEFAULT_MAX_BYTES = 1024l * 1024 * 1024;
+	public static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+	public static final String DEFAULT_DIRECTORY = "data/yangpush-replay";
+
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final int HEADER_SIZE = 4 + 8 + 8 + 1 + 1;
+	// A time index entry is added whenever this many bytes were written
+	private static final int INDEX_INTERVAL = 64 * 1024;
+	private static final int WRITER_QUEUE_CAPACITY = 4096;
+	private static final long REPLAY_BARRIER_TIMEOUT = 5000l;
+
+	public enum RecordType {
+		push_update, push_change_update
+	}
+
+	/**
+	 * Receives the records found by
+	 * {@link NotificationReplayLog#replay(long, long, long, ReplayHandler)}.
+	 */
+	public interface ReplayHandler {
+		void onRecord(long eventTime, RecordType type, EncodedNotificationContent content);
+	}
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long maxBytes;
+	private final long maxAge;
+	private final ThreadPoolExecutor writer;
+	private final AtomicLong droppedRecords = new AtomicLong();
+
+	// Segments oldest first, the last one is written to. Guarded by this.
+	private final List<Segment> segments = new ArrayList<>();
+	private boolean closed = false;
+
+	/**
+	 * Opens the log in the given directory, records of segments existing from
+	 * previous runs are kept.
+	 *
+	 * @param directory
+	 *            Directory of the segment files, created if not existing
+	 * @param segmentSize
+	 *            Size of a segment file in bytes
+	 * @param maxBytes
+	 *            Maximum size of all segments in bytes
+	 * @param maxAge
+	 *            Time in milliseconds records are kept at least
+	 * @throws IOException
+	 *             If the directory or segments cannot be opened
+	 */
+	public NotificationReplayLog(Path directory, int segmentSize, long maxBytes, long maxAge) throws IOException {
+		Preconditions.checkArgument(segmentSize > HEADER_SIZE, "Segment size too small");
+		Preconditions.checkArgument(maxBytes >= segmentSize, "Log smaller than a segment");
+		Preconditions.checkArgument(maxAge > 0, "Maximum age has to be positive");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxBytes = maxBytes;
+		this.maxAge = maxAge;
+
+		Files.createDirectories(directory);
+		recover();
+		if (segments.isEmpty()) {
+			segments.add(Segment.create(directory, 0, segmentSize));
+		}
+		this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(WRITER_QUEUE_CAPACITY), r -> {
+					Thread thread = new Thread(r, "yangpush-replay-log");
+					thread.setDaemon(true);
+					return thread;
+				});
+		LOG.info("Notification replay log opened in {} with {} segments", directory, segments.size());
+	}
+
+	/**
+	 * Creates the replay key of notifications. Subscriptions with the same
+	 * key receive the same notifications and replay each others records.
+	 *
+	 * @param key
+	 *            Key of the notification content, e.g. the
+	 *            {@link PeriodicNotificationGroup} key
+	 * @return 64 bit hash of the key
+	 */
+	public static long replayKey(String key) {
+		return Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong();
+	}
+
+	/**
+	 * Records the notification content asynchronously, never blocks.
+	 *
+	 * @param replayKey
+	 *            Key as returned by {@link #replayKey(String)}
+	 * @param eventTime
+	 *            Event time of the notification in milliseconds since epoch
+	 * @param type
+	 *            Type of the notification
+	 * @param content
+	 *            Serialized content of the notification
+	 */
+	public void append(long replayKey, long eventTime, RecordType type, EncodedNotificationContent content) {
+		try {
+			writer.execute(() -> write(replayKey, eventTime, type, content));
+		} catch (RejectedExecutionException e) {
+			if (droppedRecords.getAndIncrement() % 1000 == 0) {
+				LOG.warn("Notification replay log cannot keep up, {} records dropped so far", droppedRecords.get());
+			}
+		}
+	}
+
+	/**
+	 * Writes a record into the current segment, starts a new segment if it
+	 * does not fit anymore. Only called by the writer thread.
+	 */
+	private void write(long replayKey, long eventTime, RecordType type, EncodedNotificationContent content) {
+		byte[] bytes = content.getContent();
+		if (HEADER_SIZE + bytes.length + 4 > segmentSize) {
+			LOG.warn("Notification of {} bytes exceeds replay log segment size, not recorded", bytes.length);
+			droppedRecords.incrementAndGet();
+			return;
+		}
+		final Segment segment;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			Segment current = segments.get(segments.size() - 1);
+			if (current.remaining() < HEADER_SIZE + bytes.length + 4) {
+				try {
+					current = Segment.create(directory, current.sequence + 1, segmentSize);
+				} catch (IOException e) {
+					LOG.warn("Unable to create replay log segment, notification not recorded", e);
+					droppedRecords.incrementAndGet();
+					return;
+				}
+				segments.add(current);
+			}
+			segment = current;
+			enforceRetention(System.currentTimeMillis());
+		}
+		segment.append(replayKey, eventTime, (byte) type.ordinal(), content.isJson(), bytes);
+	}
+
+	/**
+	 * Deletes the oldest segments while the log is too large or all records
+	 * of the oldest segment are too old. The current segment is never
+	 * deleted.
+	 */
+	private void enforceRetention(long now) {
+		while (segments.size() > 1) {
+			Segment oldest = segments.get(0);
+			if ((long) segments.size() * segmentSize <= maxBytes && oldest.getMaxTime() >= now - maxAge) {
+				return;
+			}
+			segments.remove(0);
+			oldest.delete();
+		}
+	}
+
+	/**
+	 * Replays all records of the given key with an event time in the given
+	 * range, in the order they were recorded. Records appended before this
+	 * call are included.
+	 *
+	 * @param replayKey
+	 *            Key as returned by {@link #replayKey(String)}
+	 * @param fromTime
+	 *            Earliest event time in milliseconds since epoch
+	 * @param toTime
+	 *            Latest event time in milliseconds since epoch
+	 * @param handler
+	 *            Receives the records
+	 * @return Number of replayed records
+	 */
+	public int replay(long replayKey, long fromTime, long toTime, ReplayHandler handler) {
+		awaitPendingWrites();
+		final List<Segment> snapshot;
+		synchronized (this) {
+			snapshot = new ArrayList<>(segments);
+		}
+		int replayed = 0;
+		for (Segment segment : snapshot) {
+			if (segment.getMaxTime() < fromTime || segment.getMinTime() > toTime) {
+				continue;
+			}
+			replayed += segment.replay(replayKey, fromTime, toTime, handler);
+		}
+		LOG.info("{} notifications replayed from {} to {}", replayed, fromTime, toTime);
+		return replayed;
+	}
+
+	private void awaitPendingWrites() {
+		try {
+			Future<?> barrier = writer.submit(() -> {
+				// All writes queued before are done
+			});
+			barrier.get(REPLAY_BARRIER_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException | ExecutionException | TimeoutException e) {
+			LOG.warn("Replay may miss the latest notifications, pending writes not completed", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return Event time of the oldest record in milliseconds since epoch or
+	 *         {@link Long#MAX_VALUE} if the log is empty
+	 */
+	public synchronized long getOldestEventTime() {
+		long oldest = Long.MAX_VALUE;
+		for (Segment segment : segments) {
+			oldest = Math.min(oldest, segment.getMinTime());
+		}
+		return oldest;
+	}
+
+	/**
+	 * @return Number of records that were not recorded
+	 */
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+
+	/**
+	 * @return Number of segment files
+	 */
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Opens the segments of previous runs and rebuilds their time index.
+	 */
+	private void recover() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		files.sort(null);
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			try {
+				long sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+				segments.add(Segment.open(file, sequence, segmentSize));
+			} catch (NumberFormatException | IOException e) {
+				LOG.warn("Ignoring replay log segment {}", file, e);
+			}
+		}
+	}
+
+	/**
+	 * Stops the writer after the pending writes and releases the segments.
+	 * Segment files are kept for the next run.
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(REPLAY_BARRIER_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			closed = true;
+			for (Segment segment : segments) {
+				segment.force();
+				segment.closeChannel();
+			}
+		}
+		LOG.info("Notification replay log in {} closed", directory);
+	}
+
+	/**
+	 * Memory-mapped segment file. Written by the writer thread only, read
+	 * concurrently by replays up to the committed position.
+	 */
+	private static final class Segment {
+		private final long sequence;
+		private final Path file;
+		private final FileChannel channel;
+		// Position is owned by the writer, readers use absolute access
+		private final MappedByteBuffer buffer;
+		private volatile int committed;
+		// Time range and sparse time index, guarded by this
+		private long minTime = Long.MAX_VALUE;
+		private long maxTime = Long.MIN_VALUE;
+		// Entry i: Maximum event time of all records before position i
+		private long[] indexTimes = new long[16];
+		private int[] indexPositions = new int[16];
+		private int indexSize = 0;
+		private int lastIndexed = -INDEX_INTERVAL;
+
+		private Segment(long sequence, Path file, FileChannel channel, MappedByteBuffer buffer) {
+			this.sequence = sequence;
+			this.file = file;
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+
+		private static Segment create(Path directory, long sequence, int size) throws IOException {
+			Path file = directory.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+			Segment segment = open(file, sequence, size);
+			LOG.debug("Replay log segment {} created", file);
+			return segment;
+		}
+
+		private static Segment open(Path file, long sequence, int size) throws IOException {
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			Segment segment = new Segment(sequence, file, channel, channel.map(MapMode.READ_WRITE, 0, size));
+			segment.scan();
+			return segment;
+		}
+
+		/**
+		 * Restores the write position and time index from the records in
+		 * the file.
+		 */
+		private void scan() {
+			int position = 0;
+			while (position + HEADER_SIZE <= buffer.capacity()) {
+				int length = buffer.getInt(position);
+				if (length <= 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+					break;
+				}
+				indexed(position, buffer.getLong(position + 4));
+				position += HEADER_SIZE + length;
+			}
+			buffer.position(position);
+			committed = position;
+		}
+
+		private int remaining() {
+			return buffer.capacity() - buffer.position();
+		}
+
+		private void append(long replayKey, long eventTime, byte type, boolean json, byte[] content) {
+			int position = buffer.position();
+			// Length is written last, so incomplete records end the segment
+			buffer.position(position + 4);
+			buffer.putLong(eventTime);
+			buffer.putLong(replayKey);
+			buffer.put(type);
+			buffer.put(json ? (byte) 1 : (byte) 0);
+			buffer.put(content);
+			// Terminate the segment in case of leftovers of a crashed run
+			buffer.putInt(buffer.position(), 0);
+			buffer.putInt(position, content.length);
+			indexed(position, eventTime);
+			committed = buffer.position();
+		}
+
+		private synchronized void indexed(int position, long eventTime) {
+			if (position - lastIndexed >= INDEX_INTERVAL) {
+				if (indexSize == indexTimes.length) {
+					indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+					indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+				}
+				indexTimes[indexSize] = maxTime;
+				indexPositions[indexSize] = position;
+				indexSize++;
+				lastIndexed = position;
+			}
+			minTime = Math.min(minTime, eventTime);
+			maxTime = Math.max(maxTime, eventTime);
+		}
+
+		/**
+		 * @return Position to start reading records with the given event
+		 *         time or later
+		 */
+		private synchronized int seek(long fromTime) {
+			int start = 0;
+			for (int i = 0; i < indexSize && indexTimes[i] < fromTime; i++) {
+				start = indexPositions[i];
+			}
+			return start;
+		}
+
+		private int replay(long replayKey, long fromTime, long toTime, ReplayHandler handler) {
+			ByteBuffer reader = buffer.duplicate();
+			int end = committed;
+			int position = seek(fromTime);
+			int replayed = 0;
+			while (position < end) {
+				int length = reader.getInt(position);
+				long eventTime = reader.getLong(position + 4);
+				if (reader.getLong(position + 12) == replayKey && eventTime >= fromTime && eventTime <= toTime) {
+					RecordType type = RecordType.values()[reader.get(position + 20)];
+					boolean json = reader.get(position + 21) != 0;
+					byte[] content = new byte[length];
+					reader.position(position + HEADER_SIZE);
+					reader.get(content);
+					handler.onRecord(eventTime, type, new EncodedNotificationContent(content, json));
+					replayed++;
+				}
+				position += HEADER_SIZE + length;
+			}
+			return replayed;
+		}
+
+		private synchronized long getMinTime() {
+			return minTime;
+		}
+
+		private synchronized long getMaxTime() {
+			return maxTime;
+		}
+
+		private void force() {
+			buffer.force();
+		}
+
+		private void closeChannel() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOG.warn("Unable to close replay log segment {}", file, e);
+			}
+		}
+
+		/**
+		 * Deletes the segment file. Replays still reading the segment keep
+		 * the mapping until they are done.
+		 */
+		private void delete() {
+			closeChannel();
+			try {
+				Files.deleteIfExists(file);
+				LOG.debug("Replay log segment {} deleted", file);
+			} catch (IOException e) {
+				LOG.warn("Unable to delete replay log segment {}", file, e);
+			}
+		}
+	}
+}
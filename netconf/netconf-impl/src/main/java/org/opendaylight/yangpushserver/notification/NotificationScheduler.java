@@ -0,0 +1,280 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+/**
+ * Scheduler shared by all YANG-PUSH subscriptions. Timers (start and stop
+ * times, periods, dampening periods) are kept in a hashed timing wheel, so
+ * arming and cancelling a timer is O(1) regardless of the number of
+ * subscriptions. Expired timers are handed over to a small bounded worker
+ * pool which does the actual notification processing; the wheel thread
+ * itself never runs subscription code. If the worker queue is full, an
+ * expired periodic timer is skipped for this period, while a one-shot timer
+ * is re-armed for the next tick of the wheel so it is never lost.
+ *
+ * The number of threads used by this scheduler is fixed (one wheel thread
+ * plus the configured number of workers) and does not grow with the number
+ * of subscriptions.
+ *
+ */
+public class NotificationScheduler implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(NotificationScheduler.class);
+
+	public static final long DEFAULT_TICK_DURATION = 10l;
+	public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+	public static final int DEFAULT_WORKER_QUEUE_CAPACITY = 16384;
+	public static final int DEFAULT_WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+
+	private final String threadNamePrefix;
+	private final long retryDelayNanos;
+	private final HashedWheelTimer wheel;
+	private final ThreadPoolExecutor workers;
+
+	/**
+	 * Creates a scheduler with default wheel resolution and worker pool size.
+	 */
+	public NotificationScheduler() {
+		this(DEFAULT_WORKER_THREADS, DEFAULT_WORKER_QUEUE_CAPACITY, DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * @param workerThreads
+	 *            Number of threads processing expired timers
+	 * @param workerQueueCapacity
+	 *            Maximum number of expired timers waiting for a worker. If the
+	 *            queue is full an expired periodic timer is skipped for this
+	 *            round, a one-shot timer is retried on the next tick.
+	 * @param tickDuration
+	 *            Resolution of the timing wheel in milliseconds
+	 * @param ticksPerWheel
+	 *            Number of buckets of the timing wheel
+	 */
+	public NotificationScheduler(int workerThreads, int workerQueueCapacity, long tickDuration, int ticksPerWheel) {
+		Preconditions.checkArgument(workerThreads > 0, "At least one worker thread is required");
+		this.threadNamePrefix = "yangpush-" + INSTANCE_COUNTER.incrementAndGet() + "-";
+		this.retryDelayNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+		this.wheel = new HashedWheelTimer(new NamedThreadFactory(threadNamePrefix + "timer"), tickDuration,
+				TimeUnit.MILLISECONDS, ticksPerWheel);
+		this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0l, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(workerQueueCapacity),
+				new NamedThreadFactory(threadNamePrefix + "worker"));
+		this.wheel.start();
+	}
+
+	/**
+	 * Runs the given task once after the given delay. The task is not skipped
+	 * if the worker queue is full, but delayed until a worker accepts it.
+	 *
+	 * @param task
+	 *            Task executed on a worker thread
+	 * @param delay
+	 *            Delay until execution
+	 * @param unit
+	 *            Unit of the delay
+	 * @return Handle used to cancel the task
+	 */
+	public ScheduledTask schedule(Runnable task, long delay, TimeUnit unit) {
+		ScheduledTask scheduled = new ScheduledTask(task, 0l);
+		scheduled.arm(unit.toNanos(Math.max(0l, delay)));
+		return scheduled;
+	}
+
+	/**
+	 * Runs the given task periodically. Deadlines are computed from the first
+	 * deadline and the period, so a late execution does not shift the
+	 * following ones.
+	 *
+	 * @param task
+	 *            Task executed on a worker thread
+	 * @param initialDelay
+	 *            Delay until the first execution
+	 * @param period
+	 *            Time between two executions
+	 * @param unit
+	 *            Unit of the delay and period
+	 * @return Handle used to cancel the task
+	 */
+	public ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+		Preconditions.checkArgument(period > 0, "Period has to be positive");
+		ScheduledTask scheduled = new ScheduledTask(task, unit.toNanos(period));
+		scheduled.arm(unit.toNanos(Math.max(0l, initialDelay)));
+		return scheduled;
+	}
+
+	/**
+	 * Runs the given task on a worker thread as soon as possible.
+	 *
+	 * @param task
+	 *            Task to execute
+	 * @return true if the task was accepted, false if the worker queue is full
+	 */
+	public boolean execute(Runnable task) {
+		if (submit(task)) {
+			return true;
+		}
+		LOG.warn("Notification worker queue is full, task {} is skipped", task);
+		return false;
+	}
+
+	/**
+	 * @return true if the task was accepted, false if the worker queue is full
+	 */
+	private boolean submit(Runnable task) {
+		try {
+			workers.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return Bounded worker pool as executor, e.g. to run future callbacks.
+	 *         Tasks are rejected with a
+	 *         {@link RejectedExecutionException} if the worker queue is full.
+	 */
+	public Executor getExecutor() {
+		return workers;
+	}
+
+	/**
+	 * @return Number of threads processing notifications
+	 */
+	public int getWorkerThreadCount() {
+		return workers.getMaximumPoolSize();
+	}
+
+	/**
+	 * @return Prefix of the names of all threads owned by this scheduler
+	 */
+	public String getThreadNamePrefix() {
+		return threadNamePrefix;
+	}
+
+	/**
+	 * @return Number of expired timers waiting for a worker
+	 */
+	public int getQueuedTaskCount() {
+		return workers.getQueue().size();
+	}
+
+	@Override
+	public void close() {
+		wheel.stop();
+		workers.shutdownNow();
+	}
+
+	/**
+	 * Handle for a task scheduled at the {@link NotificationScheduler}.
+	 */
+	public final class ScheduledTask implements TimerTask, AutoCloseable {
+		private final Runnable task;
+		private final long periodNanos;
+		private volatile boolean cancelled = false;
+		private volatile Timeout timeout;
+		private long nextDeadline;
+
+		private ScheduledTask(Runnable task, long periodNanos) {
+			this.task = Preconditions.checkNotNull(task);
+			this.periodNanos = periodNanos;
+		}
+
+		private synchronized void arm(long delayNanos) {
+			nextDeadline = System.nanoTime() + delayNanos;
+			timeout = wheel.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public void run(Timeout expired) {
+			if (cancelled) {
+				return;
+			}
+			if (periodNanos > 0) {
+				synchronized (this) {
+					if (cancelled) {
+						return;
+					}
+					nextDeadline += periodNanos;
+					timeout = wheel.newTimeout(this, Math.max(0l, nextDeadline - System.nanoTime()),
+							TimeUnit.NANOSECONDS);
+				}
+				execute(task);
+			} else if (!submit(task)) {
+				// One-shot tasks (stop times, flushes, ...) must not get lost,
+				// retry once the workers caught up
+				synchronized (this) {
+					if (cancelled) {
+						return;
+					}
+					LOG.debug("Notification worker queue is full, task {} is retried", task);
+					timeout = wheel.newTimeout(this, retryDelayNanos, TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+
+		/**
+		 * @return true if this task was cancelled
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Cancels this task. An execution that was already handed over to a
+		 * worker thread is not interrupted.
+		 */
+		public void cancel() {
+			synchronized (this) {
+				cancelled = true;
+				if (timeout != null) {
+					timeout.cancel();
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			cancel();
+		}
+	}
+
+	private static final class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		private NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -7,7 +7,6 @@
  */
 package org.opendaylight.yangpushserver.notification;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -26,6 +25,7 @@ import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.event.notif
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.push.rev160615.push.change.update.Encoding;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
 import org.opendaylight.yangpushserver.subscription.SubscriptionInfo;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.ChangeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -169,14 +169,13 @@ public final class OAMNotification extends NetconfMessage {
 		Preconditions.checkNotNull(base);
 		Preconditions.checkNotNull(eventTime);
 
-		LOG.info("Start composing '{}' notification of subscription with ID {}...", status, subscriptionID);
+		LOG.debug("Start composing '{}' notification of subscription with ID {}...", status, subscriptionID);
 
 		final Element entireNotification = base.createElementNS(PeriodicNotification.NOTIFICATION_NAMESPACE,
 				PeriodicNotification.NOTIFICATION);
 
 		final Element eventTimeElement = base.createElement(PeriodicNotification.EVENT_TIME);
-		eventTimeElement
-				.setTextContent(getSerializedEventTime(eventTime, PeriodicNotification.RFC3339_DATE_FORMAT_BLUEPRINT));
+		eventTimeElement.setTextContent(PeriodicNotification.formatEventTime(eventTime));
 		entireNotification.appendChild(eventTimeElement);
 
 		final Element notifiationType = base.createElementNS(statusToNamespace.get(status), statusToName.get(status));
@@ -212,7 +211,11 @@ public final class OAMNotification extends NetconfMessage {
 				stopTime.setTextContent(underlyingSubscription.getStopTime());
 				notifiationType.appendChild(stopTime);
 			}
-			if (underlyingSubscription.getFilter() != null) {
+			if (underlyingSubscription.getXPathFilter() != null) {
+				final Element xpathFilter = base.createElement("xpath-filter");
+				xpathFilter.setTextContent(underlyingSubscription.getXPathFilter());
+				notifiationType.appendChild(xpathFilter);
+			} else if (underlyingSubscription.getFilter() != null) {
 				notifiationType.appendChild(base.importNode(underlyingSubscription.getFilter().getNode(), true));
 			}
 			if (status == OAMStatus.subscription_started || status == OAMStatus.subscription_modified) {
@@ -252,9 +255,9 @@ public final class OAMNotification extends NetconfMessage {
 						noSynchOnStart.setTextContent(underlyingSubscription.getNoSynchOnStart().toString());
 						notifiationType.appendChild(noSynchOnStart);
 					}
-					if (underlyingSubscription.getExcludedChange() != null) {
+					for (ChangeType excluded : underlyingSubscription.getExcludedChange()) {
 						final Element exludedChange = base.createElement("excluded-change");
-						exludedChange.setTextContent(underlyingSubscription.getExcludedChange());
+						exludedChange.setTextContent(excluded.name());
 						notifiationType.appendChild(exludedChange);
 					}
 					final Element dampeningPeriod = base.createElement("dampening-period");
@@ -273,17 +276,14 @@ public final class OAMNotification extends NetconfMessage {
 		entireNotification.appendChild(notifiationType);
 
 		base.appendChild(entireNotification);
-		LOG.info("Content for {} notification for subscription {} successfully composed: {}", status, subscriptionID,
-				XmlUtil.toString(base));
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("Content for {} notification for subscription {} successfully composed: {}", status,
+					subscriptionID, XmlUtil.toString(base));
+		}
 
 		return base;
 	}
 
-	private static String getSerializedEventTime(final Date eventTime, String pattern) {
-		// SimpleDateFormat is not threadsafe, cannot be in a constant
-		return new SimpleDateFormat(pattern).format(eventTime);
-	}
-
 	public static enum OAMStatus {
 		replayComplete, notificationComplete, subscription_started, subscription_suspended, subscription_resumed, subscription_modified, subscription_terminated, added_to_subscription, removed_from_subscription
 	}
@@ -10,94 +10,151 @@ package org.opendaylight.yangpushserver.notification;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
-import org.opendaylight.controller.md.sal.dom.api.DOMDataBroker;
-import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeChangeListener;
-import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeChangeService;
-import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeIdentifier;
 import org.opendaylight.yangpushserver.impl.YangpushProvider;
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.Edit;
+import org.opendaylight.yangpushserver.notification.NotificationScheduler.ScheduledTask;
 import org.opendaylight.yangpushserver.notification.OAMNotification.OAMStatus;
+import org.opendaylight.yangpushserver.notification.SubscriptionMetrics.Stage;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine.operations;
 import org.opendaylight.yangpushserver.subscription.SubscriptionInfo;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.ChangeType;
 import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.SubscriptionStreamStatus;
 import org.opendaylight.yangtools.concepts.ListenerRegistration;
 import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
 import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidate;
-import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidateNode;
-import org.opendaylight.yangtools.yang.data.api.schema.tree.ModificationType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * This class serves as listener for changes in md-sal data store and as
  * scheduler at the same time. Triggering on change notifications in the
- * {@link NotificationEngine} on changes.
+ * {@link NotificationEngine} on changes. Only the changed nodes are reported,
+ * encoded as edits by the {@link DataTreeChangeEncoder}. Changes noticed
+ * during the dampening period are accumulated and sent at its end. With
+ * bundling, changes are additionally held back until enough edits are pending
+ * or the maximum delay passed, so bursts of changes are sent as few
+ * push-change-updates. The listeners are registered at the shared
+ * {@link DataTreeChangeDispatcher}, so subscriptions on the same or
+ * overlapping paths share the listeners registered at the data broker.
  * 
  * @author Dario.Schwarzbach
  *
  */
-public class OnChangeHandler implements AutoCloseable, DOMDataTreeChangeListener {
+public class OnChangeHandler implements AutoCloseable {
 	private static final Logger LOG = LoggerFactory.getLogger(OnChangeHandler.class);
 
-	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-	private ScheduledFuture<?> trigger;
+	private final NotificationScheduler scheduler;
+	private ScheduledTask trigger;
+	private ScheduledTask synchTrigger;
+	private ScheduledTask stopTrigger;
+	private ScheduledTask flushTrigger;
 
 	private String subscriptionID;
 	private String stream;
-	private YangInstanceIdentifier yid;
+	private CompiledSubtreeFilter filter;
+	private final Set<ChangeType> excludedChange;
 	private String startTime;
 	private String stopTime;
 	private Long timeOfLastUpdate;
 	private Long dampeningPeriod;
+	private long bundleMaxEdits = 1l;
+	private long bundleMaxDelay = 0l;
+	// Time the first pending change was noticed and the time the flush
+	// trigger is scheduled for, guarded by this
+	private long bundleStartTime;
+	private long flushTime;
+	// Number of edits accumulated since the last update
+	private long accumulatedEdits = 0;
+	// Number of changes observed by the listeners, guarded by this
+	private long changeSequence = 0;
+	// Held while updates are sent, so a resync push-update is sent in order
+	// with the push-change-updates
+	private final Object sendLock = new Object();
 
-	private ListenerRegistration<OnChangeHandler> registrationOne;
-	private ListenerRegistration<OnChangeHandler> registrationTwo;
-	private DOMDataTreeChangeService domDataTreeChangeService;
+	// Changes noticed during the dampening period
+	private final ChangeAccumulator accumulator = new ChangeAccumulator();
+
+	// Guarded by this
+	private final List<ListenerRegistration<ReadRootListener>> registrations = new ArrayList<>();
+	private final List<ReadRootListener> listeners = new ArrayList<>();
+	// Set on close, a start trigger already running registers no listeners
+	// afterwards, guarded by this
+	private boolean closed = false;
+	private final DataTreeChangeDispatcher changeDispatcher;
 
 	/**
 	 * Constructor for the on change handler that serves as scheduler and
 	 * listener at the same time.
 	 * 
-	 * @param db
-	 *            Data broker to retrieve the {@link DOMDataTreeChangeService}
-	 *            what is used to register {@link OnChangeHandler} as
-	 *            {@link DOMDataTreeChangeListener}
+	 * @param changeDispatcher
+	 *            Shared dispatcher used to register a listener for every
+	 *            read root
 	 * @param stream
 	 *            Part of the md-sal data store we are listening on (e.g.
 	 *            YANG-PUSH, CONFIGURATION,...)
-	 * @param yid
-	 *            Identifier for a specific node we want to listen on
+	 * @param filter
+	 *            Compiled filter of the subscription, listeners are registered
+	 *            on its read roots
+	 * @param excludedChange
+	 *            Kinds of changes not reported to the subscriber
+	 * @param scheduler
+	 *            Shared scheduler of the {@link NotificationEngine} used for
+	 *            start, stop and synch-on-start timers
 	 */
-	public OnChangeHandler(DOMDataBroker db, String stream, YangInstanceIdentifier yid) {
+	public OnChangeHandler(DataTreeChangeDispatcher changeDispatcher, String stream, CompiledSubtreeFilter filter,
+			Set<ChangeType> excludedChange, NotificationScheduler scheduler) {
 		super();
-		this.domDataTreeChangeService = (DOMDataTreeChangeService) db.getSupportedExtensions()
-				.get(DOMDataTreeChangeService.class);
+		this.scheduler = scheduler;
+		this.changeDispatcher = changeDispatcher;
 		this.stream = stream;
-		this.yid = yid;
+		this.filter = filter;
+		this.excludedChange = excludedChange;
 	}
 
 	@Override
 	public void close() throws Exception {
-		if (this.registrationOne != null) {
-			registrationOne.close();
+		List<ListenerRegistration<ReadRootListener>> registered;
+		synchronized (this) {
+			closed = true;
+			registered = new ArrayList<>(registrations);
+			registrations.clear();
 		}
-		if (this.registrationTwo != null) {
-			registrationTwo.close();
+		for (ListenerRegistration<ReadRootListener> registration : registered) {
+			registration.close();
 		}
 		if (this.trigger != null) {
-			trigger.cancel(true);
+			trigger.cancel();
 			trigger = null;
 		}
-		if (this.scheduler != null) {
-			scheduler.shutdown();
+		if (this.synchTrigger != null) {
+			synchTrigger.cancel();
+			synchTrigger = null;
+		}
+		if (this.stopTrigger != null) {
+			stopTrigger.cancel();
+			stopTrigger = null;
+		}
+		synchronized (this) {
+			if (this.flushTrigger != null) {
+				flushTrigger.cancel();
+				flushTrigger = null;
+			}
+			listeners.clear();
 		}
 	}
 
@@ -126,49 +183,63 @@ public class OnChangeHandler implements AutoCloseable, DOMDataTreeChangeListener
 	 *            Time when sending of notifications stop
 	 * @param dampeningPeriod
 	 *            Minimum time between every notification
+	 * @param bundleMaxEdits
+	 *            Number of pending edits a notification is sent at without
+	 *            further delay, 1 to disable bundling
+	 * @param bundleMaxDelay
+	 *            Maximum time in milliseconds a change waits for further
+	 *            changes, 0 to disable bundling
 	 */
 	public void scheduleNotification(String subscriptionID, String subStartTime, String subStopTime,
-			Long dampeningPeriod, boolean noSynchOnStart) {
+			Long dampeningPeriod, boolean noSynchOnStart, long bundleMaxEdits, long bundleMaxDelay) {
 		DateFormat format = new SimpleDateFormat(PeriodicNotification.YANG_DATEANDTIME_FORMAT_BLUEPRINT);
 
 		this.subscriptionID = subscriptionID;
 		this.startTime = PeriodicNotificationScheduler.ensureYangDateAndTimeFormat(subStartTime);
 		this.stopTime = PeriodicNotificationScheduler.ensureYangDateAndTimeFormat(subStopTime);
 		this.dampeningPeriod = dampeningPeriod;
+		this.bundleMaxEdits = bundleMaxEdits;
+		this.bundleMaxDelay = bundleMaxDelay;
 		this.timeOfLastUpdate = 0l;
 
 		// A push update notification is send previously to the push change
 		// updates to synch the subscriber with the current state of the data
 		// store.
 		if (!noSynchOnStart) {
-			scheduler.schedule(() -> {
+			synchTrigger = scheduler.schedule(() -> {
+				SubscriptionInfo subscription = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+				if (isClosed() || subscription == null) {
+					return;
+				}
 				LOG.info("Sending synch-on-start push-update notification for on-change subscription {}...",
 						subscriptionID);
-				SubscriptionStreamStatus status = SubscriptionEngine.getInstance().getSubscription(subscriptionID)
-						.getSubscriptionStreamStatus();
-				if (status == SubscriptionStreamStatus.inactive) {
-					SubscriptionEngine.getInstance().getSubscription(subscriptionID)
-							.setSubscriptionStreamStatus(SubscriptionStreamStatus.active);
+				if (subscription.getSubscriptionStreamStatus() == SubscriptionStreamStatus.inactive) {
+					subscription.setSubscriptionStreamStatus(SubscriptionStreamStatus.active);
 					NotificationEngine.getInstance().periodicNotification(subscriptionID);
-					SubscriptionEngine.getInstance().getSubscription(subscriptionID)
-							.setSubscriptionStreamStatus(SubscriptionStreamStatus.inactive);
+					subscription.setSubscriptionStreamStatus(SubscriptionStreamStatus.inactive);
 				}
 			}, 50, TimeUnit.MILLISECONDS);
 		}
 
 		final Runnable triggerAction = () -> {
-			// Registers DOMDataTreeChangeListeners for the underlying on
+			// Registers data tree change listeners for the underlying on
 			// change subscription and sets the subscription to active.
 			// Furthermore sends a subscription_started OAM notification to
 			// the subscriber.
-			LOG.info("DOMDataTreeChangeListener for subscription {} registered and subscription set to active",
+			SubscriptionInfo subscription = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+			if (isClosed() || subscription == null) {
+				LOG.info("On change notification for subscription {} was unregistered before its start",
+						subscriptionID);
+				return;
+			}
+			LOG.info("Data tree change listeners for subscription {} registered and subscription set to active",
 					subscriptionID);
-			if (SubscriptionEngine.getInstance().getSubscription(subscriptionID)
-					.getSubscriptionStreamStatus() == SubscriptionStreamStatus.inactive) {
-				SubscriptionEngine.getInstance().getSubscription(subscriptionID)
-						.setSubscriptionStreamStatus(SubscriptionStreamStatus.active);
+			if (subscription.getSubscriptionStreamStatus() == SubscriptionStreamStatus.inactive) {
+				subscription.setSubscriptionStreamStatus(SubscriptionStreamStatus.active);
 			}
 			NotificationEngine.getInstance().oamNotification(subscriptionID, OAMStatus.subscription_started, null);
+			// Recorded changes are sent before the live ones
+			NotificationEngine.getInstance().replay(subscriptionID);
 			registerListeners();
 		};
 		Long deltaTillStart = 0l;
@@ -194,7 +265,7 @@ public class OnChangeHandler implements AutoCloseable, DOMDataTreeChangeListener
 			}
 		}
 		if (deltaTillStop > 0) {
-			scheduler.schedule(() -> {
+			stopTrigger = scheduler.schedule(() -> {
 				LOG.info(
 						"On change notification for subscription {} reached its stop time and the subscription will be deleted",
 						subscriptionID);
@@ -210,66 +281,254 @@ public class OnChangeHandler implements AutoCloseable, DOMDataTreeChangeListener
 
 	/**
 	 * Used to register the listeners on data store for previously set
-	 * parameters.
+	 * parameters. One listener is registered for every read root of the
+	 * compiled filter in every data store of the stream. Listeners registered
+	 * while the handler is closed concurrently are closed right away.
 	 */
 	private void registerListeners() {
+		List<LogicalDatastoreType> datastores;
 		switch (stream) {
 		case "YANG-PUSH":
-			this.registrationOne = domDataTreeChangeService.registerDataTreeChangeListener(
-					new DOMDataTreeIdentifier(LogicalDatastoreType.OPERATIONAL, yid), this);
-			this.registrationTwo = domDataTreeChangeService.registerDataTreeChangeListener(
-					new DOMDataTreeIdentifier(LogicalDatastoreType.CONFIGURATION, yid), this);
+			datastores = Arrays.asList(LogicalDatastoreType.OPERATIONAL, LogicalDatastoreType.CONFIGURATION);
 			break;
 		case "CONFIGURATION":
-			this.registrationOne = domDataTreeChangeService.registerDataTreeChangeListener(
-					new DOMDataTreeIdentifier(LogicalDatastoreType.CONFIGURATION, yid), this);
+			datastores = Collections.singletonList(LogicalDatastoreType.CONFIGURATION);
 			break;
 		case "OPERATIONAL":
-			this.registrationOne = domDataTreeChangeService.registerDataTreeChangeListener(
-					new DOMDataTreeIdentifier(LogicalDatastoreType.OPERATIONAL, yid), this);
+			datastores = Collections.singletonList(LogicalDatastoreType.OPERATIONAL);
 			break;
 		default:
 			LOG.error("Stream {} not supported.", stream);
+			return;
+		}
+		for (LogicalDatastoreType datastore : datastores) {
+			for (YangInstanceIdentifier root : filter.getReadRoots()) {
+				ReadRootListener listener = new ReadRootListener(datastore, root);
+				synchronized (this) {
+					if (closed) {
+						return;
+					}
+					listeners.add(listener);
+				}
+				ListenerRegistration<ReadRootListener> registration = changeDispatcher.registerListener(datastore,
+						root, listener);
+				synchronized (this) {
+					if (!closed) {
+						registrations.add(registration);
+						continue;
+					}
+				}
+				registration.close();
+				return;
+			}
 		}
 	}
 
-	@Override
-	public void onDataTreeChanged(Collection<DataTreeCandidate> changes) {
-		LOG.info("Noticed changed data for subscription {}", subscriptionID);
-		NotificationEngine notificationEngine = NotificationEngine.getInstance();
-		Long currentTime = new Date().getTime();
+	private synchronized boolean isClosed() {
+		return closed;
+	}
 
-		if (currentTime >= timeOfLastUpdate + dampeningPeriod) {
-			LOG.info("Dampening period of {} over...next update will be triggered", dampeningPeriod);
-			for (DataTreeCandidate change : changes) {
-				DataTreeCandidateNode rootNode = change.getRootNode();
-				if (rootNode.getModificationType() == ModificationType.WRITE) {
-					LOG.info("Noticed initial {} for data after registering listeners. No update will be send.",
-							ModificationType.WRITE);
-					// if (rootNode.getDataAfter() != null &&
-					// rootNode.getDataAfter().isPresent()) {
-					// timeOfLastUpdate = new Date().getTime();
-					// notificationEngine.onChangeNotification(subscriptionID,
-					// rootNode.getDataAfter().get());
-					// }
-				} else if (rootNode.getModificationType() == ModificationType.SUBTREE_MODIFIED) {
-					LOG.info("Noticed a {} for data", ModificationType.SUBTREE_MODIFIED);
+	/**
+	 * @return Whether the listeners are registered
+	 */
+	public synchronized boolean isListening() {
+		return !listeners.isEmpty();
+	}
 
-					if (rootNode.getDataAfter() != null && rootNode.getDataAfter().isPresent()) {
-						timeOfLastUpdate = new Date().getTime();
-						notificationEngine.onChangeNotification(subscriptionID, rootNode.getDataAfter().get());
+	/**
+	 * Sends one push-update with the data the listeners observed so far,
+	 * marked with the number of observed changes. Pending edits are included
+	 * in it and discarded, later changes are sent as push-change-updates as
+	 * usual. No data is read and no listener is registered, so the
+	 * push-update is consistent with the push-change-updates around it.
+	 * 
+	 * @return True if the push-update was sent, false if the listeners are
+	 *         not registered yet or the subscription is not active
+	 */
+	public boolean resync() {
+		synchronized (sendLock) {
+			Map<LogicalDatastoreType, Map<YangInstanceIdentifier, NormalizedNode<?, ?>>> snapshot = new EnumMap<>(
+					LogicalDatastoreType.class);
+			long sequence;
+			synchronized (this) {
+				if (listeners.isEmpty()) {
+					return false;
+				}
+				for (ReadRootListener listener : listeners) {
+					Map<YangInstanceIdentifier, NormalizedNode<?, ?>> dataByRoot = snapshot
+							.computeIfAbsent(listener.datastore, datastore -> new LinkedHashMap<>());
+					if (listener.data != null) {
+						dataByRoot.put(listener.root, listener.data);
 					}
-				} else if (rootNode.getModificationType() == ModificationType.DELETE) {
-					LOG.info("Noticed a {} for data", ModificationType.DELETE);
+				}
+				sequence = changeSequence;
+				cancelFlushTrigger();
+				// Pending edits are part of the snapshot
+				if (accumulatedEdits > 0) {
+					NotificationEngine.getInstance().getMetrics().get(subscriptionID)
+							.recordSuppressed(accumulatedEdits);
+				}
+				accumulator.drain();
+				accumulatedEdits = 0;
+				timeOfLastUpdate = new Date().getTime();
+			}
+			return NotificationEngine.getInstance().resyncNotification(subscriptionID, filter, snapshot, sequence);
+		}
+	}
 
-					if (rootNode.getDataAfter() != null && rootNode.getDataAfter().isPresent()) {
-						timeOfLastUpdate = new Date().getTime();
-						notificationEngine.onChangeNotification(subscriptionID, rootNode.getDataAfter().get());
-					}
+	/**
+	 * Called by the listener of one read root when changes occur. The changes
+	 * are encoded as edits and accumulated. The accumulated edits are sent
+	 * when the dampening period is over and either the bundle is full or its
+	 * maximum delay passed. Without bundling this is as soon as the dampening
+	 * period is over.
+	 * 
+	 * @param listener
+	 *            Listener of the read root the changes occurred below
+	 * @param data
+	 *            Data of the read root after the changes
+	 * @param changes
+	 *            Changes below the read root
+	 */
+	private void onDataTreeChanged(ReadRootListener listener, NormalizedNode<?, ?> data,
+			Collection<DataTreeCandidate> changes) {
+		LogicalDatastoreType datastore = listener.datastore;
+		LOG.debug("Noticed changed data in {} for subscription {}", datastore, subscriptionID);
+		long filterStart = System.nanoTime();
+		List<Edit> edits = new ArrayList<>();
+		for (DataTreeCandidate change : changes) {
+			edits.addAll(DataTreeChangeEncoder.encode(change.getRootPath(), change.getRootNode(), filter,
+					excludedChange));
+		}
+		NotificationEngine.getInstance().getMetrics().record(subscriptionID, Stage.filter,
+				System.nanoTime() - filterStart);
+
+		boolean flushNow = false;
+		synchronized (this) {
+			// Data and edits are updated together, so a resync snapshot
+			// either contains the edits or precedes them
+			listener.data = data;
+			changeSequence++;
+			if (edits.isEmpty()) {
+				LOG.debug("No changes selected for subscription {}, no update will be triggered", subscriptionID);
+				return;
+			}
+			long now = new Date().getTime();
+			if (accumulator.isEmpty()) {
+				bundleStartTime = now;
+			}
+			accumulator.add(edits);
+			accumulatedEdits += edits.size();
+			long deltaTillFlush = deltaTillFlush(now, timeOfLastUpdate + dampeningPeriod, accumulator.size(),
+					bundleStartTime, bundleMaxEdits, bundleMaxDelay);
+			if (deltaTillFlush <= 0) {
+				LOG.debug("Dampening period of {} over...next update will be triggered", dampeningPeriod);
+				cancelFlushTrigger();
+				flushNow = true;
+			} else if (flushTrigger == null || now + deltaTillFlush < flushTime) {
+				LOG.debug("Dampening period of {} or bundle not over yet...update will be triggered in {}ms",
+						dampeningPeriod, deltaTillFlush);
+				cancelFlushTrigger();
+				flushTime = now + deltaTillFlush;
+				flushTrigger = scheduler.schedule(this::flush, deltaTillFlush, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (flushNow) {
+			flush();
+		}
+	}
+
+	/**
+	 * Computes when pending edits are sent: not before the end of the
+	 * dampening period, and not before the end of the bundle unless it is
+	 * full.
+	 * 
+	 * @param now
+	 *            Current time in milliseconds
+	 * @param dampenedUntil
+	 *            End of the dampening period in milliseconds
+	 * @param pendingEdits
+	 *            Number of pending edits
+	 * @param bundleStartTime
+	 *            Time the first pending edit was noticed
+	 * @param bundleMaxEdits
+	 *            Number of pending edits the bundle is full at
+	 * @param bundleMaxDelay
+	 *            Maximum time in milliseconds the bundle is held back
+	 * @return Time in milliseconds till the edits are sent, not positive if
+	 *         they are sent now
+	 */
+	static long deltaTillFlush(long now, long dampenedUntil, int pendingEdits, long bundleStartTime,
+			long bundleMaxEdits, long bundleMaxDelay) {
+		long deltaTillDampened = dampenedUntil - now;
+		if (pendingEdits >= bundleMaxEdits) {
+			return deltaTillDampened;
+		}
+		return Math.max(deltaTillDampened, bundleStartTime + bundleMaxDelay - now);
+	}
+
+	private void cancelFlushTrigger() {
+		if (flushTrigger != null) {
+			flushTrigger.cancel();
+			flushTrigger = null;
+		}
+	}
+
+	/**
+	 * Sends one push-change-update for all changes accumulated so far and
+	 * starts a new dampening period.
+	 */
+	private void flush() {
+		synchronized (sendLock) {
+			List<Edit> edits;
+			long suppressed;
+			synchronized (this) {
+				cancelFlushTrigger();
+				edits = accumulator.drain();
+				// Edits merged with later edits of the same path
+				suppressed = accumulatedEdits - edits.size();
+				accumulatedEdits = 0;
+				if (suppressed > 0) {
+					NotificationEngine.getInstance().getMetrics().get(subscriptionID).recordSuppressed(suppressed);
 				}
+				if (edits.isEmpty()) {
+					LOG.debug("Accumulated changes of subscription {} cancelled each other out", subscriptionID);
+					return;
+				}
+				timeOfLastUpdate = new Date().getTime();
+			}
+			NotificationEngine.getInstance().onChangeNotification(subscriptionID, edits);
+		}
+	}
+
+	/**
+	 * Listener registered on one read root of one data store. The initial
+	 * data reported after registering is not forwarded since the subscriber
+	 * is synched by the push-update sent on start. The data after the last
+	 * notification is kept for resync.
+	 */
+	private final class ReadRootListener implements DataTreeChangeDispatcher.Listener {
+		private final LogicalDatastoreType datastore;
+		private final YangInstanceIdentifier root;
+		// Data of the read root after the last observed change, guarded by
+		// the handler
+		private NormalizedNode<?, ?> data = null;
+
+		private ReadRootListener(LogicalDatastoreType datastore, YangInstanceIdentifier root) {
+			this.datastore = datastore;
+			this.root = root;
+		}
+
+		@Override
+		public void onInitialData(NormalizedNode<?, ?> initialData) {
+			synchronized (OnChangeHandler.this) {
+				data = initialData;
 			}
-		} else {
-			LOG.info("Dampening period of {} not over yet...no update will be triggered", dampeningPeriod);
+		}
+
+		@Override
+		public void onDataTreeChanged(NormalizedNode<?, ?> dataAfter, Collection<DataTreeCandidate> changes) {
+			OnChangeHandler.this.onDataTreeChanged(this, dataAfter, changes);
 		}
 	}
 }
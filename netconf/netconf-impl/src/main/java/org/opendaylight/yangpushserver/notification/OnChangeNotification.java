@@ -7,31 +7,21 @@
  */
 package org.opendaylight.yangpushserver.notification;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
-import org.json.JSONObject;
-import org.json.XML;
-import org.opendaylight.controller.config.util.xml.XmlUtil;
-import org.opendaylight.netconf.api.NetconfMessage;
+import org.opendaylight.netconf.api.PreEncodedNetconfMessage;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.push.rev160615.PushChangeUpdate;
-import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import com.google.common.base.Preconditions;
 
 /**
  * Special type of netconf message that wraps an on change YANG push
- * notification like defined in {@link PushChangeUpdate}.
+ * notification like defined in {@link PushChangeUpdate}. The content is
+ * serialized and written into the envelope by {@link NotificationEnvelope}.
  * 
  * @author Dario.Schwarzbach
  *
  */
-public final class OnChangeNotification extends NetconfMessage {
-	private static final Logger LOG = LoggerFactory.getLogger(OnChangeNotification.class);
+public final class OnChangeNotification extends PreEncodedNetconfMessage {
 
 	public static final String PUSH_CHANGE_UPDATE = PushChangeUpdate.QNAME.getLocalName();
 	public static final String PUSH_CHANGE_UPDATE_NAMESPACE = PushChangeUpdate.QNAME.getNamespace() + ":1.0";
@@ -40,23 +30,53 @@ public final class OnChangeNotification extends NetconfMessage {
 
 	private final Date eventTime;
 	private final String subscriptionID;
+	private final long sequenceNumber;
 
 	/**
-	 * Create new on change notification and capture the timestamp in the
-	 * constructor
+	 * Create new on change notification with XML encoded content and capture
+	 * the timestamp in the constructor
 	 */
 	public OnChangeNotification(final Document notificationContent, final String subscriptionID) {
 		this(notificationContent, subscriptionID, new Date());
 	}
 
+	/**
+	 * Create new on change notification with JSON encoded content and capture
+	 * the timestamp in the constructor
+	 */
+	public OnChangeNotification(final String jsonContent, final String subscriptionID) {
+		this(jsonContent, subscriptionID, new Date());
+	}
+
 	/**
 	 * Create new notification with provided timestamp
 	 */
 	private OnChangeNotification(final Document notificationContent, final String subscriptionID,
 			final Date eventTime) {
-		super(wrapNotification(notificationContent, subscriptionID, eventTime));
+		this(NotificationEnvelope.PUSH_CHANGE_UPDATE_XML.segments(subscriptionID, eventTime,
+				EncodedNotificationContent.ofXml(notificationContent).getContent()), subscriptionID, eventTime,
+				PeriodicNotification.NO_SEQUENCE_NUMBER);
+	}
+
+	/**
+	 * Create new notification with provided timestamp
+	 */
+	private OnChangeNotification(final String jsonContent, final String subscriptionID, final Date eventTime) {
+		this(NotificationEnvelope.PUSH_CHANGE_UPDATE_JSON.segments(subscriptionID, eventTime,
+				EncodedNotificationContent.ofJson(jsonContent).getContent()), subscriptionID, eventTime,
+				PeriodicNotification.NO_SEQUENCE_NUMBER);
+	}
+
+	/**
+	 * Create new notification of the given segments, see
+	 * {@link EncodedNotificationContent}
+	 */
+	OnChangeNotification(final byte[][] segments, final String subscriptionID, final Date eventTime,
+			final long sequenceNumber) {
+		super(segments);
 		this.subscriptionID = subscriptionID;
 		this.eventTime = eventTime;
+		this.sequenceNumber = sequenceNumber;
 	}
 
 	/**
@@ -74,102 +94,10 @@ public final class OnChangeNotification extends NetconfMessage {
 	}
 
 	/**
-	 * Wraps the previously to a XML {@link Document} transformed data into the
-	 * related netconf notification while supporting other encodings for the
-	 * content (XML, JSON).
-	 * 
-	 * @param notificationContent
-	 *            Previously transformed data
-	 * @param subscriptionID
-	 *            Underlying subscription ID
-	 * @param eventTime
-	 *            Time when this notification is send
-	 * @return
+	 * @return Sequence number of the update within its subscription or
+	 *         {@link PeriodicNotification#NO_SEQUENCE_NUMBER}
 	 */
-	private static Document wrapNotification(final Document notificationContent, final String subscriptionID,
-			final Date eventTime) {
-		Preconditions.checkNotNull(notificationContent);
-		Preconditions.checkNotNull(eventTime);
-
-		LOG.info("Start wrapping content {} for on change notification of subscription with ID {}...",
-				XmlUtil.toString(notificationContent), subscriptionID);
-		String encoding = SubscriptionEngine.getInstance().getSubscription(subscriptionID).getEncoding();
-
-		if (encoding.equals("encode-json")) {
-			LOG.info("Encoding content to JSON...");
-			final Document res = XmlUtil.newDocument();
-			final Element baseNotification = notificationContent.getDocumentElement();
-			final Element entireNotification = res.createElementNS(PeriodicNotification.NOTIFICATION_NAMESPACE,
-					PeriodicNotification.NOTIFICATION);
-
-			final Element eventTimeElement = res.createElement(PeriodicNotification.EVENT_TIME);
-			eventTimeElement.setTextContent(
-					getSerializedEventTime(eventTime, PeriodicNotification.RFC3339_DATE_FORMAT_BLUEPRINT));
-			entireNotification.appendChild(eventTimeElement);
-
-			final Element pushChangeUpdate = res.createElementNS(PUSH_CHANGE_UPDATE_NAMESPACE, PUSH_CHANGE_UPDATE);
-			final Element subID = res.createElement(PeriodicNotification.SUB_ID);
-			subID.setTextContent(subscriptionID);
-			pushChangeUpdate.appendChild(subID);
-
-			final Element timeOfUpdate = res.createElement(PeriodicNotification.TIME_OF_UPDATE);
-			timeOfUpdate.setTextContent(
-					getSerializedEventTime(eventTime, PeriodicNotification.YANG_DATEANDTIME_FORMAT_BLUEPRINT));
-			pushChangeUpdate.appendChild(timeOfUpdate);
-
-			final Element datastoreChange = res.createElement(CHANGES_JSON);
-
-			if (baseNotification != null) {
-				JSONObject xmlContentToJson = XML.toJSONObject(XmlUtil.toString(baseNotification));
-				datastoreChange.setTextContent(xmlContentToJson.toString(4));
-			}
-
-			pushChangeUpdate.appendChild(datastoreChange);
-			entireNotification.appendChild(pushChangeUpdate);
-
-			res.appendChild(entireNotification);
-			LOG.info("Content for on change notification for subscription {} successfully wrapped: {}", subscriptionID,
-					XmlUtil.toString(res));
-			return res;
-		} else {
-			LOG.info("Encoding content to XML...");
-			final Element baseNotification = notificationContent.getDocumentElement();
-			final Element entireNotification = notificationContent
-					.createElementNS(PeriodicNotification.NOTIFICATION_NAMESPACE, PeriodicNotification.NOTIFICATION);
-
-			final Element eventTimeElement = notificationContent.createElement(PeriodicNotification.EVENT_TIME);
-			eventTimeElement.setTextContent(
-					getSerializedEventTime(eventTime, PeriodicNotification.RFC3339_DATE_FORMAT_BLUEPRINT));
-			entireNotification.appendChild(eventTimeElement);
-
-			final Element pushChangeUpdate = notificationContent.createElementNS(PUSH_CHANGE_UPDATE_NAMESPACE,
-					PUSH_CHANGE_UPDATE);
-			final Element subID = notificationContent.createElement(PeriodicNotification.SUB_ID);
-			subID.setTextContent(subscriptionID);
-			pushChangeUpdate.appendChild(subID);
-
-			final Element timeOfUpdate = notificationContent.createElement(PeriodicNotification.TIME_OF_UPDATE);
-			timeOfUpdate.setTextContent(
-					getSerializedEventTime(eventTime, PeriodicNotification.YANG_DATEANDTIME_FORMAT_BLUEPRINT));
-			pushChangeUpdate.appendChild(timeOfUpdate);
-
-			final Element datastoreChange = notificationContent.createElement(CHANGES_XML);
-
-			if (baseNotification != null) {
-				datastoreChange.appendChild(baseNotification);
-			}
-			pushChangeUpdate.appendChild(datastoreChange);
-			entireNotification.appendChild(pushChangeUpdate);
-
-			notificationContent.appendChild(entireNotification);
-			LOG.info("Content for on change notification for subscription {} successfully wrapped: {}", subscriptionID,
-					XmlUtil.toString(notificationContent));
-			return notificationContent;
-		}
-	}
-
-	private static String getSerializedEventTime(final Date eventTime, String pattern) {
-		// SimpleDateFormat is not threadsafe, cannot be in a constant
-		return new SimpleDateFormat(pattern).format(eventTime);
+	public long getSequenceNumber() {
+		return sequenceNumber;
 	}
-}
+}
\ No newline at end of file
@@ -7,31 +7,25 @@
  */
 package org.opendaylight.yangpushserver.notification;
 
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
 import java.util.Date;
 
-import org.json.JSONObject;
-import org.json.XML;
-import org.opendaylight.controller.config.util.xml.XmlUtil;
-import org.opendaylight.netconf.api.NetconfMessage;
+import org.opendaylight.netconf.api.PreEncodedNetconfMessage;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.push.rev160615.PushUpdate;
-import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import com.google.common.base.Preconditions;
 
 /**
  * Special type of netconf message that wraps a periodic YANG push notification
- * like defined in {@link PushUpdate}.
+ * like defined in {@link PushUpdate}. The content is serialized and written
+ * into the envelope by {@link NotificationEnvelope}.
  * 
  * @author Dario.Schwarzbach
  *
  */
-public final class PeriodicNotification extends NetconfMessage {
-	private static final Logger LOG = LoggerFactory.getLogger(PeriodicNotification.class);
+public final class PeriodicNotification extends PreEncodedNetconfMessage {
 
 	public static final String NOTIFICATION = "notification";
 	public static final String NOTIFICATION_NAMESPACE = "urn:ietf:params:xml:ns:netconf:notification:1.0";
@@ -49,31 +43,81 @@ public final class PeriodicNotification extends NetconfMessage {
 	 **/
 	public static final String YANG_DATEANDTIME_FORMAT_BLUEPRINT = "yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'";
 	public static final String EVENT_TIME = "eventTime";
+	/**
+	 * Thread-safe formatter of {@link #RFC3339_DATE_FORMAT_BLUEPRINT} in the
+	 * default time zone
+	 */
+	public static final DateTimeFormatter RFC3339_DATE_FORMATTER = DateTimeFormatter
+			.ofPattern(RFC3339_DATE_FORMAT_BLUEPRINT).withZone(ZoneId.systemDefault());
+	/**
+	 * Thread-safe formatter of {@link #YANG_DATEANDTIME_FORMAT_BLUEPRINT} in
+	 * the default time zone. Like {@link java.text.SimpleDateFormat} with this
+	 * blueprint it writes the milliseconds as six digits.
+	 */
+	public static final DateTimeFormatter YANG_DATEANDTIME_FORMATTER = new DateTimeFormatterBuilder()
+			.appendPattern("yyyy-MM-dd'T'HH:mm:ss.'000'").appendValue(ChronoField.MILLI_OF_SECOND, 3)
+			.appendLiteral('Z').toFormatter().withZone(ZoneId.systemDefault());
 
 	/**
 	 * Used for unknown/un-parse-able event-times
 	 */
 	public static final Date UNKNOWN_EVENT_TIME = new Date(0);
 
+	/**
+	 * Sequence number of notifications created without one, sequence numbers
+	 * of a subscription start at 1
+	 */
+	public static final long NO_SEQUENCE_NUMBER = 0;
+
 	private final Date eventTime;
 	private final String subscriptionID;
+	private final long sequenceNumber;
 
 	/**
-	 * Create new periodic notification and capture the timestamp in the
-	 * constructor
+	 * Create new periodic notification with XML encoded content and capture
+	 * the timestamp in the constructor
 	 */
 	public PeriodicNotification(final Document notificationContent, final String subscriptionID) {
 		this(notificationContent, subscriptionID, new Date());
 	}
 
+	/**
+	 * Create new periodic notification with JSON encoded content and capture
+	 * the timestamp in the constructor
+	 */
+	public PeriodicNotification(final String jsonContent, final String subscriptionID) {
+		this(jsonContent, subscriptionID, new Date());
+	}
+
 	/**
 	 * Create new notification with provided timestamp
 	 */
 	private PeriodicNotification(final Document notificationContent, final String subscriptionID,
 			final Date eventTime) {
-		super(wrapNotification(notificationContent, subscriptionID, eventTime));
+		this(NotificationEnvelope.PUSH_UPDATE_XML.segments(subscriptionID, eventTime,
+				EncodedNotificationContent.ofXml(notificationContent).getContent()), subscriptionID, eventTime,
+				NO_SEQUENCE_NUMBER);
+	}
+
+	/**
+	 * Create new notification with provided timestamp
+	 */
+	private PeriodicNotification(final String jsonContent, final String subscriptionID, final Date eventTime) {
+		this(NotificationEnvelope.PUSH_UPDATE_JSON.segments(subscriptionID, eventTime,
+				EncodedNotificationContent.ofJson(jsonContent).getContent()), subscriptionID, eventTime,
+				NO_SEQUENCE_NUMBER);
+	}
+
+	/**
+	 * Create new notification of the given segments, see
+	 * {@link EncodedNotificationContent}
+	 */
+	PeriodicNotification(final byte[][] segments, final String subscriptionID, final Date eventTime,
+			final long sequenceNumber) {
+		super(segments);
 		this.subscriptionID = subscriptionID;
 		this.eventTime = eventTime;
+		this.sequenceNumber = sequenceNumber;
 	}
 
 	/**
@@ -91,102 +135,25 @@ public final class PeriodicNotification extends NetconfMessage {
 	}
 
 	/**
-	 * Wraps the previously to a XML {@link Document} transformed data into the
-	 * related netconf notification while supporting other encodings for the
-	 * content (XML, JSON).
-	 * 
-	 * @param notificationContent
-	 *            Previously transformed data
-	 * @param subscriptionID
-	 *            Underlying subscription ID
-	 * @param eventTime
-	 *            Time when this notification is send
-	 * @return
+	 * @return Sequence number of the update within its subscription or
+	 *         {@link #NO_SEQUENCE_NUMBER}
 	 */
-	private static Document wrapNotification(final Document notificationContent, final String subscriptionID,
-			final Date eventTime) {
-		Preconditions.checkNotNull(notificationContent);
-		Preconditions.checkNotNull(eventTime);
-
-		LOG.debug("Start wrapping content {} for periodic notification of subscription with ID {}...",
-				XmlUtil.toString(notificationContent), subscriptionID);
-		String encoding = SubscriptionEngine.getInstance().getSubscription(subscriptionID).getEncoding();
-
-		if (encoding.equals("encode-json")) {
-			LOG.info("Encoding content to JSON...");
-			final Document res = XmlUtil.newDocument();
-			final Element baseNotification = notificationContent.getDocumentElement();
-			final Element entireNotification = res.createElementNS(NOTIFICATION_NAMESPACE, NOTIFICATION);
-
-			final Element eventTimeElement = res.createElement(EVENT_TIME);
-			eventTimeElement.setTextContent(getSerializedEventTime(eventTime, RFC3339_DATE_FORMAT_BLUEPRINT));
-			entireNotification.appendChild(eventTimeElement);
-
-			final Element pushUpdate = res.createElementNS(PUSH_UPDATE_NAMESPACE, PUSH_UPDATE);
-			final Element subID = res.createElement(SUB_ID);
-			subID.setTextContent(subscriptionID);
-			pushUpdate.appendChild(subID);
-
-			final Element timeOfUpdate = res.createElement(TIME_OF_UPDATE);
-			timeOfUpdate.setTextContent(getSerializedEventTime(eventTime, YANG_DATEANDTIME_FORMAT_BLUEPRINT));
-			pushUpdate.appendChild(timeOfUpdate);
-
-			final Element datastoreContent = res.createElement(CONTENT_JSON);
-
-			if (baseNotification != null) {
-				JSONObject xmlContentToJson = XML.toJSONObject(XmlUtil.toString(baseNotification));
-				datastoreContent.setTextContent(xmlContentToJson.toString(4));
-			}
-
-			pushUpdate.appendChild(datastoreContent);
-			entireNotification.appendChild(pushUpdate);
-
-			res.appendChild(entireNotification);
-			LOG.info("Content for periodic notification for subscription {} successfully wrapped: {}", subscriptionID,
-					XmlUtil.toString(res));
-
-			return res;
-		} else {
-			LOG.info("Encoding content to XML...");
-			final Element baseNotification = notificationContent.getDocumentElement();
-			final Element entireNotification = notificationContent.createElementNS(NOTIFICATION_NAMESPACE,
-					NOTIFICATION);
-
-			final Element eventTimeElement = notificationContent.createElement(EVENT_TIME);
-			eventTimeElement.setTextContent(getSerializedEventTime(eventTime, RFC3339_DATE_FORMAT_BLUEPRINT));
-			entireNotification.appendChild(eventTimeElement);
-
-			final Element pushUpdate = notificationContent.createElementNS(PUSH_UPDATE_NAMESPACE, PUSH_UPDATE);
-			final Element subID = notificationContent.createElement(SUB_ID);
-			subID.setTextContent(subscriptionID);
-			pushUpdate.appendChild(subID);
-
-			final Element timeOfUpdate = notificationContent.createElement(TIME_OF_UPDATE);
-			timeOfUpdate.setTextContent(getSerializedEventTime(eventTime, YANG_DATEANDTIME_FORMAT_BLUEPRINT));
-			pushUpdate.appendChild(timeOfUpdate);
-
-			final Element datastoreContent;
-			if (SubscriptionEngine.getInstance().getSubscription(subscriptionID).getEncoding().equals("encode-json")) {
-				datastoreContent = notificationContent.createElement(CONTENT_JSON);
-
-			} else {
-				datastoreContent = notificationContent.createElement(CONTENT_XML);
-			}
-			if (baseNotification != null) {
-				datastoreContent.appendChild(baseNotification);
-			}
-			pushUpdate.appendChild(datastoreContent);
-			entireNotification.appendChild(pushUpdate);
-
-			notificationContent.appendChild(entireNotification);
-			LOG.info("Content for periodic notification for subscription {} successfully wrapped: {}", subscriptionID,
-					XmlUtil.toString(notificationContent));
-			return notificationContent;
-		}
+	public long getSequenceNumber() {
+		return sequenceNumber;
 	}
 
-	private static String getSerializedEventTime(final Date eventTime, String pattern) {
-		// SimpleDateFormat is not threadsafe, cannot be in a constant
-		return new SimpleDateFormat(pattern).format(eventTime);
+	/**
+	 * @return Event time in {@link #RFC3339_DATE_FORMAT_BLUEPRINT} format
+	 */
+	public static String formatEventTime(final Date eventTime) {
+		return RFC3339_DATE_FORMATTER.format(eventTime.toInstant());
+	}
+
+	/**
+	 * @return Time of update in {@link #YANG_DATEANDTIME_FORMAT_BLUEPRINT}
+	 *         format
+	 */
+	public static String formatTimeOfUpdate(final Date eventTime) {
+		return YANG_DATEANDTIME_FORMATTER.format(eventTime.toInstant());
 	}
 }
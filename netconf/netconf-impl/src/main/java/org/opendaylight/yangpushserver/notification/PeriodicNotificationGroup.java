@@ -0,0 +1,334 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.yangpushserver.notification.NotificationScheduler.ScheduledTask;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+/**
+ * Group of periodic subscriptions that share stream, encoding, period and
+ * subtree filter. All members of a group are triggered at the same anchor
+ * aligned points in time (anchor time + k * period), so the data store is read,
+ * transformed and filtered only once per period for the whole group. Only the
+ * subscription ID and the timestamps differ between the notifications sent to
+ * the members.
+ *
+ * Members depending on another periodic subscription (subscription-dependency)
+ * wait within a tick until the update of their parent was sent, see
+ * {@link #runAfterMember(String, long, Runnable)}.
+ *
+ */
+public class PeriodicNotificationGroup implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(PeriodicNotificationGroup.class);
+
+	private final String key;
+	private final long replayKey;
+	private final String stream;
+	private final Long period;
+	private final String encoding;
+	private final CompiledSubtreeFilter filter;
+	private final Set<String> members = new CopyOnWriteArraySet<>();
+	// Fingerprint of the content last pushed to members not sending
+	// unchanged updates
+	private final Map<String, HashCode> lastFingerprints = new ConcurrentHashMap<>();
+	// Set while the notification of a tick is read, encoded and sent
+	private final AtomicBoolean tickInProgress = new AtomicBoolean(false);
+	private final AtomicLong skippedTicks = new AtomicLong();
+	private ScheduledTask trigger;
+	private volatile long anchorTime = 0;
+	// Tick time of the update last sent to each member and the updates of
+	// dependent subscriptions waiting for a member, guarded by this
+	private final Map<String, Long> sentTicks = new HashMap<>();
+	private final Map<String, List<Runnable>> waiting = new HashMap<>();
+
+	/**
+	 * @param key
+	 *            Group key as returned by {@link #createKey(SubscriptionInfo)}
+	 * @param subscription
+	 *            First member of this group, used to take over the shared
+	 *            parameters including the compiled filter
+	 */
+	public PeriodicNotificationGroup(String key, SubscriptionInfo subscription) {
+		Preconditions.checkNotNull(subscription.getPeriod(), "Periodic subscription without period");
+		Preconditions.checkArgument(subscription.getPeriod() > 0, "Period has to be positive");
+		this.key = key;
+		this.replayKey = NotificationReplayLog.replayKey(key);
+		this.stream = subscription.getStream();
+		this.period = subscription.getPeriod();
+		this.encoding = subscription.getEncoding();
+		this.filter = subscription.getCompiledFilter();
+	}
+
+	/**
+	 * Creates the key of the group the given subscription belongs to.
+	 * Subscriptions with equal keys receive the same notification content.
+	 *
+	 * @param subscription
+	 *            Periodic subscription
+	 * @return Key of the group
+	 */
+	public static String createKey(SubscriptionInfo subscription) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(subscription.getStream()).append('|');
+		builder.append(subscription.getPeriod()).append('|');
+		builder.append(subscription.getEncoding()).append('|');
+		if (subscription.getFilter() != null) {
+			builder.append(XmlUtil.toString((Element) subscription.getFilter().getNode()));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Starts triggering this group at the next point in time aligned to the
+	 * given anchor time.
+	 *
+	 * @param scheduler
+	 *            Shared scheduler of the {@link NotificationEngine}
+	 * @param anchorTime
+	 *            Anchor time in milliseconds since epoch
+	 */
+	public synchronized void start(NotificationScheduler scheduler, long anchorTime) {
+		Preconditions.checkState(trigger == null, "Group already started");
+		this.anchorTime = anchorTime;
+		long now = System.currentTimeMillis();
+		long deltaTillNextTick = period - Math.floorMod(now - anchorTime, period);
+		trigger = scheduler.scheduleAtFixedRate(() -> NotificationEngine.getInstance().periodicNotification(this),
+				deltaTillNextTick, period, TimeUnit.MILLISECONDS);
+		LOG.info("Periodic notification group for stream {} with period {} scheduled to start in {}ms", stream,
+				period, deltaTillNextTick);
+	}
+
+	@Override
+	public void close() {
+		List<Runnable> released = new ArrayList<>();
+		synchronized (this) {
+			if (this.trigger != null) {
+				trigger.cancel();
+				trigger = null;
+			}
+			for (List<Runnable> tasks : waiting.values()) {
+				released.addAll(tasks);
+			}
+			waiting.clear();
+		}
+		runAll(released);
+	}
+
+	/**
+	 * @param subscriptionID
+	 *            Subscription to add to this group
+	 */
+	public void addMember(String subscriptionID) {
+		members.add(subscriptionID);
+	}
+
+	/**
+	 * @param subscriptionID
+	 *            Subscription to remove from this group
+	 * @return true if the subscription was a member of this group
+	 */
+	public boolean removeMember(String subscriptionID) {
+		lastFingerprints.remove(subscriptionID);
+		boolean removed = members.remove(subscriptionID);
+		List<Runnable> released;
+		synchronized (this) {
+			sentTicks.remove(subscriptionID);
+			released = waiting.remove(subscriptionID);
+		}
+		runAll(released);
+		return removed;
+	}
+
+	/**
+	 * @param now
+	 *            Current time in milliseconds since epoch
+	 * @return Tick of this group closest to the given time, in milliseconds
+	 *         since epoch. Ticks run a little late, rounding maps them back to
+	 *         the aligned point in time shared with other groups.
+	 */
+	public long tickTime(long now) {
+		return anchorTime + Math.round((double) (now - anchorTime) / period) * period;
+	}
+
+	/**
+	 * Runs the given task once the update of the given tick was sent to a
+	 * member, used to send the update of a dependent subscription after the
+	 * one of its parent. The task runs immediately if the member was already
+	 * sent this tick or this group does not tick at the given time.
+	 *
+	 * @param subscriptionID
+	 *            Member of this group
+	 * @param tickTime
+	 *            Tick in milliseconds since epoch
+	 * @param task
+	 *            Task to run
+	 */
+	void runAfterMember(String subscriptionID, long tickTime, Runnable task) {
+		synchronized (this) {
+			Long sent = sentTicks.get(subscriptionID);
+			if (members.contains(subscriptionID) && Math.floorMod(tickTime - anchorTime, period) == 0
+					&& (sent == null || sent < tickTime)) {
+				List<Runnable> tasks = waiting.get(subscriptionID);
+				if (tasks == null) {
+					tasks = new ArrayList<>();
+					waiting.put(subscriptionID, tasks);
+				}
+				tasks.add(task);
+				return;
+			}
+		}
+		task.run();
+	}
+
+	/**
+	 * Marks the update of the given tick as sent (or not to be sent) to a
+	 * member and runs the tasks waiting for it.
+	 *
+	 * @param subscriptionID
+	 *            Member of this group
+	 * @param tickTime
+	 *            Tick in milliseconds since epoch
+	 */
+	void memberSent(String subscriptionID, long tickTime) {
+		List<Runnable> released;
+		synchronized (this) {
+			Long sent = sentTicks.get(subscriptionID);
+			sentTicks.put(subscriptionID, sent == null ? tickTime : Math.max(sent, tickTime));
+			released = waiting.remove(subscriptionID);
+		}
+		runAll(released);
+	}
+
+	private static void runAll(List<Runnable> tasks) {
+		for (Runnable task : tasks == null ? Collections.<Runnable> emptyList() : tasks) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				LOG.warn("Dependent update failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Remembers the fingerprint of the content pushed to a member.
+	 *
+	 * @param subscriptionID
+	 *            Member the content is pushed to
+	 * @param fingerprint
+	 *            Fingerprint of the content
+	 * @return false if the content last pushed to the member had the same
+	 *         fingerprint
+	 */
+	boolean updateFingerprint(String subscriptionID, HashCode fingerprint) {
+		return !fingerprint.equals(lastFingerprints.put(subscriptionID, fingerprint));
+	}
+
+	/**
+	 * Forgets the content last pushed to a member, e.g. because the receiver
+	 * missed updates. The next update is pushed in any case.
+	 *
+	 * @param subscriptionID
+	 *            Member of this group
+	 */
+	void resetFingerprint(String subscriptionID) {
+		lastFingerprints.remove(subscriptionID);
+	}
+
+	/**
+	 * @return Subscription IDs in this group, iteration works on a snapshot
+	 */
+	public Set<String> getMembers() {
+		return members;
+	}
+
+	/**
+	 * Marks the processing of a tick as started.
+	 *
+	 * @param tickTime
+	 *            Tick in milliseconds since epoch
+	 * @return false if the previous tick is still in progress, the tick is
+	 *         counted as skipped then and dependent subscriptions do not wait
+	 *         for it
+	 */
+	boolean tryStartTick(long tickTime) {
+		if (tickInProgress.compareAndSet(false, true)) {
+			return true;
+		}
+		skippedTicks.incrementAndGet();
+		for (String subscriptionID : members) {
+			memberSent(subscriptionID, tickTime);
+		}
+		return false;
+	}
+
+	/**
+	 * Marks the processing of the current tick as finished.
+	 */
+	void finishTick() {
+		tickInProgress.set(false);
+	}
+
+	/**
+	 * @return Number of ticks skipped because the previous tick was still in
+	 *         progress
+	 */
+	public long getSkippedTicks() {
+		return skippedTicks.get();
+	}
+
+	public boolean isEmpty() {
+		return members.isEmpty();
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return Key the notifications of this group are recorded with in the
+	 *         {@link NotificationReplayLog}
+	 */
+	public long getReplayKey() {
+		return replayKey;
+	}
+
+	public String getStream() {
+		return stream;
+	}
+
+	public Long getPeriod() {
+		return period;
+	}
+
+	public String getEncoding() {
+		return encoding;
+	}
+
+	public CompiledSubtreeFilter getFilter() {
+		return filter;
+	}
+}
@@ -11,13 +11,11 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.push.rev160615.PushUpdate;
 import org.opendaylight.yangpushserver.impl.YangpushProvider;
+import org.opendaylight.yangpushserver.notification.NotificationScheduler.ScheduledTask;
 import org.opendaylight.yangpushserver.notification.OAMNotification.OAMStatus;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine.operations;
@@ -29,21 +27,34 @@ import org.slf4j.LoggerFactory;
 /**
  * The periodic notification scheduler is used to trigger the {@link PushUpdate}
  * notification (can be extended for all type of notifications, e.g. periodic
- * event notifications) periodically.
- * 
- * TODO Extend this class to support the anchor time of the
- * {@link NotificationEngine}.
+ * event notifications) periodically. The subscription joins the
+ * {@link PeriodicNotificationGroup} of its stream, encoding, period and filter
+ * at its start time, the notifications themselves are triggered by this group
+ * aligned to the anchor time of the {@link NotificationEngine}.
  * 
  * @author Dario.Schwarzbach
  *
  */
 public class PeriodicNotificationScheduler implements AutoCloseable {
 	private static final Logger LOG = LoggerFactory.getLogger(PeriodicNotificationScheduler.class);
-	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-	private ScheduledFuture<?> trigger;
-	private boolean isTriggeredForTheFirstTime = true;
+	private final NotificationScheduler scheduler;
+	private ScheduledTask trigger;
+	private ScheduledTask stopTrigger;
+	private String subscriptionID;
 	private String startTime;
 	private String stopTime;
+	// Set on close, a trigger already running does not join the periodic
+	// group afterwards
+	private volatile boolean closed = false;
+
+	/**
+	 * @param scheduler
+	 *            Shared scheduler of the {@link NotificationEngine} the
+	 *            notifications are triggered on
+	 */
+	public PeriodicNotificationScheduler(NotificationScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
 
 	/**
 	 * Used to schedule when a periodic notification should be send first, when
@@ -63,24 +74,28 @@ public class PeriodicNotificationScheduler implements AutoCloseable {
 			Long period) {
 		DateFormat format = new SimpleDateFormat(PeriodicNotification.YANG_DATEANDTIME_FORMAT_BLUEPRINT);
 
+		this.subscriptionID = subscriptionID;
 		this.startTime = ensureYangDateAndTimeFormat(subStartTime);
 		this.stopTime = ensureYangDateAndTimeFormat(subStopTime);
 
 		final Runnable triggerAction = () -> {
-			// Calls method periodicNotification in NotificationEngine
-			// to compose and send a periodic notification for the
+			// Joins the periodic notification group in NotificationEngine
+			// which composes and sends the periodic notifications for the
 			// underlying subscription
-			if (SubscriptionEngine.getInstance().getSubscription(subscriptionID)
-					.getSubscriptionStreamStatus() == SubscriptionStreamStatus.inactive) {
-				SubscriptionEngine.getInstance().getSubscription(subscriptionID)
-						.setSubscriptionStreamStatus(SubscriptionStreamStatus.active);
+			SubscriptionInfo subscription = SubscriptionEngine.getInstance().getSubscription(subscriptionID);
+			if (closed || subscription == null) {
+				LOG.info("Periodic notification for subscription {} was unregistered before its start",
+						subscriptionID);
+				return;
 			}
-			if (isTriggeredForTheFirstTime) {
-				NotificationEngine.getInstance().oamNotification(subscriptionID, OAMStatus.subscription_started, null);
-				isTriggeredForTheFirstTime = false;
+			if (subscription.getSubscriptionStreamStatus() == SubscriptionStreamStatus.inactive) {
+				subscription.setSubscriptionStreamStatus(SubscriptionStreamStatus.active);
 			}
-			LOG.info("Periodic notification for subscription {} is triggered", subscriptionID);
-			NotificationEngine.getInstance().periodicNotification(subscriptionID);
+			NotificationEngine.getInstance().oamNotification(subscriptionID, OAMStatus.subscription_started, null);
+			LOG.info("Periodic notification for subscription {} is started", subscriptionID);
+			// Recorded notifications are sent before the live ones
+			NotificationEngine.getInstance().replay(subscriptionID);
+			NotificationEngine.getInstance().joinPeriodicGroup(subscriptionID, this);
 		};
 		Long deltaTillStart = 0l;
 		if (startTime != null) {
@@ -91,8 +106,8 @@ public class PeriodicNotificationScheduler implements AutoCloseable {
 						PeriodicNotification.YANG_DATEANDTIME_FORMAT_BLUEPRINT, startTime);
 			}
 		}
-		trigger = scheduler.scheduleAtFixedRate(triggerAction,
-				deltaTillStart + YangpushProvider.DELAY_TO_ENSURE_RPC_REPLY, period, TimeUnit.MILLISECONDS);
+		trigger = scheduler.schedule(triggerAction, deltaTillStart + YangpushProvider.DELAY_TO_ENSURE_RPC_REPLY,
+				TimeUnit.MILLISECONDS);
 		LOG.info("Periodic notification for subscription {} scheduled to start in {}ms with period {}", subscriptionID,
 				deltaTillStart, period);
 
@@ -106,7 +121,7 @@ public class PeriodicNotificationScheduler implements AutoCloseable {
 			}
 		}
 		if (deltaTillStop > 0) {
-			scheduler.schedule(() -> {
+			stopTrigger = scheduler.schedule(() -> {
 				LOG.info(
 						"Periodic notification for subscription {} reached its stop time and the subscription will be deleted",
 						subscriptionID);
@@ -119,14 +134,29 @@ public class PeriodicNotificationScheduler implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * @return Whether this scheduler was closed, its subscription must not
+	 *         join a periodic group anymore
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
 	@Override
 	public void close() throws Exception {
+		// Set before leaving the group, so a start trigger running
+		// concurrently either joined already or sees the flag
+		closed = true;
 		if (this.trigger != null) {
-			trigger.cancel(true);
+			trigger.cancel();
 			trigger = null;
 		}
-		if (this.scheduler != null) {
-			scheduler.shutdown();
+		if (this.stopTrigger != null) {
+			stopTrigger.cancel();
+			stopTrigger = null;
+		}
+		if (this.subscriptionID != null) {
+			NotificationEngine.getInstance().leavePeriodicGroup(subscriptionID);
 		}
 	}
 
@@ -150,8 +180,8 @@ public class PeriodicNotificationScheduler implements AutoCloseable {
 	 * 
 	 * @param yangDateAndTime
 	 *            Date format String that will be formated correctly
-	 * @return Date format String used to schedule
-	 *         {@link ScheduledExecutorService}
+	 * @return Date format String used to schedule at the
+	 *         {@link NotificationScheduler}
 	 */
 	public static String ensureYangDateAndTimeFormat(String yangDateAndTime) {
 		if (yangDateAndTime != null) {
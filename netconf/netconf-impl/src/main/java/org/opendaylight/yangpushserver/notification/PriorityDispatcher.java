@@ -0,0 +1,287 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Dispatches the notification processing of subscriptions to the worker pool
+ * of the {@link NotificationScheduler} according to their
+ * subscription-priority. Tasks are queued per priority class and served by
+ * weighted fair queuing (stride scheduling): a class with priority p gets a
+ * share of p + 1 of the dispatched tasks, so higher priorities are served
+ * first under load while lower priorities do not starve. The number of tasks
+ * running at the same time is limited, the rest waits in the queues of their
+ * classes instead of the FIFO queue of the worker pool.
+ *
+ * If the worker pool rejects a task, it is put back at the head of its class
+ * and retried when one of the running tasks finishes. If no task is running
+ * that could trigger the retry, a retry is scheduled instead. Tasks never run
+ * on the calling thread, which may be the timer thread or a data store
+ * callback, and a dispatched task is never dropped.
+ *
+ * Additionally the latency of the periodic updates, i.e. the time between a
+ * tick and the push-update of a subscription, is recorded per priority.
+ *
+ */
+public class PriorityDispatcher {
+	private static final Logger LOG = LoggerFactory.getLogger(PriorityDispatcher.class);
+
+	public static final int DEFAULT_CAPACITY = 16384;
+	// Pass increment of a class with weight 1
+	private static final long STRIDE = 1l << 16;
+
+	private final Executor executor;
+	private final Consumer<Runnable> retryScheduler;
+	private final int maxRunning;
+	private final int capacity;
+
+	// Priority classes by priority, guarded by this
+	private final TreeMap<Short, PriorityClass> classes = new TreeMap<>();
+	private int running = 0;
+	private int queued = 0;
+	// Pass of the class served last, classes becoming active start here
+	private long virtualTime = 0;
+	private boolean retryScheduled = false;
+
+	private final Map<Short, LatencyStatistics> latencies = new ConcurrentHashMap<>();
+
+	/**
+	 * @param executor
+	 *            Executor running the dispatched tasks
+	 * @param retryScheduler
+	 *            Runs the given retry of rejected tasks shortly after, used if
+	 *            no running task could retry them
+	 * @param maxRunning
+	 *            Maximum number of tasks running at the same time
+	 * @param capacity
+	 *            Maximum number of waiting tasks of all priority classes
+	 */
+	public PriorityDispatcher(Executor executor, Consumer<Runnable> retryScheduler, int maxRunning, int capacity) {
+		Preconditions.checkArgument(maxRunning > 0, "At least one running task is required");
+		this.executor = Preconditions.checkNotNull(executor);
+		this.retryScheduler = Preconditions.checkNotNull(retryScheduler);
+		this.maxRunning = maxRunning;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param priority
+	 *            subscription-priority the tasks are dispatched with
+	 * @return Executor queuing its tasks at the given priority, e.g. to run
+	 *         future transformations. Tasks are rejected with a
+	 *         {@link RejectedExecutionException} if the queues are full.
+	 */
+	public Executor executor(short priority) {
+		return task -> submit(priority, task);
+	}
+
+	/**
+	 * Queues a task at the given priority.
+	 *
+	 * @param priority
+	 *            subscription-priority, higher values are served first
+	 * @param task
+	 *            Task to run
+	 * @throws RejectedExecutionException
+	 *             If the queues are full
+	 */
+	public void submit(short priority, Runnable task) {
+		Preconditions.checkArgument(priority >= 0, "Priority must not be negative");
+		synchronized (this) {
+			if (queued >= capacity) {
+				throw new RejectedExecutionException("Notification dispatcher queue is full");
+			}
+			PriorityClass priorityClass = classes.get(priority);
+			if (priorityClass == null) {
+				priorityClass = new PriorityClass(priority);
+				classes.put(priority, priorityClass);
+			}
+			if (priorityClass.tasks.isEmpty()) {
+				// An idle class must not catch up on the time it was idle
+				priorityClass.pass = Math.max(priorityClass.pass, virtualTime);
+			}
+			priorityClass.tasks.add(task);
+			queued++;
+		}
+		dispatch();
+	}
+
+	private void dispatch() {
+		while (true) {
+			PriorityClass selected = null;
+			Runnable next;
+			synchronized (this) {
+				if (running >= maxRunning || queued == 0) {
+					return;
+				}
+				// Descending, so higher priorities win ties
+				for (PriorityClass priorityClass : classes.descendingMap().values()) {
+					if (!priorityClass.tasks.isEmpty() && (selected == null || priorityClass.pass < selected.pass)) {
+						selected = priorityClass;
+					}
+				}
+				next = selected.tasks.poll();
+				virtualTime = selected.pass;
+				selected.pass += selected.stride;
+				queued--;
+				running++;
+			}
+			final Runnable task = next;
+			try {
+				executor.execute(() -> {
+					try {
+						task.run();
+					} finally {
+						finished();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				boolean scheduleRetry;
+				synchronized (this) {
+					running--;
+					selected.pass -= selected.stride;
+					selected.tasks.addFirst(task);
+					queued++;
+					// Retried by dispatch() when a running task finishes, by
+					// a scheduled retry if none is running
+					scheduleRetry = running == 0 && !retryScheduled;
+					retryScheduled |= scheduleRetry;
+				}
+				LOG.debug("Notification worker pool rejected task {}, retrying later", task);
+				if (scheduleRetry) {
+					retryScheduler.accept(this::retry);
+				}
+				return;
+			}
+		}
+	}
+
+	private void retry() {
+		synchronized (this) {
+			retryScheduled = false;
+		}
+		dispatch();
+	}
+
+	private void finished() {
+		synchronized (this) {
+			running--;
+		}
+		dispatch();
+	}
+
+	/**
+	 * @return Number of tasks waiting in the queues of all priority classes
+	 */
+	public synchronized int getQueuedTaskCount() {
+		return queued;
+	}
+
+	/**
+	 * Records the latency of an update sent at the given priority.
+	 *
+	 * @param priority
+	 *            subscription-priority of the subscription
+	 * @param latency
+	 *            Time in milliseconds the update was sent after its tick
+	 */
+	public void recordLatency(short priority, long latency) {
+		LatencyStatistics statistics = latencies.get(priority);
+		if (statistics == null) {
+			latencies.putIfAbsent(priority, new LatencyStatistics());
+			statistics = latencies.get(priority);
+		}
+		statistics.record(Math.max(0l, latency));
+	}
+
+	/**
+	 * @param priority
+	 *            subscription-priority
+	 * @return Latency of the updates sent at the given priority
+	 */
+	public LatencyStatistics getLatency(short priority) {
+		LatencyStatistics statistics = latencies.get(priority);
+		return statistics == null ? new LatencyStatistics() : statistics;
+	}
+
+	/**
+	 * @return Latency statistics of all priorities updates were sent at
+	 */
+	public Map<Short, LatencyStatistics> getLatencies() {
+		return new TreeMap<>(latencies);
+	}
+
+	private static final class PriorityClass {
+		private final Deque<Runnable> tasks = new ArrayDeque<>();
+		private final long stride;
+		private long pass = 0;
+
+		private PriorityClass(short priority) {
+			this.stride = STRIDE / (priority + 1);
+		}
+	}
+
+	/**
+	 * Number, mean and maximum of the latencies recorded for one priority.
+	 */
+	public static final class LatencyStatistics {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		private void record(long latency) {
+			count.incrementAndGet();
+			total.addAndGet(latency);
+			long current;
+			while ((current = max.get()) < latency && !max.compareAndSet(current, latency)) {
+				// Retry
+			}
+		}
+
+		/**
+		 * @return Number of updates recorded
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return Mean latency in milliseconds, 0 if nothing was recorded
+		 */
+		public long getMean() {
+			long n = count.get();
+			return n == 0 ? 0 : total.get() / n;
+		}
+
+		/**
+		 * @return Maximum latency in milliseconds
+		 */
+		public long getMax() {
+			return max.get();
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + getCount() + " mean=" + getMean() + "ms max=" + getMax() + "ms";
+		}
+	}
+}
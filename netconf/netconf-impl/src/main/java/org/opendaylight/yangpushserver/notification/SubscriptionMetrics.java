@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and stage latencies of one subscription. All updates are lock-free,
+ * so they are recorded on the notification path directly. The sequence
+ * numbers of the updates of the subscription are assigned here as well, so
+ * they last as long as the subscription.
+ *
+ */
+public final class SubscriptionMetrics {
+
+	/**
+	 * Stages a notification passes: reading the data (periodic updates only),
+	 * filtering, encoding and sending, i.e. the time from queuing the
+	 * notification until it was written to the session.
+	 */
+	public enum Stage {
+		read, filter, encode, send,
+	}
+
+	private final LongAdder notificationsSent = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder updatesSuppressed = new LongAdder();
+	private final LongAdder notificationsDropped = new LongAdder();
+	private final LongAdder notificationsCoalesced = new LongAdder();
+	private final LongAdder sequenceGaps = new LongAdder();
+	private final LongAdder sequenceNumbersMissed = new LongAdder();
+	private final AtomicLong lastSequenceNumber = new AtomicLong();
+	// Not modified after construction
+	private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+	// Latencies of all subscriptions, also recorded to if not null
+	private final Map<Stage, LatencyHistogram> totalLatencies;
+
+	public SubscriptionMetrics() {
+		this(null);
+	}
+
+	/**
+	 * @param totalLatencies
+	 *            Latencies of all subscriptions by stage, recorded stage
+	 *            latencies are added to them as well
+	 */
+	public SubscriptionMetrics(Map<Stage, LatencyHistogram> totalLatencies) {
+		this.totalLatencies = totalLatencies;
+		for (Stage stage : Stage.values()) {
+			latencies.put(stage, new LatencyHistogram());
+		}
+	}
+
+	/**
+	 * Records a notification written to the session.
+	 *
+	 * @param bytes
+	 *            Size of the notification, 0 if unknown
+	 */
+	public void recordSent(long bytes) {
+		notificationsSent.increment();
+		bytesSent.add(bytes);
+	}
+
+	/**
+	 * Records updates not sent because the content did not change or changes
+	 * were merged during the dampening period.
+	 */
+	public void recordSuppressed(long updates) {
+		updatesSuppressed.add(updates);
+	}
+
+	/**
+	 * Records notifications dropped by the outbound queue.
+	 */
+	public void recordDropped(long notifications) {
+		notificationsDropped.add(notifications);
+	}
+
+	/**
+	 * Records queued periodic updates replaced by a newer one.
+	 */
+	public void recordCoalesced(long notifications) {
+		notificationsCoalesced.add(notifications);
+	}
+
+	/**
+	 * Records a gap in the sequence numbers written to the session, i.e.
+	 * updates dropped, coalesced or not written because the subscription was
+	 * suspended.
+	 *
+	 * @param missed
+	 *            Number of sequence numbers skipped
+	 */
+	public void recordGap(long missed) {
+		sequenceGaps.increment();
+		sequenceNumbersMissed.add(missed);
+	}
+
+	/**
+	 * Assigns the sequence number of the next push-update or
+	 * push-change-update of the subscription, the first is 1.
+	 *
+	 * @return Sequence number
+	 */
+	public long nextSequenceNumber() {
+		return lastSequenceNumber.incrementAndGet();
+	}
+
+	/**
+	 * Records the time a notification spent in the given stage.
+	 *
+	 * @param stage
+	 *            Stage of the notification path
+	 * @param nanos
+	 *            Time in nanoseconds
+	 */
+	public void record(Stage stage, long nanos) {
+		latencies.get(stage).record(nanos);
+		if (totalLatencies != null) {
+			totalLatencies.get(stage).record(nanos);
+		}
+	}
+
+	public long getNotificationsSent() {
+		return notificationsSent.sum();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	public long getUpdatesSuppressed() {
+		return updatesSuppressed.sum();
+	}
+
+	public long getNotificationsDropped() {
+		return notificationsDropped.sum();
+	}
+
+	public long getNotificationsCoalesced() {
+		return notificationsCoalesced.sum();
+	}
+
+	public long getSequenceGaps() {
+		return sequenceGaps.sum();
+	}
+
+	public long getSequenceNumbersMissed() {
+		return sequenceNumbersMissed.sum();
+	}
+
+	/**
+	 * @return Sequence number assigned last, 0 if none
+	 */
+	public long getLastSequenceNumber() {
+		return lastSequenceNumber.get();
+	}
+
+	/**
+	 * @return Latency histogram of the given stage
+	 */
+	public LatencyHistogram getLatency(Stage stage) {
+		return latencies.get(stage);
+	}
+}
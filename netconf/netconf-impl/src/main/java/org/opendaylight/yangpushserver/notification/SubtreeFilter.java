@@ -87,7 +87,7 @@ public class SubtreeFilter {
 		document.getDocumentElement().removeChild(eventTimeNode);
 	}
 
-	private static boolean isSupported(XmlElement filter) {
+	static boolean isSupported(XmlElement filter) {
 		return "subtree".equals(filter.getAttribute("type")) || "subtree"
 				.equals(filter.getAttribute("type", XmlNetconfConstants.URN_IETF_PARAMS_XML_NS_NETCONF_BASE_1_0));
 	}
@@ -0,0 +1,406 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.dom.DOMSource;
+
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.model.api.ChoiceCaseNode;
+import org.opendaylight.yangtools.yang.model.api.ChoiceSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ContainerSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.DataNodeContainer;
+import org.opendaylight.yangtools.yang.model.api.DataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.LeafListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.LeafSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.Module;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * XPath filter of a yang-push subscription (xpath-filter case of the
+ * update-filter choice). The expression is parsed and resolved against the
+ * schema context once when the subscription is established and translated
+ * into the equivalent subtree filter, so it is evaluated by
+ * {@link NormalizedNodeSubtreeFilter} and reads only the read roots derived by
+ * {@link CompiledSubtreeFilter}, exactly like a subtree filter.
+ *
+ * The following subset of XPath 1.0 is supported:
+ * <ul>
+ * <li>Absolute location paths of child steps, e.g.
+ * <code>/ietf-interfaces:interfaces/interface</code>, and unions of them</li>
+ * <li>Predicates comparing a leaf child with a string or number literal, e.g.
+ * <code>interface[name='eth0']</code>, several comparisons combined with
+ * <code>and</code> or given as several predicates</li>
+ * </ul>
+ * The prefix of a step is the name or the prefix of a YANG module, steps
+ * without prefix belong to the module of their parent. Other expressions
+ * (axes, wildcards, functions, positional predicates, other operators) are
+ * rejected.
+ *
+ * A step with predicates selects the nodes whose leaves match the literals,
+ * the leaves compared are part of the selected data like content match nodes
+ * of subtree filters.
+ *
+ */
+public final class XPathFilter {
+	private static final String SUBTREE_FILTER_NS = "urn:ietf:params:xml:ns:netconf:notification:1.1";
+
+	private final String expression;
+	private final SchemaContext schemaContext;
+	// Namespaces of module prefixes used in literals, e.g. identities
+	private final Map<String, String> literalPrefixes = new LinkedHashMap<>();
+	private int position = 0;
+
+	private XPathFilter(String expression, SchemaContext schemaContext) {
+		this.expression = expression;
+		this.schemaContext = schemaContext;
+	}
+
+	/**
+	 * Translates the XPath expression into the equivalent subtree filter.
+	 *
+	 * @param expression
+	 *            XPath filter of a subscription
+	 * @param schemaContext
+	 *            Current global schema context
+	 * @return Subtree filter element selecting the same data
+	 * @throws IllegalArgumentException
+	 *             if the expression is not supported or refers to unknown
+	 *             nodes
+	 */
+	public static DOMSource toSubtreeFilter(String expression, SchemaContext schemaContext) {
+		Preconditions.checkArgument(expression != null && !expression.trim().isEmpty(), "Empty XPath filter");
+		Preconditions.checkArgument(schemaContext != null, "No schema context available to resolve XPath filter %s",
+				expression);
+		XPathFilter parser = new XPathFilter(expression, schemaContext);
+		Step root = parser.parse();
+
+		Document document = XmlUtil.newDocument();
+		Element filter = document.createElementNS(SUBTREE_FILTER_NS, "filter");
+		filter.setAttribute("type", "subtree");
+		for (Step child : root.children) {
+			filter.appendChild(child.toElement(document, parser.literalPrefixes));
+		}
+		document.appendChild(filter);
+		return new DOMSource(filter);
+	}
+
+	private Step parse() {
+		Step root = new Step(null, null);
+		do {
+			parsePath(root);
+		} while (consume('|'));
+		skipWhitespace();
+		if (position < expression.length()) {
+			throw unsupported("unexpected '" + expression.charAt(position) + "'");
+		}
+		return root;
+	}
+
+	/**
+	 * Parses one absolute location path and merges it into the steps parsed
+	 * so far.
+	 */
+	private void parsePath(Step root) {
+		if (!consume('/')) {
+			throw unsupported("only absolute location paths are supported");
+		}
+		Step parent = root;
+		DataNodeContainer parentSchema = schemaContext;
+		do {
+			if (peek('/')) {
+				throw unsupported("descendant steps ('//') are not supported");
+			}
+			QName name = parseName(parent.name);
+			DataSchemaNode schema = findChild(parentSchema, name);
+			if (schema == null) {
+				throw new IllegalArgumentException(
+						String.format("Unknown node %s in XPath filter %s", name, expression));
+			}
+			Map<QName, String> predicates = new LinkedHashMap<>();
+			while (consume('[')) {
+				if (!(schema instanceof ListSchemaNode || schema instanceof ContainerSchemaNode)) {
+					throw unsupported("predicates are only supported on lists and containers");
+				}
+				do {
+					QName leafName = parseName(name);
+					DataSchemaNode leaf = findChild((DataNodeContainer) schema, leafName);
+					if (!(leaf instanceof LeafSchemaNode || leaf instanceof LeafListSchemaNode)) {
+						throw new IllegalArgumentException(String.format(
+								"Predicate of XPath filter %s does not refer to a leaf of %s", expression, name));
+					}
+					if (!consume('=')) {
+						throw unsupported("only '=' comparisons are supported in predicates");
+					}
+					if (predicates.put(leafName, parseLiteral()) != null) {
+						throw unsupported("several comparisons of " + leafName.getLocalName());
+					}
+				} while (consumeKeyword("and"));
+				if (!consume(']')) {
+					throw unsupported("only comparisons combined with 'and' are supported in predicates");
+				}
+			}
+			parent = parent.child(name, predicates);
+			parentSchema = schema instanceof DataNodeContainer ? (DataNodeContainer) schema : null;
+			if (peek('/') && parentSchema == null) {
+				throw unsupported(name.getLocalName() + " has no children");
+			}
+		} while (consume('/'));
+		parent.selectAll = true;
+	}
+
+	private QName parseName(QName parent) {
+		skipWhitespace();
+		String first = parseNCName();
+		if (position < expression.length() && expression.charAt(position) == ':') {
+			if (expression.startsWith("::", position)) {
+				throw unsupported("axes are not supported");
+			}
+			position++;
+			Module module = findModule(first);
+			return QName.create(module.getQNameModule(), parseNCName());
+		}
+		if (parent == null) {
+			throw new IllegalArgumentException(String.format(
+					"Top level node %s of XPath filter %s has to be prefixed with its module", first, expression));
+		}
+		return QName.create(parent, first);
+	}
+
+	private String parseNCName() {
+		int start = position;
+		while (position < expression.length() && isNameChar(expression.charAt(position), position == start)) {
+			position++;
+		}
+		if (start == position) {
+			if (position >= expression.length()) {
+				throw unsupported("unexpected end of expression");
+			}
+			char c = expression.charAt(position);
+			if (c == '*') {
+				throw unsupported("wildcards are not supported");
+			}
+			if (c == '.' || c == '@') {
+				throw unsupported("only child steps are supported");
+			}
+			if (Character.isDigit(c)) {
+				throw unsupported("positional predicates are not supported");
+			}
+			throw unsupported("unexpected '" + c + "'");
+		}
+		if (position < expression.length() && expression.charAt(position) == '(') {
+			throw unsupported("functions are not supported");
+		}
+		return expression.substring(start, position);
+	}
+
+	private String parseLiteral() {
+		skipWhitespace();
+		if (position >= expression.length()) {
+			throw unsupported("unexpected end of expression");
+		}
+		char quote = expression.charAt(position);
+		if (quote == '\'' || quote == '"') {
+			int end = expression.indexOf(quote, position + 1);
+			if (end < 0) {
+				throw unsupported("unterminated literal");
+			}
+			String literal = expression.substring(position + 1, end);
+			position = end + 1;
+			int colon = literal.indexOf(':');
+			if (colon > 0) {
+				Module module = tryFindModule(literal.substring(0, colon));
+				if (module != null) {
+					literalPrefixes.put(literal.substring(0, colon), module.getNamespace().toString());
+				}
+			}
+			return literal;
+		}
+		int start = position;
+		while (position < expression.length() && (Character.isDigit(expression.charAt(position))
+				|| expression.charAt(position) == '.' || (position == start && expression.charAt(position) == '-'))) {
+			position++;
+		}
+		if (start == position) {
+			throw unsupported("only string and number literals can be compared");
+		}
+		return expression.substring(start, position);
+	}
+
+	private Module findModule(String prefix) {
+		Module module = tryFindModule(prefix);
+		if (module == null) {
+			throw new IllegalArgumentException(
+					String.format("Unknown module prefix %s in XPath filter %s", prefix, expression));
+		}
+		return module;
+	}
+
+	/**
+	 * Modules are looked up by name first, then by their prefix.
+	 */
+	private Module tryFindModule(String prefix) {
+		Module byPrefix = null;
+		for (Module module : schemaContext.getModules()) {
+			if (module.getName().equals(prefix)) {
+				return latestRevision(prefix);
+			}
+			if (byPrefix == null && module.getPrefix().equals(prefix)) {
+				byPrefix = module;
+			}
+		}
+		return byPrefix;
+	}
+
+	private Module latestRevision(String moduleName) {
+		Module latest = null;
+		for (Module module : schemaContext.getModules()) {
+			if (module.getName().equals(moduleName) && (latest == null || isAfter(module.getRevision(),
+					latest.getRevision()))) {
+				latest = module;
+			}
+		}
+		return latest;
+	}
+
+	private static boolean isAfter(Date revision, Date other) {
+		return other == null || (revision != null && revision.after(other));
+	}
+
+	/**
+	 * Finds a data child, looking into the cases of choices, which have no
+	 * representation in the filter.
+	 */
+	private static DataSchemaNode findChild(DataNodeContainer parent, QName name) {
+		if (parent == null) {
+			return null;
+		}
+		DataSchemaNode child = parent.getDataChildByName(name);
+		if (child != null) {
+			return child;
+		}
+		for (DataSchemaNode candidate : parent.getChildNodes()) {
+			if (candidate instanceof ChoiceSchemaNode) {
+				for (ChoiceCaseNode choiceCase : ((ChoiceSchemaNode) candidate).getCases()) {
+					DataSchemaNode nested = findChild(choiceCase, name);
+					if (nested != null) {
+						return nested;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static boolean isNameChar(char c, boolean first) {
+		return Character.isLetter(c) || c == '_'
+				|| (!first && (Character.isDigit(c) || c == '-' || c == '.'));
+	}
+
+	private boolean consume(char c) {
+		if (peek(c)) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean consumeKeyword(String keyword) {
+		skipWhitespace();
+		int end = position + keyword.length();
+		if (expression.startsWith(keyword, position)
+				&& (end >= expression.length() || !isNameChar(expression.charAt(end), false))) {
+			position = end;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean peek(char c) {
+		skipWhitespace();
+		return position < expression.length() && expression.charAt(position) == c;
+	}
+
+	private void skipWhitespace() {
+		while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+			position++;
+		}
+	}
+
+	private IllegalArgumentException unsupported(String reason) {
+		return new IllegalArgumentException(String.format("Unsupported XPath filter %s at position %d: %s",
+				expression, position, reason));
+	}
+
+	/**
+	 * Location step, steps with equal name and predicates of several paths
+	 * are merged.
+	 */
+	private static final class Step {
+		private final QName name;
+		private final Map<QName, String> predicates;
+		private final List<Step> children = new ArrayList<>();
+		// The path ends here, the whole node is selected
+		private boolean selectAll = false;
+
+		private Step(QName name, Map<QName, String> predicates) {
+			this.name = name;
+			this.predicates = predicates;
+		}
+
+		private Step child(QName childName, Map<QName, String> childPredicates) {
+			for (Step child : children) {
+				if (child.name.equals(childName) && child.predicates.equals(childPredicates)) {
+					return child;
+				}
+			}
+			Step child = new Step(childName, childPredicates);
+			children.add(child);
+			return child;
+		}
+
+		/**
+		 * Predicates become content match nodes, child steps containment or
+		 * selection nodes. A node with content match nodes only is selected as
+		 * a whole. Prefixes of literals are declared, so identities can be
+		 * matched by namespace.
+		 */
+		private Element toElement(Document document, Map<String, String> literalPrefixes) {
+			Element element = document.createElementNS(name.getNamespace().toString(), name.getLocalName());
+			for (Map.Entry<QName, String> predicate : predicates.entrySet()) {
+				Element contentMatch = document.createElementNS(predicate.getKey().getNamespace().toString(),
+						predicate.getKey().getLocalName());
+				contentMatch.setTextContent(predicate.getValue());
+				int colon = predicate.getValue().indexOf(':');
+				if (colon > 0 && literalPrefixes.containsKey(predicate.getValue().substring(0, colon))) {
+					contentMatch.setAttributeNS(XmlUtil.XMLNS_URI,
+							"xmlns:" + predicate.getValue().substring(0, colon),
+							literalPrefixes.get(predicate.getValue().substring(0, colon)));
+				}
+				element.appendChild(contentMatch);
+			}
+			if (!selectAll) {
+				for (Step child : children) {
+					element.appendChild(child.toElement(document, literalPrefixes));
+				}
+			}
+			return element;
+		}
+	}
+}
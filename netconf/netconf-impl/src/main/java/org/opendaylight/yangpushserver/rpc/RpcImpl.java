@@ -12,11 +12,10 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.xml.transform.OutputKeys;
@@ -47,11 +46,16 @@ import org.opendaylight.yangpushserver.impl.YangpushProvider;
 import org.opendaylight.yangpushserver.notification.NotificationEngine;
 import org.opendaylight.yangpushserver.notification.OAMNotification.OAMStatus;
 import org.opendaylight.yangpushserver.notification.PeriodicNotification;
+import org.opendaylight.yangpushserver.notification.XPathFilter;
 import org.opendaylight.yangpushserver.rpc.Errors.errors;
+import org.opendaylight.yangpushserver.subscription.AdmissionController;
+import org.opendaylight.yangpushserver.subscription.AdmissionController.Decision;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine;
 import org.opendaylight.yangpushserver.subscription.SubscriptionEngine.operations;
 import org.opendaylight.yangpushserver.subscription.SubscriptionInfo;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.ChangeType;
 import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.SubscriptionStreamStatus;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.UnchangedUpdates;
 import org.opendaylight.yangtools.yang.common.QName;
 import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.AugmentationIdentifier;
 import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
@@ -61,10 +65,14 @@ import org.opendaylight.yangtools.yang.data.api.schema.AugmentationNode;
 import org.opendaylight.yangtools.yang.data.api.schema.ChoiceNode;
 import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
 import org.opendaylight.yangtools.yang.data.api.schema.DataContainerChild;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerNode;
 import org.opendaylight.yangtools.yang.data.api.schema.LeafNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetNode;
 import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
 import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
 import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.DataContainerNodeAttrBuilder;
 import org.opendaylight.yangtools.yang.model.api.SchemaPath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,6 +101,8 @@ public class RpcImpl implements DOMRpcImplementation {
 	public static final String I_DS_PUSH_NS_DATE = "2015-10-15";
 	public static final String NOTIF_BIS = "urn:ietf:params:xml:ns:yang:ietf-event-notifications";
 	public static final String NOTIF_BIS_DATE = "2016-06-15";
+	public static final String YPX_NS = "urn:opendaylight:params:xml:ns:yang:yangpush-extensions";
+	public static final String YPX_NS_DATE = "2016-12-01";
 
 	public static final String YANG_DATEANDTIME_FORMAT_BLUEPRINT = "yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'";
 
@@ -135,6 +145,23 @@ public class RpcImpl implements DOMRpcImplementation {
 	public static final QName Y_PUSH_SUBTREE_FILTERSPEC = QName.create(YP_NS, YP_NS_DATE, "filterspec");
 	public static final QName Y_PUSH_SUBTREE_FILTER_TYPE = QName.create(YP_NS, YP_NS_DATE, "filter-type");
 	public static final QName Y_PUSH_SUBTREE_FILTER = QName.create(YP_NS, YP_NS_DATE, "subtree-filter");
+	public static final QName Y_PUSH_XPATH_FILTER = QName.create(YP_NS, YP_NS_DATE, "xpath-filter");
+
+	// QNames used to construct augment leafs present in
+	// yangpush-extensions
+
+	public static final QName X_UNCHANGED_UPDATES_NAME = QName.create(YPX_NS, YPX_NS_DATE, "unchanged-updates");
+	public static final QName X_BUNDLING_NAME = QName.create(YPX_NS, YPX_NS_DATE, "bundling");
+	public static final QName X_BUNDLING_MAX_EDITS_NAME = QName.create(YPX_NS, YPX_NS_DATE, "max-edits");
+	public static final QName X_BUNDLING_MAX_DELAY_NAME = QName.create(YPX_NS, YPX_NS_DATE, "max-delay");
+	public static final QName X_RESYNC_SUBSCRIPTION_NAME = QName.create(YPX_NS, YPX_NS_DATE, "resync-subscription");
+	public static final QName X_SUB_ID_NAME = QName.create(YPX_NS, YPX_NS_DATE, "subscription-id");
+	public static final QName X_SUB_RESULT_NAME = QName.create(YPX_NS, YPX_NS_DATE, "subscription-result");
+	public static final NodeIdentifier X_RESYNC_SUB_OUTPUT = NodeIdentifier
+			.create(QName.create(YPX_NS, YPX_NS_DATE, "output"));
+	// Defaults of the bundling container
+	private static final long DEFAULT_BUNDLE_MAX_EDITS = 100l;
+	private static final long DEFAULT_BUNDLE_MAX_DELAY = 50l;
 
 	// QNames used to construct establish RPC input & output present in
 	// ietf-event-notifications
@@ -162,8 +189,9 @@ public class RpcImpl implements DOMRpcImplementation {
 			.create(SchemaPath.create(true, QName.create(ModifySubscriptionInput.QNAME, "modify-subscription")));
 	public static final DOMRpcIdentifier DELETE_SUBSCRIPTION_RPC = DOMRpcIdentifier
 			.create(SchemaPath.create(true, QName.create(DeleteSubscriptionInput.QNAME, "delete-subscription")));
+	public static final DOMRpcIdentifier RESYNC_SUBSCRIPTION_RPC = DOMRpcIdentifier
+			.create(SchemaPath.create(true, X_RESYNC_SUBSCRIPTION_NAME));
 
-	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 	private DOMRpcProviderService service;
 	private DOMDataBroker globalDomDataBroker;
 	private YangpushProvider provider;
@@ -183,11 +211,12 @@ public class RpcImpl implements DOMRpcImplementation {
 	}
 
 	/**
-	 * Registers RPC present in ietf-yang-push module to DOMRpcProviderService.
+	 * Registers RPC present in ietf-yang-push and yangpush-extensions modules
+	 * to DOMRpcProviderService.
 	 */
 	private void registerRPCs() {
 		service.registerRpcImplementation(this, ESTABLISH_SUBSCRIPTION_RPC, MODIFY_SUBSCRIPTION_RPC,
-				DELETE_SUBSCRIPTION_RPC);
+				DELETE_SUBSCRIPTION_RPC, RESYNC_SUBSCRIPTION_RPC);
 	}
 
 	/**
@@ -216,6 +245,9 @@ public class RpcImpl implements DOMRpcImplementation {
 		} else if (rpc.equals(DELETE_SUBSCRIPTION_RPC)) {
 			LOG.info("This is a delete subscrition RPC");
 			return deleteSubscriptionRpcHandler(input);
+		} else if (rpc.equals(RESYNC_SUBSCRIPTION_RPC)) {
+			LOG.info("This is a resync subscription RPC");
+			return resyncSubscriptionRpcHandler(input);
 		}
 		LOG.info("Unknown RPC...");
 		return Futures.immediateFailedCheckedFuture(createDOMRpcException("RPC invocation not supported!"));
@@ -251,6 +283,34 @@ public class RpcImpl implements DOMRpcImplementation {
 		return cn;
 	}
 
+	/**
+	 * This method is invoked if a subscription is not admitted because its
+	 * estimated cost exceeds the remaining notification budget. If a longer
+	 * period or dampening period would be admitted, it is returned as hint.
+	 * 
+	 * @param output
+	 *            Output node of the establish or modify subscription RPC
+	 * @param subscription
+	 *            The subscription not admitted
+	 * @param decision
+	 *            Decision of the {@link AdmissionController}
+	 */
+	private ContainerNode createInsufficientResourcesResponse(NodeIdentifier output, SubscriptionInfo subscription,
+			Decision decision) {
+		LOG.error(Errors.printError(errors.subscription_creation_error));
+		DataContainerNodeAttrBuilder<NodeIdentifier, ContainerNode> builder = Builders.containerBuilder()
+				.withNodeIdentifier(output)
+				.withChild(ImmutableNodes.leafNode(N_SUB_RESULT_NAME, "error-insufficient-resources"));
+		if (decision.getProposedInterval() != null) {
+			QName proposed = subscription.getDampeningPeriod() != null ? Y_DAMPENING_PERIOD_NAME : Y_PERIOD_NAME;
+			builder.withChild(Builders.choiceBuilder().withNodeIdentifier(new NodeIdentifier(Y_UPDATE_TRIGGER_NAME))
+					.withChild(ImmutableNodes.leafNode(proposed, decision.getProposedInterval())).build());
+		}
+		final ContainerNode cn = builder.build();
+		LOG.info("subResponse node: " + cn);
+		return cn;
+	}
+
 	/***********************************
 	 * Section for DELETE-SUBSCRIPTION *
 	 ***********************************/
@@ -394,6 +454,49 @@ public class RpcImpl implements DOMRpcImplementation {
 		return false;
 	}
 
+	/***********************************
+	 * Section for RESYNC-SUBSCRIPTION *
+	 ***********************************/
+	/**
+	 * This method will handle the incomming resync subscription RPC of
+	 * yangpush-extensions. The on-change subscription is not re-established,
+	 * its OnChangeHandler sends one push-update with the data its
+	 * listeners observed, marked with the change sequence, and continues with
+	 * push-change-updates.
+	 * 
+	 * @param input
+	 *            The input presented as NormalizedNode.
+	 * @return CheckedFuture with the subscription-result of the resync.
+	 */
+	private CheckedFuture<DOMRpcResult, DOMRpcException> resyncSubscriptionRpcHandler(NormalizedNode<?, ?> input) {
+		String subscriptionID = null;
+		if (input instanceof ContainerNode) {
+			Optional<DataContainerChild<? extends PathArgument, ?>> subIdNode = ((ContainerNode) input)
+					.getChild(new NodeIdentifier(X_SUB_ID_NAME));
+			if (subIdNode.isPresent() && subIdNode.get().getValue() != null) {
+				subscriptionID = subIdNode.get().getValue().toString();
+			}
+		}
+		String result;
+		if (subscriptionID == null) {
+			LOG.error(Errors.printError(errors.input_sub_id_error));
+			result = "error-other";
+		} else if (!subscriptionEngine.checkIfSubscriptionExists(subscriptionID)) {
+			LOG.error("No such subscription with ID:" + subscriptionID);
+			result = "error-no-such-subscription";
+		} else if (!notificationEngine.resync(subscriptionID)) {
+			LOG.error("Subscription with ID {} is no active on-change subscription, resync not possible",
+					subscriptionID);
+			result = "error-other";
+		} else {
+			result = "ok";
+		}
+		final ContainerNode output = Builders.containerBuilder().withNodeIdentifier(X_RESYNC_SUB_OUTPUT)
+				.withChild(ImmutableNodes.leafNode(X_SUB_RESULT_NAME, result)).build();
+		LOG.info("output node: " + output);
+		return Futures.immediateCheckedFuture((DOMRpcResult) new DefaultDOMRpcResult(output));
+	}
+
 	/**************************************
 	 * Section for ESTABLISH-SUBSCRIPTION *
 	 **************************************/
@@ -446,9 +549,29 @@ public class RpcImpl implements DOMRpcImplementation {
 		}
 		// parsing should have been 'ok'
 		LOG.info("Parsing complete");
+		String inputError = compileXPathFilter(inputData);
+		if (inputError == null) {
+			inputError = checkSubscriptionDependency(inputData);
+		}
+		if (inputError != null) {
+			return Futures.immediateCheckedFuture(
+					(DOMRpcResult) new DefaultDOMRpcResult(createSubResponse("error - " + inputError)));
+		}
+		if (inputData.getPeriod() == null && inputData.getDampeningPeriod() == null) {
+			LOG.error("Wrong Subscription exists, neither on-Change nor periodic Subscription");
+			return Futures.immediateCheckedFuture((DOMRpcResult) new DefaultDOMRpcResult(
+					createSubResponse("error - wrong subscription, neither on-Change nor periodic subscription")));
+		}
 		// get subscription id from subscription engine.
 		sid = this.subscriptionEngine.generateSubscriptionId();
 		inputData.setSubscription_id(sid);
+		// Admitting the subscription against the notification budget
+		Decision decision = AdmissionController.getInstance().admit(sid, inputData,
+				notificationEngine.measureSelectedNodes(inputData));
+		if (!decision.isAdmitted()) {
+			return Futures.immediateCheckedFuture((DOMRpcResult) new DefaultDOMRpcResult(
+					createInsufficientResourcesResponse(N_ESTABLISH_SUB_OUTPUT, inputData, decision)));
+		}
 		// TODO The client authorization should be checked here.
 		// Saving the Subscription Information locally & on MDSAL datastore
 		this.subscriptionEngine.updateMdSal(inputData, operations.establish);
@@ -456,13 +579,9 @@ public class RpcImpl implements DOMRpcImplementation {
 		if (inputData.getDampeningPeriod() != null) {
 			LOG.info("Register on-Change-Notifications");
 			notificationEngine.registerOnChangeNotification(inputData.getSubscriptionId());
-		} else if (inputData.getPeriod() != null) {
+		} else {
 			LOG.info("Register periodic-Notifications");
 			notificationEngine.registerPeriodicNotification(inputData.getSubscriptionId());
-		} else {
-			LOG.error("Wrong Subscription exists, neither on-Change nor periodic Subscription");
-			return Futures.immediateCheckedFuture((DOMRpcResult) new DefaultDOMRpcResult(
-					createSubResponse("error - wrong subscription, neither on-Change nor periodic subscription")));
 		}
 		ContainerNode output = createEstablishSubOutput(inputData.getSubscriptionId());
 		provider.onEstablishedSubscription(inputData.getSubscriptionId());
@@ -724,34 +843,20 @@ public class RpcImpl implements DOMRpcImplementation {
 						esri.setNoSynchOnStart(false);
 					}
 					LOG.info("Parsing no-synch-on-start complete: " + esri.getNoSynchOnStart());
-					// excluded Change is not supported yet..
-					// DataContainerChild<? extends PathArgument, ?>
-					// excludedChangeNode = null;
-					// NodeIdentifier excludedChange = new
-					// NodeIdentifier(Y_EXCLUDED_CHANGE_NAME);
-					// t = c1.getChild(excludedChange);
-					// if (t.isPresent()) {
-					// LOG.info("t: "+t);
-					// excludedChangeNode = (LeafSetNode<?>) t.get();
-					// LOG.info("excludedChangeNode: "+excludedChangeNode);
-					// Set<LeafNode<?>> excludedChangeNode2 = null;
-					// excludedChangeNode2 = (Set<LeafNode<?>>)
-					// excludedChangeNode.getValue();
-					// LOG.info("excludedChangeNode2: "+excludedChangeNode);
-					// if (excludedChangeNode.getValue().equals(null)) {
-					// esri.setExcludedChange(excludedChangeNode.getValue().toString());
-					// } else {
-					// esri.setExcludedChange(null);
-					// }
-					// } else {
-					// esri.setExcludedChange(null);
-					// }
+					esri.setExcludedChange(parseExcludedChange(c1));
 					LOG.info("Parsing excluded-change complete : " + esri.getExcludedChange());
 				} else {
 					error = Errors.printError(errors.input_period_error);
 				}
 				LOG.info("Parsing update-trigger complete " + "P: " + esri.getPeriod() + " DP: "
 						+ esri.getDampeningPeriod());
+				// Parsing unchanged-updates
+				esri.setUnchangedUpdates(parseUnchangedUpdates(conNode, UnchangedUpdates.send));
+				LOG.info("Parsing unchanged-updates complete : " + esri.getUnchangedUpdates());
+				// Parsing bundling
+				parseBundling(conNode, esri);
+				LOG.info("Parsing bundling complete : " + esri.getBundleMaxEdits() + " edits, "
+						+ esri.getBundleMaxDelay() + "ms");
 				// VIII Parsing dscp
 				// Deactivated because lack of support for configured
 				// subscriptions
@@ -771,50 +876,18 @@ public class RpcImpl implements DOMRpcImplementation {
 				// }
 				// LOG.info("Parsing dscp complete : " + esri.getDscp());
 				// IX Parsing sub-priority
-				// Deactivated because lack of support for QoS
-				// DataContainerChild<? extends PathArgument, ?> subPriorityNode
-				// = null;
-				// NodeIdentifier subPriority = new
-				// NodeIdentifier(Y_SUB_PRIORITY_NAME);
-				// t = an.getChild(subPriority);
-				// if (t.isPresent()) {
-				// subPriorityNode = (LeafNode<?>) t.get();
-				// if (subPriorityNode.getValue().equals(null)) {
-				// esri.setSubscriptionPriority(String.valueOf(subPriorityNode.getValue()));
-				// } else {
-				// esri.setSubscriptionPriority("0");
-				// }
-				// } else {
-				// esri.setSubscriptionPriority("0");
-				// }
-				// LOG.info("Parsing sub-priority complete : " +
-				// esri.getSubscriptionPriority());
-				// IX Parsing sub-dependency
-				// Deactivated because lack of support for QoS
-				// DataContainerChild<? extends PathArgument, ?>
-				// subDependencyNode = null;
-				// NodeIdentifier subDependency = new
-				// NodeIdentifier(Y_SUB_DEPENDENCY_NAME);
-				// t = an.getChild(subDependency);
-				// if (t.isPresent()) {
-				// subDependencyNode = (LeafNode<?>) t.get();
-				// if (subDependencyNode.getValue().equals(null)) {
-				// esri.setSubscriptionDependency((String)
-				// subDependencyNode.getValue());
-				// } else {
-				// esri.setSubscriptionDependency("0");
-				// }
-				// } else {
-				// esri.setSubscriptionDependency("0");
-				// }
-				// LOG.info("Parsing sub-dependency complete : " +
-				// esri.getSubscriptionDependency());
+				esri.setSubscriptionPriority(parseAugmentedLeaf(an, Y_SUB_PRIORITY_NAME, null));
+				LOG.info("Parsing sub-priority complete : " + esri.getSubscriptionPriority());
+				// X Parsing sub-dependency
+				esri.setSubscriptionDependency(parseAugmentedLeaf(an, Y_SUB_DEPENDENCY_NAME, null));
+				LOG.info("Parsing sub-dependency complete : " + esri.getSubscriptionDependency());
 				// XI Parse filter-type (only subtree filter is supported)
 				NodeIdentifier filtertype = new NodeIdentifier(N_SUBTREE_FILTER_TYPE_NAME);
 				NodeIdentifier subtreeFilter = new NodeIdentifier(N_SUBTREE_FILTER_NAME);
 				if (conNode.getChild(filtertype).isPresent()) {
 					ChoiceNode c2 = (ChoiceNode) conNode.getChild(filtertype).get();
-					DataContainerChild<? extends PathArgument, ?> t2 = c2.getChild(subtreeFilter).get();
+					DataContainerChild<? extends PathArgument, ?> t2 = c2.getChild(subtreeFilter).orNull();
+					String xpathFilter = findXPathFilter(c2);
 					if (t2 != null) {
 						AnyXmlNode anyXmlFilter = (AnyXmlNode) t2;
 						org.w3c.dom.Node nodeFilter = anyXmlFilter.getValue().getNode();
@@ -823,8 +896,11 @@ public class RpcImpl implements DOMRpcImplementation {
 						DOMSource domSource = anyXmlFilter.getValue();
 						esri.setFilter(domSource);
 						LOG.info("Original xmlString: " + XmlUtil.toString((Element) domSource.getNode()));
+					} else if (xpathFilter != null) {
+						esri.setXPathFilter(xpathFilter);
+						LOG.info("XPath filter: " + xpathFilter);
 					} else {
-						LOG.error("Only subtree filter supported at the moment.");
+						LOG.error("Only subtree and xpath filters supported at the moment.");
 					}
 				}
 				LOG.info("Parsing filter-type complete : " + esri.getFilter());
@@ -846,7 +922,8 @@ public class RpcImpl implements DOMRpcImplementation {
 	}
 
 	/**
-	 * Looks for the AugmentationNode inside the input.
+	 * Looks for the AugmentationNode of ietf-yang-push inside the input.
+	 * Other modules like yangpush-extensions augment the input as well.
 	 * 
 	 * @param input
 	 *            The input presented as NormalizedNode
@@ -858,7 +935,8 @@ public class RpcImpl implements DOMRpcImplementation {
 		Iterator<DataContainerChild<? extends PathArgument, ?>> itr = conNode.getValue().iterator();
 		while (itr.hasNext()) {
 			Object next = itr.next();
-			if (next instanceof AugmentationNode) {
+			if (next instanceof AugmentationNode && ((AugmentationNode) next).getIdentifier().getPossibleChildNames()
+					.contains(Y_UPDATE_TRIGGER_NAME)) {
 				AugmentationNode result = (AugmentationNode) next;
 				return result;
 			}
@@ -866,6 +944,185 @@ public class RpcImpl implements DOMRpcImplementation {
 		return null;
 	}
 
+	/**
+	 * Parses a leaf of the ietf-yang-push augmentation of the input.
+	 * 
+	 * @param an
+	 *            Augmentation node of the input, may be null
+	 * @param name
+	 *            Name of the leaf
+	 * @param defaultValue
+	 *            Value used if the leaf is not present
+	 * @return Value of the leaf as string
+	 */
+	private String parseAugmentedLeaf(AugmentationNode an, QName name, String defaultValue) {
+		if (an == null) {
+			return defaultValue;
+		}
+		Optional<DataContainerChild<? extends PathArgument, ?>> t = an.getChild(new NodeIdentifier(name));
+		if (t.isPresent() && t.get().getValue() != null) {
+			return t.get().getValue().toString();
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Checks the subscription-dependency of the subscription: the parent has
+	 * to exist and must not depend on the subscription itself, directly or
+	 * indirectly.
+	 * 
+	 * @param subscriptionInfo
+	 *            Parsed subscription, its ID is null if not allocated yet
+	 * @return Error message if the dependency is not valid, null otherwise
+	 */
+	private String checkSubscriptionDependency(SubscriptionInfo subscriptionInfo) {
+		String parentID = subscriptionInfo.getSubscriptionDependency();
+		Set<String> visited = new HashSet<>();
+		while (parentID != null) {
+			if (parentID.equals(subscriptionInfo.getSubscriptionId()) || !visited.add(parentID)) {
+				LOG.error("Cyclic subscription-dependency {}", parentID);
+				return "cyclic subscription-dependency " + parentID;
+			}
+			SubscriptionInfo parent = subscriptionEngine.getSubscription(parentID);
+			if (parent == null) {
+				LOG.error("Subscription-dependency {} does not exist", parentID);
+				return "no such subscription-dependency " + parentID;
+			}
+			parentID = parent.getSubscriptionDependency();
+		}
+		return null;
+	}
+
+	/**
+	 * Parses the excluded-change leaf-list of an on change update-trigger.
+	 * 
+	 * @param updateTrigger
+	 *            The update-trigger choice of the input
+	 * @return Excluded kinds of changes, empty if the leaf-list is not present
+	 */
+	private Set<ChangeType> parseExcludedChange(ChoiceNode updateTrigger) {
+		Set<ChangeType> excluded = EnumSet.noneOf(ChangeType.class);
+		Optional<DataContainerChild<? extends PathArgument, ?>> t = updateTrigger
+				.getChild(new NodeIdentifier(Y_EXCLUDED_CHANGE_NAME));
+		if (t.isPresent() && t.get() instanceof LeafSetNode) {
+			for (LeafSetEntryNode<?> entry : ((LeafSetNode<?>) t.get()).getValue()) {
+				excluded.add(ChangeType.valueOf(entry.getValue().toString()));
+			}
+		}
+		return excluded;
+	}
+
+	/**
+	 * Looks for the xpath-filter leaf of ietf-yang-push inside the filter-type
+	 * choice, the update-filter case is added by augmentation.
+	 * 
+	 * @param filterType
+	 *            The filter-type choice of the input
+	 * @return XPath filter or null if not present
+	 */
+	private String findXPathFilter(DataContainerNode<?> filterType) {
+		for (DataContainerChild<? extends PathArgument, ?> child : filterType.getValue()) {
+			if (child instanceof LeafNode && Y_PUSH_XPATH_FILTER.equals(child.getNodeType())) {
+				return child.getValue() == null ? null : child.getValue().toString();
+			}
+			if (child instanceof ChoiceNode || child instanceof AugmentationNode) {
+				String nested = findXPathFilter((DataContainerNode<?>) child);
+				if (nested != null) {
+					return nested;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Translates the XPath filter of the subscription, if set, into the
+	 * equivalent subtree filter used for reading and filtering.
+	 * 
+	 * @param subscriptionInfo
+	 *            Parsed subscription
+	 * @return Error message if the XPath filter is not supported, null
+	 *         otherwise
+	 */
+	private String compileXPathFilter(SubscriptionInfo subscriptionInfo) {
+		if (subscriptionInfo.getXPathFilter() == null) {
+			return null;
+		}
+		try {
+			subscriptionInfo.setFilter(XPathFilter.toSubtreeFilter(subscriptionInfo.getXPathFilter(),
+					notificationEngine.getSchemaContext()));
+			return null;
+		} catch (IllegalArgumentException e) {
+			LOG.error("XPath filter rejected: {}", e.getMessage());
+			return e.getMessage();
+		}
+	}
+
+	/**
+	 * Parses the unchanged-updates leaf of yangpush-extensions.
+	 * 
+	 * @param input
+	 *            Establish or modify subscription input
+	 * @param defaultMode
+	 *            Mode used if the leaf is not present
+	 * @return Parsed mode
+	 */
+	private UnchangedUpdates parseUnchangedUpdates(ContainerNode input, UnchangedUpdates defaultMode) {
+		Optional<DataContainerChild<? extends PathArgument, ?>> t = findExtension(input, X_UNCHANGED_UPDATES_NAME);
+		if (t.isPresent() && t.get().getValue() != null) {
+			return UnchangedUpdates.valueOf(t.get().getValue().toString());
+		}
+		return defaultMode;
+	}
+
+	/**
+	 * Parses the bundling container of yangpush-extensions. If the container
+	 * is not present, the settings of the given subscription are kept.
+	 * 
+	 * @param input
+	 *            Establish or modify subscription input
+	 * @param subscriptionInfo
+	 *            Subscription the bundling settings are stored in
+	 */
+	private void parseBundling(ContainerNode input, SubscriptionInfo subscriptionInfo) {
+		Optional<DataContainerChild<? extends PathArgument, ?>> t = findExtension(input, X_BUNDLING_NAME);
+		if (!t.isPresent() || !(t.get() instanceof ContainerNode)) {
+			return;
+		}
+		ContainerNode bundling = (ContainerNode) t.get();
+		Optional<DataContainerChild<? extends PathArgument, ?>> maxEdits = bundling
+				.getChild(new NodeIdentifier(X_BUNDLING_MAX_EDITS_NAME));
+		Optional<DataContainerChild<? extends PathArgument, ?>> maxDelay = bundling
+				.getChild(new NodeIdentifier(X_BUNDLING_MAX_DELAY_NAME));
+		subscriptionInfo.setBundling(
+				maxEdits.isPresent() ? ((Number) maxEdits.get().getValue()).longValue() : DEFAULT_BUNDLE_MAX_EDITS,
+				maxDelay.isPresent() ? ((Number) maxDelay.get().getValue()).longValue() : DEFAULT_BUNDLE_MAX_DELAY);
+	}
+
+	/**
+	 * Looks for a node of yangpush-extensions in the augmentations of the
+	 * input.
+	 * 
+	 * @param input
+	 *            Establish or modify subscription input
+	 * @param name
+	 *            Name of the node
+	 * @return The node if present
+	 */
+	private Optional<DataContainerChild<? extends PathArgument, ?>> findExtension(ContainerNode input, QName name) {
+		NodeIdentifier identifier = new NodeIdentifier(name);
+		for (DataContainerChild<? extends PathArgument, ?> child : input.getValue()) {
+			if (child instanceof AugmentationNode) {
+				Optional<DataContainerChild<? extends PathArgument, ?>> t = ((AugmentationNode) child)
+						.getChild(identifier);
+				if (t.isPresent()) {
+					return t;
+				}
+			}
+		}
+		return Optional.absent();
+	}
+
 	/**
 	 * Checks if the subscription-start-time is before the actual system time.
 	 * 
@@ -969,13 +1226,13 @@ public class RpcImpl implements DOMRpcImplementation {
 	 * 1. Check in {@link SubscriptionEngine} if the subscription exists, if not
 	 * sent error-rpc.
 	 * <p>
-	 * 2. Unregister the notifications in {@link NotificationEngine}.
+	 * 2. If period and damepening period and period are null, an error-rpc will
+	 * be sent before any budget is reserved.
 	 * <p>
-	 * 3. The modified subscription will be stored to the local map and MD-SAL
-	 * inside {@link SubscriptionEngine}
+	 * 3. Unregister the notifications in {@link NotificationEngine}.
 	 * <p>
-	 * 4. If period and damepening period and period are null, an error-rpc will
-	 * be sent.
+	 * 4. The modified subscription will be stored to the local map and MD-SAL
+	 * inside {@link SubscriptionEngine}
 	 * <p>
 	 * 5. Scheduling the OAM notifications and yang-push notifications, to
 	 * ensure the rpc-reply reaches the client before these notifications.
@@ -1011,20 +1268,34 @@ public class RpcImpl implements DOMRpcImplementation {
 			return Futures.immediateCheckedFuture((DOMRpcResult) new DefaultDOMRpcResult(
 					createSubResponse("error no such subscription with ID:" + inputData.getSubscriptionId())));
 		}
-		// TODO The client authorization should be checked here.
-		// Unregistering the notifications
-		notificationEngine.unregisterNotification(inputData.getSubscriptionId());
-		// Saving the Subscription Information locally & on MDSAL datastore
-		this.subscriptionEngine.updateMdSal(inputData, operations.modify);
-
+		String inputError = compileXPathFilter(inputData);
+		if (inputError == null) {
+			inputError = checkSubscriptionDependency(inputData);
+		}
+		if (inputError != null) {
+			return Futures.immediateCheckedFuture(
+					(DOMRpcResult) new DefaultDOMRpcResult(createSubResponse("error - " + inputError)));
+		}
 		if (inputData.getPeriod() == null && inputData.getDampeningPeriod() == null) {
 			LOG.error("Wrong Subscription exists, neither on-Change nor periodic Subscription");
 			return Futures.immediateCheckedFuture((DOMRpcResult) new DefaultDOMRpcResult(
 					createSubResponse("error - wrong subscription, neither on-Change nor periodic subscription")));
 		}
+		// Admitting the modified subscription in place of the old one
+		Decision decision = AdmissionController.getInstance().admit(inputData.getSubscriptionId(), inputData,
+				notificationEngine.measureSelectedNodes(inputData));
+		if (!decision.isAdmitted()) {
+			return Futures.immediateCheckedFuture((DOMRpcResult) new DefaultDOMRpcResult(
+					createInsufficientResourcesResponse(N_MODIFY_SUB_OUTPUT, inputData, decision)));
+		}
+		// TODO The client authorization should be checked here.
+		// Unregistering the notifications
+		notificationEngine.unregisterNotification(inputData.getSubscriptionId());
+		// Saving the Subscription Information locally & on MDSAL datastore
+		this.subscriptionEngine.updateMdSal(inputData, operations.modify);
 		// Workaround to ensure that the rpc-reply is send before OAM
 		// notifications or yang-push notifications
-		scheduler.schedule(() -> {
+		notificationEngine.getScheduler().schedule(() -> {
 			// The OAM message with 'subscription modify' will be sent
 			notificationEngine.oamNotification(inputData.getSubscriptionId(), OAMStatus.subscription_modified, null);
 			// The novel notifications will be registered
@@ -1287,38 +1558,30 @@ public class RpcImpl implements DOMRpcImplementation {
 						msri.setNoSynchOnStart(false);
 					}
 					LOG.info("Parsing no-synch-on-start complete: " + msri.getNoSynchOnStart());
-					// excluded Change is not supported yet..
-					// DataContainerChild<? extends PathArgument, ?>
-					// excludedChangeNode = null;
-					// NodeIdentifier excludedChange = new
-					// NodeIdentifier(Y_EXCLUDED_CHANGE_NAME);
-					// t = c1.getChild(excludedChange);
-					// if (t.isPresent()) {
-					// LOG.info("t: "+t);
-					// excludedChangeNode = (LeafSetNode<?>) t.get();
-					// LOG.info("excludedChangeNode: "+excludedChangeNode);
-					// Set<LeafNode<?>> excludedChangeNode2 = null;
-					// excludedChangeNode2 = (Set<LeafNode<?>>)
-					// excludedChangeNode.getValue();
-					// LOG.info("excludedChangeNode2: "+excludedChangeNode);
-					// if (excludedChangeNode.getValue().equals(null)) {
-					// esri.setExcludedChange(excludedChangeNode.getValue().toString());
-					// } else {
-					// esri.setExcludedChange(null);
-					// }
-					// } else {
-					// esri.setExcludedChange(null);
-					// }
+					msri.setExcludedChange(parseExcludedChange(c1));
 					LOG.info("Parsing excluded-change complete : " + msri.getExcludedChange());
 				} else {
 					if (oldSubscriptionInfo.getPeriod() != null) {
 						msri.setPeriod(oldSubscriptionInfo.getPeriod());
 					} else {
 						msri.setDampeningPeriod(oldSubscriptionInfo.getDampeningPeriod());
+						msri.setExcludedChange(oldSubscriptionInfo.getExcludedChange());
 					}
 				}
 				LOG.info("Parsing update-trigger complete " + "P: " + msri.getPeriod() + " DP: "
 						+ msri.getDampeningPeriod());
+				// Parsing unchanged-updates
+				msri.setUnchangedUpdates(parseUnchangedUpdates(conNode,
+						oldSubscriptionInfo == null ? UnchangedUpdates.send : oldSubscriptionInfo.getUnchangedUpdates()));
+				LOG.info("Parsing unchanged-updates complete : " + msri.getUnchangedUpdates());
+				// Parsing bundling, kept from the old subscription if not
+				// present
+				if (oldSubscriptionInfo != null) {
+					msri.setBundling(oldSubscriptionInfo.getBundleMaxEdits(), oldSubscriptionInfo.getBundleMaxDelay());
+				}
+				parseBundling(conNode, msri);
+				LOG.info("Parsing bundling complete : " + msri.getBundleMaxEdits() + " edits, "
+						+ msri.getBundleMaxDelay() + "ms");
 				// VIII Parsing dscp
 				// Deactivated because lack of support for configured
 				// subscriptions
@@ -1338,50 +1601,20 @@ public class RpcImpl implements DOMRpcImplementation {
 				// }
 				// LOG.info("Parsing dscp complete : " + msri.getDscp());
 				// IX Parsing sub-priority
-				// Deactivated because lack of support for QoS
-				// DataContainerChild<? extends PathArgument, ?> subPriorityNode
-				// = null;
-				// NodeIdentifier subPriority = new
-				// NodeIdentifier(Y_SUB_PRIORITY_NAME);
-				// t = an.getChild(subPriority);
-				// if (t.isPresent()) {
-				// subPriorityNode = (LeafNode<?>) t.get();
-				// if (subPriorityNode.getValue().equals(null)) {
-				// msri.setSubscriptionPriority(String.valueOf(subPriorityNode.getValue()));
-				// } else {
-				// msri.setSubscriptionPriority(oldSubscriptionInfo.getSubscriptionPriority());
-				// }
-				// } else {
-				// msri.setSubscriptionPriority(oldSubscriptionInfo.getSubscriptionPriority());
-				// }
-				// LOG.info("Parsing sub-priority complete : " +
-				// msri.getSubscriptionPriority());
-				// IX Parsing sub-dependency
-				// Deactivated because lack of support for QoS
-				// DataContainerChild<? extends PathArgument, ?>
-				// subDependencyNode = null;
-				// NodeIdentifier subDependency = new
-				// NodeIdentifier(Y_SUB_DEPENDENCY_NAME);
-				// t = an.getChild(subDependency);
-				// if (t.isPresent()) {
-				// subDependencyNode = (LeafNode<?>) t.get();
-				// if (subDependencyNode.getValue().equals(null)) {
-				// msri.setSubscriptionDependency((String)
-				// subDependencyNode.getValue());
-				// } else {
-				// msri.setSubscriptionDependency(oldSubscriptionInfo.getSubscriptionDependency());
-				// }
-				// } else {
-				// msri.setSubscriptionDependency(oldSubscriptionInfo.getSubscriptionDependency());
-				// }
-				// LOG.info("Parsing sub-dependency complete : " +
-				// msri.getSubscriptionDependency());
+				msri.setSubscriptionPriority(parseAugmentedLeaf(an, Y_SUB_PRIORITY_NAME,
+						oldSubscriptionInfo == null ? null : oldSubscriptionInfo.getSubscriptionPriority()));
+				LOG.info("Parsing sub-priority complete : " + msri.getSubscriptionPriority());
+				// X Parsing sub-dependency
+				msri.setSubscriptionDependency(parseAugmentedLeaf(an, Y_SUB_DEPENDENCY_NAME,
+						oldSubscriptionInfo == null ? null : oldSubscriptionInfo.getSubscriptionDependency()));
+				LOG.info("Parsing sub-dependency complete : " + msri.getSubscriptionDependency());
 				// XI Parse filter-type (only subtree filter is supported)
 				NodeIdentifier filtertype = new NodeIdentifier(N_SUBTREE_FILTER_TYPE_NAME);
 				NodeIdentifier subtreeFilter = new NodeIdentifier(N_SUBTREE_FILTER_NAME);
 				if (conNode.getChild(filtertype).isPresent()) {
 					ChoiceNode c2 = (ChoiceNode) conNode.getChild(filtertype).get();
-					DataContainerChild<? extends PathArgument, ?> t2 = c2.getChild(subtreeFilter).get();
+					DataContainerChild<? extends PathArgument, ?> t2 = c2.getChild(subtreeFilter).orNull();
+					String xpathFilter = findXPathFilter(c2);
 					if (t2 != null) {
 						AnyXmlNode anyXmlFilter = (AnyXmlNode) t2;
 						org.w3c.dom.Node nodeFilter = anyXmlFilter.getValue().getNode();
@@ -1389,8 +1622,11 @@ public class RpcImpl implements DOMRpcImplementation {
 						document.renameNode(nodeFilter, NOTIFICATION_NS, "filter");
 						DOMSource domSource = anyXmlFilter.getValue();
 						msri.setFilter(domSource);
+					} else if (xpathFilter != null) {
+						msri.setXPathFilter(xpathFilter);
 					} else {
 						msri.setFilter(oldSubscriptionInfo.getFilter());
+						msri.setXPathFilter(oldSubscriptionInfo.getXPathFilter());
 					}
 				}
 				LOG.info("Parsing filter-type complete : " + msri.getFilter());
@@ -0,0 +1,242 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.subscription;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNodeContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Admits subscriptions against a global notification budget, the number of
+ * bytes per second all subscriptions together may push. The cost of a
+ * subscription is estimated from the size of the data its filter selects,
+ * measured when the subscription is established or modified, and the rate of
+ * its updates, i.e. its period or dampening period. For on change
+ * subscriptions only a share of the selected data is assumed to change per
+ * update.
+ *
+ * A subscription exceeding the remaining budget is rejected. If a longer
+ * period or dampening period would fit into the remaining budget, it is
+ * proposed to the subscriber.
+ *
+ */
+public class AdmissionController {
+	private static final Logger LOG = LoggerFactory.getLogger(AdmissionController.class);
+
+	// Default budget in bytes per second of all subscriptions
+	public static final long DEFAULT_BUDGET = 10l * 1024 * 1024;
+	// Estimated size of a notification without content
+	static final long MESSAGE_OVERHEAD = 512;
+	// Estimated size of a data node in a notification
+	static final long BYTES_PER_NODE = 64;
+	// Number of nodes assumed if the selected data cannot be measured
+	static final long DEFAULT_NODES = 1000;
+	// Share of the selected data assumed to change per on change update
+	static final double ON_CHANGE_SHARE = 0.1;
+	// Interval assumed between on change updates without dampening period
+	static final long MIN_ON_CHANGE_INTERVAL = 100;
+	// Proposed periods are rounded up to multiples of this
+	static final long PERIOD_GRANULARITY = 100;
+
+	private static final AdmissionController instance = new AdmissionController(DEFAULT_BUDGET);
+
+	// Cost of the admitted subscriptions in bytes per second, guarded by this
+	private final Map<String, Long> costs = new HashMap<>();
+	private long budget;
+	private long used = 0;
+
+	/**
+	 * @param budget
+	 *            Notification budget in bytes per second
+	 */
+	AdmissionController(long budget) {
+		Preconditions.checkArgument(budget > 0, "Budget has to be positive");
+		this.budget = budget;
+	}
+
+	/**
+	 * getInstance method implements admission controller as singleton
+	 *
+	 * @return this
+	 */
+	public static AdmissionController getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Admits the given subscription if its cost fits into the remaining
+	 * budget and reserves the cost for it. The cost already reserved for the
+	 * subscription, e.g. before it is modified, is replaced.
+	 *
+	 * @param subscriptionID
+	 *            ID the cost is reserved for
+	 * @param subscription
+	 *            Periodic or on change subscription
+	 * @param selectedNodes
+	 *            Number of nodes the filter of the subscription selects,
+	 *            negative if unknown
+	 * @return Decision, with a proposed period or dampening period if the
+	 *         subscription is rejected but a longer one would be admitted
+	 */
+	public synchronized Decision admit(String subscriptionID, SubscriptionInfo subscription, long selectedNodes) {
+		long updateSize = updateSize(subscription, selectedNodes < 0 ? DEFAULT_NODES : selectedNodes);
+		long cost = cost(updateSize, interval(subscription));
+		Long reserved = costs.get(subscriptionID);
+		long remaining = budget - used + (reserved == null ? 0 : reserved);
+		if (cost <= remaining) {
+			costs.put(subscriptionID, cost);
+			used += cost - (reserved == null ? 0 : reserved);
+			LOG.info("Subscription {} admitted with cost {}B/s, {}B/s of {}B/s in use", subscriptionID, cost, used,
+					budget);
+			return new Decision(true, cost, null);
+		}
+		Long proposal = null;
+		if (remaining > 0) {
+			proposal = proposeInterval(updateSize, remaining);
+		}
+		LOG.info("Subscription {} rejected, cost {}B/s exceeds remaining budget of {}B/s, proposed interval {}ms",
+				subscriptionID, cost, remaining, proposal);
+		return new Decision(false, cost, proposal);
+	}
+
+	/**
+	 * Releases the cost reserved for a subscription, e.g. when it is deleted.
+	 *
+	 * @param subscriptionID
+	 *            ID of the subscription
+	 */
+	public synchronized void release(String subscriptionID) {
+		Long reserved = costs.remove(subscriptionID);
+		if (reserved != null) {
+			used -= reserved;
+		}
+	}
+
+	/**
+	 * @return Notification budget in bytes per second
+	 */
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Sets the notification budget. Subscriptions already admitted are kept
+	 * even if they exceed a reduced budget.
+	 *
+	 * @param budget
+	 *            Notification budget in bytes per second
+	 */
+	public synchronized void setBudget(long budget) {
+		Preconditions.checkArgument(budget > 0, "Budget has to be positive");
+		this.budget = budget;
+	}
+
+	/**
+	 * @return Part of the budget in bytes per second reserved by the admitted
+	 *         subscriptions
+	 */
+	public synchronized long getUsedBudget() {
+		return used;
+	}
+
+	/**
+	 * @param subscriptionID
+	 *            ID of the subscription
+	 * @return Cost in bytes per second reserved for the subscription, 0 if not
+	 *         admitted
+	 */
+	public synchronized long getCost(String subscriptionID) {
+		Long reserved = costs.get(subscriptionID);
+		return reserved == null ? 0 : reserved;
+	}
+
+	/**
+	 * Counts the nodes of the given tree, e.g. the data selected by a filter.
+	 *
+	 * @param node
+	 *            Root of the tree, may be null
+	 * @return Number of nodes
+	 */
+	public static long countNodes(NormalizedNode<?, ?> node) {
+		if (node == null) {
+			return 0;
+		}
+		long count = 1;
+		if (node instanceof NormalizedNodeContainer) {
+			for (Object child : ((NormalizedNodeContainer<?, ?, ?>) node).getValue()) {
+				count += countNodes((NormalizedNode<?, ?>) child);
+			}
+		}
+		return count;
+	}
+
+	private static long updateSize(SubscriptionInfo subscription, long selectedNodes) {
+		double share = subscription.getDampeningPeriod() != null ? ON_CHANGE_SHARE : 1.0;
+		return MESSAGE_OVERHEAD + (long) Math.ceil(selectedNodes * share * BYTES_PER_NODE);
+	}
+
+	private static long interval(SubscriptionInfo subscription) {
+		if (subscription.getDampeningPeriod() != null) {
+			return Math.max(subscription.getDampeningPeriod(), MIN_ON_CHANGE_INTERVAL);
+		}
+		return subscription.getPeriod() == null ? MIN_ON_CHANGE_INTERVAL : Math.max(subscription.getPeriod(), 1l);
+	}
+
+	private static long cost(long updateSize, long interval) {
+		return (updateSize * 1000 + interval - 1) / interval;
+	}
+
+	private static long proposeInterval(long updateSize, long remaining) {
+		long interval = (updateSize * 1000 + remaining - 1) / remaining;
+		interval = (interval + PERIOD_GRANULARITY - 1) / PERIOD_GRANULARITY * PERIOD_GRANULARITY;
+		return Math.max(interval, MIN_ON_CHANGE_INTERVAL);
+	}
+
+	/**
+	 * Result of the admission of a subscription.
+	 */
+	public static final class Decision {
+		private final boolean admitted;
+		private final long cost;
+		private final Long proposedInterval;
+
+		private Decision(boolean admitted, long cost, Long proposedInterval) {
+			this.admitted = admitted;
+			this.cost = cost;
+			this.proposedInterval = proposedInterval;
+		}
+
+		/**
+		 * @return Whether the subscription was admitted
+		 */
+		public boolean isAdmitted() {
+			return admitted;
+		}
+
+		/**
+		 * @return Estimated cost of the subscription in bytes per second
+		 */
+		public long getCost() {
+			return cost;
+		}
+
+		/**
+		 * @return Period or dampening period in milliseconds that would be
+		 *         admitted, null if admitted or nothing can be proposed
+		 */
+		public Long getProposedInterval() {
+			return proposedInterval;
+		}
+	}
+}
@@ -7,8 +7,9 @@
  */
 package org.opendaylight.yangpushserver.subscription;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opendaylight.controller.config.util.xml.XmlUtil;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
@@ -19,23 +20,36 @@ import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.event.notif
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.event.notifications.rev160615.Subscriptions;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.event.notifications.rev160615.subscriptions.Subscription;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.event.notifications.rev160615.subscriptions.subscription.FilterType1;
+import org.opendaylight.yangpushserver.notification.NotificationEngine;
+import org.opendaylight.yangpushserver.notification.NotificationMetrics;
 import org.opendaylight.yangpushserver.rpc.RpcImpl;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.ChangeType;
 import org.opendaylight.yangtools.yang.common.QName;
 import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.AugmentationIdentifier;
 import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
 import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeWithValue;
 import org.opendaylight.yangtools.yang.data.api.schema.ChoiceNode;
 import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetEntryNode;
 import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
 import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
 import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
 import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.DataContainerNodeAttrBuilder;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.DataContainerNodeBuilder;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.ListNodeBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
- * This singleton class will manage and process all subscriptions.
+ * This singleton class will manage and process all subscriptions. The local
+ * registry is safe for concurrent use, subscriptions are persisted to MD-SAL
+ * by a write-behind {@link SubscriptionPersister}.
  * 
  * @author Philipp Konegen
  *
@@ -66,14 +80,46 @@ public class SubscriptionEngine {
 	public static final QName Y_NO_SYNCH_ON_START_NAME = QName.create(YP_NS, YP_NS_DATE, "no-synch-on-start");
 	public static final QName Y_EXCLUDED_CHANGE_NAME = QName.create(YP_NS, YP_NS_DATE, "excluded-change");
 
+	// Node identifiers of the subscription entries stored in MD-SAL
+	private static final YangInstanceIdentifier SUBSCRIPTION_LIST_PATH = YangInstanceIdentifier.builder()
+			.node(Subscriptions.QNAME).node(Subscription.QNAME).build();
+	private static final QName SUBSCRIPTION_ID_KEY = QName.create(Subscriptions.QNAME, "subscription-id");
+	private static final NodeIdentifier ENCODING_NI = NodeIdentifier.create(QName.create(Encodings.QNAME, "encoding"));
+	private static final NodeIdentifier FILTER_1_NI = NodeIdentifier
+			.create(QName.create(NOTIF_BIS, NOTIF_BIS_DATE, "filter-1"));
+	private static final NodeIdentifier STREAM_NI = NodeIdentifier
+			.create(QName.create(NOTIF_BIS, NOTIF_BIS_DATE, "stream"));
+	private static final NodeIdentifier START_TIME_NI = NodeIdentifier
+			.create(QName.create(NOTIF_BIS, NOTIF_BIS_DATE, "startTime"));
+	private static final NodeIdentifier STOP_TIME_NI = NodeIdentifier
+			.create(QName.create(NOTIF_BIS, NOTIF_BIS_DATE, "stopTime"));
+	private static final NodeIdentifier SUB_START_TIME_NI = NodeIdentifier
+			.create(QName.create(YP_NS, YP_NS_DATE, "subscription-start-time"));
+	private static final NodeIdentifier SUB_STOP_TIME_NI = NodeIdentifier
+			.create(QName.create(YP_NS, YP_NS_DATE, "subscription-stop-time"));
+	private static final NodeIdentifier FILTER_TYPE_1_NI = new NodeIdentifier(FilterType1.QNAME);
+	private static final NodeIdentifier UPDATE_TRIGGER_NI = new NodeIdentifier(Y_UPDATE_TRIGGER_NAME);
+	private static final NodeIdentifier PERIOD_NI = new NodeIdentifier(Y_PERIOD_NAME);
+	private static final NodeIdentifier DAMPENING_PERIOD_NI = new NodeIdentifier(Y_DAMPENING_PERIOD_NAME);
+	private static final NodeIdentifier NO_SYNCH_ON_START_NI = new NodeIdentifier(Y_NO_SYNCH_ON_START_NAME);
+	private static final NodeIdentifier EXCLUDED_CHANGE_NI = new NodeIdentifier(Y_EXCLUDED_CHANGE_NAME);
+	private static final NodeIdentifier SUB_PRIORITY_NI = new NodeIdentifier(Y_SUB_PRIORITY_NAME);
+	private static final NodeIdentifier SUB_DEPENDENCY_NI = new NodeIdentifier(Y_SUB_DEPENDENCY_NAME);
+	private static final AugmentationIdentifier STATISTICS_AI = new AugmentationIdentifier(
+			ImmutableSet.of(NotificationMetrics.X_STATISTICS_NAME));
+	private static final NodeIdentifier STATISTICS_NI = new NodeIdentifier(NotificationMetrics.X_STATISTICS_NAME);
+
+	// self instance
+	private static final SubscriptionEngine instance = new SubscriptionEngine();
+	// Last allocated subscription ID
+	private static final AtomicInteger sub_id = new AtomicInteger();
+
 	// global data broker
 	private DOMDataBroker globalDomDataBroker = null;
-	// self instance
-	private static SubscriptionEngine instance = null;
-	// Subscription ID sid
-	private static int sub_id = -1;
+	// Persists subscriptions to MD-SAL without blocking the callers
+	private SubscriptionPersister persister = null;
 	// map of subscriptions
-	private Map<String, SubscriptionInfo> masterSubMap = null;
+	private final Map<String, SubscriptionInfo> masterSubMap;
 
 	/**
 	 * The selected operation is used to update a subscription stored in MD-SAL
@@ -88,7 +134,7 @@ public class SubscriptionEngine {
 	 */
 	protected SubscriptionEngine() {
 		super();
-		masterSubMap = new HashMap<String, SubscriptionInfo>();
+		masterSubMap = new ConcurrentHashMap<String, SubscriptionInfo>();
 	}
 
 	/**
@@ -97,9 +143,6 @@ public class SubscriptionEngine {
 	 * @return this
 	 */
 	public static SubscriptionEngine getInstance() {
-		if (instance == null) {
-			instance = new SubscriptionEngine();
-		}
 		return instance;
 	}
 
@@ -110,6 +153,17 @@ public class SubscriptionEngine {
 	 */
 	public void setDataBroker(DOMDataBroker globalDomDataBroker) {
 		this.globalDomDataBroker = globalDomDataBroker;
+		this.persister = new SubscriptionPersister(globalDomDataBroker,
+				NotificationEngine.getInstance().getScheduler(), SubscriptionPersister.DEFAULT_FLUSH_INTERVAL);
+	}
+
+	/**
+	 * Commits subscription changes not yet persisted to MD-SAL.
+	 */
+	public void close() {
+		if (this.persister != null) {
+			this.persister.close();
+		}
 	}
 
 	/**
@@ -118,12 +172,7 @@ public class SubscriptionEngine {
 	 * 
 	 */
 	public String generateSubscriptionId() {
-		if (Integer.toString(sub_id).equals("-1")) {
-			sub_id = 1;
-			return Integer.toString(sub_id);
-		}
-		this.sub_id++;
-		return Integer.toString(this.sub_id);
+		return Integer.toString(sub_id.incrementAndGet());
 	}
 
 	/**
@@ -162,7 +211,9 @@ public class SubscriptionEngine {
 	/**
 	 * This method is called by {@link RpcImpl} whenever the MD-SAL data store
 	 * or the local masterSubMap needs to updated. This occurs after
-	 * establishing, deleting or modifying a subscription.
+	 * establishing, deleting or modifying a subscription. The local map is
+	 * updated immediately, the MD-SAL data store with the next flush of the
+	 * {@link SubscriptionPersister}.
 	 * 
 	 * @param SubscriptionInfo
 	 *            Informations of the subscription, which should be stored or
@@ -174,159 +225,43 @@ public class SubscriptionEngine {
 	 */
 	// Infos need to be stored to MD-SAL and locally.
 	public void updateMdSal(SubscriptionInfo subscriptionInfo, operations type) {
-		// Storing files to MD-SAL
-		// TODO Check if storing the data is correct.
-		NodeIdentifier encoding = NodeIdentifier.create(QName.create(Encodings.QNAME, "encoding"));
-		NodeIdentifier filterType1 = NodeIdentifier.create(QName.create(NOTIF_BIS, NOTIF_BIS_DATE, "filter-type-1"));
-		NodeIdentifier filter1 = NodeIdentifier.create(QName.create(NOTIF_BIS, NOTIF_BIS_DATE, "filter-1"));
-		NodeIdentifier stream = NodeIdentifier.create(QName.create(NOTIF_BIS, NOTIF_BIS_DATE, "stream"));
-		NodeIdentifier startTime = NodeIdentifier.create(QName.create(NOTIF_BIS, NOTIF_BIS_DATE, "startTime"));
-		NodeIdentifier stopTime = NodeIdentifier.create(QName.create(NOTIF_BIS, NOTIF_BIS_DATE, "stopTime"));
-		NodeIdentifier subStartTime = NodeIdentifier.create(QName.create(YP_NS, YP_NS_DATE, "subscription-start-time"));
-		NodeIdentifier subStopTime = NodeIdentifier.create(QName.create(YP_NS, YP_NS_DATE, "subscription-stop-time"));
-		// NodeIdentifier dscp = NodeIdentifier.create(QName.create(YP_NS,
-		// YP_NS_DATE, "dscp"));
-
-		NodeIdentifier filtertype1 = new NodeIdentifier(FilterType1.QNAME);
-		// NodeIdentifier subDependency = new
-		// NodeIdentifier(Y_SUB_DEPENDENCY_NAME);
-		// NodeIdentifier subPriority = new NodeIdentifier(Y_SUB_PRIORITY_NAME);
-		NodeIdentifier updateTrigger = new NodeIdentifier(Y_UPDATE_TRIGGER_NAME);
-		NodeIdentifier period = new NodeIdentifier(Y_PERIOD_NAME);
-		NodeIdentifier dampeningPeriod = new NodeIdentifier(Y_DAMPENING_PERIOD_NAME);
-		NodeIdentifier noSynchOnStart = new NodeIdentifier(Y_NO_SYNCH_ON_START_NAME);
-		NodeIdentifier exlcludedChange = new NodeIdentifier(Y_EXCLUDED_CHANGE_NAME);
-		NodeIdentifier filtertype = new NodeIdentifier(N_SUBTREE_FILTER_TYPE_NAME);
-		NodeIdentifier subtreeFilter = new NodeIdentifier(Y_SUBTREE_FILTER_NAME);
-		NodeIdentifier updateFilter = new NodeIdentifier(Y_UPDATE_FILTER_NAME);
-		NodeIdentifier filter = new NodeIdentifier(N_FILTER_NAME);
-		NodeIdentifier filt = new NodeIdentifier(N_FILT_NAME);
-
-		// Part where Siegert should add the 'call_home' parameter QNAME
-
-		if (type.equals(operations.delete)) {
-			subscriptionInfo = this.getSubscription(subscriptionInfo.getSubscriptionId());
-		}
-		Long sidValue = Long.valueOf(subscriptionInfo.getSubscriptionId());
-		// Short subPriorityValue =
-		// Short.valueOf(subscriptionInfo.getSubscriptionPriority());
-		// Short dscpValue = Short.valueOf(subscriptionInfo.getDscp());
-		// ChoiceNode c1 = Builders.choiceBuilder().withNodeIdentifier(result)
-		// .withChild(ImmutableNodes.leafNode(subid, sidValue)).build();
-		ChoiceNode c2 = null;
-		// Whether its periodic or on-Change the node must be built differently
-		if (!(subscriptionInfo.getPeriod() == null)) {
-			LOG.info("Period" + subscriptionInfo.getPeriod().toString());
-			c2 = Builders.choiceBuilder().withNodeIdentifier(updateTrigger)
-					.withChild(ImmutableNodes.leafNode(period, subscriptionInfo.getPeriod())).build();
-		} else {
-			LOG.info("DP" + subscriptionInfo.getDampeningPeriod().toString());
-			if (subscriptionInfo.getNoSynchOnStart()) {
-				c2 = Builders.choiceBuilder().withNodeIdentifier(updateTrigger)
-						.withChild(ImmutableNodes.leafNode(dampeningPeriod, subscriptionInfo.getDampeningPeriod()))
-						.withChild(ImmutableNodes.leafNode(noSynchOnStart, null))
-						// .withChild(ImmutableNodes.leafNode(exlcludedChange,
-						// subscriptionInfo.getExcludedChange()))
-						.build();
-			} else {
-				c2 = Builders.choiceBuilder().withNodeIdentifier(updateTrigger)
-						.withChild(ImmutableNodes.leafNode(dampeningPeriod, subscriptionInfo.getDampeningPeriod()))
-						// .withChild(ImmutableNodes.leafNode(exlcludedChange,
-						// subscriptionInfo.getExcludedChange()))
-						.build();
-			}
-		}
-		YangInstanceIdentifier pid = YangInstanceIdentifier.builder().node(Subscriptions.QNAME).node(Subscription.QNAME)
-				.build();
-
-		NodeIdentifierWithPredicates p = new NodeIdentifierWithPredicates(
-				QName.create(Subscriptions.QNAME, "subscription"), QName.create(Subscriptions.QNAME, "subscription-id"),
-				sidValue);
-
-		ChoiceNode c3 = null;
-		MapEntryNode men = null;
-		if (!(subscriptionInfo.getFilter() == null)) {
-			// AnyXmlNode test =
-			// Builders.anyXmlBuilder().withNodeIdentifier(filter1)
-			// .withValue(subscriptionInfo.getFilter()).build();
-			// ChoiceNode c4 =
-			// Builders.choiceBuilder().withNodeIdentifier(updateFilter)
-			// .withChild(ImmutableNodes.leafNode(filter,
-			// subscriptionInfo.getFilter().toString())).build();
-			c3 = Builders.choiceBuilder().withNodeIdentifier(filtertype1)
-					.withChild(ImmutableNodes.leafNode(filter1, XmlUtil.toString((Element) subscriptionInfo.getFilter().getNode()))).build();
-			// DataNodeContainer c5 = (DataNodeContainer)
-			// Builders.leafBuilder().withNodeIdentifier(filter).build();
-			// AnyXmlNodeDataWithSchema c6 = (AnyXmlNodeDataWithSchema)
-			// Builders.leafBuilder().withNodeIdentifier(filter).build();
-			// LOG.warn("c5: "+c5);
-			// LOG.warn("c6: "+c6);
-			men = ImmutableNodes.mapEntryBuilder().withNodeIdentifier(p).withChild(c2)
-					// Part where Siegert should add the 'call_home' parameter
-					// NODE
-					// .withChild(c5)
-
-					.withChild(ImmutableNodes.leafNode(stream, subscriptionInfo.getStream()))
-					.withChild(ImmutableNodes.leafNode(subStartTime, subscriptionInfo.getSubscriptionStartTime()))
-					.withChild(ImmutableNodes.leafNode(subStopTime, subscriptionInfo.getSubscriptionStopTime()))
-					// .withChild(ImmutableNodes.leafNode(subPriority,
-					// subPriorityValue))
-					// .withChild(ImmutableNodes.leafNode(subDependency,
-					// subscriptionInfo.getSubscriptionDependency()))
-					// .withChild(ImmutableNodes.leafNode(dscp, dscpValue))
-					.withChild(ImmutableNodes.leafNode(startTime, subscriptionInfo.getStartTime()))
-					.withChild(ImmutableNodes.leafNode(stopTime, subscriptionInfo.getStopTime()))
-					.withChild(ImmutableNodes.leafNode(encoding, subscriptionInfo.getEncoding())).withChild(c3).build();
-		} else {
-			men = ImmutableNodes.mapEntryBuilder().withNodeIdentifier(p)
-					// Part where Siegert should add the 'call_home' parameter
-					// NODE
-					// .withChild(ImmutableNodes.leafNode(updateTrigger,
-					// subscriptionInfo.getUpdateTrigger()))
-					.withChild(c2).withChild(ImmutableNodes.leafNode(stream, subscriptionInfo.getStream()))
-					.withChild(ImmutableNodes.leafNode(subStartTime, subscriptionInfo.getSubscriptionStartTime()))
-					.withChild(ImmutableNodes.leafNode(subStopTime, subscriptionInfo.getSubscriptionStopTime()))
-					// .withChild(ImmutableNodes.leafNode(subPriority,
-					// subPriorityValue))
-					// .withChild(ImmutableNodes.leafNode(subDependency,
-					// subscriptionInfo.getSubscriptionDependency()))
-					// .withChild(ImmutableNodes.leafNode(dscp, dscpValue))
-					.withChild(ImmutableNodes.leafNode(startTime, subscriptionInfo.getStartTime()))
-					.withChild(ImmutableNodes.leafNode(stopTime, subscriptionInfo.getStopTime()))
-					.withChild(ImmutableNodes.leafNode(encoding, subscriptionInfo.getEncoding())).build();
+		if (subscriptionInfo == null) {
+			LOG.info("Subscription didn't exist");
+			return;
 		}
-		LOG.info("men: " + men);
-
-		DOMDataWriteTransaction tx = this.globalDomDataBroker.newWriteOnlyTransaction();
-		YangInstanceIdentifier yid = pid
-				.node(new NodeIdentifierWithPredicates(Subscription.QNAME, men.getIdentifier().getKeyValues()));
+		String subscriptionID = subscriptionInfo.getSubscriptionId();
+		YangInstanceIdentifier yid = SUBSCRIPTION_LIST_PATH.node(
+				new NodeIdentifierWithPredicates(Subscription.QNAME, SUBSCRIPTION_ID_KEY, Long.valueOf(subscriptionID)));
 
 		// Distinguish whether if a subscription has to be established,
 		// deleted or modified in MD-SAL data store.
 		switch (type) {
 		case establish:
-			if (!checkIfSubscriptionExists(subscriptionInfo.getSubscriptionId())) {
-				tx.merge(LogicalDatastoreType.OPERATIONAL, yid, men);
-				// Storing files locally
-				masterSubMap.put(subscriptionInfo.getSubscriptionId(), subscriptionInfo);
+			// Registered before the subscription can be deleted, so the
+			// metrics are discarded with it
+			NotificationEngine.getInstance().getMetrics().register(subscriptionID);
+			if (masterSubMap.putIfAbsent(subscriptionID, subscriptionInfo) == null) {
+				persister.merge(yid, toMapEntryNode(subscriptionInfo));
 				LOG.info("Subscription stored...");
 			} else {
 				LOG.info("Subscription already exists");
 			}
 			break;
 		case delete:
-			if (checkIfSubscriptionExists(subscriptionInfo.getSubscriptionId())) {
-				tx.delete(LogicalDatastoreType.OPERATIONAL, yid);
-				masterSubMap.remove(subscriptionInfo.getSubscriptionId(), subscriptionInfo);
+			if (masterSubMap.remove(subscriptionID) != null) {
+				AdmissionController.getInstance().release(subscriptionID);
+				NotificationEngine.getInstance().getMetrics().remove(subscriptionID);
+				persister.delete(yid);
 				LOG.info("Subscription has been deleted");
 			} else {
 				LOG.info("Subscription didn't exist");
 			}
 			break;
 		case modify:
-			if (checkIfSubscriptionExists(subscriptionInfo.getSubscriptionId())) {
-				tx.put(LogicalDatastoreType.OPERATIONAL, yid, men);
-				masterSubMap.put(subscriptionInfo.getSubscriptionId(), subscriptionInfo);
+			if (masterSubMap.replace(subscriptionID, subscriptionInfo) != null) {
+				persister.put(yid, toMapEntryNode(subscriptionInfo));
+				// The put replaces the statistics as well
+				NotificationEngine.getInstance().getMetrics().publish(subscriptionID);
 				LOG.info("Subscription modified...");
 			} else {
 				LOG.info("Subscription didn't exist");
@@ -335,14 +270,61 @@ public class SubscriptionEngine {
 		default:
 			break;
 		}
-		try {
-			tx.submit().checkedGet();
-			LOG.info("Transaction has been submitted");
-		} catch (TransactionCommitFailedException e) {
-			e.printStackTrace();
-			LOG.info("Uuups");
+	}
+
+	/**
+	 * Builds the subscription entry stored in MD-SAL.
+	 */
+	private static MapEntryNode toMapEntryNode(SubscriptionInfo subscriptionInfo) {
+		// Whether its periodic or on-Change the node must be built differently
+		ChoiceNode updateTrigger;
+		if (subscriptionInfo.getPeriod() != null) {
+			updateTrigger = Builders.choiceBuilder().withNodeIdentifier(UPDATE_TRIGGER_NI)
+					.withChild(ImmutableNodes.leafNode(PERIOD_NI, subscriptionInfo.getPeriod())).build();
+		} else {
+			DataContainerNodeBuilder<NodeIdentifier, ChoiceNode> onChange = Builders.choiceBuilder()
+					.withNodeIdentifier(UPDATE_TRIGGER_NI)
+					.withChild(ImmutableNodes.leafNode(DAMPENING_PERIOD_NI, subscriptionInfo.getDampeningPeriod()));
+			if (subscriptionInfo.getNoSynchOnStart()) {
+				onChange.withChild(ImmutableNodes.leafNode(NO_SYNCH_ON_START_NI, null));
+			}
+			if (!subscriptionInfo.getExcludedChange().isEmpty()) {
+				ListNodeBuilder<Object, LeafSetEntryNode<Object>> excluded = Builders.leafSetBuilder()
+						.withNodeIdentifier(EXCLUDED_CHANGE_NI);
+				for (ChangeType changeType : subscriptionInfo.getExcludedChange()) {
+					excluded.withChild(Builders.leafSetEntryBuilder()
+							.withNodeIdentifier(new NodeWithValue<Object>(Y_EXCLUDED_CHANGE_NAME, changeType.name()))
+							.withValue(changeType.name()).build());
+				}
+				onChange.withChild(excluded.build());
+			}
+			updateTrigger = onChange.build();
+		}
+
+		// Part where Siegert should add the 'call_home' parameter NODE
+		DataContainerNodeAttrBuilder<NodeIdentifierWithPredicates, MapEntryNode> builder = ImmutableNodes
+				.mapEntryBuilder()
+				.withNodeIdentifier(new NodeIdentifierWithPredicates(Subscription.QNAME, SUBSCRIPTION_ID_KEY,
+						Long.valueOf(subscriptionInfo.getSubscriptionId())))
+				.withChild(updateTrigger).withChild(ImmutableNodes.leafNode(STREAM_NI, subscriptionInfo.getStream()))
+				.withChild(ImmutableNodes.leafNode(SUB_START_TIME_NI, subscriptionInfo.getSubscriptionStartTime()))
+				.withChild(ImmutableNodes.leafNode(SUB_STOP_TIME_NI, subscriptionInfo.getSubscriptionStopTime()))
+				.withChild(ImmutableNodes.leafNode(START_TIME_NI, subscriptionInfo.getStartTime()))
+				.withChild(ImmutableNodes.leafNode(STOP_TIME_NI, subscriptionInfo.getStopTime()))
+				.withChild(ImmutableNodes.leafNode(ENCODING_NI, subscriptionInfo.getEncoding()));
+		if (subscriptionInfo.getSubscriptionPriority() != null) {
+			builder.withChild(ImmutableNodes.leafNode(SUB_PRIORITY_NI, subscriptionInfo.getPriorityValue()));
 		}
-		LOG.info("MD-SAL has been updated");
+		if (subscriptionInfo.getSubscriptionDependency() != null) {
+			builder.withChild(ImmutableNodes.leafNode(SUB_DEPENDENCY_NI, subscriptionInfo.getSubscriptionDependency()));
+		}
+		if (subscriptionInfo.getFilter() != null) {
+			builder.withChild(Builders.choiceBuilder().withNodeIdentifier(FILTER_TYPE_1_NI)
+					.withChild(ImmutableNodes.leafNode(FILTER_1_NI,
+							XmlUtil.toString((Element) subscriptionInfo.getFilter().getNode())))
+					.build());
+		}
+		return builder.build();
 	}
 
 	/**
@@ -371,4 +353,25 @@ public class SubscriptionEngine {
 	public SubscriptionInfo getSubscription(String subscriptionID) {
 		return this.masterSubMap.get(subscriptionID);
 	}
+
+	/**
+	 * Stores the statistics of a subscription next to its entry in MD-SAL
+	 * with the next flush of the {@link SubscriptionPersister}. Ignored if
+	 * the subscription does not exist (anymore).
+	 * 
+	 * @param subscriptionID
+	 *            The individual identifier of the subscription
+	 * @param statistics
+	 *            Statistics container, see {@link NotificationMetrics}
+	 */
+	public void publishStatistics(String subscriptionID, ContainerNode statistics) {
+		if (persister == null) {
+			return;
+		}
+		YangInstanceIdentifier yid = SUBSCRIPTION_LIST_PATH.node(
+				new NodeIdentifierWithPredicates(Subscription.QNAME, SUBSCRIPTION_ID_KEY, Long.valueOf(subscriptionID)));
+		// Checked by the persister, so a concurrent delete cannot be overtaken
+		persister.mergeIf(yid.node(STATISTICS_AI).node(STATISTICS_NI), statistics,
+				() -> masterSubMap.containsKey(subscriptionID));
+	}
 }
@@ -7,8 +7,13 @@
  */
 package org.opendaylight.yangpushserver.subscription;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.xml.transform.dom.DOMSource;
 
+import org.opendaylight.yangpushserver.notification.CompiledSubtreeFilter;
 import org.opendaylight.yangpushserver.rpc.Errors;
 import org.opendaylight.yangpushserver.rpc.RpcImpl;
 
@@ -29,15 +34,42 @@ public final class SubscriptionInfo {
 		active, inactive, suspend, in_error,
 	}
 
+	/**
+	 * 
+	 * UnchangedUpdates defines how periodic updates are handled whose content
+	 * did not change since the last push-update of the subscription.
+	 *
+	 */
+	public enum UnchangedUpdates {
+		send, suppress, heartbeat,
+	}
+
+	/**
+	 * 
+	 * ChangeType lists the kinds of changes an on change subscription can
+	 * exclude (change-type of ietf-yang-push).
+	 *
+	 */
+	public enum ChangeType {
+		create, delete, modify,
+	}
+
 	public String node_name, encoding, stream, startTime, stopTime, filterType, subscriptionStartTime,
 			subscriptionStopTime, dscp, subscriptionPriority, subscriptionDependency, updateTrigger, status,
 			subscriptionId;
 	Long period, dampeningPeriod;
 	private Errors.errors error;
 	private DOMSource filter;
+	private String xpathFilter;
+	private CompiledSubtreeFilter compiledFilter;
 	private Boolean noSynchOnStart;
 	public SubscriptionStreamStatus subscriptionStreamStatus;
-	private String excludedChange;
+	private Set<ChangeType> excludedChange = Collections.emptySet();
+	private UnchangedUpdates unchangedUpdates = UnchangedUpdates.send;
+	// Bundling of on change updates, every change is sent on its own by
+	// default
+	private long bundleMaxEdits = 1l;
+	private long bundleMaxDelay = 0l;
 	private static SubscriptionInfo instance = null;
 
 	public SubscriptionInfo() {
@@ -67,6 +99,21 @@ public final class SubscriptionInfo {
 		this.subscriptionPriority = subscriptionPriority;
 	}
 
+	/**
+	 * @return subscription-priority as number, higher values are served
+	 *         first, 0 if not set
+	 */
+	public short getPriorityValue() {
+		if (subscriptionPriority == null) {
+			return 0;
+		}
+		try {
+			return Short.parseShort(subscriptionPriority);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
 	public Boolean getNoSynchOnStart() {
 		return noSynchOnStart;
 	}
@@ -75,12 +122,46 @@ public final class SubscriptionInfo {
 		this.noSynchOnStart = noSynchOnStart;
 	}
 
-	public String getExcludedChange() {
+	/**
+	 * @return Kinds of changes not reported by this on change subscription,
+	 *         empty if all changes are reported
+	 */
+	public Set<ChangeType> getExcludedChange() {
 		return excludedChange;
 	}
 
-	public void setExcludedChange(String excludedChange) {
-		this.excludedChange = excludedChange;
+	public void setExcludedChange(Set<ChangeType> excludedChange) {
+		this.excludedChange = excludedChange == null || excludedChange.isEmpty()
+				? Collections.<ChangeType> emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(excludedChange));
+	}
+
+	public UnchangedUpdates getUnchangedUpdates() {
+		return unchangedUpdates;
+	}
+
+	public void setUnchangedUpdates(UnchangedUpdates unchangedUpdates) {
+		this.unchangedUpdates = unchangedUpdates;
+	}
+
+	/**
+	 * @return Number of pending edits an on change update is sent at, 1 if
+	 *         bundling is disabled
+	 */
+	public long getBundleMaxEdits() {
+		return bundleMaxEdits;
+	}
+
+	/**
+	 * @return Time in milliseconds a change waits for further changes to be
+	 *         bundled with, 0 if bundling is disabled
+	 */
+	public long getBundleMaxDelay() {
+		return bundleMaxDelay;
+	}
+
+	public void setBundling(long bundleMaxEdits, long bundleMaxDelay) {
+		this.bundleMaxEdits = Math.max(1l, bundleMaxEdits);
+		this.bundleMaxDelay = Math.max(0l, bundleMaxDelay);
 	}
 
 	public String getDscp() {
@@ -175,6 +256,27 @@ public final class SubscriptionInfo {
 		this.filter = filter;
 	}
 
+	/**
+	 * @return XPath filter as given by the subscriber, null for subtree
+	 *         filters. {@link #getFilter()} holds the equivalent subtree
+	 *         filter then.
+	 */
+	public String getXPathFilter() {
+		return xpathFilter;
+	}
+
+	public void setXPathFilter(String xpathFilter) {
+		this.xpathFilter = xpathFilter;
+	}
+
+	public CompiledSubtreeFilter getCompiledFilter() {
+		return compiledFilter;
+	}
+
+	public void setCompiledFilter(CompiledSubtreeFilter compiledFilter) {
+		this.compiledFilter = compiledFilter;
+	}
+
 	public String getError() {
 		return Errors.printError(this.error);
 	}
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.subscription;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataBroker;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataWriteTransaction;
+import org.opendaylight.yangpushserver.notification.NotificationScheduler;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Write-behind persister for the subscriptions stored in the operational MD-SAL
+ * data store. Writes are collected and committed in one transaction per flush
+ * interval, so callers (e.g. RPCs) never wait for a data store commit. Only
+ * the last write of every path within an interval is committed. Writes of a
+ * failed commit are retried with the next flush unless they were replaced by
+ * a newer write of the same path, backing off while the commits keep failing.
+ *
+ * A delete drops the pending writes below its path, and writes below a
+ * pending delete are ignored, so a late write cannot recreate a deleted
+ * entry. Pending writes below a merged or replaced path are committed after
+ * it, so they are not overwritten by the older parent.
+ *
+ */
+public class SubscriptionPersister implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(SubscriptionPersister.class);
+
+	/**
+	 * Default time in milliseconds writes are collected before they are
+	 * committed
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL = 100l;
+
+	/**
+	 * Maximum time in milliseconds between two flushes while commits fail
+	 */
+	public static final long MAX_RETRY_INTERVAL = 10000l;
+
+	private enum WriteType {
+		merge, put, delete
+	}
+
+	private final DOMDataBroker dataBroker;
+	private final NotificationScheduler scheduler;
+	private final long flushInterval;
+
+	// Pending writes (key is path), guarded by this
+	private final Map<YangInstanceIdentifier, PendingWrite> pending = new LinkedHashMap<>();
+	private boolean flushScheduled = false;
+	// Number of consecutive failed commits, guarded by this
+	private int failures = 0;
+
+	/**
+	 * @param dataBroker
+	 *            Data broker used to create the write transactions
+	 * @param scheduler
+	 *            Scheduler used to trigger the flushes
+	 * @param flushInterval
+	 *            Time in milliseconds writes are collected before they are
+	 *            committed
+	 */
+	public SubscriptionPersister(DOMDataBroker dataBroker, NotificationScheduler scheduler, long flushInterval) {
+		this.dataBroker = dataBroker;
+		this.scheduler = scheduler;
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Merges the given data into the operational data store with the next
+	 * flush.
+	 */
+	public void merge(YangInstanceIdentifier path, NormalizedNode<?, ?> data) {
+		enqueue(path, new PendingWrite(WriteType.merge, data));
+	}
+
+	/**
+	 * Merges the given data into the operational data store with the next
+	 * flush, if the given condition holds. The condition is evaluated while no
+	 * other write can be queued, e.g. to check that the parent entry was not
+	 * deleted in the meantime.
+	 */
+	public void mergeIf(YangInstanceIdentifier path, NormalizedNode<?, ?> data, BooleanSupplier condition) {
+		synchronized (this) {
+			if (condition.getAsBoolean()) {
+				enqueue(path, new PendingWrite(WriteType.merge, data));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the data at the given path in the operational data store with
+	 * the next flush.
+	 */
+	public void put(YangInstanceIdentifier path, NormalizedNode<?, ?> data) {
+		enqueue(path, new PendingWrite(WriteType.put, data));
+	}
+
+	/**
+	 * Deletes the data at the given path from the operational data store with
+	 * the next flush.
+	 */
+	public void delete(YangInstanceIdentifier path) {
+		enqueue(path, new PendingWrite(WriteType.delete, null));
+	}
+
+	private synchronized void enqueue(YangInstanceIdentifier path, PendingWrite write) {
+		if (write.type != WriteType.delete && isBelowPendingDelete(path)) {
+			LOG.debug("Ignoring write of {}, it is below a pending delete", path);
+			return;
+		}
+		// Keep the order of the last writes
+		pending.remove(path);
+		Map<YangInstanceIdentifier, PendingWrite> descendants = new LinkedHashMap<>();
+		Iterator<Map.Entry<YangInstanceIdentifier, PendingWrite>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<YangInstanceIdentifier, PendingWrite> entry = it.next();
+			if (path.contains(entry.getKey())) {
+				descendants.put(entry.getKey(), entry.getValue());
+				it.remove();
+			}
+		}
+		pending.put(path, write);
+		if (write.type != WriteType.delete) {
+			pending.putAll(descendants);
+		}
+		scheduleFlush();
+	}
+
+	private boolean isBelowPendingDelete(YangInstanceIdentifier path) {
+		for (YangInstanceIdentifier parent = path.getParent(); parent != null; parent = parent.getParent()) {
+			PendingWrite write = pending.get(parent);
+			if (write != null && write.type == WriteType.delete) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Queues the writes of a failed commit again, in front of the writes
+	 * queued since. Writes replaced by a newer write of the same path or
+	 * below a pending delete are dropped.
+	 */
+	private synchronized void requeue(Map<YangInstanceIdentifier, PendingWrite> batch) {
+		failures++;
+		Map<YangInstanceIdentifier, PendingWrite> retry = new LinkedHashMap<>();
+		for (Map.Entry<YangInstanceIdentifier, PendingWrite> write : batch.entrySet()) {
+			if (!pending.containsKey(write.getKey()) && !isBelowPendingDelete(write.getKey())) {
+				retry.put(write.getKey(), write.getValue());
+			}
+		}
+		LOG.info("Retrying {} subscription writes after {} failed commits", retry.size(), failures);
+		retry.putAll(pending);
+		pending.clear();
+		pending.putAll(retry);
+		scheduleFlush();
+	}
+
+	private synchronized void scheduleFlush() {
+		if (!flushScheduled && !pending.isEmpty()) {
+			flushScheduled = true;
+			// Doubling the interval with every failed commit
+			long delay = failures == 0 ? flushInterval
+					: Math.min(flushInterval << Math.min(failures, 16), MAX_RETRY_INTERVAL);
+			scheduler.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Commits all pending writes in one transaction without waiting for the
+	 * commit to complete.
+	 */
+	public void flush() {
+		final Map<YangInstanceIdentifier, PendingWrite> batch;
+		synchronized (this) {
+			flushScheduled = false;
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = new LinkedHashMap<>(pending);
+			pending.clear();
+		}
+
+		DOMDataWriteTransaction tx = dataBroker.newWriteOnlyTransaction();
+		for (Map.Entry<YangInstanceIdentifier, PendingWrite> write : batch.entrySet()) {
+			switch (write.getValue().type) {
+			case merge:
+				tx.merge(LogicalDatastoreType.OPERATIONAL, write.getKey(), write.getValue().data);
+				break;
+			case put:
+				tx.put(LogicalDatastoreType.OPERATIONAL, write.getKey(), write.getValue().data);
+				break;
+			case delete:
+				tx.delete(LogicalDatastoreType.OPERATIONAL, write.getKey());
+				break;
+			default:
+				break;
+			}
+		}
+		Futures.addCallback(tx.submit(), new FutureCallback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				synchronized (SubscriptionPersister.this) {
+					failures = 0;
+				}
+				LOG.info("{} subscription writes committed to MD-SAL", batch.size());
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				LOG.warn("Committing {} subscription writes to MD-SAL failed", batch.size(), t);
+				requeue(batch);
+			}
+		});
+	}
+
+	/**
+	 * Commits the writes still pending.
+	 */
+	@Override
+	public void close() {
+		flush();
+	}
+
+	private static final class PendingWrite {
+		private final WriteType type;
+		private final NormalizedNode<?, ?> data;
+
+		private PendingWrite(WriteType type, NormalizedNode<?, ?> data) {
+			this.type = type;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.netconf.api.NetconfMessage;
+import org.opendaylight.yangpushserver.impl.SubscriptionOutboundQueue.OverflowPolicy;
+import org.opendaylight.yangpushserver.impl.SubscriptionOutboundQueue.Transport;
+import org.opendaylight.yangpushserver.notification.EncodedNotificationContent;
+import org.opendaylight.yangpushserver.notification.OAMNotification;
+import org.opendaylight.yangpushserver.notification.SubscriptionMetrics.Stage;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class SubscriptionOutboundQueueTest {
+	private final TestTransport transport = new TestTransport();
+
+	@Test
+	public void testSendWhileWritable() {
+		SubscriptionOutboundQueue queue = new SubscriptionOutboundQueue("1", null, transport, 2, 1000,
+				OverflowPolicy.suspend);
+		for (int i = 0; i < 10; i++) {
+			queue.offer(message(i));
+			transport.completeAll();
+		}
+		assertEquals(10, transport.sent.size());
+		assertEquals(0, queue.getQueuedMessages());
+		assertFalse(queue.isSuspended());
+		assertEquals(10, queue.getMetrics().getNotificationsSent());
+		assertEquals(10, queue.getMetrics().getLatency(Stage.send).getCount());
+	}
+
+	@Test
+	public void testDropOldest() {
+		SubscriptionOutboundQueue queue = new SubscriptionOutboundQueue("1", null, transport, 3, 1000,
+				OverflowPolicy.drop_oldest);
+		transport.writable = false;
+		for (int i = 0; i < 10; i++) {
+			queue.offer(message(i));
+		}
+		assertEquals(3, queue.getQueuedMessages());
+		assertEquals(7, queue.getDroppedMessages());
+		assertEquals(7, queue.getMetrics().getNotificationsDropped());
+
+		transport.writable = true;
+		queue.drain();
+		assertEquals(3, transport.sent.size());
+		// The latest notifications are kept
+		assertEquals("7", transport.sent.get(0).getDocument().getDocumentElement().getTextContent());
+	}
+
+	@Test
+	public void testSuspendAndResume() {
+		SubscriptionOutboundQueue queue = new SubscriptionOutboundQueue("1", null, transport, 3, 1000,
+				OverflowPolicy.suspend);
+		transport.writable = false;
+		for (int i = 0; i < 10; i++) {
+			queue.offer(message(i));
+		}
+		assertTrue(queue.isSuspended());
+		// Only the suspended notification is left
+		assertEquals(1, queue.getQueuedMessages());
+
+		transport.writable = true;
+		queue.drain();
+		assertEquals(1, transport.sent.size());
+		assertTrue(transport.sent.get(0) instanceof OAMNotification);
+		// Still suspended until the suspended notification was written
+		assertTrue(queue.isSuspended());
+		transport.completeAll();
+		assertFalse(queue.isSuspended());
+	}
+
+	@Test
+	public void testSequenceGaps() {
+		SubscriptionOutboundQueue queue = new SubscriptionOutboundQueue("1", null, transport, 3, 100000,
+				OverflowPolicy.drop_oldest);
+		transport.writable = false;
+		for (int i = 1; i <= 10; i++) {
+			queue.offer(update(i));
+		}
+		transport.writable = true;
+		queue.drain();
+		transport.completeAll();
+		// 1 to 7 were dropped
+		assertEquals(1, queue.getMetrics().getSequenceGaps());
+		assertEquals(7, queue.getMetrics().getSequenceNumbersMissed());
+
+		queue.offer(update(11));
+		transport.completeAll();
+		assertEquals(1, queue.getMetrics().getSequenceGaps());
+
+		queue.offer(update(13));
+		transport.completeAll();
+		assertEquals(2, queue.getMetrics().getSequenceGaps());
+		assertEquals(8, queue.getMetrics().getSequenceNumbersMissed());
+	}
+
+	private static NetconfMessage message(int number) {
+		return new NetconfMessage(XmlUtil.readXmlToDocumentSilently("<update>" + number + "</update>"));
+	}
+
+	private static NetconfMessage update(long sequenceNumber) {
+		return EncodedNotificationContent.empty(false).toPushUpdate("1", new Date(), sequenceNumber);
+	}
+
+	private static final class TestTransport implements Transport {
+		private final EmbeddedChannel channel = new EmbeddedChannel();
+		private final List<NetconfMessage> sent = new ArrayList<>();
+		private final List<ChannelPromise> pending = new ArrayList<>();
+		private boolean writable = true;
+
+		@Override
+		public boolean isWritable() {
+			return writable;
+		}
+
+		@Override
+		public ChannelFuture send(NetconfMessage message) {
+			sent.add(message);
+			ChannelPromise promise = new DefaultChannelPromise(channel);
+			pending.add(promise);
+			return promise;
+		}
+
+		private void completeAll() {
+			List<ChannelPromise> completed = new ArrayList<>(pending);
+			pending.clear();
+			for (ChannelPromise promise : completed) {
+				promise.setSuccess();
+			}
+		}
+	}
+}
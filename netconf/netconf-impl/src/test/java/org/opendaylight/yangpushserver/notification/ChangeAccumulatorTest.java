@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.ID;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAME;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NODE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.nodePath;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.Edit;
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.EditOperation;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+
+public class ChangeAccumulatorTest {
+	private final ChangeAccumulator accumulator = new ChangeAccumulator();
+
+	@Test
+	public void testLastWriterWins() {
+		for (int i = 0; i < 100; i++) {
+			accumulator.add(edit(EditOperation.replace, namePath("n1"), ImmutableNodes.leafNode(NAME, "name-" + i)));
+		}
+		List<Edit> edits = accumulator.drain();
+		assertEquals(1, edits.size());
+		assertEquals(EditOperation.replace, edits.get(0).getOperation());
+		assertEquals("name-99", edits.get(0).getValue().getValue());
+		assertTrue(accumulator.isEmpty());
+	}
+
+	@Test
+	public void testCreateAndDeleteCancelOut() {
+		accumulator.add(edit(EditOperation.create, nodePath("n1"), ImmutableNodes.mapEntry(NODE, ID, "n1")));
+		accumulator.add(edit(EditOperation.replace, namePath("n1"), ImmutableNodes.leafNode(NAME, "name")));
+		accumulator.add(edit(EditOperation.delete, nodePath("n1"), null));
+		assertTrue(accumulator.drain().isEmpty());
+	}
+
+	@Test
+	public void testDeleteAndCreateIsReplace() {
+		accumulator.add(edit(EditOperation.delete, nodePath("n1"), null));
+		accumulator.add(edit(EditOperation.create, nodePath("n1"), ImmutableNodes.mapEntry(NODE, ID, "n1")));
+		List<Edit> edits = accumulator.drain();
+		assertEquals(1, edits.size());
+		assertEquals(EditOperation.replace, edits.get(0).getOperation());
+	}
+
+	@Test
+	public void testAncestorSupersedesDescendants() {
+		accumulator.add(edit(EditOperation.replace, namePath("n1"), ImmutableNodes.leafNode(NAME, "name")));
+		accumulator.add(edit(EditOperation.replace, namePath("n2"), ImmutableNodes.leafNode(NAME, "name")));
+		accumulator.add(edit(EditOperation.delete, nodePath("n1"), null));
+		List<Edit> edits = accumulator.drain();
+		assertEquals(2, edits.size());
+		assertEquals(namePath("n2"), edits.get(0).getPath());
+		assertEquals(EditOperation.delete, edits.get(1).getOperation());
+		assertEquals(nodePath("n1"), edits.get(1).getPath());
+	}
+
+	private static YangInstanceIdentifier namePath(String id) {
+		return nodePath(id).node(NAME);
+	}
+
+	private static List<Edit> edit(EditOperation operation, YangInstanceIdentifier path, NormalizedNode<?, ?> value) {
+		return Collections.singletonList(new Edit(operation, path, DataTreeChangeEncoder.toTarget(path), value));
+	}
+}
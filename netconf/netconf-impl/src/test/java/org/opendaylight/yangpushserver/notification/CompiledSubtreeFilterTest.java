@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.INVENTORY_PATH;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAMESPACE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NODE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.STATISTICS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.nodePath;
+
+import java.util.Collections;
+
+import javax.xml.transform.dom.DOMSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.yangpushserver.impl.YangpushProvider;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+
+public class CompiledSubtreeFilterTest {
+	private SchemaContext schemaContext;
+
+	@Before
+	public void setUp() throws Exception {
+		schemaContext = FilterTestModel.loadSchemaContext();
+	}
+
+	@Test
+	public void testKeyedListEntry() throws Exception {
+		CompiledSubtreeFilter filter = compile("<inventory xmlns=\"" + NAMESPACE + "\"><node><id>node-1</id></node>"
+				+ "</inventory>");
+		assertEquals(Collections.singletonList(nodePath("node-1")), filter.getReadRoots());
+		assertFalse(filter.isWholeDataStore());
+
+		// Descends further below the entry
+		filter = compile("<inventory xmlns=\"" + NAMESPACE + "\"><node><id>node-1</id><statistics/></node>"
+				+ "</inventory>");
+		assertEquals(Collections.singletonList(nodePath("node-1").node(STATISTICS)), filter.getReadRoots());
+	}
+
+	@Test
+	public void testContentMatchStopsDescent() throws Exception {
+		// Not a key, all entries have to be read
+		CompiledSubtreeFilter filter = compile("<inventory xmlns=\"" + NAMESPACE + "\"><node><name>name-1</name>"
+				+ "</node></inventory>");
+		assertEquals(Collections.singletonList(INVENTORY_PATH.node(NODE)), filter.getReadRoots());
+
+		// Selects its siblings, the container has to be read
+		filter = compile("<inventory xmlns=\"" + NAMESPACE + "\"><node><id>node-1</id><statistics>"
+				+ "<errors>0</errors><packets/></statistics></node></inventory>");
+		assertEquals(Collections.singletonList(nodePath("node-1").node(STATISTICS)), filter.getReadRoots());
+	}
+
+	@Test
+	public void testSiblingsCollapseToCommonPrefix() throws Exception {
+		// Siblings in one top level node stop the descent
+		CompiledSubtreeFilter filter = compile("<inventory xmlns=\"" + NAMESPACE + "\"><node><id>node-1</id>"
+				+ "<name/><statistics/></node></inventory>");
+		assertEquals(Collections.singletonList(nodePath("node-1")), filter.getReadRoots());
+
+		// Top level nodes of the same name are read once
+		filter = compile("<inventory xmlns=\"" + NAMESPACE + "\"><node><id>node-1</id></node></inventory>"
+				+ "<inventory xmlns=\"" + NAMESPACE + "\"><node><id>node-2</id><statistics/></node></inventory>");
+		assertEquals(Collections.singletonList(INVENTORY_PATH.node(NODE)), filter.getReadRoots());
+	}
+
+	@Test
+	public void testUnknownNamespaceReadsWholeDataStore() throws Exception {
+		CompiledSubtreeFilter filter = compile("<inventory xmlns=\"urn:opendaylight:yangpush:unknown\"><node>"
+				+ "<id>node-1</id></node></inventory>");
+		assertTrue(filter.isWholeDataStore());
+		assertEquals(Collections.singletonList(YangpushProvider.ROOT), filter.getReadRoots());
+	}
+
+	private CompiledSubtreeFilter compile(String content) throws Exception {
+		return CompiledSubtreeFilter.compile(new DOMSource(XmlUtil.readXmlToElement(
+				"<filter xmlns=\"urn:ietf:params:xml:ns:netconf:notification:1.0\" type=\"subtree\">" + content
+						+ "</filter>")), schemaContext);
+	}
+}
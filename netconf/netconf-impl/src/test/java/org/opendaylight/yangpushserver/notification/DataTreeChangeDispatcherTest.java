@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.ID;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.INVENTORY;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.INVENTORY_PATH;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAME;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NODE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.nodePath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataBroker;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataReadOnlyTransaction;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeChangeListener;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeChangeService;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataTreeIdentifier;
+import org.opendaylight.yangtools.concepts.AbstractListenerRegistration;
+import org.opendaylight.yangtools.concepts.ListenerRegistration;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.PathArgument;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTree;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidate;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidateNode;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidates;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeModification;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.TreeType;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.CollectionNodeBuilder;
+import org.opendaylight.yangtools.yang.data.impl.schema.tree.InMemoryDataTreeFactory;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+
+import com.google.common.util.concurrent.Futures;
+
+public class DataTreeChangeDispatcherTest {
+	private static final DOMDataTreeIdentifier INVENTORY_TREE = new DOMDataTreeIdentifier(
+			LogicalDatastoreType.OPERATIONAL, INVENTORY_PATH);
+
+	private final TestChangeService changeService = new TestChangeService();
+	private DataTreeChangeDispatcher dispatcher;
+	private DataTree dataTree;
+
+	@Before
+	public void setUp() throws Exception {
+		// The broker tells whether a path exists from the test data tree
+		DOMDataReadOnlyTransaction readTransaction = mock(DOMDataReadOnlyTransaction.class);
+		doAnswer(invocation -> Futures.immediateCheckedFuture(dataTree.takeSnapshot()
+				.readNode((YangInstanceIdentifier) invocation.getArguments()[1]).isPresent()))
+						.when(readTransaction).exists(any(LogicalDatastoreType.class), any(YangInstanceIdentifier.class));
+		DOMDataBroker dataBroker = mock(DOMDataBroker.class);
+		doReturn(readTransaction).when(dataBroker).newReadOnlyTransaction();
+		dispatcher = new DataTreeChangeDispatcher(changeService, dataBroker);
+
+		SchemaContext schemaContext = FilterTestModel.loadSchemaContext();
+		dataTree = InMemoryDataTreeFactory.getInstance().create(TreeType.OPERATIONAL);
+		dataTree.setSchemaContext(schemaContext);
+
+		CollectionNodeBuilder<MapEntryNode, MapNode> nodes = ImmutableNodes.mapNodeBuilder(NODE);
+		for (int i = 1; i <= 3; i++) {
+			nodes.withChild(ImmutableNodes.mapEntryBuilder(NODE, ID, "node-" + i)
+					.withChild(ImmutableNodes.leafNode(NAME, "name-" + i)).build());
+		}
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.write(INVENTORY_PATH, Builders.containerBuilder()
+				.withNodeIdentifier(new NodeIdentifier(INVENTORY)).withChild(nodes.build()).build());
+		commit(modification);
+	}
+
+	@Test
+	public void testOverlappingPathsShareRegistration() throws Exception {
+		TestListener inventory = new TestListener();
+		TestListener node1 = new TestListener();
+		TestListener node2 = new TestListener();
+		ListenerRegistration<TestListener> inventoryRegistration = dispatcher
+				.registerListener(LogicalDatastoreType.OPERATIONAL, INVENTORY_PATH, inventory);
+		ListenerRegistration<TestListener> node1Registration = dispatcher
+				.registerListener(LogicalDatastoreType.OPERATIONAL, nodePath("node-1"), node1);
+		ListenerRegistration<TestListener> node2Registration = dispatcher
+				.registerListener(LogicalDatastoreType.OPERATIONAL, nodePath("node-2"), node2);
+		assertEquals(1, dispatcher.getRegistrationCount());
+		assertEquals(Collections.singleton(INVENTORY_TREE), changeService.listeners.keySet());
+
+		// Initial data reported by the broker
+		changeService.publish(INVENTORY_TREE, DataTreeCandidates.fromNormalizedNode(INVENTORY_PATH,
+				dataTree.takeSnapshot().readNode(INVENTORY_PATH).get()));
+		assertEquals(1, inventory.initialData.size());
+		assertTrue(inventory.changes.isEmpty());
+		assertEquals(nodePath("node-1").getLastPathArgument(), node1.initialData.get(0).getIdentifier());
+		assertTrue(node1.changes.isEmpty());
+
+		// Changes are routed to the paths they modified only
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.write(nodePath("node-1").node(NAME), ImmutableNodes.leafNode(NAME, "renamed"));
+		changeService.publish(INVENTORY_TREE, narrow(commit(modification), INVENTORY_PATH));
+		assertEquals(1, inventory.changes.size());
+		assertEquals(1, node1.changes.size());
+		assertEquals(nodePath("node-1"), node1.changes.get(0).iterator().next().getRootPath());
+		assertTrue(node2.changes.isEmpty());
+
+		// Added later, told the current data right away
+		TestListener node3 = new TestListener();
+		ListenerRegistration<TestListener> node3Registration = dispatcher
+				.registerListener(LogicalDatastoreType.OPERATIONAL, nodePath("node-3"), node3);
+		assertEquals(1, node3.initialData.size());
+		assertEquals(1, dispatcher.getRegistrationCount());
+
+		// Another data store is listened on separately
+		ListenerRegistration<TestListener> configRegistration = dispatcher
+				.registerListener(LogicalDatastoreType.CONFIGURATION, INVENTORY_PATH, new TestListener());
+		assertEquals(2, dispatcher.getRegistrationCount());
+		configRegistration.close();
+		assertEquals(1, dispatcher.getRegistrationCount());
+
+		// Closed listeners receive nothing, the shared registration is kept
+		// while other listeners are left
+		inventoryRegistration.close();
+		node1Registration.close();
+		modification = dataTree.takeSnapshot().newModification();
+		modification.delete(nodePath("node-1"));
+		changeService.publish(INVENTORY_TREE, narrow(commit(modification), INVENTORY_PATH));
+		assertEquals(1, inventory.changes.size());
+		assertEquals(1, node1.changes.size());
+		assertTrue(node2.changes.isEmpty());
+
+		node2Registration.close();
+		node3Registration.close();
+		assertEquals(0, dispatcher.getRegistrationCount());
+		assertTrue(changeService.listeners.isEmpty());
+	}
+
+	@Test
+	public void testCreationOfMissingPathIsChange() throws Exception {
+		TestListener node4 = new TestListener();
+		ListenerRegistration<TestListener> registration = dispatcher
+				.registerListener(LogicalDatastoreType.OPERATIONAL, nodePath("node-4"), node4);
+		// Nothing there, the broker reports no initial data
+		assertEquals(1, node4.initialData.size());
+		assertNull(node4.initialData.get(0));
+
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.write(nodePath("node-4"), ImmutableNodes.mapEntryBuilder(NODE, ID, "node-4")
+				.withChild(ImmutableNodes.leafNode(NAME, "name-4")).build());
+		changeService.publish(new DOMDataTreeIdentifier(LogicalDatastoreType.OPERATIONAL, nodePath("node-4")),
+				narrow(commit(modification), nodePath("node-4")));
+		assertEquals(1, node4.initialData.size());
+		assertEquals(1, node4.changes.size());
+		assertEquals(nodePath("node-4"), node4.changes.get(0).iterator().next().getRootPath());
+		registration.close();
+	}
+
+	/**
+	 * @return Candidate rooted at the given path, like reported to a listener
+	 *         of that path
+	 */
+	private static DataTreeCandidate narrow(DataTreeCandidate candidate, YangInstanceIdentifier path) {
+		DataTreeCandidateNode node = candidate.getRootNode();
+		for (PathArgument argument : path.getPathArguments()) {
+			node = node.getModifiedChild(argument);
+		}
+		return DataTreeCandidates.newDataTreeCandidate(path, node);
+	}
+
+	private DataTreeCandidate commit(DataTreeModification modification) throws Exception {
+		modification.ready();
+		dataTree.validate(modification);
+		DataTreeCandidate candidate = dataTree.prepare(modification);
+		dataTree.commit(candidate);
+		return candidate;
+	}
+
+	private static final class TestListener implements DataTreeChangeDispatcher.Listener {
+		private final List<NormalizedNode<?, ?>> initialData = new ArrayList<>();
+		private final List<Collection<DataTreeCandidate>> changes = new ArrayList<>();
+
+		@Override
+		public void onInitialData(NormalizedNode<?, ?> data) {
+			initialData.add(data);
+		}
+
+		@Override
+		public void onDataTreeChanged(NormalizedNode<?, ?> data, Collection<DataTreeCandidate> changes) {
+			this.changes.add(changes);
+		}
+	}
+
+	private static final class TestChangeService implements DOMDataTreeChangeService {
+		private final Map<DOMDataTreeIdentifier, DOMDataTreeChangeListener> listeners = new HashMap<>();
+
+		@Override
+		public <L extends DOMDataTreeChangeListener> ListenerRegistration<L> registerDataTreeChangeListener(
+				DOMDataTreeIdentifier treeId, L listener) {
+			listeners.put(treeId, listener);
+			return new AbstractListenerRegistration<L>(listener) {
+				@Override
+				protected void removeRegistration() {
+					listeners.remove(treeId);
+				}
+			};
+		}
+
+		private void publish(DOMDataTreeIdentifier treeId, DataTreeCandidate change) {
+			listeners.get(treeId).onDataTreeChanged(Collections.singletonList(change));
+		}
+	}
+}
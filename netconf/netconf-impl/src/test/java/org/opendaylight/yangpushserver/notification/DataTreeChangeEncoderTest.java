@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.ID;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.INVENTORY;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.INVENTORY_PATH;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAME;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAMESPACE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NODE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.PACKETS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.STATISTICS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.nodePath;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.transform.dom.DOMSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.Edit;
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.EditOperation;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo.ChangeType;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTree;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidate;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeCandidateNode;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.DataTreeModification;
+import org.opendaylight.yangtools.yang.data.api.schema.tree.TreeType;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.CollectionNodeBuilder;
+import org.opendaylight.yangtools.yang.data.impl.schema.tree.InMemoryDataTreeFactory;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class DataTreeChangeEncoderTest {
+	private static final int NODES = 1000;
+
+	private SchemaContext schemaContext;
+	private DataTree dataTree;
+
+	@Before
+	public void setUp() throws Exception {
+		schemaContext = FilterTestModel.loadSchemaContext();
+		dataTree = InMemoryDataTreeFactory.getInstance().create(TreeType.OPERATIONAL);
+		dataTree.setSchemaContext(schemaContext);
+
+		CollectionNodeBuilder<MapEntryNode, MapNode> nodes = ImmutableNodes.mapNodeBuilder(NODE);
+		for (int i = 0; i < NODES; i++) {
+			nodes.withChild(ImmutableNodes.mapEntryBuilder(NODE, ID, "node-" + i)
+					.withChild(ImmutableNodes.leafNode(NAME, "name-" + i))
+					.withChild(Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(STATISTICS))
+							.withChild(ImmutableNodes.leafNode(PACKETS, BigInteger.valueOf(i))).build())
+					.build());
+		}
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.write(INVENTORY_PATH, Builders.containerBuilder()
+				.withNodeIdentifier(new NodeIdentifier(INVENTORY)).withChild(nodes.build()).build());
+		commit(modification);
+	}
+
+	@Test
+	public void testSingleLeafChange() throws Exception {
+		YangInstanceIdentifier packets = nodePath("node-5").node(STATISTICS).node(PACKETS);
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.write(packets, ImmutableNodes.leafNode(PACKETS, BigInteger.valueOf(4711)));
+		DataTreeCandidate candidate = commit(modification);
+
+		List<Edit> edits = DataTreeChangeEncoder.encode(INVENTORY_PATH, candidate.getRootNode().getModifiedChild(
+				INVENTORY_PATH.getLastPathArgument()), CompiledSubtreeFilter.compile(null, schemaContext));
+		assertEquals(1, edits.size());
+		assertEquals(EditOperation.replace, edits.get(0).getOperation());
+		assertEquals(packets, edits.get(0).getPath());
+
+		Document patch = DataTreeChangeEncoder.toYangPatch("patch-1", edits);
+		Element target = (Element) patch.getElementsByTagNameNS(DataTreeChangeEncoder.YANG_PATCH_NAMESPACE,
+				DataTreeChangeEncoder.TARGET).item(0);
+		assertEquals("/p0:inventory/p0:node[p0:id='node-5']/p0:statistics/p0:packets", target.getTextContent());
+		assertEquals(NAMESPACE, target.lookupNamespaceURI("p0"));
+		// The notification contains the changed leaf only
+		assertTrue(XmlUtil.toString(patch).length() < 1000);
+	}
+
+	@Test
+	public void testCreateAndDelete() throws Exception {
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.delete(nodePath("node-1"));
+		modification.write(nodePath("node-new"), ImmutableNodes.mapEntry(NODE, ID, "node-new"));
+		DataTreeCandidate candidate = commit(modification);
+
+		List<Edit> edits = DataTreeChangeEncoder.encode(candidate.getRootPath(), candidate.getRootNode(),
+				CompiledSubtreeFilter.compile(null, schemaContext));
+		assertEquals(2, edits.size());
+		for (Edit edit : edits) {
+			if (edit.getOperation() == EditOperation.delete) {
+				assertEquals(nodePath("node-1"), edit.getPath());
+				assertNull(edit.getValue());
+			} else {
+				assertEquals(EditOperation.create, edit.getOperation());
+				assertEquals(nodePath("node-new"), edit.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Changes of the data store root are walked from the data root, which
+	 * has no representation in the target, just like the list node of the
+	 * changed entries.
+	 */
+	@Test
+	public void testListEntryTargetsBelowDataRoot() throws Exception {
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.write(nodePath("node-new"), ImmutableNodes.mapEntry(NODE, ID, "node-new"));
+		modification.write(nodePath("node-2").node(NAME), ImmutableNodes.leafNode(NAME, "renamed"));
+		DataTreeCandidate candidate = commit(modification);
+		assertTrue(candidate.getRootPath().isEmpty());
+
+		List<Edit> edits = DataTreeChangeEncoder.encode(candidate.getRootPath(), candidate.getRootNode(),
+				CompiledSubtreeFilter.compile(null, schemaContext));
+		assertEquals(2, edits.size());
+		Set<String> targets = new HashSet<>();
+		NodeList targetElements = DataTreeChangeEncoder.toYangPatch("patch-1", edits).getElementsByTagNameNS(
+				DataTreeChangeEncoder.YANG_PATCH_NAMESPACE, DataTreeChangeEncoder.TARGET);
+		for (int i = 0; i < targetElements.getLength(); i++) {
+			targets.add(targetElements.item(i).getTextContent());
+		}
+		assertEquals(new HashSet<>(Arrays.asList("/p0:inventory/p0:node[p0:id='node-new']",
+				"/p0:inventory/p0:node[p0:id='node-2']/p0:name")), targets);
+	}
+
+	/**
+	 * A listener root ending in a list node contributes neither the list
+	 * node nor itself twice to the target.
+	 */
+	@Test
+	public void testTargetBelowListRoot() throws Exception {
+		YangInstanceIdentifier listPath = INVENTORY_PATH.node(NODE);
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.write(nodePath("node-9").node(NAME), ImmutableNodes.leafNode(NAME, "renamed"));
+		DataTreeCandidate candidate = commit(modification);
+
+		DataTreeCandidateNode listNode = candidate.getRootNode()
+				.getModifiedChild(INVENTORY_PATH.getLastPathArgument())
+				.getModifiedChild(listPath.getLastPathArgument());
+
+		List<Edit> edits = DataTreeChangeEncoder.encode(listPath, listNode,
+				CompiledSubtreeFilter.compile(null, schemaContext));
+		assertEquals(1, edits.size());
+		assertEquals(DataTreeChangeEncoder.toTarget(nodePath("node-9").node(NAME)), edits.get(0).getTarget());
+		assertEquals(3, edits.get(0).getTarget().size());
+	}
+
+	@Test
+	public void testFilteredChanges() throws Exception {
+		DOMSource filter = new DOMSource(XmlUtil.readXmlToElement(
+				"<filter xmlns=\"urn:ietf:params:xml:ns:netconf:notification:1.0\" type=\"subtree\">"
+						+ "<inventory xmlns=\"" + NAMESPACE + "\"><node><id>node-7</id><statistics/></node>"
+						+ "</inventory></filter>"));
+		CompiledSubtreeFilter compiledFilter = CompiledSubtreeFilter.compile(filter, schemaContext);
+
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.write(nodePath("node-7").node(NAME), ImmutableNodes.leafNode(NAME, "renamed"));
+		modification.write(nodePath("node-7").node(STATISTICS).node(PACKETS),
+				ImmutableNodes.leafNode(PACKETS, BigInteger.ONE));
+		modification.write(nodePath("node-8").node(STATISTICS).node(PACKETS),
+				ImmutableNodes.leafNode(PACKETS, BigInteger.ONE));
+		DataTreeCandidate candidate = commit(modification);
+
+		List<Edit> edits = DataTreeChangeEncoder.encode(candidate.getRootPath(), candidate.getRootNode(),
+				compiledFilter);
+		assertEquals(1, edits.size());
+		assertEquals(nodePath("node-7").node(STATISTICS).node(PACKETS), edits.get(0).getPath());
+	}
+
+	@Test
+	public void testExcludedChanges() throws Exception {
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.delete(nodePath("node-1"));
+		modification.write(nodePath("node-new"), ImmutableNodes.mapEntry(NODE, ID, "node-new"));
+		modification.write(nodePath("node-2").node(NAME), ImmutableNodes.leafNode(NAME, "renamed"));
+		DataTreeCandidate candidate = commit(modification);
+
+		List<Edit> edits = DataTreeChangeEncoder.encode(candidate.getRootPath(), candidate.getRootNode(),
+				CompiledSubtreeFilter.compile(null, schemaContext), EnumSet.of(ChangeType.create, ChangeType.delete));
+		assertEquals(1, edits.size());
+		assertEquals(EditOperation.replace, edits.get(0).getOperation());
+		assertEquals(nodePath("node-2").node(NAME), edits.get(0).getPath());
+
+		assertTrue(DataTreeChangeEncoder.encode(candidate.getRootPath(), candidate.getRootNode(), null,
+				EnumSet.allOf(ChangeType.class)).isEmpty());
+	}
+
+	@Test
+	public void testExcludedChangesAfterFilter() throws Exception {
+		DOMSource filter = new DOMSource(XmlUtil.readXmlToElement(
+				"<filter xmlns=\"urn:ietf:params:xml:ns:netconf:notification:1.0\" type=\"subtree\">"
+						+ "<inventory xmlns=\"" + NAMESPACE + "\"><node><name>selected</name></node>"
+						+ "</inventory></filter>"));
+		CompiledSubtreeFilter compiledFilter = CompiledSubtreeFilter.compile(filter, schemaContext);
+
+		// Renaming makes the node match the filter, the filter reports a create
+		DataTreeModification modification = dataTree.takeSnapshot().newModification();
+		modification.write(nodePath("node-3").node(NAME), ImmutableNodes.leafNode(NAME, "selected"));
+		DataTreeCandidate candidate = commit(modification);
+
+		assertTrue(DataTreeChangeEncoder.encode(candidate.getRootPath(), candidate.getRootNode(), compiledFilter,
+				EnumSet.of(ChangeType.create)).isEmpty());
+		List<Edit> edits = DataTreeChangeEncoder.encode(candidate.getRootPath(), candidate.getRootNode(),
+				compiledFilter, EnumSet.of(ChangeType.modify));
+		assertEquals(1, edits.size());
+		assertEquals(EditOperation.create, edits.get(0).getOperation());
+	}
+
+	private DataTreeCandidate commit(DataTreeModification modification) throws Exception {
+		modification.ready();
+		dataTree.validate(modification);
+		DataTreeCandidate candidate = dataTree.prepare(modification);
+		dataTree.commit(candidate);
+		return candidate;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAMESPACE;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.junit.Test;
+import org.opendaylight.controller.config.util.xml.XmlElement;
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.netconf.api.PreEncodedNetconfMessage;
+import org.w3c.dom.Document;
+
+public class EncodedNotificationContentTest {
+	@Test
+	public void testXmlContentSharedBySubscriptions() throws Exception {
+		Document content = XmlUtil.readXmlToDocument(
+				"<inventory xmlns=\"" + NAMESPACE + "\"><node><id>n1</id><name>a &amp; b</name></node></inventory>");
+		EncodedNotificationContent encoded = EncodedNotificationContent.ofXml(content);
+		Date eventTime = new Date();
+
+		for (String subscriptionID : new String[] { "1", "2" }) {
+			PreEncodedNetconfMessage message = encoded.toPushUpdate(subscriptionID, eventTime);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			message.writeTo(out);
+			assertEquals(message.getLength(), out.size());
+
+			// The payload is a complete notification
+			Document document = XmlUtil.readXmlToDocument(new String(out.toByteArray(), StandardCharsets.UTF_8));
+			XmlElement pushUpdate = XmlElement.fromDomDocument(document)
+					.getOnlyChildElement(PeriodicNotification.PUSH_UPDATE);
+			assertEquals(subscriptionID,
+					pushUpdate.getOnlyChildElement(PeriodicNotification.SUB_ID).getTextContent());
+			XmlElement inventory = pushUpdate.getOnlyChildElement(PeriodicNotification.CONTENT_XML)
+					.getOnlyChildElement("inventory");
+			assertEquals(NAMESPACE, inventory.getNamespace());
+			assertEquals("a & b", inventory.getOnlyChildElement("node").getOnlyChildElement("name").getTextContent());
+			// Document is parsed from the payload on demand
+			assertEquals(PeriodicNotification.NOTIFICATION, message.getDocument().getDocumentElement().getLocalName());
+		}
+	}
+
+	@Test
+	public void testJsonContentIsEscaped() throws Exception {
+		String json = "{\"yangpush-filter-test:inventory\":{\"node\":[{\"id\":\"<n1>&\"}]}}";
+		PreEncodedNetconfMessage message = EncodedNotificationContent.ofJson(json).toPushUpdate("1", new Date());
+		XmlElement content = XmlElement.fromDomDocument(message.getDocument())
+				.getOnlyChildElement(PeriodicNotification.PUSH_UPDATE)
+				.getOnlyChildElement(PeriodicNotification.CONTENT_JSON);
+		assertEquals(json, content.getTextContent());
+		assertTrue(message.toString().contains("&lt;n1&gt;&amp;"));
+	}
+
+	@Test
+	public void testTimestampsMatchDateFormat() throws Exception {
+		Date eventTime = new Date(1481630400123l);
+		XmlElement notification = XmlElement.fromDomDocument(
+				EncodedNotificationContent.empty(false).toPushChangeUpdate("7", eventTime).getDocument());
+		assertEquals(new SimpleDateFormat(PeriodicNotification.RFC3339_DATE_FORMAT_BLUEPRINT).format(eventTime),
+				notification.getOnlyChildElement(PeriodicNotification.EVENT_TIME).getTextContent());
+		XmlElement update = notification.getOnlyChildElement(OnChangeNotification.PUSH_CHANGE_UPDATE);
+		assertEquals(OnChangeNotification.PUSH_CHANGE_UPDATE_NAMESPACE, update.getNamespace());
+		assertEquals("7", update.getOnlyChildElement(PeriodicNotification.SUB_ID).getTextContent());
+		assertEquals(new SimpleDateFormat(PeriodicNotification.YANG_DATEANDTIME_FORMAT_BLUEPRINT).format(eventTime),
+				update.getOnlyChildElement(PeriodicNotification.TIME_OF_UPDATE).getTextContent());
+	}
+
+	@Test
+	public void testNotificationMessages() throws Exception {
+		Document content = XmlUtil.readXmlToDocument("<inventory xmlns=\"" + NAMESPACE + "\"/>");
+		PeriodicNotification periodic = new PeriodicNotification(content, "1");
+		assertEquals(NAMESPACE, XmlElement.fromDomDocument(periodic.getDocument())
+				.getOnlyChildElement(PeriodicNotification.PUSH_UPDATE)
+				.getOnlyChildElement(PeriodicNotification.CONTENT_XML).getOnlyChildElement("inventory")
+				.getNamespace());
+
+		OnChangeNotification onChange = new OnChangeNotification("{\"a\":1}", "2");
+		assertEquals("{\"a\":1}", XmlElement.fromDomDocument(onChange.getDocument())
+				.getOnlyChildElement(OnChangeNotification.PUSH_CHANGE_UPDATE)
+				.getOnlyChildElement(OnChangeNotification.CHANGES_JSON).getTextContent());
+	}
+
+	@Test
+	public void testResyncPushUpdateCarriesChangeSequence() throws Exception {
+		Document content = XmlUtil.readXmlToDocument("<inventory xmlns=\"" + NAMESPACE + "\"/>");
+		PreEncodedNetconfMessage message = EncodedNotificationContent.ofXml(content).toResyncPushUpdate("3",
+				new Date(), 5l, 42l);
+		XmlElement pushUpdate = XmlElement.fromDomDocument(message.getDocument())
+				.getOnlyChildElement(PeriodicNotification.PUSH_UPDATE);
+		XmlElement changeSequence = pushUpdate.getOnlyChildElement("change-sequence");
+		assertEquals(NotificationMetrics.YPX_NS, changeSequence.getNamespace());
+		assertEquals("42", changeSequence.getTextContent());
+		assertEquals("5", pushUpdate.getOnlyChildElement("sequence-number").getTextContent());
+		assertEquals(NAMESPACE, pushUpdate.getOnlyChildElement(PeriodicNotification.CONTENT_XML)
+				.getOnlyChildElement("inventory").getNamespace());
+	}
+
+	@Test
+	public void testUpdatesCarrySequenceNumber() throws Exception {
+		EncodedNotificationContent encoded = EncodedNotificationContent.ofJson("{\"a\":1}");
+		PeriodicNotification update = encoded.toPushUpdate("4", new Date(), 7l);
+		assertEquals(7l, update.getSequenceNumber());
+		XmlElement sequenceNumber = XmlElement.fromDomDocument(update.getDocument())
+				.getOnlyChildElement(PeriodicNotification.PUSH_UPDATE).getOnlyChildElement("sequence-number");
+		assertEquals(NotificationMetrics.YPX_NS, sequenceNumber.getNamespace());
+		assertEquals("7", sequenceNumber.getTextContent());
+
+		OnChangeNotification changeUpdate = encoded.toPushChangeUpdate("4", new Date(), 8l);
+		assertEquals(8l, changeUpdate.getSequenceNumber());
+		assertEquals("8", XmlElement.fromDomDocument(changeUpdate.getDocument())
+				.getOnlyChildElement(OnChangeNotification.PUSH_CHANGE_UPDATE).getOnlyChildElement("sequence-number")
+				.getTextContent());
+
+		assertEquals(PeriodicNotification.NO_SEQUENCE_NUMBER, encoded.toPushUpdate("4", new Date())
+				.getSequenceNumber());
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+import org.opendaylight.yangtools.yang.parser.stmt.rfc6020.YangInferencePipeline;
+
+/**
+ * Names and paths of the inventory model in
+ * {@code /yang/yangpush-filter-test.yang} shared by the notification tests.
+ */
+final class FilterTestModel {
+	static final String NAMESPACE = "urn:opendaylight:yangpush:filter:test";
+	static final String REVISION = "2016-11-01";
+	static final QName INVENTORY = QName.create(NAMESPACE, REVISION, "inventory");
+	static final QName NODE = QName.create(INVENTORY, "node");
+	static final QName ID = QName.create(INVENTORY, "id");
+	static final QName NAME = QName.create(INVENTORY, "name");
+	static final QName STATISTICS = QName.create(INVENTORY, "statistics");
+	static final QName PACKETS = QName.create(INVENTORY, "packets");
+	static final QName ERRORS = QName.create(INVENTORY, "errors");
+	static final QName PORT = QName.create(INVENTORY, "port");
+	static final QName NUMBER = QName.create(INVENTORY, "number");
+	static final QName OPER_STATUS = QName.create(INVENTORY, "oper-status");
+
+	static final YangInstanceIdentifier INVENTORY_PATH = YangInstanceIdentifier.of(INVENTORY);
+
+	private FilterTestModel() {
+	}
+
+	/**
+	 * @return Schema context of the inventory model
+	 */
+	static SchemaContext loadSchemaContext() throws Exception {
+		try (InputStream yang = FilterTestModel.class.getResourceAsStream("/yang/yangpush-filter-test.yang")) {
+			return YangInferencePipeline.RFC6020_REACTOR.newBuild().buildEffective(Collections.singletonList(yang));
+		}
+	}
+
+	/**
+	 * @return Path of the node list entry with the given id
+	 */
+	static YangInstanceIdentifier nodePath(String id) {
+		return INVENTORY_PATH.node(NODE).node(new NodeIdentifierWithPredicates(NODE, ID, id));
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.ID;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.INVENTORY;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAME;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NODE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.PACKETS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.STATISTICS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.nodePath;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.Edit;
+import org.opendaylight.yangpushserver.notification.DataTreeChangeEncoder.EditOperation;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+
+public class JsonContentEncoderTest {
+	private JsonContentEncoder encoder;
+
+	@Before
+	public void setUp() throws Exception {
+		encoder = JsonContentEncoder.forSchemaContext(FilterTestModel.loadSchemaContext());
+	}
+
+	@Test
+	public void testDataStoreContents() throws Exception {
+		ContainerNode inventory = Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(INVENTORY))
+				.withChild(ImmutableNodes.mapNodeBuilder(NODE)
+						.withChild(ImmutableNodes.mapEntryBuilder(NODE, ID, "n1")
+								.withChild(ImmutableNodes.leafNode(NAME, "name-1")).build())
+						.build())
+				.build();
+		ContainerNode root = Builders.containerBuilder()
+				.withNodeIdentifier(new NodeIdentifier(SchemaContext.NAME)).withChild(inventory).build();
+
+		String json = encoder.toJson(root);
+		assertTrue(json, json.startsWith("{\"yangpush-filter-test:inventory\":{\"node\":[{"));
+		assertTrue(json, json.contains("\"name\":\"name-1\""));
+		// Compact output
+		assertFalse(json, json.contains("\n"));
+		// Top level node and data store root result in the same content
+		assertTrue(json.equals(encoder.toJson(inventory)));
+	}
+
+	@Test
+	public void testYangPatch() throws Exception {
+		YangInstanceIdentifier entryPath = nodePath("n1");
+		YangInstanceIdentifier packetsPath = entryPath.node(STATISTICS).node(PACKETS);
+		Edit replace = new Edit(EditOperation.replace, packetsPath, DataTreeChangeEncoder.toTarget(packetsPath),
+				ImmutableNodes.leafNode(PACKETS, BigInteger.TEN));
+		Edit create = new Edit(EditOperation.create, entryPath, DataTreeChangeEncoder.toTarget(entryPath),
+				ImmutableNodes.mapEntry(NODE, ID, "n1"));
+
+		String json = encoder.toYangPatch("patch-1", Arrays.asList(replace, create));
+		assertTrue(json, json.startsWith("{\"ietf-yang-patch:yang-patch\":{\"patch-id\":\"patch-1\""));
+		assertTrue(json, json.contains(
+				"\"target\":\"/yangpush-filter-test:inventory/node[id='n1']/statistics/packets\""));
+		assertTrue(json, json.contains("\"target\":\"/yangpush-filter-test:inventory/node[id='n1']\""));
+		assertTrue(json, json.contains("\"yangpush-filter-test:packets\""));
+		// List entries are wrapped into their list
+		assertTrue(json, json.contains("\"value\":{\"yangpush-filter-test:node\":[{\"id\":\"n1\"}]}"));
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opendaylight.yangpushserver.notification.SubscriptionMetrics.Stage;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(99));
+		for (int i = 0; i < 98; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		histogram.record(TimeUnit.MICROSECONDS.toNanos(5000));
+		histogram.record(TimeUnit.MICROSECONDS.toNanos(20000));
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(348, histogram.getMean());
+		assertEquals(20000, histogram.getMax());
+		// Upper bound of the bucket [64, 128)
+		assertEquals(127, histogram.getPercentile(50));
+		// Upper bound of the bucket [4096, 8192)
+		assertEquals(8191, histogram.getPercentile(99));
+		// Capped by the maximum
+		assertEquals(20000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testNegativeAndZeroLatencies() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(0);
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+
+	@Test
+	public void testTotalLatencies() {
+		Map<Stage, LatencyHistogram> totals = new EnumMap<>(Stage.class);
+		for (Stage stage : Stage.values()) {
+			totals.put(stage, new LatencyHistogram());
+		}
+		SubscriptionMetrics first = new SubscriptionMetrics(totals);
+		SubscriptionMetrics second = new SubscriptionMetrics(totals);
+		first.record(Stage.read, 1000);
+		second.record(Stage.read, 2000);
+		second.record(Stage.send, 3000);
+
+		assertEquals(1, first.getLatency(Stage.read).getCount());
+		assertEquals(2, totals.get(Stage.read).getCount());
+		assertEquals(1, totals.get(Stage.send).getCount());
+		assertTrue(totals.get(Stage.encode).getCount() == 0);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.ID;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.INVENTORY;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAME;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NODE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.PACKETS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.STATISTICS;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+
+public class NormalizedNodeMergerTest {
+	@Test
+	public void testConfigurationAndOperationalMerged() {
+		ContainerNode configuration = inventory(
+				ImmutableNodes.mapEntryBuilder(NODE, ID, "n1").withChild(ImmutableNodes.leafNode(NAME, "a")).build(),
+				ImmutableNodes.mapEntryBuilder(NODE, ID, "n2").withChild(ImmutableNodes.leafNode(NAME, "b")).build());
+		ContainerNode operational = inventory(ImmutableNodes.mapEntryBuilder(NODE, ID, "n1")
+				.withChild(ImmutableNodes.leafNode(NAME, "a-oper"))
+				.withChild(Builders.containerBuilder().withNodeIdentifier(NodeIdentifier.create(STATISTICS))
+						.withChild(ImmutableNodes.leafNode(PACKETS, 42l)).build())
+				.build());
+
+		ContainerNode merged = (ContainerNode) NormalizedNodeMerger.merge(configuration, operational);
+		MapNode nodes = (MapNode) merged.getChild(NodeIdentifier.create(NODE)).get();
+		assertEquals(2, nodes.getValue().size());
+
+		MapEntryNode n1 = nodes.getChild(new NodeIdentifierWithPredicates(NODE, ID, "n1")).get();
+		// Operational data wins for leaves, children of both are kept
+		assertEquals("a-oper", n1.getChild(NodeIdentifier.create(NAME)).get().getValue());
+		assertEquals("n1", n1.getChild(NodeIdentifier.create(ID)).get().getValue());
+		ContainerNode statistics = (ContainerNode) n1.getChild(NodeIdentifier.create(STATISTICS)).get();
+		assertEquals(42l, statistics.getChild(NodeIdentifier.create(PACKETS)).get().getValue());
+
+		MapEntryNode n2 = nodes.getChild(new NodeIdentifierWithPredicates(NODE, ID, "n2")).get();
+		assertEquals("b", n2.getChild(NodeIdentifier.create(NAME)).get().getValue());
+	}
+
+	@Test
+	public void testMissingDataStore() {
+		ContainerNode configuration = inventory(ImmutableNodes.mapEntry(NODE, ID, "n1"));
+		assertSame(configuration, NormalizedNodeMerger.merge(configuration, null));
+		assertSame(configuration, NormalizedNodeMerger.merge(null, configuration));
+		assertSame(configuration, NormalizedNodeMerger.mergeAll(Arrays.<NormalizedNode<?, ?>> asList(null,
+				configuration, null)));
+		assertNull(NormalizedNodeMerger.mergeAll(Arrays.<NormalizedNode<?, ?>> asList(null, null)));
+	}
+
+	private static ContainerNode inventory(MapEntryNode... entries) {
+		return Builders.containerBuilder().withNodeIdentifier(NodeIdentifier.create(INVENTORY))
+				.withChild(ImmutableNodes.mapNodeBuilder(NODE).withValue(Arrays.asList(entries)).build()).build();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opendaylight.yangpushserver.notification.NotificationReplayLog.RecordType;
+
+public class NotificationReplayLogTest {
+	private static final long KEY = NotificationReplayLog.replayKey("YANG-PUSH|1000|encode-xml|");
+	private static final long OTHER_KEY = NotificationReplayLog.replayKey("on-change|YANG-PUSH|encode-xml|");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReplayByKeyAndTime() throws Exception {
+		try (NotificationReplayLog log = new NotificationReplayLog(folder.getRoot().toPath(), 4096, 1 << 20,
+				60000)) {
+			for (int i = 0; i < 10; i++) {
+				log.append(KEY, 1000 + i, RecordType.push_update, content(i));
+				log.append(OTHER_KEY, 1000 + i, RecordType.push_change_update, content(100 + i));
+			}
+			List<String> replayed = new ArrayList<>();
+			assertEquals(5, log.replay(KEY, 1003, 1007, (eventTime, type, content) -> {
+				assertEquals(RecordType.push_update, type);
+				replayed.add(eventTime + ":" + text(content));
+			}));
+			assertEquals("[1003:<c>3</c>, 1004:<c>4</c>, 1005:<c>5</c>, 1006:<c>6</c>, 1007:<c>7</c>]",
+					replayed.toString());
+		}
+	}
+
+	@Test
+	public void testRetentionBySize() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		long now = System.currentTimeMillis();
+		try (NotificationReplayLog log = new NotificationReplayLog(directory, 1024, 3072, 60000)) {
+			// About 50 bytes per record, several segments are filled
+			for (int i = 0; i < 200; i++) {
+				log.append(KEY, now + i, RecordType.push_update, content(i));
+			}
+			int replayed = log.replay(KEY, 0, Long.MAX_VALUE, (eventTime, type, content) -> {
+			});
+			assertTrue(log.getSegmentCount() <= 3);
+			assertTrue(replayed > 0 && replayed < 200);
+			assertTrue(log.getOldestEventTime() > now);
+		}
+	}
+
+	@Test
+	public void testRecordsSurviveRestart() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		try (NotificationReplayLog log = new NotificationReplayLog(directory, 4096, 1 << 20, 60000)) {
+			log.append(KEY, System.currentTimeMillis(), RecordType.push_update, content(1));
+		}
+		try (NotificationReplayLog log = new NotificationReplayLog(directory, 4096, 1 << 20, 60000)) {
+			log.append(KEY, System.currentTimeMillis(), RecordType.push_update, content(2));
+			List<String> replayed = new ArrayList<>();
+			log.replay(KEY, 0, Long.MAX_VALUE, (eventTime, type, content) -> replayed.add(text(content)));
+			assertEquals("[<c>1</c>, <c>2</c>]", replayed.toString());
+		}
+	}
+
+	private static EncodedNotificationContent content(int number) {
+		return new EncodedNotificationContent(("<c>" + number + "</c>").getBytes(StandardCharsets.UTF_8), false);
+	}
+
+	private static String text(EncodedNotificationContent content) {
+		return new String(content.getContent(), StandardCharsets.UTF_8);
+	}
+}
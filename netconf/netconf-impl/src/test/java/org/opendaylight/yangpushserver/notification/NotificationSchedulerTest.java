@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.yangpushserver.notification.NotificationScheduler.ScheduledTask;
+
+public class NotificationSchedulerTest {
+	private static final int SUBSCRIPTIONS = 10000;
+	private static final int WORKERS = 4;
+	private static final long PERIOD = 200l;
+
+	private NotificationScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		scheduler = new NotificationScheduler(WORKERS, SUBSCRIPTIONS, 10l, 512);
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.close();
+	}
+
+	@Test
+	public void testScheduleOnce() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		scheduler.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		final AtomicInteger counter = new AtomicInteger();
+		ScheduledTask task = scheduler.scheduleAtFixedRate(counter::incrementAndGet, 0, 20, TimeUnit.MILLISECONDS);
+		Thread.sleep(200);
+		task.cancel();
+		Thread.sleep(50);
+		int afterCancel = counter.get();
+		Thread.sleep(200);
+		assertTrue(task.isCancelled());
+		assertEquals(afterCancel, counter.get());
+	}
+
+	/**
+	 * Saturates the workers and verifies that a one-shot task is delayed but
+	 * not dropped.
+	 */
+	@Test
+	public void testScheduleOnceNotDroppedWhenSaturated() throws Exception {
+		try (NotificationScheduler saturated = new NotificationScheduler(1, 1, 10l, 512)) {
+			final CountDownLatch running = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			saturated.execute(() -> {
+				running.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			assertTrue(running.await(5, TimeUnit.SECONDS));
+			assertTrue(saturated.execute(() -> {
+			}));
+			assertEquals(1, saturated.getQueuedTaskCount());
+
+			final CountDownLatch once = new CountDownLatch(1);
+			saturated.schedule(once::countDown, 20, TimeUnit.MILLISECONDS);
+			assertFalse(once.await(200, TimeUnit.MILLISECONDS));
+
+			release.countDown();
+			assertTrue("One-shot task was dropped", once.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * Schedules 10k periodic subscriptions and verifies that all of them are
+	 * triggered while the number of threads stays bounded by the worker pool
+	 * size plus the wheel thread.
+	 */
+	@Test
+	public void testPeriodicScale() throws Exception {
+		final AtomicInteger[] counters = new AtomicInteger[SUBSCRIPTIONS];
+		final List<ScheduledTask> tasks = new ArrayList<>(SUBSCRIPTIONS);
+		final CountDownLatch latch = new CountDownLatch(SUBSCRIPTIONS);
+
+		for (int i = 0; i < SUBSCRIPTIONS; i++) {
+			final AtomicInteger counter = new AtomicInteger();
+			counters[i] = counter;
+			tasks.add(scheduler.scheduleAtFixedRate(() -> {
+				if (counter.incrementAndGet() == 3) {
+					latch.countDown();
+				}
+			}, i % PERIOD, PERIOD, TimeUnit.MILLISECONDS));
+		}
+
+		assertTrue("Not all subscriptions were triggered three times", latch.await(30, TimeUnit.SECONDS));
+		assertTrue(countSchedulerThreads() <= WORKERS + 1);
+
+		for (ScheduledTask task : tasks) {
+			task.cancel();
+		}
+		for (AtomicInteger counter : counters) {
+			assertTrue(counter.get() >= 3);
+		}
+	}
+
+	private int countSchedulerThreads() {
+		final String prefix = scheduler.getThreadNamePrefix();
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith(prefix)) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
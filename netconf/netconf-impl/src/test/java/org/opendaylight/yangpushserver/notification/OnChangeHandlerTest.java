@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OnChangeHandlerTest {
+	private static final long NOW = 10000l;
+
+	@Test
+	public void testWithoutBundling() {
+		// Sent as soon as the dampening period is over
+		assertTrue(OnChangeHandler.deltaTillFlush(NOW, 0l, 1, NOW, 1l, 0l) <= 0);
+		assertEquals(300l, OnChangeHandler.deltaTillFlush(NOW, NOW + 300l, 5, NOW, 1l, 0l));
+	}
+
+	@Test
+	public void testBundling() {
+		// First change of a bundle waits for the maximum delay
+		assertEquals(50l, OnChangeHandler.deltaTillFlush(NOW, 0l, 1, NOW, 100l, 50l));
+		// Later changes do not extend the bundle
+		assertEquals(20l, OnChangeHandler.deltaTillFlush(NOW, 0l, 10, NOW - 30l, 100l, 50l));
+		assertTrue(OnChangeHandler.deltaTillFlush(NOW, 0l, 10, NOW - 60l, 100l, 50l) <= 0);
+		// A full bundle is sent without further delay
+		assertTrue(OnChangeHandler.deltaTillFlush(NOW, 0l, 100, NOW, 100l, 50l) <= 0);
+		// The dampening period still applies
+		assertEquals(200l, OnChangeHandler.deltaTillFlush(NOW, NOW + 200l, 100, NOW, 100l, 50l));
+		assertEquals(200l, OnChangeHandler.deltaTillFlush(NOW, NOW + 200l, 1, NOW, 100l, 50l));
+	}
+}
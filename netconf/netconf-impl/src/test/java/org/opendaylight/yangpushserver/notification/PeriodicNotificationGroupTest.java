@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.opendaylight.yangpushserver.subscription.SubscriptionInfo;
+
+public class PeriodicNotificationGroupTest {
+
+	@Test
+	public void testUnchangedContentDetected() {
+		PeriodicNotificationGroup group = group();
+		group.addMember("1");
+		group.addMember("2");
+
+		assertTrue(group.updateFingerprint("1", content("<c>1</c>").fingerprint()));
+		assertFalse(group.updateFingerprint("1", content("<c>1</c>").fingerprint()));
+		// Fingerprints are kept per member
+		assertTrue(group.updateFingerprint("2", content("<c>1</c>").fingerprint()));
+		assertTrue(group.updateFingerprint("1", content("<c>2</c>").fingerprint()));
+		assertFalse(group.updateFingerprint("1", content("<c>2</c>").fingerprint()));
+	}
+
+	@Test
+	public void testResetFingerprint() {
+		PeriodicNotificationGroup group = group();
+		group.addMember("1");
+		EncodedNotificationContent content = content("<c>1</c>");
+
+		assertTrue(group.updateFingerprint("1", content.fingerprint()));
+		group.resetFingerprint("1");
+		assertTrue(group.updateFingerprint("1", content.fingerprint()));
+
+		// A member joining again receives the next update in any case
+		group.removeMember("1");
+		group.addMember("1");
+		assertTrue(group.updateFingerprint("1", content.fingerprint()));
+	}
+
+	@Test
+	public void testFingerprint() {
+		assertEquals(content("<c>1</c>").fingerprint(), content("<c>1</c>").fingerprint());
+		assertNotEquals(content("<c>1</c>").fingerprint(), content("<c>2</c>").fingerprint());
+		assertEquals(128, content("<c>1</c>").fingerprint().bits());
+		assertEquals(0, EncodedNotificationContent.empty(false).getLength());
+	}
+
+	@Test
+	public void testDependentWaitsForParent() {
+		PeriodicNotificationGroup group = group();
+		group.addMember("parent");
+		List<String> sent = new ArrayList<>();
+		assertEquals(5000l, group.tickTime(5004l));
+		assertEquals(6000l, group.tickTime(5600l));
+
+		group.runAfterMember("parent", 5000l, () -> sent.add("5000"));
+		assertTrue(sent.isEmpty());
+		group.memberSent("parent", 5000l);
+		assertEquals(Arrays.asList("5000"), sent);
+
+		// Parent already sent or not ticking at that time
+		group.runAfterMember("parent", 5000l, () -> sent.add("again"));
+		group.runAfterMember("parent", 5500l, () -> sent.add("5500"));
+		assertEquals(Arrays.asList("5000", "again", "5500"), sent);
+
+		// Parent leaving releases the waiting updates
+		group.runAfterMember("parent", 6000l, () -> sent.add("6000"));
+		assertEquals(3, sent.size());
+		group.removeMember("parent");
+		assertEquals("6000", sent.get(3));
+	}
+
+	@Test
+	public void testSkippedTickReleasesDependents() {
+		PeriodicNotificationGroup group = group();
+		group.addMember("parent");
+		List<String> sent = new ArrayList<>();
+		assertTrue(group.tryStartTick(1000l));
+		group.runAfterMember("parent", 2000l, () -> sent.add("2000"));
+		assertFalse(group.tryStartTick(2000l));
+		assertEquals(Arrays.asList("2000"), sent);
+		assertEquals(1, group.getSkippedTicks());
+	}
+
+	private static PeriodicNotificationGroup group() {
+		SubscriptionInfo subscription = new SubscriptionInfo();
+		subscription.setStream("YANG-PUSH");
+		subscription.setEncoding("encode-xml");
+		subscription.setPeriod(1000l);
+		return new PeriodicNotificationGroup(PeriodicNotificationGroup.createKey(subscription), subscription);
+	}
+
+	private static EncodedNotificationContent content(String xml) {
+		return new EncodedNotificationContent(xml.getBytes(StandardCharsets.UTF_8), false);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+public class PriorityDispatcherTest {
+	private static final short LOW = 0;
+	private static final short HIGH = 3;
+
+	private final Queue<Runnable> executed = new ArrayDeque<>();
+	private final Queue<Runnable> retries = new ArrayDeque<>();
+
+	@Test
+	public void testWeightedFairQueuing() {
+		PriorityDispatcher dispatcher = new PriorityDispatcher(executed::add, retries::add, 1, 100);
+		StringBuilder order = new StringBuilder();
+		// Occupies the only running slot, the others are queued
+		dispatcher.submit(LOW, () -> order.append('B'));
+		for (int i = 0; i < 8; i++) {
+			dispatcher.submit(LOW, () -> order.append('L'));
+			dispatcher.submit(HIGH, () -> order.append('H'));
+		}
+		assertEquals(1, executed.size());
+		assertEquals(16, dispatcher.getQueuedTaskCount());
+		runAll();
+		// Priority 3 gets four times the share of priority 0, but priority 0
+		// is not starved
+		assertEquals("BHHHHHLHHHLLLLLLL", order.toString());
+		assertEquals(0, dispatcher.getQueuedTaskCount());
+	}
+
+	@Test
+	public void testCapacity() {
+		PriorityDispatcher dispatcher = new PriorityDispatcher(executed::add, retries::add, 1, 2);
+		dispatcher.submit(LOW, () -> {
+		});
+		dispatcher.submit(LOW, () -> {
+		});
+		dispatcher.submit(HIGH, () -> {
+		});
+		try {
+			dispatcher.executor(HIGH).execute(() -> {
+			});
+			fail("Task accepted although the queues are full");
+		} catch (RejectedExecutionException e) {
+			// Expected
+		}
+		runAll();
+		assertEquals(0, dispatcher.getQueuedTaskCount());
+	}
+
+	@Test
+	public void testRejectedTasksAreNotDropped() {
+		final boolean[] reject = { false };
+		PriorityDispatcher dispatcher = new PriorityDispatcher(task -> {
+			if (reject[0]) {
+				throw new RejectedExecutionException("Worker pool is full");
+			}
+			executed.add(task);
+		}, retries::add, 2, 100);
+		StringBuilder order = new StringBuilder();
+		dispatcher.submit(LOW, () -> order.append('A'));
+		reject[0] = true;
+		// Rejected while A is running, queued again
+		dispatcher.submit(HIGH, () -> order.append('B'));
+		assertEquals(1, executed.size());
+		assertEquals(1, dispatcher.getQueuedTaskCount());
+
+		reject[0] = false;
+		runAll();
+		assertEquals("AB", order.toString());
+		assertEquals(0, dispatcher.getQueuedTaskCount());
+		assertEquals(0, retries.size());
+
+		// Nothing running that could retry, so a single retry is scheduled,
+		// the tasks never run on the caller
+		reject[0] = true;
+		dispatcher.submit(LOW, () -> order.append('C'));
+		dispatcher.submit(LOW, () -> order.append('D'));
+		assertEquals("AB", order.toString());
+		assertEquals(2, dispatcher.getQueuedTaskCount());
+		assertEquals(0, executed.size());
+		assertEquals(1, retries.size());
+
+		reject[0] = false;
+		retries.poll().run();
+		runAll();
+		assertEquals("ABCD", order.toString());
+		assertEquals(0, dispatcher.getQueuedTaskCount());
+		assertEquals(0, retries.size());
+	}
+
+	@Test
+	public void testLatencyStatistics() {
+		PriorityDispatcher dispatcher = new PriorityDispatcher(executed::add, retries::add, 1, 100);
+		dispatcher.recordLatency(HIGH, 10);
+		dispatcher.recordLatency(HIGH, 30);
+		dispatcher.recordLatency(LOW, 500);
+
+		assertEquals(2, dispatcher.getLatency(HIGH).getCount());
+		assertEquals(20, dispatcher.getLatency(HIGH).getMean());
+		assertEquals(30, dispatcher.getLatency(HIGH).getMax());
+		assertEquals(500, dispatcher.getLatency(LOW).getMax());
+		assertEquals(0, dispatcher.getLatency((short) 7).getCount());
+		assertEquals(2, dispatcher.getLatencies().size());
+	}
+
+	private void runAll() {
+		Runnable task;
+		while ((task = executed.poll()) != null) {
+			task.run();
+		}
+	}
+}
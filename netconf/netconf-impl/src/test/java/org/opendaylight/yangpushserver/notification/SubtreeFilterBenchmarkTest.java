@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.ERRORS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.ID;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.INVENTORY;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAME;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAMESPACE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NODE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NUMBER;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.OPER_STATUS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.PACKETS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.PORT;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.STATISTICS;
+
+import java.math.BigInteger;
+
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
+
+import org.custommonkey.xmlunit.Diff;
+import org.custommonkey.xmlunit.ElementNameAndTextQualifier;
+import org.custommonkey.xmlunit.XMLUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.config.util.xml.XmlElement;
+import org.opendaylight.controller.config.util.xml.XmlUtil;
+import org.opendaylight.netconf.util.NetconfUtil;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.stream.NormalizedNodeStreamWriter;
+import org.opendaylight.yangtools.yang.data.api.schema.stream.NormalizedNodeWriter;
+import org.opendaylight.yangtools.yang.data.impl.codec.xml.XMLStreamNormalizedNodeStreamWriter;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.data.impl.schema.builder.api.CollectionNodeBuilder;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import com.google.common.base.Optional;
+
+/**
+ * Compares the {@link NormalizedNodeSubtreeFilter} with the DOM based
+ * {@link SubtreeFilter} on a large inventory, both for equal results and for
+ * the time needed to compose the filtered notification content.
+ */
+public class SubtreeFilterBenchmarkTest {
+	private static final Logger LOG = LoggerFactory.getLogger(SubtreeFilterBenchmarkTest.class);
+
+
+	private static final int NODES = 2000;
+	private static final int PORTS = 10;
+	private static final int ITERATIONS = 20;
+
+	private SchemaContext schemaContext;
+	private NormalizedNode<?, ?> data;
+
+	@Before
+	public void setUp() throws Exception {
+		schemaContext = FilterTestModel.loadSchemaContext();
+		CollectionNodeBuilder<MapEntryNode, MapNode> nodes = ImmutableNodes.mapNodeBuilder(NODE);
+		for (int i = 0; i < NODES; i++) {
+			CollectionNodeBuilder<MapEntryNode, MapNode> ports = ImmutableNodes.mapNodeBuilder(PORT);
+			for (long j = 0; j < PORTS; j++) {
+				ports.withChild(ImmutableNodes.mapEntryBuilder(PORT, NUMBER, j)
+						.withChild(ImmutableNodes.leafNode(OPER_STATUS, j % 2 == 0 ? "up" : "down")).build());
+			}
+			nodes.withChild(ImmutableNodes.mapEntryBuilder(NODE, ID, "node-" + i)
+					.withChild(ImmutableNodes.leafNode(NAME, "name-" + i))
+					.withChild(Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(STATISTICS))
+							.withChild(ImmutableNodes.leafNode(PACKETS, BigInteger.valueOf(i * 1000L)))
+							.withChild(ImmutableNodes.leafNode(ERRORS, (long) i)).build())
+					.withChild(ports.build()).build());
+		}
+		ContainerNode inventory = Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(INVENTORY))
+				.withChild(nodes.build()).build();
+		data = Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(SchemaContext.NAME))
+				.withChild(inventory).build();
+	}
+
+	@Test
+	public void testKeyLookupAndSelection() throws Exception {
+		assertSameResult(filter("<node><id>node-1000</id><statistics/></node>"));
+	}
+
+	@Test
+	public void testNestedListContentMatch() throws Exception {
+		assertSameResult(filter("<node><id>node-42</id><port><oper-status>up</oper-status></port></node>"));
+	}
+
+	/**
+	 * List keys are always part of selected list entries, the DOM based filter
+	 * only returns them if selected explicitly.
+	 */
+	@Test
+	public void testContentMatchOnNonKeyLeaf() throws Exception {
+		assertSameResult(filter("<node><id/><name>name-7</name><statistics><errors/></statistics></node>"));
+	}
+
+	@Test
+	public void testNoMatch() throws Exception {
+		XmlElement filter = filter("<node><id>unknown</id></node>");
+		NormalizedNodeSubtreeFilter nodeFilter = NormalizedNodeSubtreeFilter.compile(filter, schemaContext).get();
+		assertFalse(nodeFilter.apply(data).isPresent());
+	}
+
+	/**
+	 * Composes the filtered notification content repeatedly with both filters.
+	 * The DOM based filter has to serialize the whole inventory first, while
+	 * the normalized node filter looks up the selected list entry directly.
+	 * The timings are only logged, as wall-clock comparisons are not reliable
+	 * on a loaded build machine.
+	 */
+	@Test
+	public void testBenchmark() throws Exception {
+		XmlElement filter = filter("<node><id>node-1500</id><statistics/></node>");
+		NormalizedNodeSubtreeFilter nodeFilter = NormalizedNodeSubtreeFilter.compile(filter, schemaContext).get();
+
+		// Warm up
+		filterDom(filter);
+		filterNormalizedNode(nodeFilter);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			filterDom(filter);
+		}
+		long domTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			filterNormalizedNode(nodeFilter);
+		}
+		long normalizedNodeTime = System.nanoTime() - start;
+
+		LOG.info("Filtering {} list entries {} times: DOM filter {}ms, normalized node filter {}ms", NODES,
+				ITERATIONS, domTime / 1000000, normalizedNodeTime / 1000000);
+	}
+
+	private void assertSameResult(XmlElement filter) throws Exception {
+		Optional<NormalizedNodeSubtreeFilter> nodeFilter = NormalizedNodeSubtreeFilter.compile(filter, schemaContext);
+		assertTrue(nodeFilter.isPresent());
+
+		XMLUnit.setIgnoreWhitespace(true);
+		Diff diff = new Diff(filterDom(filter), filterNormalizedNode(nodeFilter.get()));
+		diff.overrideElementQualifier(new ElementNameAndTextQualifier());
+		assertTrue(diff.toString(), diff.similar());
+	}
+
+	private Document filterDom(XmlElement filter) throws Exception {
+		Optional<Document> filtered = SubtreeFilter.applySubtreeNotificationFilter(filter, write(data));
+		assertTrue(filtered.isPresent());
+		return filtered.get();
+	}
+
+	private Document filterNormalizedNode(NormalizedNodeSubtreeFilter filter) throws Exception {
+		Optional<NormalizedNode<?, ?>> filtered = filter.apply(data);
+		assertTrue(filtered.isPresent());
+		return write(NormalizedNodeSubtreeFilter.getContentRoot(filtered.get()));
+	}
+
+	private static XmlElement filter(String inventoryContent) throws Exception {
+		Document filter = XmlUtil.readXmlToDocument(
+				"<filter xmlns=\"urn:ietf:params:xml:ns:netconf:notification:1.0\" type=\"subtree\">"
+						+ "<inventory xmlns=\"" + NAMESPACE + "\">" + inventoryContent + "</inventory></filter>");
+		return XmlElement.fromDomDocument(filter);
+	}
+
+	private static Document write(NormalizedNode<?, ?> node) throws Exception {
+		DOMResult result = new DOMResult(XmlUtil.newDocument());
+		XMLStreamWriter writer = NetconfUtil.XML_FACTORY.createXMLStreamWriter(result);
+		try (NormalizedNodeStreamWriter streamWriter = XMLStreamNormalizedNodeStreamWriter.createSchemaless(writer);
+				NormalizedNodeWriter nodeWriter = NormalizedNodeWriter.forStreamWriter(streamWriter)) {
+			nodeWriter.write(node);
+			nodeWriter.flush();
+		} finally {
+			writer.close();
+		}
+		return (Document) result.getNode();
+	}
+}
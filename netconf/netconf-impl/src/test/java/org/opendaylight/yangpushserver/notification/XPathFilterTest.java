@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.ERRORS;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.ID;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.INVENTORY;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NAME;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.NODE;
+import static org.opendaylight.yangpushserver.notification.FilterTestModel.STATISTICS;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+
+public class XPathFilterTest {
+	private SchemaContext schemaContext;
+	private NormalizedNode<?, ?> data;
+
+	@Before
+	public void setUp() throws Exception {
+		schemaContext = FilterTestModel.loadSchemaContext();
+		ContainerNode inventory = Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(INVENTORY))
+				.withChild(ImmutableNodes.mapNodeBuilder(NODE).withChild(node("n1", "a", 1l))
+						.withChild(node("n2", "b", 2l)).withChild(node("n3", "a", 3l)).build())
+				.build();
+		data = Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(SchemaContext.NAME))
+				.withChild(inventory).build();
+	}
+
+	@Test
+	public void testKeyPredicateDerivesReadRoot() {
+		CompiledSubtreeFilter filter = compile("/yangpush-filter-test:inventory/node[id='n2']/statistics");
+		YangInstanceIdentifier expectedRoot = YangInstanceIdentifier.builder().node(INVENTORY).node(NODE)
+				.nodeWithKey(NODE, ID, "n2").node(STATISTICS).build();
+		assertEquals(Collections.singletonList(expectedRoot), filter.getReadRoots());
+
+		MapNode nodes = apply(filter);
+		assertEquals(1, nodes.getValue().size());
+		MapEntryNode n2 = nodes.getChild(new NodeIdentifierWithPredicates(NODE, ID, "n2")).get();
+		assertTrue(n2.getChild(new NodeIdentifier(STATISTICS)).isPresent());
+		assertFalse(n2.getChild(new NodeIdentifier(NAME)).isPresent());
+	}
+
+	@Test
+	public void testPredicateOnNonKeyLeafAndUnion() {
+		// Module prefix instead of module name, union of two paths
+		CompiledSubtreeFilter filter = compile(
+				"/yft:inventory/node[name='a']/statistics/errors | /yft:inventory/node[ id = \"n2\" ]");
+		// Two different list entry filters, descending stops at the container
+		assertEquals(Collections.singletonList(YangInstanceIdentifier.of(INVENTORY)), filter.getReadRoots());
+
+		MapNode nodes = apply(filter);
+		assertEquals(3, nodes.getValue().size());
+		MapEntryNode n2 = nodes.getChild(new NodeIdentifierWithPredicates(NODE, ID, "n2")).get();
+		// Whole entry selected
+		assertTrue(n2.getChild(new NodeIdentifier(NAME)).isPresent());
+		assertTrue(n2.getChild(new NodeIdentifier(STATISTICS)).isPresent());
+	}
+
+	@Test
+	public void testUnsupportedExpressionsRejected() {
+		assertRejected("yft:inventory");
+		assertRejected("//yft:node");
+		assertRejected("/yft:inventory/*");
+		assertRejected("/yft:inventory/node[1]");
+		assertRejected("/yft:inventory/node[name!='a']");
+		assertRejected("/yft:inventory/node[name='a' or name='b']");
+		assertRejected("/yft:inventory/node[count(port)=1]");
+		assertRejected("/yft:inventory/child::node");
+		assertRejected("/yft:inventory/unknown");
+		assertRejected("/inventory");
+		assertRejected("/unknown:inventory");
+	}
+
+	private CompiledSubtreeFilter compile(String xpath) {
+		return CompiledSubtreeFilter.compile(XPathFilter.toSubtreeFilter(xpath, schemaContext), schemaContext);
+	}
+
+	private MapNode apply(CompiledSubtreeFilter filter) {
+		assertTrue(filter.getNodeFilter().isPresent());
+		ContainerNode filtered = (ContainerNode) filter.getNodeFilter().get().apply(data).get();
+		ContainerNode inventory = (ContainerNode) filtered.getChild(new NodeIdentifier(INVENTORY)).get();
+		return (MapNode) inventory.getChild(new NodeIdentifier(NODE)).get();
+	}
+
+	private void assertRejected(String xpath) {
+		try {
+			XPathFilter.toSubtreeFilter(xpath, schemaContext);
+			fail("XPath filter " + xpath + " accepted");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	private static MapEntryNode node(String id, String name, long errors) {
+		return ImmutableNodes.mapEntryBuilder(NODE, ID, id).withChild(ImmutableNodes.leafNode(NAME, name))
+				.withChild(Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(STATISTICS))
+						.withChild(ImmutableNodes.leafNode(ERRORS, errors)).build())
+				.build();
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.opendaylight.yangpushserver.subscription.AdmissionController.Decision;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.impl.schema.Builders;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+
+public class AdmissionControllerTest {
+	private static final QName TOP = QName.create("urn:opendaylight:yangpush:admission:test", "2016-11-01", "top");
+	private static final QName NAME = QName.create(TOP, "name");
+	private static final QName ENTRY = QName.create(TOP, "entry");
+	private static final QName ID = QName.create(TOP, "id");
+
+	// Size of an update of 1000 nodes
+	private static final long UPDATE_SIZE = AdmissionController.MESSAGE_OVERHEAD
+			+ 1000 * AdmissionController.BYTES_PER_NODE;
+
+	@Test
+	public void testPeriodNegotiation() {
+		AdmissionController controller = new AdmissionController(100000);
+
+		Decision first = controller.admit("1", periodic(1000l), 1000);
+		assertTrue(first.isAdmitted());
+		assertEquals(UPDATE_SIZE, first.getCost());
+		assertEquals(UPDATE_SIZE, controller.getUsedBudget());
+
+		Decision second = controller.admit("2", periodic(1000l), 1000);
+		assertFalse(second.isAdmitted());
+		assertEquals(UPDATE_SIZE, controller.getUsedBudget());
+		// Smallest multiple of the granularity fitting the remaining budget
+		long proposed = second.getProposedInterval();
+		assertEquals(1900, proposed);
+
+		Decision retry = controller.admit("2", periodic(proposed), 1000);
+		assertTrue(retry.isAdmitted());
+		assertTrue(controller.getUsedBudget() <= controller.getBudget());
+	}
+
+	@Test
+	public void testOnChangeAndRelease() {
+		AdmissionController controller = new AdmissionController(100000);
+		assertTrue(controller.admit("1", periodic(1000l), 1000).isAdmitted());
+
+		// Without dampening period, every 100ms a tenth of the data
+		Decision onChange = controller.admit("2", onChange(0l), 1000);
+		assertFalse(onChange.isAdmitted());
+		assertEquals((UPDATE_SIZE - 1000 * AdmissionController.BYTES_PER_NODE * 9 / 10) * 10, onChange.getCost());
+		assertTrue(onChange.getProposedInterval() > AdmissionController.MIN_ON_CHANGE_INTERVAL);
+
+		controller.release("1");
+		assertEquals(0, controller.getUsedBudget());
+		assertEquals(0, controller.getCost("1"));
+		assertTrue(controller.admit("2", onChange(0l), 1000).isAdmitted());
+	}
+
+	@Test
+	public void testModifyReplacesReservedCost() {
+		AdmissionController controller = new AdmissionController(100000);
+		assertTrue(controller.admit("1", periodic(1000l), 1000).isAdmitted());
+		// Would not fit next to the old cost
+		assertTrue(controller.admit("1", periodic(800l), 1000).isAdmitted());
+		assertEquals(controller.getCost("1"), controller.getUsedBudget());
+
+		// Rejected modification keeps the old reservation
+		long reserved = controller.getCost("1");
+		assertFalse(controller.admit("1", periodic(10l), 1000).isAdmitted());
+		assertEquals(reserved, controller.getUsedBudget());
+	}
+
+	@Test
+	public void testExhaustedBudget() {
+		AdmissionController controller = new AdmissionController(100000);
+		// Unknown size, the default size is assumed
+		assertTrue(controller.admit("1", periodic(1000l), -1).isAdmitted());
+		assertEquals(UPDATE_SIZE, controller.getUsedBudget());
+
+		controller.setBudget(1000);
+		Decision decision = controller.admit("2", periodic(60000l), 0);
+		assertFalse(decision.isAdmitted());
+		assertNull(decision.getProposedInterval());
+	}
+
+	@Test
+	public void testCountNodes() {
+		ContainerNode top = Builders.containerBuilder().withNodeIdentifier(new NodeIdentifier(TOP))
+				.withChild(ImmutableNodes.leafNode(NAME, "a"))
+				.withChild(ImmutableNodes.mapNodeBuilder(ENTRY).withChild(ImmutableNodes.mapEntry(ENTRY, ID, "e1"))
+						.withChild(ImmutableNodes.mapEntry(ENTRY, ID, "e2")).build())
+				.build();
+		// Container, leaf, list, two entries with their key leafs
+		assertEquals(7, AdmissionController.countNodes(top));
+		assertEquals(0, AdmissionController.countNodes(null));
+	}
+
+	private static SubscriptionInfo periodic(Long period) {
+		SubscriptionInfo subscription = new SubscriptionInfo();
+		subscription.setPeriod(period);
+		return subscription;
+	}
+
+	private static SubscriptionInfo onChange(Long dampeningPeriod) {
+		SubscriptionInfo subscription = new SubscriptionInfo();
+		subscription.setDampeningPeriod(dampeningPeriod);
+		return subscription;
+	}
+}
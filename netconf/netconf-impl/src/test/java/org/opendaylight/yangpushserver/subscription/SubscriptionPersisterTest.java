@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2016 Cisco Systems Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yangpushserver.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataBroker;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataWriteTransaction;
+import org.opendaylight.yangpushserver.notification.NotificationScheduler;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNodes;
+
+import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class SubscriptionPersisterTest {
+	private static final QName SUBSCRIPTIONS = QName.create("urn:opendaylight:yangpush:persister:test", "2016-11-01",
+			"subscriptions");
+	private static final QName SUBSCRIPTION = QName.create(SUBSCRIPTIONS, "subscription");
+	private static final QName ID = QName.create(SUBSCRIPTIONS, "id");
+	private static final QName STATUS = QName.create(SUBSCRIPTIONS, "status");
+
+	private static final long FLUSH_INTERVAL = 100l;
+
+	// Writes of every committed transaction
+	private final List<List<String>> commits = new ArrayList<>();
+	// Results of the next commits, successful if empty
+	private final Deque<CheckedFuture<Void, TransactionCommitFailedException>> results = new ArrayDeque<>();
+	// Delays of the flushes scheduled, they are triggered by the test
+	private final List<Long> flushDelays = new ArrayList<>();
+	private SubscriptionPersister persister;
+
+	@Before
+	public void setUp() {
+		NotificationScheduler scheduler = mock(NotificationScheduler.class);
+		doAnswer(invocation -> {
+			flushDelays.add((Long) invocation.getArguments()[1]);
+			return null;
+		}).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+		DOMDataBroker dataBroker = mock(DOMDataBroker.class);
+		doAnswer(invocation -> newTransaction()).when(dataBroker).newWriteOnlyTransaction();
+		persister = new SubscriptionPersister(dataBroker, scheduler, FLUSH_INTERVAL);
+	}
+
+	@Test
+	public void testLastWriteWinsPerPath() {
+		persister.merge(status("1"), statusLeaf("active"));
+		persister.merge(status("2"), statusLeaf("active"));
+		persister.put(status("1"), statusLeaf("suspended"));
+		// One flush collects all writes
+		assertEquals(Arrays.asList(FLUSH_INTERVAL), flushDelays);
+
+		persister.flush();
+		assertEquals(1, commits.size());
+		assertEquals(Arrays.asList("merge " + status("2") + " active", "put " + status("1") + " suspended"),
+				commits.get(0));
+	}
+
+	@Test
+	public void testWriteBelowPendingDeleteIsIgnored() {
+		persister.merge(status("1"), statusLeaf("active"));
+		persister.delete(subscription("1"));
+		persister.merge(status("1"), statusLeaf("suspended"));
+		persister.merge(status("2"), statusLeaf("active"));
+
+		persister.flush();
+		assertEquals(Arrays.asList("delete " + subscription("1"), "merge " + status("2") + " active"),
+				commits.get(0));
+	}
+
+	@Test
+	public void testFailedCommitIsRequeuedBeforeNewerWrites() {
+		SettableFuture<Void> commit = SettableFuture.create();
+		results.add(Futures.makeChecked(commit, e -> new TransactionCommitFailedException("Commit failed", e)));
+		persister.merge(status("1"), statusLeaf("active"));
+		persister.merge(status("2"), statusLeaf("active"));
+		persister.flush();
+
+		// Queued while the commit is pending
+		persister.merge(status("3"), statusLeaf("active"));
+		persister.merge(status("2"), statusLeaf("suspended"));
+		commit.setException(new TransactionCommitFailedException("Data store unavailable"));
+
+		persister.flush();
+		assertEquals(2, commits.size());
+		// The newer write of subscription 2 is not overridden by the retry
+		assertEquals(Arrays.asList("merge " + status("1") + " active", "merge " + status("3") + " active",
+				"merge " + status("2") + " suspended"), commits.get(1));
+	}
+
+	@Test
+	public void testFailedCommitsBackOff() {
+		persister.merge(status("1"), statusLeaf("active"));
+		for (int i = 0; i < 8; i++) {
+			results.add(Futures.immediateFailedCheckedFuture(new TransactionCommitFailedException("Commit failed")));
+			persister.flush();
+		}
+		// Doubled with every failed commit up to the maximum
+		assertEquals(Arrays.asList(FLUSH_INTERVAL, 200l, 400l, 800l, 1600l, 3200l, 6400l,
+				SubscriptionPersister.MAX_RETRY_INTERVAL, SubscriptionPersister.MAX_RETRY_INTERVAL), flushDelays);
+
+		// Back to the flush interval after a successful commit
+		persister.flush();
+		persister.merge(status("1"), statusLeaf("suspended"));
+		assertEquals(FLUSH_INTERVAL, (long) flushDelays.get(flushDelays.size() - 1));
+		assertEquals(9, commits.size());
+	}
+
+	private DOMDataWriteTransaction newTransaction() {
+		List<String> writes = new ArrayList<>();
+		commits.add(writes);
+		DOMDataWriteTransaction tx = mock(DOMDataWriteTransaction.class);
+		doAnswer(invocation -> writes.add("merge " + invocation.getArguments()[1] + " "
+				+ ((NormalizedNode<?, ?>) invocation.getArguments()[2]).getValue())).when(tx)
+						.merge(any(LogicalDatastoreType.class), any(YangInstanceIdentifier.class),
+								any(NormalizedNode.class));
+		doAnswer(invocation -> writes.add("put " + invocation.getArguments()[1] + " "
+				+ ((NormalizedNode<?, ?>) invocation.getArguments()[2]).getValue())).when(tx)
+						.put(any(LogicalDatastoreType.class), any(YangInstanceIdentifier.class),
+								any(NormalizedNode.class));
+		doAnswer(invocation -> writes.add("delete " + invocation.getArguments()[1])).when(tx)
+				.delete(any(LogicalDatastoreType.class), any(YangInstanceIdentifier.class));
+		doAnswer(invocation -> results.isEmpty() ? Futures.immediateCheckedFuture(null) : results.poll())
+				.when(tx).submit();
+		return tx;
+	}
+
+	private static YangInstanceIdentifier subscription(String id) {
+		return YangInstanceIdentifier.of(SUBSCRIPTIONS).node(SUBSCRIPTION)
+				.node(new NodeIdentifierWithPredicates(SUBSCRIPTION, ID, id));
+	}
+
+	private static YangInstanceIdentifier status(String id) {
+		return subscription(id).node(STATUS);
+	}
+
+	private static NormalizedNode<?, ?> statusLeaf(String status) {
+		return ImmutableNodes.leafNode(STATUS, status);
+	}
+}
@@ -179,6 +179,14 @@ public abstract class AbstractNetconfSession<S extends NetconfSession, L extends
      */
     protected abstract void addExiHandlers(ByteToMessageDecoder decoder, MessageToByteEncoder<NetconfMessage> encoder);
 
+    /**
+     * @return true if messages sent now are written to the channel immediately
+     *         instead of piling up in its outbound buffer
+     */
+    public final boolean isWritable() {
+        return channel.isWritable();
+    }
+
     public final boolean isUp() {
         return up;
     }
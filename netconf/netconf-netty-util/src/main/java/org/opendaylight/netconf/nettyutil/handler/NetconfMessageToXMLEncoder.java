@@ -20,6 +20,7 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import org.opendaylight.netconf.api.NetconfMessage;
+import org.opendaylight.netconf.api.PreEncodedNetconfMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Comment;
@@ -42,6 +43,14 @@ public class NetconfMessageToXMLEncoder extends MessageToByteEncoder<NetconfMess
     public void encode(final ChannelHandlerContext ctx, final NetconfMessage msg, final ByteBuf out) throws IOException, TransformerException {
         LOG.trace("Sent to encode : {}", msg);
 
+        if (msg instanceof PreEncodedNetconfMessage && !clientId.isPresent()) {
+            // Already serialized, write the payload as it is
+            try (OutputStream os = new ByteBufOutputStream(out)) {
+                ((PreEncodedNetconfMessage) msg).writeTo(os);
+            }
+            return;
+        }
+
         if (clientId.isPresent()) {
             Comment comment = msg.getDocument().createComment("clientId:" + clientId.get());
             msg.getDocument().appendChild(comment);